@@ -0,0 +1,40 @@
+package derek.util.bench;
+
+import derek.util.AVLTree;
+
+/**
+ * This class measures loading sorted input into an AVLTree one element at a time against
+ * building it with fromSorted, and the cost of the split/join set operations.
+ * The sizes can be changed with the bench.sizes system property.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class AVLTreeBulkBenchmarks {
+
+	public static void main(String[] args) {
+		int[] sizes = Benchmark.sizes("bench.sizes", 1000, 100000, 1000000);
+		for (int n : sizes) {
+			Benchmark.header("sorted keys, n = " + n);
+			final Integer[] evens = new Integer[n];
+			final Integer[] threes = new Integer[n];
+			for (int i = 0 ; i < n ; i++) {
+				evens[i] = 2 * i;
+				threes[i] = 3 * i;
+			}
+
+			Benchmark.measure("insert one at a time", n, () -> {
+				AVLTree<Integer> tree = new AVLTree<Integer>();
+				for (Integer key : evens)
+					tree.insert(key);
+				return tree.size();
+			});
+			Benchmark.measure("fromSorted", n, () -> AVLTree.fromSorted(evens).size());
+
+			final AVLTree<Integer> a = AVLTree.fromSorted(evens);
+			final AVLTree<Integer> b = AVLTree.fromSorted(threes);
+			Benchmark.measure("union (per input element)", 2L * n, () -> a.union(b).size());
+			Benchmark.measure("intersection (per input element)", 2L * n, () -> a.intersection(b).size());
+			Benchmark.measure("difference (per input element)", 2L * n, () -> a.difference(b).size());
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package derek.util.bench;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import derek.util.AVLTreeMap;
+
+/**
+ * This class compares AVLTreeMap against java.util.TreeMap, on the operations a time-bucketed
+ * index leans on: point lookups, floor lookups, inserts, removes and range scans.
+ * The sizes can be changed with the bench.sizes system property.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class AVLTreeMapBenchmarks {
+
+	public static void main(String[] args) {
+		int[] sizes = Benchmark.sizes("bench.sizes", 1000, 100000, 1000000);
+		for (int n : sizes) {
+			Benchmark.header("random keys, n = " + n);
+			Random r = new Random(n);
+			Long[] keys = new Long[n];
+			for (int i = 0 ; i < n ; i++)
+				keys[i] = r.nextLong();
+			Long[] probes = new Long[n];
+			for (int i = 0 ; i < n ; i++)
+				probes[i] = r.nextLong();
+
+			run("AVLTreeMap", n, keys, probes, AVLTreeMap::new);
+			run("TreeMap", n, keys, probes, TreeMap::new);
+		}
+	}
+
+
+	/**
+	 * This method measures every operation for one kind of map.
+	 * @param name The name of the map.
+	 * @param n How many keys are stored.
+	 * @param keys The keys to store.
+	 * @param probes Random keys that probably aren't stored, for nearest-key lookups.
+	 * @param factory Makes an empty map.
+	 */
+	private static void run(String name, final int n, final Long[] keys, final Long[] probes,
+			final Supplier<NavigableMap<Long, Long>> factory) {
+		final NavigableMap<Long, Long> map = factory.get();
+		for (Long key : keys)
+			map.put(key, key);
+
+		Benchmark.measure(name + " get", n, () -> {
+			long sum = 0;
+			for (Long key : keys)
+				sum += map.get(key);
+			return sum;
+		});
+
+		Benchmark.measure(name + " floorKey", n, () -> {
+			long sum = 0;
+			for (Long key : probes) {
+				Long floor = map.floorKey(key);
+				sum += (floor == null) ? 0 : floor;
+			}
+			return sum;
+		});
+
+		Benchmark.measure(name + " remove + put", n, () -> {
+			long sum = 0;
+			for (Long key : keys) {
+				sum += map.remove(key);
+				map.put(key, key);
+			}
+			return sum;
+		});
+
+		Benchmark.measure(name + " iterate", n, () -> {
+			long sum = 0;
+			for (Map.Entry<Long, Long> e : map.entrySet())
+				sum += e.getValue();
+			return sum;
+		});
+
+		// Scan short ranges, the way a bucketed index reads one time window
+		final int windows = Math.min(n, 1000);
+		Benchmark.measure(name + " subMap scan (per window)", windows, () -> {
+			long sum = 0;
+			for (int i = 0 ; i < windows ; i++) {
+				long from = probes[i] >> 1;
+				for (Long v : map.subMap(from, true, from + (Long.MAX_VALUE / n) * 16, false).values())
+					sum += v;
+			}
+			return sum;
+		});
+
+		Benchmark.measure(name + " put (grow from empty)", n, () -> {
+			NavigableMap<Long, Long> fresh = factory.get();
+			for (Long key : keys)
+				fresh.put(key, key);
+			return fresh.size();
+		});
+	}
+}
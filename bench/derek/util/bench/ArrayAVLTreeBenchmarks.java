@@ -0,0 +1,114 @@
+package derek.util.bench;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import derek.util.AVLTree;
+import derek.util.ArrayAVLTree;
+
+/**
+ * This class compares the array-backed ArrayAVLTree against the node-based AVLTree and java.util.TreeSet.
+ * Besides timing lookups, loads and iteration, it reports how many bytes of heap each tree needs
+ * per element, not counting the elements themselves. The sizes can be changed with the
+ * bench.sizes system property.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ArrayAVLTreeBenchmarks {
+
+	public static void main(String[] args) {
+		int[] sizes = Benchmark.sizes("bench.sizes", 1000, 100000, 1000000);
+		for (int n : sizes) {
+			Random r = new Random(n);
+			final Integer[] keys = new Integer[n];
+			for (int i = 0 ; i < n ; i++)
+				keys[i] = r.nextInt();
+
+			Benchmark.memoryHeader("memory, n = " + n);
+			reportMemory("AVLTree", n, () -> {
+				AVLTree<Integer> tree = new AVLTree<Integer>();
+				for (Integer key : keys)
+					tree.insert(key);
+				return tree;
+			});
+			reportMemory("ArrayAVLTree", n, () -> {
+				ArrayAVLTree<Integer> tree = new ArrayAVLTree<Integer>(n);
+				for (Integer key : keys)
+					tree.insert(key);
+				return tree;
+			});
+			reportMemory("TreeSet", n, () -> {
+				TreeSet<Integer> tree = new TreeSet<Integer>();
+				for (Integer key : keys)
+					tree.add(key);
+				return tree;
+			});
+
+			Benchmark.header("random keys, n = " + n);
+			final AVLTree<Integer> nodes = new AVLTree<Integer>();
+			final ArrayAVLTree<Integer> arrays = new ArrayAVLTree<Integer>();
+			for (Integer key : keys) {
+				nodes.insert(key);
+				arrays.insert(key);
+			}
+
+			Benchmark.measure("AVLTree find", n, () -> {
+				long sum = 0;
+				for (Integer key : keys)
+					sum += nodes.find(key);
+				return sum;
+			});
+			Benchmark.measure("ArrayAVLTree find", n, () -> {
+				long sum = 0;
+				for (Integer key : keys)
+					sum += arrays.find(key);
+				return sum;
+			});
+			Benchmark.measure("AVLTree iterate", n, () -> {
+				long sum = 0;
+				for (Integer key : nodes)
+					sum += key;
+				return sum;
+			});
+			Benchmark.measure("ArrayAVLTree iterate", n, () -> {
+				long sum = 0;
+				for (Integer key : arrays)
+					sum += key;
+				return sum;
+			});
+			Benchmark.measure("AVLTree insert (from empty)", n, () -> {
+				AVLTree<Integer> tree = new AVLTree<Integer>();
+				for (Integer key : keys)
+					tree.insert(key);
+				return tree.size();
+			});
+			Benchmark.measure("ArrayAVLTree insert (from empty)", n, () -> {
+				ArrayAVLTree<Integer> tree = new ArrayAVLTree<Integer>();
+				for (Integer key : keys)
+					tree.insert(key);
+				return tree.size();
+			});
+		}
+	}
+
+
+	/**
+	 * This method prints how much heap a structure needs per element, measured around building it.
+	 * Small structures are built several times over, since the heap can't be measured finely enough
+	 * to see just one of them.
+	 * @param name The name of the structure.
+	 * @param n The number of elements it holds.
+	 * @param build Builds the structure and returns it.
+	 */
+	private static void reportMemory(String name, int n, Supplier<Object> build) {
+		Object[] copies = new Object[Math.max(1, 4000000 / n)];
+		long before = Benchmark.usedHeap();
+		for (int i = 0 ; i < copies.length ; i++)
+			copies[i] = build.get();
+		long after = Benchmark.usedHeap();
+		Benchmark.memory(name, after - before, n * copies.length);
+		// Keep the copies alive until after the second measurement
+		Benchmark.consume(copies[copies.length - 1].hashCode());
+	}
+}
@@ -0,0 +1,173 @@
+package derek.util.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import derek.util.ArrayHashMap;
+
+/**
+ * This class compares ArrayHashMap against java.util.HashMap.
+ * Every operation is measured for sequential, random and clustered keys, at sizes from a thousand
+ * to ten million entries. The sizes can be changed with the bench.sizes system property,
+ * for example -Dbench.sizes=1e3,1e5.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ArrayHashMapBenchmarks {
+
+	/** The ways the benchmark keys can be picked. */
+	enum Distribution {
+		/** The keys 0 to n - 1. */
+		SEQUENTIAL,
+		/** Uniformly random keys. */
+		RANDOM,
+		/** Keys that only differ in their high bits, which a weak hash would pile into one bucket. */
+		CLUSTERED;
+
+		/**
+		 * This method makes n distinct keys, plus n more that are guaranteed not to be among them.
+		 * @param n How many keys to make.
+		 * @param r The source of randomness.
+		 * @return The keys in [0, n), and the missing keys in [n, 2n).
+		 */
+		Integer[] keys(int n, Random r) {
+			Integer[] keys = new Integer[2 * n];
+			switch (this) {
+			case SEQUENTIAL:
+				for (int i = 0 ; i < keys.length ; i++)
+					keys[i] = i;
+				break;
+			case RANDOM:
+				// Pick from a range twice the size, then shuffle, so the hits and misses are both random
+				int[] picked = new int[keys.length];
+				for (int i = 0 ; i < picked.length ; i++)
+					picked[i] = i;
+				shuffle(picked, r);
+				int salt = r.nextInt();
+				for (int i = 0 ; i < keys.length ; i++)
+					keys[i] = Integer.rotateLeft(picked[i], 7) ^ salt;
+				break;
+			case CLUSTERED:
+				// Reversing the bits puts the changing part of the key at the top
+				for (int i = 0 ; i < keys.length ; i++)
+					keys[i] = Integer.reverse(i);
+				break;
+			}
+			return keys;
+		}
+	}
+
+	public static void main(String[] args) {
+		int[] sizes = Benchmark.sizes("bench.sizes", 1000, 10000, 100000, 1000000, 10000000);
+		for (int n : sizes) {
+			for (Distribution d : Distribution.values()) {
+				Benchmark.header(d + " keys, n = " + n);
+				Integer[] all = d.keys(n, new Random(n));
+				Integer[] hits = new Integer[n];
+				Integer[] misses = new Integer[n];
+				System.arraycopy(all, 0, hits, 0, n);
+				System.arraycopy(all, n, misses, 0, n);
+				// Look keys up in a different order than they were put in
+				Integer[] lookups = hits.clone();
+				shuffle(lookups, new Random(~n));
+
+				run("ArrayHashMap", n, hits, lookups, misses, ArrayHashMap::new);
+				run("HashMap", n, hits, lookups, misses, HashMap::new);
+			}
+		}
+	}
+
+
+	/**
+	 * This method measures every operation for one kind of map.
+	 * @param name The name of the map.
+	 * @param n How many keys are stored.
+	 * @param hits The keys to store, in insertion order.
+	 * @param lookups The same keys in a shuffled order.
+	 * @param misses Keys that aren't stored.
+	 * @param factory Makes an empty map.
+	 */
+	private static void run(String name, final int n, final Integer[] hits, final Integer[] lookups,
+			final Integer[] misses, final Supplier<Map<Integer, Integer>> factory) {
+		final Map<Integer, Integer> map = factory.get();
+		for (Integer key : hits)
+			map.put(key, key);
+
+		Benchmark.measure(name + " get (hit)", n, () -> {
+			long sum = 0;
+			for (Integer key : lookups)
+				sum += map.get(key);
+			return sum;
+		});
+
+		Benchmark.measure(name + " get (miss)", n, () -> {
+			long sum = 0;
+			for (Integer key : misses)
+				sum += (map.get(key) == null) ? 1 : 0;
+			return sum;
+		});
+
+		Benchmark.measure(name + " put (overwrite)", n, () -> {
+			long sum = 0;
+			for (Integer key : lookups)
+				sum += map.put(key, key);
+			return sum;
+		});
+
+		Benchmark.measure(name + " remove + put", n, () -> {
+			long sum = 0;
+			for (Integer key : lookups) {
+				sum += map.remove(key);
+				map.put(key, key);
+			}
+			return sum;
+		});
+
+		Benchmark.measure(name + " iterate", n, () -> {
+			long sum = 0;
+			for (Map.Entry<Integer, Integer> e : map.entrySet())
+				sum += e.getValue();
+			return sum;
+		});
+
+		// Building from empty pays for every resize along the way
+		Benchmark.measure(name + " put (grow from empty)", n, () -> {
+			Map<Integer, Integer> fresh = factory.get();
+			for (Integer key : hits)
+				fresh.put(key, key);
+			return fresh.size();
+		});
+	}
+
+
+	/**
+	 * This method shuffles an array in place.
+	 * @param a The array.
+	 * @param r The source of randomness.
+	 */
+	private static void shuffle(int[] a, Random r) {
+		for (int i = a.length - 1 ; i > 0 ; i--) {
+			int j = r.nextInt(i + 1);
+			int tmp = a[i];
+			a[i] = a[j];
+			a[j] = tmp;
+		}
+	}
+
+
+	/**
+	 * This method shuffles an array in place.
+	 * @param a The array.
+	 * @param r The source of randomness.
+	 */
+	private static <T> void shuffle(T[] a, Random r) {
+		for (int i = a.length - 1 ; i > 0 ; i--) {
+			int j = r.nextInt(i + 1);
+			T tmp = a[i];
+			a[i] = a[j];
+			a[j] = tmp;
+		}
+	}
+}
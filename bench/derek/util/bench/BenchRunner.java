@@ -0,0 +1,43 @@
+package derek.util.bench;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+/**
+ * This class runs benchmarks, the same way TestRunner runs tests.
+ * "all" runs every class in the output directory whose name ends in Benchmarks,
+ * and anything else is taken as a list of benchmark class names to run.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class BenchRunner {
+
+	public static void main(String[] args) throws Exception {
+		ArrayList<String> names = new ArrayList<String>();
+		if ((args.length == 0) || args[0].equals("all"))
+			findBenchmarks(names, new File("bin"), "");
+		else {
+			for (String arg : args)
+				names.add(arg);
+		}
+
+		for (String name : names) {
+			System.out.println("Running Benchmark: " + name);
+			Method main = ClassLoader.getSystemClassLoader().loadClass(name).getMethod("main", String[].class);
+			main.invoke(null, (Object) new String[0]);
+		}
+	}
+
+	private static void findBenchmarks(ArrayList<String> names, File current, String pkg) {
+		File[] files = current.listFiles();
+		if (files == null)
+			return;
+		for (File f : files) {
+			if (f.isDirectory())
+				findBenchmarks(names, f, pkg + f.getName() + ".");
+			else if (f.getName().endsWith("Benchmarks.class"))
+				names.add(pkg + f.getName().substring(0, f.getName().length() - ".class".length()));
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package derek.util.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * This class is a tiny benchmark harness, so the library doesn't need anything beyond JUnit to build.
+ * Each measurement warms a body up until the JIT has had a go at it, then times it for a fixed
+ * wall-clock budget. Alongside the time per operation it reports the bytes allocated per operation
+ * and how many collections ran, which is what a GC profiler would show.
+ *
+ * The budgets can be changed with the system properties bench.warmupMillis and bench.measureMillis.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public final class Benchmark {
+
+	/** How long to warm each body up for, in milliseconds. */
+	private static final long WARMUP_MILLIS = Long.getLong("bench.warmupMillis", 300);
+	/** How long to time each body for, in milliseconds. */
+	private static final long MEASURE_MILLIS = Long.getLong("bench.measureMillis", 700);
+
+	/** Somewhere to put the results of every body, so the JIT can't throw the work away. */
+	private static volatile long sink;
+
+	/** The thread bean, which can count the bytes a thread has allocated on HotSpot JVMs. */
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Nothing to construct here.
+	 */
+	private Benchmark() {}
+
+
+	/**
+	 * This method prints the header for a table of results.
+	 * @param title What the table is measuring.
+	 */
+	public static void header(String title) {
+		System.out.println();
+		System.out.println("== " + title + " ==");
+		System.out.println(String.format("%-48s %14s %12s %10s %8s", "benchmark", "ns/op", "Mops/s", "B/op", "GCs"));
+	}
+
+
+	/**
+	 * This method measures a body and prints one row of results.
+	 * @param label The name of the row.
+	 * @param opsPerCall How many operations one call of the body does.
+	 * @param body The work to time. It should return something computed from its work.
+	 */
+	public static void measure(String label, long opsPerCall, LongSupplier body) {
+		// Warm up
+		long end = System.nanoTime() + (WARMUP_MILLIS * 1000000L);
+		long acc = 0;
+		while (System.nanoTime() < end)
+			acc += body.getAsLong();
+
+		// Measure
+		long thread = Thread.currentThread().getId();
+		long gcBefore = gcCount();
+		long bytesBefore = THREADS.getThreadAllocatedBytes(thread);
+		long calls = 0;
+		long start = System.nanoTime();
+		long now;
+		end = start + (MEASURE_MILLIS * 1000000L);
+		do {
+			acc += body.getAsLong();
+			calls++;
+			now = System.nanoTime();
+		} while (now < end);
+		long bytes = THREADS.getThreadAllocatedBytes(thread) - bytesBefore;
+		long gcs = gcCount() - gcBefore;
+		consume(acc);
+
+		double ops = (double) calls * opsPerCall;
+		double nsPerOp = (now - start) / ops;
+		System.out.println(String.format("%-48s %14.2f %12.2f %10.1f %8d", label, nsPerOp, 1000.0 / nsPerOp,
+				bytes / ops, gcs));
+	}
+
+
+	/**
+	 * This method keeps a result from being thrown away by the JIT, for benchmarks that time
+	 * their own work instead of going through measure.
+	 * @param result Something computed from the work.
+	 */
+	public static void consume(long result) {
+		sink += result;
+	}
+
+
+	/**
+	 * This method adds up how many collections every collector has run.
+	 * @return The total number of collections so far.
+	 */
+	private static long gcCount() {
+		long count = 0;
+		List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+		for (GarbageCollectorMXBean bean : beans)
+			count += Math.max(0, bean.getCollectionCount());
+		return count;
+	}
+
+
+	/**
+	 * This method reads a comma separated list of sizes from a system property.
+	 * @param property The property to read.
+	 * @param defaults The sizes to use if the property isn't set.
+	 * @return The sizes.
+	 */
+	public static int[] sizes(String property, int... defaults) {
+		String value = System.getProperty(property);
+		if (value == null)
+			return defaults;
+		String[] parts = value.split(",");
+		int[] ret = new int[parts.length];
+		for (int i = 0 ; i < parts.length ; i++)
+			ret[i] = (int) Double.parseDouble(parts[i].trim());
+		return ret;
+	}
+
+
+	/**
+	 * This method prints the header for a table of memory use.
+	 * @param title What the table is measuring.
+	 */
+	public static void memoryHeader(String title) {
+		System.out.println();
+		System.out.println("== " + title + " ==");
+		System.out.println(String.format("%-48s %14s", "structure", "B/element"));
+	}
+
+
+	/**
+	 * This method prints one row of a table of memory use.
+	 * @param label The name of the row.
+	 * @param bytes The bytes the structure uses.
+	 * @param elements The number of elements in the structure.
+	 */
+	public static void memory(String label, long bytes, int elements) {
+		System.out.println(String.format("%-48s %14.1f", label, bytes / (double) elements));
+	}
+
+
+	/**
+	 * This method estimates how many bytes of heap are in use. It keeps asking for collections
+	 * until the number stops going down, so garbage from earlier work isn't counted.
+	 * @return The bytes in use.
+	 */
+	public static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0 ; i < 10 ; i++) {
+			System.gc();
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			long now = rt.totalMemory() - rt.freeMemory();
+			if (now >= used)
+				break;
+			used = now;
+		}
+		return used;
+	}
+}
@@ -0,0 +1,149 @@
+package derek.util.bench;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import derek.util.ConcurrentAVLTree;
+
+/**
+ * This class compares ConcurrentAVLTree against java.util.concurrent.ConcurrentSkipListMap
+ * with several threads doing lookups and a share of writes, and reports total throughput.
+ * Lookups that scale should see throughput grow with the thread count.
+ * The sizes can be changed with the bench.sizes system property, and the thread counts with bench.threads.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ConcurrentAVLTreeBenchmarks {
+
+	/** How long to run each combination for, in milliseconds. */
+	private static final long MEASURE_MILLIS = Long.getLong("bench.measureMillis", 700);
+
+	/** A key/value operation against one of the structures. */
+	private interface Target {
+		boolean contains(int key);
+		void insert(int key);
+		void remove(int key);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int[] sizes = Benchmark.sizes("bench.sizes", 100000, 1000000);
+		int cores = Runtime.getRuntime().availableProcessors();
+		int[] threads = Benchmark.sizes("bench.threads", 1, 2, 4, 8, cores);
+		int[] writePercents = { 0, 1, 10 };
+
+		for (int n : sizes) {
+			final ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<Integer>();
+			final ConcurrentSkipListMap<Integer, Boolean> skipList = new ConcurrentSkipListMap<Integer, Boolean>();
+			Random r = new Random(n);
+			for (int i = 0 ; i < n ; i++) {
+				int key = r.nextInt(2 * n);
+				tree.insert(key);
+				skipList.put(key, Boolean.TRUE);
+			}
+
+			Target avl = new Target() {
+				@Override
+				public boolean contains(int key) {
+					return tree.contains(key);
+				}
+
+				@Override
+				public void insert(int key) {
+					if (!tree.contains(key))
+						tree.insert(key);
+				}
+
+				@Override
+				public void remove(int key) {
+					tree.remove(key);
+				}
+			};
+			Target skip = new Target() {
+				@Override
+				public boolean contains(int key) {
+					return skipList.containsKey(key);
+				}
+
+				@Override
+				public void insert(int key) {
+					skipList.put(key, Boolean.TRUE);
+				}
+
+				@Override
+				public void remove(int key) {
+					skipList.remove(key);
+				}
+			};
+
+			for (int writes : writePercents) {
+				System.out.println();
+				System.out.println("== n = " + n + ", " + writes + "% writes ==");
+				System.out.println(String.format("%-48s %8s %14s", "structure", "threads", "Mops/s"));
+				for (int t : threads) {
+					run("ConcurrentAVLTree", avl, t, 2 * n, writes);
+					run("ConcurrentSkipListMap", skip, t, 2 * n, writes);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * This method runs threads against a structure for a fixed time and prints their total throughput.
+	 * @param name The name of the structure.
+	 * @param target The structure.
+	 * @param threads How many threads to run.
+	 * @param range Keys are picked from [0, range).
+	 * @param writePercent The percentage of operations that insert or remove.
+	 */
+	private static void run(String name, final Target target, int threads, final int range, final int writePercent)
+			throws InterruptedException {
+		final AtomicLong ops = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] end = new long[1];
+		Thread[] workers = new Thread[threads];
+		for (int i = 0 ; i < threads ; i++) {
+			final long seed = i;
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					Random r = new Random(seed);
+					long count = 0;
+					long found = 0;
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					while (System.nanoTime() < end[0]) {
+						// Check the clock every so often rather than every operation
+						for (int j = 0 ; j < 256 ; j++) {
+							int key = r.nextInt(range);
+							if (r.nextInt(100) < writePercent) {
+								if ((key & 1) == 0)
+									target.insert(key);
+								else
+									target.remove(key);
+							}
+							else if (target.contains(key))
+								found++;
+						}
+						count += 256;
+					}
+					ops.addAndGet(count);
+					// Use the lookups' results, so the JIT can't throw them away
+					Benchmark.consume(found);
+				}
+			};
+			workers[i].start();
+		}
+
+		end[0] = System.nanoTime() + (MEASURE_MILLIS * 1000000L);
+		start.countDown();
+		for (Thread t : workers)
+			t.join();
+		System.out.println(String.format("%-48s %8d %14.2f", name, threads, ops.get() / (MEASURE_MILLIS * 1000.0)));
+	}
+}
@@ -0,0 +1,88 @@
+package derek.util.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import derek.util.MaxHeap;
+
+/**
+ * This class measures MaxHeap poll throughput by heap size and arity, with java.util.PriorityQueue
+ * as a baseline, and the cost of loading a heap from a collection. For polls, each heap is drained
+ * into a second heap of the same kind, and then the two swap.
+ * Elements come out in descending order, so every add lands on a leaf straight away and the
+ * time is almost all poll. The sizes and arities can be changed with the bench.sizes and
+ * bench.arities system properties.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class MaxHeapBenchmarks {
+
+	/** The number of polls per measured call. */
+	private static final int BATCH = 1000;
+
+	public static void main(String[] args) {
+		int[] sizes = Benchmark.sizes("bench.sizes", 1000, 100000, 10000000);
+		int[] arities = Benchmark.sizes("bench.arities", 2, 4, 8);
+		for (int n : sizes) {
+			// Keys are boxed up front so the measurements don't include boxing
+			Random r = new Random(20);
+			final Integer[] keys = new Integer[n];
+			for (int i = 0 ; i < n ; i++)
+				keys[i] = r.nextInt();
+			final List<Integer> keyList = Arrays.asList(keys);
+
+			Benchmark.header("load, n = " + n);
+			Benchmark.measure("add one at a time", n, () -> {
+				MaxHeap<Integer> heap = new MaxHeap<Integer>();
+				for (Integer key : keys)
+					heap.add(key);
+				return heap.size();
+			});
+			Benchmark.measure("MaxHeap(Collection)", n, () -> new MaxHeap<Integer>(keyList).size());
+			Benchmark.measure("PriorityQueue(Collection)", n, () -> new PriorityQueue<Integer>(keyList).size());
+
+			Benchmark.header("poll, n = " + n);
+
+			for (int arity : arities) {
+				// The heap being drained is always first
+				final List<MaxHeap<Integer>> heaps = new ArrayList<MaxHeap<Integer>>(2);
+				heaps.add(new MaxHeap<Integer>(n + 1, arity));
+				heaps.add(new MaxHeap<Integer>(n + 1, arity));
+				for (Integer key : keys)
+					heaps.get(0).add(key);
+				Benchmark.measure(arity + "-ary MaxHeap", BATCH, () -> {
+					long sum = 0;
+					for (int i = 0 ; i < BATCH ; i++) {
+						if (heaps.get(0).size() == 0)
+							Collections.swap(heaps, 0, 1);
+						Integer top = heaps.get(0).poll();
+						heaps.get(1).add(top);
+						sum += top;
+					}
+					return sum;
+				});
+				heaps.clear();
+			}
+
+			final List<PriorityQueue<Integer>> queues = new ArrayList<PriorityQueue<Integer>>(2);
+			queues.add(new PriorityQueue<Integer>(n + 1, Collections.reverseOrder()));
+			queues.add(new PriorityQueue<Integer>(n + 1, Collections.reverseOrder()));
+			Collections.addAll(queues.get(0), keys);
+			Benchmark.measure("PriorityQueue", BATCH, () -> {
+				long sum = 0;
+				for (int i = 0 ; i < BATCH ; i++) {
+					if (queues.get(0).isEmpty())
+						Collections.swap(queues, 0, 1);
+					Integer top = queues.get(0).poll();
+					queues.get(1).add(top);
+					sum += top;
+				}
+				return sum;
+			});
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package derek.util.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import derek.util.MergeSort;
+
+/**
+ * This class measures MergeSort.parallelSort against the sequential MergeSort.sort, and against
+ * Arrays.sort and Arrays.parallelSort, on arrays of boxed keys. Every call sorts a fresh copy of
+ * the same random array, so the copy is part of every measurement.
+ * The sizes can be changed with the bench.sizes system property, and the parallelism with
+ * java.util.concurrent.ForkJoinPool.common.parallelism.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class MergeSortBenchmarks {
+
+	public static void main(String[] args) {
+		int[] sizes = Benchmark.sizes("bench.sizes", 1000000, 10000000);
+		for (int n : sizes) {
+			Benchmark.header("sort, n = " + n + ", parallelism = " + ForkJoinPool.getCommonPoolParallelism());
+			// Keys are boxed up front so the measurements don't include boxing
+			final Integer[] keys = new Integer[n];
+			Random r = new Random(25);
+			for (int i = 0 ; i < n ; i++)
+				keys[i] = r.nextInt();
+
+			Benchmark.measure("MergeSort.sort", n, () -> {
+				Integer[] copy = keys.clone();
+				MergeSort.sort(copy);
+				return copy[0];
+			});
+			Benchmark.measure("MergeSort.parallelSort", n, () -> {
+				Integer[] copy = keys.clone();
+				MergeSort.parallelSort(copy);
+				return copy[0];
+			});
+			Benchmark.measure("Arrays.sort", n, () -> {
+				Integer[] copy = keys.clone();
+				Arrays.sort(copy);
+				return copy[0];
+			});
+			Benchmark.measure("Arrays.parallelSort", n, () -> {
+				Integer[] copy = keys.clone();
+				Arrays.parallelSort(copy);
+				return copy[0];
+			});
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package derek.util.bench;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import derek.util.MaxHeap;
+import derek.util.MultiQueue;
+
+/**
+ * This class compares MultiQueue against java.util.concurrent.PriorityBlockingQueue and a MaxHeap
+ * behind one lock, with several threads each adding and polling in turn, and reports total throughput.
+ * A queue that scales should see throughput grow with the thread count.
+ * The starting sizes can be changed with the bench.sizes system property, and the thread counts with bench.threads.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class MultiQueueBenchmarks {
+
+	/** How long to run each combination for, in milliseconds. */
+	private static final long MEASURE_MILLIS = Long.getLong("bench.measureMillis", 700);
+
+	/** A priority queue to run against. */
+	private interface Target {
+		void add(Integer element);
+		Integer poll();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int[] sizes = Benchmark.sizes("bench.sizes", 1000, 1000000);
+		int cores = Runtime.getRuntime().availableProcessors();
+		int[] threads = Benchmark.sizes("bench.threads", 1, 2, 4, 8, cores);
+
+		// Elements are boxed up front so the measurements don't include boxing
+		final Integer[] keys = new Integer[1 << 16];
+		Random r = new Random(22);
+		for (int i = 0 ; i < keys.length ; i++)
+			keys[i] = r.nextInt();
+
+		for (int n : sizes) {
+			System.out.println();
+			System.out.println("== add + poll, n = " + n + " ==");
+			System.out.println(String.format("%-48s %8s %14s %14s", "structure", "threads", "Mops/s", "collisions/op"));
+			for (int t : threads) {
+				final MultiQueue<Integer> multi = new MultiQueue<Integer>();
+				final PriorityBlockingQueue<Integer> blocking = new PriorityBlockingQueue<Integer>();
+				final MaxHeap<Integer> heap = new MaxHeap<Integer>();
+				for (int i = 0 ; i < n ; i++) {
+					multi.add(keys[i & (keys.length - 1)]);
+					blocking.add(keys[i & (keys.length - 1)]);
+					heap.add(keys[i & (keys.length - 1)]);
+				}
+
+				long before = multi.collisionCount();
+				long ops = run(new Target() {
+					@Override
+					public void add(Integer element) {
+						multi.add(element);
+					}
+
+					@Override
+					public Integer poll() {
+						return multi.poll();
+					}
+				}, keys, t);
+				print("MultiQueue", t, ops, (multi.collisionCount() - before) / (double) ops);
+				print("PriorityBlockingQueue", t, run(new Target() {
+					@Override
+					public void add(Integer element) {
+						blocking.add(element);
+					}
+
+					@Override
+					public Integer poll() {
+						return blocking.poll();
+					}
+				}, keys, t), Double.NaN);
+				print("synchronized MaxHeap", t, run(new Target() {
+					@Override
+					public synchronized void add(Integer element) {
+						heap.add(element);
+					}
+
+					@Override
+					public synchronized Integer poll() {
+						return heap.poll();
+					}
+				}, keys, t), Double.NaN);
+			}
+		}
+	}
+
+
+	/**
+	 * This method prints one row of results.
+	 * @param name The name of the structure.
+	 * @param threads How many threads ran.
+	 * @param ops The total number of operations.
+	 * @param collisionsPerOp Lock collisions per operation, or NaN if the structure doesn't count them.
+	 */
+	private static void print(String name, int threads, long ops, double collisionsPerOp) {
+		System.out.println(String.format("%-48s %8d %14.2f %14s", name, threads, ops / (MEASURE_MILLIS * 1000.0),
+				Double.isNaN(collisionsPerOp) ? "-" : String.format("%.4f", collisionsPerOp)));
+	}
+
+	/**
+	 * This method runs threads against a queue for a fixed time. Each thread adds an element and
+	 * then polls one, so the queue stays the same size.
+	 * @param target The queue.
+	 * @param keys The elements to add.
+	 * @param threads How many threads to run.
+	 * @return The total number of adds and polls.
+	 */
+	private static long run(final Target target, final Integer[] keys, int threads) throws InterruptedException {
+		final AtomicLong ops = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] end = new long[1];
+		Thread[] workers = new Thread[threads];
+		for (int i = 0 ; i < threads ; i++) {
+			final int offset = i * 7919;
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					long count = 0;
+					long sum = 0;
+					int next = offset;
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					while (System.nanoTime() < end[0]) {
+						// Check the clock every so often rather than every operation
+						for (int j = 0 ; j < 256 ; j++) {
+							target.add(keys[next++ & (keys.length - 1)]);
+							sum += target.poll();
+						}
+						count += 512;
+					}
+					ops.addAndGet(count);
+					// Use the polled elements, so the JIT can't throw them away
+					Benchmark.consume(sum);
+				}
+			};
+			workers[i].start();
+		}
+
+		end[0] = System.nanoTime() + (MEASURE_MILLIS * 1000000L);
+		start.countDown();
+		for (Thread t : workers)
+			t.join();
+		return ops.get();
+	}
+}
@@ -0,0 +1,54 @@
+package derek.util.bench;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import derek.util.TopK;
+
+/**
+ * This class measures picking the 100 greatest elements of a stream with TopK, against sorting
+ * everything and against a PriorityQueue trimmed back to 100 after every add.
+ * The sizes can be changed with the bench.sizes system property, and k with bench.k.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class TopKBenchmarks {
+
+	public static void main(String[] args) {
+		int[] sizes = Benchmark.sizes("bench.sizes", 1000000, 10000000);
+		final int k = Integer.getInteger("bench.k", 100);
+		for (int n : sizes) {
+			Benchmark.header("top " + k + " of n = " + n);
+			// Elements are boxed up front so the measurements don't include boxing
+			final Integer[] values = new Integer[n];
+			Random r = new Random(23);
+			for (int i = 0 ; i < n ; i++)
+				values[i] = r.nextInt();
+
+			Benchmark.measure("TopK.offer", n, () -> {
+				TopK<Integer> top = new TopK<Integer>(k);
+				for (Integer v : values)
+					top.offer(v);
+				return top.peek();
+			});
+			Benchmark.measure("stream().collect(TopK)", n, () -> Arrays.stream(values).collect(TopK.collector(k)).size());
+			Benchmark.measure("parallelStream().collect(TopK)", n,
+					() -> Arrays.stream(values).parallel().collect(TopK.collector(k)).size());
+			Benchmark.measure("bounded PriorityQueue", n, () -> {
+				PriorityQueue<Integer> queue = new PriorityQueue<Integer>(k + 1);
+				for (Integer v : values) {
+					queue.add(v);
+					if (queue.size() > k)
+						queue.poll();
+				}
+				return queue.peek();
+			});
+			Benchmark.measure("sort everything", n, () -> {
+				Integer[] copy = values.clone();
+				Arrays.sort(copy);
+				return copy[n - k];
+			});
+		}
+	}
+}
@@ -1,15 +1,29 @@
 package derek.util;
 
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * This class implements a AVL style balanced binary search tree.
- * It currently acts as a generic datastructure, and primarily implements the Map interface.
+ * It currently acts as a generic datastructure that stores bare elements.
+ * For a sorted map built the same way, see AVLTreeMap.
+ *
+ * Every node keeps the size of its subtree, so finding the k-th element or the rank of an element
+ * takes O(log n) time. If the tree is given a Monoid, every node also keeps its subtree's elements
+ * combined together, so any range of elements can be combined in O(log n) time as well.
+ *
+ * Trees can be built from sorted input in linear time, and combined with union, intersection
+ * and difference. Those are built on splitting and joining subtrees, and large ones run in
+ * parallel on the common fork/join pool.
  *
  * @author Derek Batts <dsbatts@ncsu.edu>
  */
-public class AVLTree<T extends Comparable<T>> {
+public class AVLTree<T extends Comparable<T>> implements Iterable<T> {
 
 	/** The root node of the tree. */
 	private Node<T> root = null;
@@ -17,6 +31,20 @@ public class AVLTree<T extends Comparable<T>> {
 	/** The number of elements in this tree. */
 	private int size = 0;
 
+	/** The number of structural changes made to this tree, so iterators can fail fast. */
+	private int modCount = 0;
+
+	/** The monoid subtrees are summarized with, or null if they aren't. */
+	private final Monoid<T> monoid;
+
+	/** Subtrees with at least this many nodes between both inputs are worked on in parallel. */
+	private static final int PARALLEL_THRESHOLD = 8192;
+
+	/** The set operations that can be run with split and join. */
+	private enum SetOperation {
+		UNION, INTERSECTION, DIFFERENCE
+	}
+
 
 	/**
 	 * This is an inner class to wrap Node functionality for this tree.
@@ -33,6 +61,12 @@ public class AVLTree<T extends Comparable<T>> {
 		private Node<E> leftChild;
 		/** The right child node. */
 		private Node<E> rightChild;
+		/** The height of the subtree under this node, where a leaf has height 0. */
+		private int height;
+		/** The number of nodes in the subtree under this node. */
+		private int count = 1;
+		/** The data in the subtree under this node combined in order, if the tree has a monoid. */
+		private E aggregate;
 
 		/**
 		 * This will construct a node with a given parent node.
@@ -52,6 +86,7 @@ public class AVLTree<T extends Comparable<T>> {
 		 */
 		private Node(E data, Node<E> parent, Node<E> leftChild, Node<E> rightChild) {
 			this.data = data;
+			this.aggregate = data;
 			this.parent = parent;
 			this.leftChild = leftChild;
 			this.rightChild = rightChild;
@@ -66,18 +101,265 @@ public class AVLTree<T extends Comparable<T>> {
 		}
 	}
 	
+	/**
+	 * This will construct an empty tree that doesn't summarize its subtrees.
+	 */
+	public AVLTree() {
+		this(null);
+	}
+
+	/**
+	 * This will construct an empty tree that summarizes its subtrees with a monoid,
+	 * so ranges of elements can be combined with aggregate().
+	 * @param monoid The monoid to combine elements with, or null for none.
+	 */
+	public AVLTree(Monoid<T> monoid) {
+		this.monoid = monoid;
+	}
+
 	public int size() {
 		return size;
 	}
 
+	/**
+	 * This method finds the k-th smallest element, counting from 0.
+	 * @param k The position of the element in sorted order.
+	 * @return The element.
+	 * @throws IllegalArgumentException If k is negative, or not less than the size of the tree.
+	 */
+	public T select(int k) {
+		if ((k < 0) || (k >= size))
+			throw new IllegalArgumentException("Index " + k + " is out of bounds for size " + size);
+		Node<T> n = root;
+		while (true) {
+			int leftCount = count(n.leftChild);
+			if (k < leftCount)
+				n = n.leftChild;
+			else if (k == leftCount)
+				return n.data;
+			else {
+				k -= leftCount + 1;
+				n = n.rightChild;
+			}
+		}
+	}
+
+	/**
+	 * This method counts the elements strictly less than a given element.
+	 * The element doesn't need to be in the tree.
+	 * @param element The element to rank.
+	 * @return The number of elements less than it.
+	 */
+	public int rank(T element) {
+		int rank = 0;
+		Node<T> n = root;
+		while (n != null) {
+			if (element.compareTo(n.data) <= 0)
+				n = n.leftChild;
+			else {
+				rank += count(n.leftChild) + 1;
+				n = n.rightChild;
+			}
+		}
+		return rank;
+	}
+
+	/**
+	 * This method counts the elements between two elements.
+	 * @param lo The low end of the range, which is included.
+	 * @param hi The high end of the range, which is included.
+	 * @return The number of elements in [lo, hi].
+	 */
+	public int count(T lo, T hi) {
+		if (lo.compareTo(hi) > 0)
+			return 0;
+		// Count everything at or below hi, then take away everything below lo
+		int atOrBelow = 0;
+		Node<T> n = root;
+		while (n != null) {
+			if (hi.compareTo(n.data) < 0)
+				n = n.leftChild;
+			else {
+				atOrBelow += count(n.leftChild) + 1;
+				n = n.rightChild;
+			}
+		}
+		return atOrBelow - rank(lo);
+	}
+
+	/**
+	 * This method combines every element between two elements, in sorted order, with the tree's monoid.
+	 * @param lo The low end of the range, which is included.
+	 * @param hi The high end of the range, which is included.
+	 * @return The combined elements in [lo, hi], or the monoid's identity if there are none.
+	 * @throws IllegalStateException If the tree wasn't given a monoid.
+	 */
+	public T aggregate(T lo, T hi) {
+		if (monoid == null)
+			throw new IllegalStateException("This tree was not given a monoid");
+
+		// Find the highest node inside the range, where the paths to lo and hi split
+		Node<T> split = root;
+		while (split != null) {
+			if (split.data.compareTo(lo) < 0)
+				split = split.rightChild;
+			else if (split.data.compareTo(hi) > 0)
+				split = split.leftChild;
+			else
+				break;
+		}
+		if (split == null)
+			return monoid.identity();
+
+		// Down the left side, every node at or above lo brings its right subtree with it
+		T left = monoid.identity();
+		for (Node<T> n = split.leftChild ; n != null ; ) {
+			if (n.data.compareTo(lo) >= 0) {
+				left = monoid.combine(monoid.combine(n.data, aggregate(n.rightChild)), left);
+				n = n.leftChild;
+			}
+			else
+				n = n.rightChild;
+		}
+
+		// Down the right side, every node at or below hi brings its left subtree with it
+		T right = monoid.identity();
+		for (Node<T> n = split.rightChild ; n != null ; ) {
+			if (n.data.compareTo(hi) <= 0) {
+				right = monoid.combine(right, monoid.combine(aggregate(n.leftChild), n.data));
+				n = n.rightChild;
+			}
+			else
+				n = n.leftChild;
+		}
+
+		return monoid.combine(monoid.combine(left, split.data), right);
+	}
+
+	/**
+	 * This method builds a perfectly balanced tree from sorted elements in linear time,
+	 * without any rotations.
+	 * @param sorted The elements, in ascending order.
+	 * @return The new tree.
+	 * @throws IllegalArgumentException If the elements aren't sorted.
+	 */
+	public static <T extends Comparable<T>> AVLTree<T> fromSorted(List<? extends T> sorted) {
+		return fromSorted(sorted, null);
+	}
+
+	/**
+	 * This method builds a perfectly balanced tree from sorted elements in linear time,
+	 * summarizing its subtrees with a monoid.
+	 * @param sorted The elements, in ascending order.
+	 * @param monoid The monoid to combine elements with, or null for none.
+	 * @return The new tree.
+	 * @throws IllegalArgumentException If the elements aren't sorted.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Comparable<T>> AVLTree<T> fromSorted(List<? extends T> sorted, Monoid<T> monoid) {
+		// Copy out first, so a linked list isn't walked from the front for every element
+		return fromSorted((T[]) sorted.toArray(new Comparable<?>[sorted.size()]), monoid);
+	}
+
+	/**
+	 * This method builds a perfectly balanced tree from sorted elements in linear time,
+	 * without any rotations.
+	 * @param sorted The elements, in ascending order.
+	 * @return The new tree.
+	 * @throws IllegalArgumentException If the elements aren't sorted.
+	 */
+	public static <T extends Comparable<T>> AVLTree<T> fromSorted(T[] sorted) {
+		return fromSorted(sorted, null);
+	}
+
+	/**
+	 * This method builds a perfectly balanced tree from sorted elements in linear time,
+	 * summarizing its subtrees with a monoid.
+	 * @param sorted The elements, in ascending order.
+	 * @param monoid The monoid to combine elements with, or null for none.
+	 * @return The new tree.
+	 * @throws IllegalArgumentException If the elements aren't sorted.
+	 */
+	public static <T extends Comparable<T>> AVLTree<T> fromSorted(T[] sorted, Monoid<T> monoid) {
+		for (int i = 1 ; i < sorted.length ; i++) {
+			if (sorted[i - 1].compareTo(sorted[i]) > 0)
+				throw new IllegalArgumentException("Elements are not sorted at index " + i);
+		}
+		AVLTree<T> tree = new AVLTree<T>(monoid);
+		tree.root = tree.build(sorted, 0, sorted.length - 1);
+		if (tree.root != null)
+			tree.root.parent = null;
+		tree.size = sorted.length;
+		return tree;
+	}
+
+	/**
+	 * This method makes a new tree holding every element in either this tree or another one.
+	 * Where both trees hold equal elements, the one from this tree is kept. Neither tree is changed.
+	 * @param other The other tree.
+	 * @return The new tree, which uses this tree's monoid.
+	 */
+	public AVLTree<T> union(AVLTree<T> other) {
+		return combine(SetOperation.UNION, other);
+	}
+
+	/**
+	 * This method makes a new tree holding the elements of this tree that are also in another one.
+	 * Neither tree is changed.
+	 * @param other The other tree.
+	 * @return The new tree, which uses this tree's monoid.
+	 */
+	public AVLTree<T> intersection(AVLTree<T> other) {
+		return combine(SetOperation.INTERSECTION, other);
+	}
+
+	/**
+	 * This method makes a new tree holding the elements of this tree that aren't in another one.
+	 * Neither tree is changed.
+	 * @param other The other tree.
+	 * @return The new tree, which uses this tree's monoid.
+	 */
+	public AVLTree<T> difference(AVLTree<T> other) {
+		return combine(SetOperation.DIFFERENCE, other);
+	}
+
+	/**
+	 * This method returns the height of the tree.
+	 * @return The height of the root, where a single node has height 0 and an empty tree has height -1.
+	 */
+	public int height() {
+		return height(root);
+	}
+
 	public void insert(T element) {
 		if (root == null)
 			root  = new Node<T>(element, null);
 		else {
-			Node<T> n = recursiveInsert(element, root);
-			maintain(n);
+			// Walk down to the empty spot the element belongs in
+			Node<T> parent = root;
+			Node<T> n;
+			while (true) {
+				if (element.compareTo(parent.data) <= 0) {
+					// Go left
+					if (parent.leftChild == null) {
+						n = parent.leftChild = new Node<T>(element, parent);
+						break;
+					}
+					parent = parent.leftChild;
+				}
+				else {
+					// Go right
+					if (parent.rightChild == null) {
+						n = parent.rightChild = new Node<T>(element, parent);
+						break;
+					}
+					parent = parent.rightChild;
+				}
+			}
+			rebalance(n.parent);
 		}
 		size++;
+		modCount++;
 	}
 
 	public T find(T element) {
@@ -91,8 +373,10 @@ public class AVLTree<T extends Comparable<T>> {
 
 	public T remove(T element) {
 		T ret = remove(find(element, root));
-		if (ret != null)
+		if (ret != null) {
 			size--;
+			modCount++;
+		}
 		return ret;
 	}
 
@@ -100,200 +384,232 @@ public class AVLTree<T extends Comparable<T>> {
 		// Return null if nothing found
 		if (n == null)
 			return null;
-		// Check if the node has no children
-		else if ((n.leftChild == null) && (n.rightChild == null)) {
-			if (n.parent ==  null)
-				root = null;
-			else if (n.parent.leftChild == n)
-				n.parent.leftChild = null;
-			else
-				n.parent.rightChild = null;
-			return n.data;
-		}
-		// Check if this node has only a left child
-		else if ((n.leftChild == null) && (n.rightChild != null)) {
-			Node<T> parent = n.parent;
-			// If we are root, set right child to root
-			if (parent == null)
-				root = n.rightChild;
-			else if (n.parent.leftChild == n)
-				n.parent.leftChild = n.rightChild;
-			else
-				n.parent.rightChild = n.rightChild;
-			n.rightChild.parent = parent;
-			maintain(n.rightChild);
-			return n.data;
-		}
-		// Check if this node has only a right child
-		else if ((n.leftChild == null) && (n.rightChild != null)) {
-			Node<T> parent = n.parent;
-			// If we are root, set right child to root
-			if (parent == null)
-				root = n.leftChild;
-			else if (n.parent.leftChild == n)
-				n.parent.leftChild = n.leftChild;
-			else
-				n.parent.rightChild = n.leftChild;
-			n.leftChild.parent = parent;
-			maintain(n.leftChild);
-			return n.data;
-		}
-		// Otherwise this node has two children
-		else {
-			Node<T> min = null;
-			for (Node<T> minNode = n.rightChild ; minNode != null ; minNode = minNode.leftChild) {
-				if (minNode.leftChild != null)
-					min = minNode.leftChild;
-			}
-			T ret = n.data;
+		T ret = n.data;
+
+		// If this node has two children, take its successor's data and unlink the successor instead
+		if ((n.leftChild != null) && (n.rightChild != null)) {
+			Node<T> min = n.rightChild;
+			while (min.leftChild != null)
+				min = min.leftChild;
 			n.data = min.data;
-			remove(min);
-			return ret;
+			n = min;
 		}
+
+		// Now the node has at most one child, which takes its place
+		Node<T> child = (n.leftChild != null) ? n.leftChild : n.rightChild;
+		Node<T> parent = n.parent;
+		if (parent == null)
+			root = child;
+		else if (parent.leftChild == n)
+			parent.leftChild = child;
+		else
+			parent.rightChild = child;
+		if (child != null)
+			child.parent = parent;
+
+		rebalance(parent);
+		return ret;
 	}
 
 	public List<T> inOrder() {
 		List<T> l = new LinkedList<T>();
-		inOrderRecursive(l, root);
+		for (Node<T> n = first(root) ; n != null ; n = successor(n))
+			l.add(n.data);
 		return l;
 	}
 
 	public List<T> preOrder() {
 		List<T> l = new LinkedList<T>();
-		preOrderRecursive(l, root);
+		for (Node<T> n = root ; n != null ; n = preOrderNext(n))
+			l.add(n.data);
 		return l;
 	}
 
 	public List<T> postOrder() {
 		List<T> l = new LinkedList<T>();
-		postOrderRecursive(l, root);
+		for (Node<T> n = postOrderFirst(root) ; n != null ; n = postOrderNext(n))
+			l.add(n.data);
 		return l;
 	}
 
-	public String toString() {
-		String message = "node value: left child Value, right child value\n\n";
-		return message + recursiveStringBuilder(root);
+	/**
+	 * This method returns an iterator over the elements in sorted order.
+	 * The iterator supports remove, and fails fast if the tree is changed any other way.
+	 * @return An in-order iterator.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new InOrderIterator();
 	}
 
-	private String recursiveStringBuilder(Node<T> n) {
-		if (n == null)
-			return "";
-		String res = n.data + ": " + n.leftChild + ", " + n.rightChild + "\n";
-		return res + recursiveStringBuilder(n.leftChild) + recursiveStringBuilder(n.rightChild);
+	public String toString() {
+		StringBuilder sb = new StringBuilder("node value: left child Value, right child value\n\n");
+		for (Node<T> n = root ; n != null ; n = preOrderNext(n))
+			sb.append(n.data).append(": ").append(n.leftChild).append(", ").append(n.rightChild).append('\n');
+		return sb.toString();
 	}
 
 	private Node<T> find(T element, Node<T> n) {
-		if (n == null)
-			return null;
-		else if (n.data.equals(element))
-			return n;
-		else if (element.compareTo(n.data) <= 0)
-			return find(element, n.leftChild);
-		else
-			return find(element, n.rightChild);
+		while (n != null) {
+			int cmp = element.compareTo(n.data);
+			if (cmp == 0)
+				return n;
+			n = (cmp < 0) ? n.leftChild : n.rightChild;
+		}
+		return null;
 	}
 
-	private void inOrderRecursive(List<T> currentList, Node<T> n) {
-		// Recursively visit left child first
-		if (n.leftChild != null)
-			inOrderRecursive(currentList, n.leftChild);
-		currentList.add(n.data);
-		if (n.rightChild != null)
-			inOrderRecursive(currentList, n.rightChild);
+	/**
+	 * This method finds the smallest node in a subtree.
+	 * @param n The root of the subtree.
+	 * @return The leftmost node, or null for an empty subtree.
+	 */
+	private Node<T> first(Node<T> n) {
+		if (n != null) {
+			while (n.leftChild != null)
+				n = n.leftChild;
+		}
+		return n;
 	}
 
-	private void preOrderRecursive(List<T> currentList, Node<T> n) {
-		currentList.add(n.data);
-		if (n.leftChild != null)
-			inOrderRecursive(currentList, n.leftChild);
+	/**
+	 * This method finds the next node in order by following parent pointers, so no stack is needed.
+	 * @param n The current node.
+	 * @return The next node in order, or null if this was the last one.
+	 */
+	private Node<T> successor(Node<T> n) {
 		if (n.rightChild != null)
-			inOrderRecursive(currentList, n.rightChild);
+			return first(n.rightChild);
+		// Climb until we come up out of a left subtree
+		Node<T> parent = n.parent;
+		while ((parent != null) && (parent.rightChild == n)) {
+			n = parent;
+			parent = parent.parent;
+		}
+		return parent;
 	}
 
-	private void postOrderRecursive(List<T> currentList, Node<T> n) {
+	/**
+	 * This method finds the next node in pre-order by following parent pointers.
+	 * @param n The current node.
+	 * @return The next node in pre-order, or null if this was the last one.
+	 */
+	private Node<T> preOrderNext(Node<T> n) {
 		if (n.leftChild != null)
-			inOrderRecursive(currentList, n.leftChild);
+			return n.leftChild;
 		if (n.rightChild != null)
-			inOrderRecursive(currentList, n.rightChild);
-		currentList.add(n.data);
+			return n.rightChild;
+		// Climb until there is a right subtree we haven't visited yet
+		Node<T> parent = n.parent;
+		while ((parent != null) && ((parent.rightChild == n) || (parent.rightChild == null))) {
+			n = parent;
+			parent = parent.parent;
+		}
+		return (parent == null) ? null : parent.rightChild;
 	}
 
-	private Node<T> recursiveInsert(T element, Node<T> parent) {
-		if (element.compareTo(parent.data) <= 0) {
-			// Go left
-			if (parent.leftChild != null)
-				return recursiveInsert(element, parent.leftChild);
-			else {
-				parent.leftChild = new Node<T>(element, parent);
-				return parent.leftChild;
-			}
-		}
-		else {
-			// Go Right
-			if (parent.rightChild != null)
-				return recursiveInsert(element, parent.rightChild);
-			else {
-				parent.rightChild = new Node<T>(element, parent);
-				return parent.rightChild;
-			}
+	/**
+	 * This method finds the first node in post-order, which is the deepest node down the left side.
+	 * @param n The root of the subtree.
+	 * @return The first node in post-order, or null for an empty subtree.
+	 */
+	private Node<T> postOrderFirst(Node<T> n) {
+		if (n == null)
+			return null;
+		while (true) {
+			if (n.leftChild != null)
+				n = n.leftChild;
+			else if (n.rightChild != null)
+				n = n.rightChild;
+			else
+				return n;
 		}
 	}
 
-	private void maintain(Node<T> newNode) {
-		if (newNode.parent.leftChild == newNode) {
-			int rightHeight = checkHeight(newNode.parent.rightChild);
-			maintain(newNode.parent, 0, rightHeight);
-		}
-		else if (newNode.parent.rightChild == newNode) {
-			int leftHeight = checkHeight(newNode.parent.leftChild);
-			maintain(newNode.parent, leftHeight, 0);
-		}
+	/**
+	 * This method finds the next node in post-order by following parent pointers.
+	 * @param n The current node.
+	 * @return The next node in post-order, or null if this was the last one.
+	 */
+	private Node<T> postOrderNext(Node<T> n) {
+		Node<T> parent = n.parent;
+		// Coming up out of a left subtree means the right subtree comes next
+		if ((parent != null) && (parent.leftChild == n) && (parent.rightChild != null))
+			return postOrderFirst(parent.rightChild);
+		return parent;
 	}
 
-	private void maintain(Node<T> n, int leftHeight, int rightHeight) {
-		// Walk up parent chain
-		// Calculate height for other subtree
-		if (Math.abs(leftHeight - rightHeight) <= 1) {
-			if (n.parent == null)
-				return;
-			if (n.parent.leftChild == n) {
-				int rightH = checkHeight(n.parent.rightChild);
-				maintain(n.parent, leftHeight + 1, rightH);
+	/**
+	 * This method walks from a node up to the root, fixing cached heights, sizes and aggregates,
+	 * and rotating wherever a subtree has become unbalanced. It can't stop early, since every
+	 * ancestor's size has changed.
+	 * @param n The lowest node whose subtree changed.
+	 */
+	private void rebalance(Node<T> n) {
+		while (n != null) {
+			int balance = height(n.leftChild) - height(n.rightChild);
+			if (balance > 1) {
+				// Left-right case needs the left child rotated first
+				if (height(n.leftChild.leftChild) < height(n.leftChild.rightChild))
+					leftRotate(n.leftChild);
+				n = rightRotate(n);
 			}
-			else if (n.parent.rightChild == n) {
-				int leftH = checkHeight(n.parent.leftChild);
-				maintain(n.parent, leftH, rightHeight + 1);
+			else if (balance < -1) {
+				// Right-left case needs the right child rotated first
+				if (height(n.rightChild.rightChild) < height(n.rightChild.leftChild))
+					rightRotate(n.rightChild);
+				n = leftRotate(n);
 			}
-		}
-		// Rotate as needed, then go back to checking via recursive call
-		else {
-			if (leftHeight > rightHeight)
-				rightRotate(n);
 			else
-				leftRotate(n);
-			int rightH = checkHeight(n.rightChild);
-			int leftH = checkHeight(n.leftChild);
-			maintain(n, leftH, rightH);
+				update(n);
+			n = n.parent;
 		}
 	}
 
-	private int checkHeight(Node<T> n) {
-		// Height for a null child is -1
-		if (n == null)
-			return -1;
+	/**
+	 * This method returns the cached height of a subtree.
+	 * @param n The root of the subtree.
+	 * @return The height, or -1 for an empty subtree.
+	 */
+	private int height(Node<T> n) {
+		return (n == null) ? -1 : n.height;
+	}
 
-		// Get heights from children
-		int leftHeight = checkHeight(n.leftChild);
-		int rightHeight = checkHeight(n.rightChild);
+	/**
+	 * This method returns the cached size of a subtree.
+	 * @param n The root of the subtree.
+	 * @return The number of nodes, or 0 for an empty subtree.
+	 */
+	private int count(Node<T> n) {
+		return (n == null) ? 0 : n.count;
+	}
 
-		// Return the larger height + 1
-		if (leftHeight > rightHeight)
-			return leftHeight + 1;
-		else
-			return rightHeight + 1;
+	/**
+	 * This method returns the cached aggregate of a subtree.
+	 * @param n The root of the subtree.
+	 * @return The aggregate, or the monoid's identity for an empty subtree.
+	 */
+	private T aggregate(Node<T> n) {
+		return (n == null) ? monoid.identity() : n.aggregate;
 	}
 
-	private void leftRotate(Node<T> n) {
+	/**
+	 * This method recomputes a node's height, size and aggregate from its children's cached values.
+	 * @param n The node to update.
+	 */
+	private void update(Node<T> n) {
+		n.height = Math.max(height(n.leftChild), height(n.rightChild)) + 1;
+		n.count = count(n.leftChild) + count(n.rightChild) + 1;
+		if (monoid != null)
+			n.aggregate = monoid.combine(monoid.combine(aggregate(n.leftChild), n.data), aggregate(n.rightChild));
+	}
+
+	/**
+	 * This method rotates a node down to the left, and keeps the cached values right.
+	 * @param n The node to rotate.
+	 * @return The node that took its place.
+	 */
+	private Node<T> leftRotate(Node<T> n) {
 		Node<T> parent = n.parent;
 		Node<T> right = n.rightChild;
 
@@ -313,11 +629,20 @@ public class AVLTree<T extends Comparable<T>> {
 		n.rightChild = temp;
 		if (temp != null)
 			temp.parent = n;
+
+		update(n);
+		update(right);
+		return right;
 	}
 
 
 	// bless wikipedia https://en.wikipedia.org/wiki/Tree_rotation
-	private void rightRotate(Node<T> n) {
+	/**
+	 * This method rotates a node down to the right, and keeps the cached values right.
+	 * @param n The node to rotate.
+	 * @return The node that took its place.
+	 */
+	private Node<T> rightRotate(Node<T> n) {
 		Node<T> parent = n.parent;
 		Node<T> left = n.leftChild;
 
@@ -337,5 +662,365 @@ public class AVLTree<T extends Comparable<T>> {
 		n.leftChild = temp;
 		if (temp != null)
 			temp.parent = n;
+
+		update(n);
+		update(left);
+		return left;
+	}
+
+	/**
+	 * This method builds a perfectly balanced subtree from part of a sorted array.
+	 * Its depth is only log n, so recursing here is safe.
+	 * @param sorted The sorted elements.
+	 * @param lo The first index to use.
+	 * @param hi The last index to use.
+	 * @return The root of the subtree, with its parent not set yet.
+	 */
+	private Node<T> build(T[] sorted, int lo, int hi) {
+		if (lo > hi)
+			return null;
+		int mid = (lo + hi) >>> 1;
+		return attach(build(sorted, lo, mid - 1), new Node<T>(sorted[mid], null), build(sorted, mid + 1, hi));
+	}
+
+	/**
+	 * This method copies both trees, then runs a set operation on the copies with split and join.
+	 * @param op The operation to run.
+	 * @param other The other tree.
+	 * @return The new tree.
+	 */
+	private AVLTree<T> combine(SetOperation op, AVLTree<T> other) {
+		AVLTree<T> result = new AVLTree<T>(monoid);
+		// The copies are owned by the result, so split and join are free to take them apart
+		Node<T> a = result.copy(root);
+		Node<T> b = result.copy(other.root);
+		Node<T> n;
+		if (count(a) + count(b) >= PARALLEL_THRESHOLD)
+			n = ForkJoinPool.commonPool().invoke(result.new SetTask(op, a, b));
+		else
+			n = result.setOperation(op, a, b);
+		if (n != null)
+			n.parent = null;
+		result.root = n;
+		result.size = count(n);
+		return result;
+	}
+
+	/**
+	 * This method copies a subtree into nodes this tree owns, recomputing the cached values
+	 * with this tree's monoid.
+	 * @param n The root of the subtree to copy.
+	 * @return The root of the copy, with its parent not set yet.
+	 */
+	private Node<T> copy(Node<T> n) {
+		if (n == null)
+			return null;
+		return attach(copy(n.leftChild), new Node<T>(n.data, null), copy(n.rightChild));
+	}
+
+	/**
+	 * This method runs a set operation on two subtrees, taking both of them apart to build the result.
+	 * Each element of a is looked up in b by splitting b around it, and the two halves are
+	 * handled separately, in parallel if they are big enough.
+	 * @param op The operation to run.
+	 * @param a The root of the first subtree.
+	 * @param b The root of the second subtree.
+	 * @return The root of the result, with its parent not set yet.
+	 */
+	private Node<T> setOperation(SetOperation op, Node<T> a, Node<T> b) {
+		if (a == null)
+			return (op == SetOperation.UNION) ? b : null;
+		if (b == null)
+			return (op == SetOperation.INTERSECTION) ? null : a;
+
+		// Take a's root off, and split b around its element
+		Node<T> aLeft = detach(a.leftChild);
+		Node<T> aRight = detach(a.rightChild);
+		a.leftChild = a.rightChild = null;
+		Split split = split(b, a.data);
+
+		Node<T> left;
+		Node<T> right;
+		if (count(aLeft) + count(aRight) + count(split.left) + count(split.right) >= PARALLEL_THRESHOLD) {
+			SetTask task = new SetTask(op, aLeft, split.left);
+			task.fork();
+			right = setOperation(op, aRight, split.right);
+			left = task.join();
+		}
+		else {
+			left = setOperation(op, aLeft, split.left);
+			right = setOperation(op, aRight, split.right);
+		}
+
+		// Keep a's root if the operation wants it, otherwise join the halves without it
+		boolean keep = (op == SetOperation.UNION) || ((op == SetOperation.INTERSECTION) == (split.mid != null));
+		return keep ? join(left, a, right) : join(left, right);
+	}
+
+	/**
+	 * This method splits a subtree around an element, taking the subtree apart.
+	 * @param n The root of the subtree.
+	 * @param element The element to split around.
+	 * @return The elements less than it, a node equal to it if there is one, and the elements greater than it.
+	 */
+	private Split split(Node<T> n, T element) {
+		if (n == null)
+			return new Split();
+		Node<T> left = detach(n.leftChild);
+		Node<T> right = detach(n.rightChild);
+		n.leftChild = n.rightChild = null;
+
+		int cmp = element.compareTo(n.data);
+		if (cmp == 0) {
+			Split s = new Split();
+			s.left = left;
+			s.mid = n;
+			s.right = right;
+			return s;
+		}
+		else if (cmp < 0) {
+			Split s = split(left, element);
+			s.right = join(s.right, n, right);
+			return s;
+		}
+		else {
+			Split s = split(right, element);
+			s.left = join(left, n, s.left);
+			return s;
+		}
+	}
+
+	/**
+	 * This method joins two subtrees and a node between them into one balanced subtree.
+	 * Every element of left must be below the node's element, and every element of right above it.
+	 * It takes O(|height(left) - height(right)|) time.
+	 * @param left The root of the lower subtree.
+	 * @param n The node that goes between them.
+	 * @param right The root of the upper subtree.
+	 * @return The root of the joined subtree, with its parent not set yet.
+	 */
+	private Node<T> join(Node<T> left, Node<T> n, Node<T> right) {
+		if (height(left) > height(right) + 1)
+			return joinRight(left, n, right);
+		if (height(right) > height(left) + 1)
+			return joinLeft(left, n, right);
+		return attach(left, n, right);
+	}
+
+	/**
+	 * This method joins a taller left subtree with a node and a right subtree, by walking down
+	 * the left subtree's right spine until the heights are close.
+	 */
+	private Node<T> joinRight(Node<T> left, Node<T> n, Node<T> right) {
+		Node<T> l = detach(left.leftChild);
+		Node<T> c = detach(left.rightChild);
+		if (height(c) <= height(right) + 1) {
+			Node<T> t = attach(c, n, right);
+			if (height(t) <= height(l) + 1)
+				return attach(l, left, t);
+			return leftRotateDetached(attach(l, left, rightRotateDetached(t)));
+		}
+		Node<T> t = joinRight(c, n, right);
+		Node<T> joined = attach(l, left, t);
+		if (height(t) <= height(l) + 1)
+			return joined;
+		return leftRotateDetached(joined);
+	}
+
+	/**
+	 * This method joins a left subtree and a node with a taller right subtree, by walking down
+	 * the right subtree's left spine until the heights are close.
+	 */
+	private Node<T> joinLeft(Node<T> left, Node<T> n, Node<T> right) {
+		Node<T> c = detach(right.leftChild);
+		Node<T> r = detach(right.rightChild);
+		if (height(c) <= height(left) + 1) {
+			Node<T> t = attach(left, n, c);
+			if (height(t) <= height(r) + 1)
+				return attach(t, right, r);
+			return rightRotateDetached(attach(leftRotateDetached(t), right, r));
+		}
+		Node<T> t = joinLeft(left, n, c);
+		Node<T> joined = attach(t, right, r);
+		if (height(t) <= height(r) + 1)
+			return joined;
+		return rightRotateDetached(joined);
+	}
+
+	/**
+	 * This method joins two subtrees with nothing between them, by taking the last node of the
+	 * lower one out to use as the middle.
+	 * @param left The root of the lower subtree.
+	 * @param right The root of the upper subtree.
+	 * @return The root of the joined subtree, with its parent not set yet.
+	 */
+	private Node<T> join(Node<T> left, Node<T> right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		Split s = splitLast(left);
+		return join(s.left, s.mid, right);
+	}
+
+	/**
+	 * This method takes the largest node out of a subtree.
+	 * @param n The root of the subtree, which can't be empty.
+	 * @return The rest of the subtree in left, and the largest node in mid.
+	 */
+	private Split splitLast(Node<T> n) {
+		Node<T> left = detach(n.leftChild);
+		Node<T> right = detach(n.rightChild);
+		n.leftChild = n.rightChild = null;
+		if (right == null) {
+			Split s = new Split();
+			s.left = left;
+			s.mid = n;
+			return s;
+		}
+		Split s = splitLast(right);
+		s.left = join(left, n, s.left);
+		return s;
+	}
+
+	/**
+	 * This method makes a node the parent of two subtrees and updates its cached values.
+	 * @param left The new left child.
+	 * @param n The node.
+	 * @param right The new right child.
+	 * @return The node.
+	 */
+	private Node<T> attach(Node<T> left, Node<T> n, Node<T> right) {
+		n.leftChild = left;
+		n.rightChild = right;
+		if (left != null)
+			left.parent = n;
+		if (right != null)
+			right.parent = n;
+		update(n);
+		return n;
+	}
+
+	/**
+	 * This method cuts a node off from its parent.
+	 * @param n The node, or null.
+	 * @return The node.
+	 */
+	private Node<T> detach(Node<T> n) {
+		if (n != null)
+			n.parent = null;
+		return n;
+	}
+
+	/**
+	 * This method rotates the root of a detached subtree down to the left.
+	 * @param n The root of the subtree.
+	 * @return The new root, with its parent not set yet.
+	 */
+	private Node<T> leftRotateDetached(Node<T> n) {
+		Node<T> right = detach(n.rightChild);
+		return attach(attach(n.leftChild, n, right.leftChild), right, right.rightChild);
+	}
+
+	/**
+	 * This method rotates the root of a detached subtree down to the right.
+	 * @param n The root of the subtree.
+	 * @return The new root, with its parent not set yet.
+	 */
+	private Node<T> rightRotateDetached(Node<T> n) {
+		Node<T> left = detach(n.leftChild);
+		return attach(left.leftChild, left, attach(left.rightChild, n, n.rightChild));
+	}
+
+
+	/**
+	 * This holds the pieces of a split subtree.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	private class Split {
+
+		/** The root of the lower piece. */
+		private Node<T> left;
+		/** The node that was split around, if there was one. */
+		private Node<T> mid;
+		/** The root of the upper piece. */
+		private Node<T> right;
+	}
+
+
+	/**
+	 * This runs one half of a set operation on the fork/join pool.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	private class SetTask extends RecursiveTask<Node<T>> {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The operation to run. */
+		private final SetOperation op;
+		/** The root of the first subtree. */
+		private final Node<T> a;
+		/** The root of the second subtree. */
+		private final Node<T> b;
+
+		private SetTask(SetOperation op, Node<T> a, Node<T> b) {
+			this.op = op;
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		protected Node<T> compute() {
+			return setOperation(op, a, b);
+		}
+	}
+
+
+	/**
+	 * This is an in-order iterator that follows parent pointers instead of keeping a stack.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	private class InOrderIterator implements Iterator<T> {
+
+		/** The node next() will return. */
+		private Node<T> next = first(root);
+		/** The node next() returned last, or null if it can't be removed. */
+		private Node<T> lastReturned = null;
+		/** The modification count this iterator expects the tree to have. */
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public T next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next == null)
+				throw new NoSuchElementException();
+			lastReturned = next;
+			next = successor(next);
+			return lastReturned.data;
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			// A node with two children takes its successor's data, so that node is what comes next
+			if ((lastReturned.leftChild != null) && (lastReturned.rightChild != null))
+				next = lastReturned;
+			AVLTree.this.remove(lastReturned);
+			size--;
+			expectedModCount = ++modCount;
+			lastReturned = null;
+		}
 	}
 }
@@ -0,0 +1,1450 @@
+package derek.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * This class implements a sorted map on an AVL style balanced binary search tree.
+ * Keys are ordered by their natural ordering, or by a Comparator given when the map is created.
+ * Every lookup, insert and remove is a loop down or up the tree, and takes O(log n) time.
+ *
+ * The sub-map, head-map, tail-map and descending views are live: they read and write the map
+ * they came from, and their iterators walk the tree lazily instead of copying it.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class AVLTreeMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+	/** The root node of the tree. */
+	private Node<K, V> root = null;
+
+	/** The number of key-value pairs in this map. */
+	private int size = 0;
+
+	/** The number of structural changes made to this map, so iterators can fail fast. */
+	private int modCount = 0;
+
+	/** The comparator that orders the keys, or null to use their natural ordering. */
+	private final Comparator<? super K> comparator;
+
+	/** The view of the whole map, in ascending order. */
+	private SubMap ascending;
+
+	/** The view of the whole map, in descending order. */
+	private SubMap descending;
+
+
+	/**
+	 * This is a node of the tree, which doubles as the map's entry type.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	static final class Node<K, V> implements Map.Entry<K, V> {
+
+		/** The key of this entry. */
+		private K key;
+		/** The value of this entry. */
+		private V value;
+		/** The parent node in the tree. */
+		private Node<K, V> parent;
+		/** The left child node. */
+		private Node<K, V> left;
+		/** The right child node. */
+		private Node<K, V> right;
+		/** The height of the subtree under this node, where a leaf has height 0. */
+		private int height;
+
+		/**
+		 * This will construct a leaf node.
+		 * @param key The key this node will contain.
+		 * @param value The value this node will contain.
+		 * @param parent The parent node this node is under.
+		 */
+		private Node(K key, V value, Node<K, V> parent) {
+			this.key = key;
+			this.value = value;
+			this.parent = parent;
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			V old = this.value;
+			this.value = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return eq(key, e.getKey()) && eq(value, e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return ((key == null) ? 0 : key.hashCode()) ^ ((value == null) ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+
+
+	/**
+	 * This will construct an empty map that orders keys by their natural ordering.
+	 */
+	public AVLTreeMap() {
+		this((Comparator<? super K>) null);
+	}
+
+	/**
+	 * This will construct an empty map that orders keys with the given comparator.
+	 * @param comparator The comparator to order keys with, or null to use their natural ordering.
+	 */
+	public AVLTreeMap(Comparator<? super K> comparator) {
+		this.comparator = comparator;
+	}
+
+	/**
+	 * This will construct a map holding the same key-value pairs as another map.
+	 * If the other map is sorted, its comparator is used too.
+	 * @param m The map to copy.
+	 */
+	@SuppressWarnings("unchecked")
+	public AVLTreeMap(Map<? extends K, ? extends V> m) {
+		this((m instanceof SortedMap) ? ((SortedMap<K, ?>) m).comparator() : null);
+		putAll(m);
+	}
+
+
+	/**
+	 * This gets the number of key-value pairs in this map.
+	 * @return The number of pairs stored.
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * This method returns the height of the tree.
+	 * @return The height of the root, where a single entry has height 0 and an empty map has height -1.
+	 */
+	public int height() {
+		return height(root);
+	}
+
+	/**
+	 * This will get the value stored with a key.
+	 * @param key The key to look up.
+	 * @return The value stored with the key, or null if there isn't one.
+	 */
+	@Override
+	public V get(Object key) {
+		Node<K, V> e = getEntry(key);
+		return (e == null) ? null : e.value;
+	}
+
+	/**
+	 * This will check if a key is stored in this map.
+	 * @param key The key to look for.
+	 * @return True if the key is in this map.
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return getEntry(key) != null;
+	}
+
+	/**
+	 * This will store a key-value pair, replacing any value already stored with the key.
+	 * @param key The key to store this value with.
+	 * @param value The value to store.
+	 * @return The value previously stored with the key, or null if there wasn't one.
+	 */
+	@Override
+	public V put(K key, V value) {
+		if (root == null) {
+			// Compare the key with itself to check its type, and that it isn't null
+			compare(key, key);
+			root = new Node<K, V>(key, value, null);
+			size++;
+			modCount++;
+			return null;
+		}
+
+		// Walk down to the key, or to the empty spot it belongs in
+		Node<K, V> parent = root;
+		while (true) {
+			int cmp = compare(key, parent.key);
+			if (cmp == 0)
+				return parent.setValue(value);
+			Node<K, V> next = (cmp < 0) ? parent.left : parent.right;
+			if (next == null) {
+				Node<K, V> e = new Node<K, V>(key, value, parent);
+				if (cmp < 0)
+					parent.left = e;
+				else
+					parent.right = e;
+				break;
+			}
+			parent = next;
+		}
+		rebalance(parent);
+		size++;
+		modCount++;
+		return null;
+	}
+
+	/**
+	 * This will remove a key and its value from this map.
+	 * @param key The key to remove.
+	 * @return The value that was stored with the key, or null if there wasn't one.
+	 */
+	@Override
+	public V remove(Object key) {
+		Node<K, V> e = getEntry(key);
+		if (e == null)
+			return null;
+		V ret = e.value;
+		deleteEntry(e);
+		return ret;
+	}
+
+	/**
+	 * This will remove every key-value pair from this map.
+	 */
+	@Override
+	public void clear() {
+		root = null;
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * This gets the comparator that orders this map's keys.
+	 * @return The comparator, or null if keys use their natural ordering.
+	 */
+	@Override
+	public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * This gets the smallest key in this map.
+	 * @return The smallest key.
+	 * @throws NoSuchElementException If the map is empty.
+	 */
+	@Override
+	public K firstKey() {
+		return key(first());
+	}
+
+	/**
+	 * This gets the largest key in this map.
+	 * @return The largest key.
+	 * @throws NoSuchElementException If the map is empty.
+	 */
+	@Override
+	public K lastKey() {
+		return key(last());
+	}
+
+	/**
+	 * This gets the pair with the smallest key.
+	 * @return A snapshot of the pair, or null if the map is empty.
+	 */
+	@Override
+	public Map.Entry<K, V> firstEntry() {
+		return snapshot(first());
+	}
+
+	/**
+	 * This gets the pair with the largest key.
+	 * @return A snapshot of the pair, or null if the map is empty.
+	 */
+	@Override
+	public Map.Entry<K, V> lastEntry() {
+		return snapshot(last());
+	}
+
+	/**
+	 * This removes the pair with the smallest key.
+	 * @return A snapshot of the removed pair, or null if the map is empty.
+	 */
+	@Override
+	public Map.Entry<K, V> pollFirstEntry() {
+		return poll(first());
+	}
+
+	/**
+	 * This removes the pair with the largest key.
+	 * @return A snapshot of the removed pair, or null if the map is empty.
+	 */
+	@Override
+	public Map.Entry<K, V> pollLastEntry() {
+		return poll(last());
+	}
+
+	/**
+	 * This gets the pair with the largest key strictly less than the given key.
+	 * @param key The key to search from.
+	 * @return A snapshot of the pair, or null if there isn't one.
+	 */
+	@Override
+	public Map.Entry<K, V> lowerEntry(K key) {
+		return snapshot(lower(key));
+	}
+
+	/**
+	 * This gets the largest key strictly less than the given key.
+	 * @param key The key to search from.
+	 * @return The key, or null if there isn't one.
+	 */
+	@Override
+	public K lowerKey(K key) {
+		return keyOrNull(lower(key));
+	}
+
+	/**
+	 * This gets the pair with the largest key less than or equal to the given key.
+	 * @param key The key to search from.
+	 * @return A snapshot of the pair, or null if there isn't one.
+	 */
+	@Override
+	public Map.Entry<K, V> floorEntry(K key) {
+		return snapshot(floor(key));
+	}
+
+	/**
+	 * This gets the largest key less than or equal to the given key.
+	 * @param key The key to search from.
+	 * @return The key, or null if there isn't one.
+	 */
+	@Override
+	public K floorKey(K key) {
+		return keyOrNull(floor(key));
+	}
+
+	/**
+	 * This gets the pair with the smallest key greater than or equal to the given key.
+	 * @param key The key to search from.
+	 * @return A snapshot of the pair, or null if there isn't one.
+	 */
+	@Override
+	public Map.Entry<K, V> ceilingEntry(K key) {
+		return snapshot(ceiling(key));
+	}
+
+	/**
+	 * This gets the smallest key greater than or equal to the given key.
+	 * @param key The key to search from.
+	 * @return The key, or null if there isn't one.
+	 */
+	@Override
+	public K ceilingKey(K key) {
+		return keyOrNull(ceiling(key));
+	}
+
+	/**
+	 * This gets the pair with the smallest key strictly greater than the given key.
+	 * @param key The key to search from.
+	 * @return A snapshot of the pair, or null if there isn't one.
+	 */
+	@Override
+	public Map.Entry<K, V> higherEntry(K key) {
+		return snapshot(higher(key));
+	}
+
+	/**
+	 * This gets the smallest key strictly greater than the given key.
+	 * @param key The key to search from.
+	 * @return The key, or null if there isn't one.
+	 */
+	@Override
+	public K higherKey(K key) {
+		return keyOrNull(higher(key));
+	}
+
+	/**
+	 * This gets a live view of the pairs in this map, in ascending key order.
+	 * @return The entry set.
+	 */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return ascendingView().entrySet();
+	}
+
+	/**
+	 * This gets a live view of the keys in this map, in ascending order.
+	 * @return The key set.
+	 */
+	@Override
+	public Set<K> keySet() {
+		return navigableKeySet();
+	}
+
+	/**
+	 * This gets a live view of the keys in this map, in ascending order.
+	 * @return The key set.
+	 */
+	@Override
+	public NavigableSet<K> navigableKeySet() {
+		return ascendingView().navigableKeySet();
+	}
+
+	/**
+	 * This gets a live view of the keys in this map, in descending order.
+	 * @return The key set.
+	 */
+	@Override
+	public NavigableSet<K> descendingKeySet() {
+		return descendingMap().navigableKeySet();
+	}
+
+	/**
+	 * This gets a live view of this map with its keys in descending order.
+	 * @return The descending map.
+	 */
+	@Override
+	public NavigableMap<K, V> descendingMap() {
+		if (descending == null)
+			descending = new SubMap(true, null, false, true, null, false, true);
+		return descending;
+	}
+
+	/**
+	 * This gets a live view of the pairs whose keys fall between two keys.
+	 * @param fromKey The low end of the range.
+	 * @param fromInclusive True if the low end is in the range.
+	 * @param toKey The high end of the range.
+	 * @param toInclusive True if the high end is in the range.
+	 * @return The view.
+	 * @throws IllegalArgumentException If fromKey is greater than toKey.
+	 */
+	@Override
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+		return ascendingView().subMap(fromKey, fromInclusive, toKey, toInclusive);
+	}
+
+	/**
+	 * This gets a live view of the pairs whose keys are less than a key.
+	 * @param toKey The high end of the range.
+	 * @param inclusive True if the high end is in the range.
+	 * @return The view.
+	 */
+	@Override
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+		return ascendingView().headMap(toKey, inclusive);
+	}
+
+	/**
+	 * This gets a live view of the pairs whose keys are greater than a key.
+	 * @param fromKey The low end of the range.
+	 * @param inclusive True if the low end is in the range.
+	 * @return The view.
+	 */
+	@Override
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+		return ascendingView().tailMap(fromKey, inclusive);
+	}
+
+	/**
+	 * This gets a live view of the pairs whose keys are in [fromKey, toKey).
+	 * @param fromKey The low end of the range, which is included.
+	 * @param toKey The high end of the range, which is excluded.
+	 * @return The view.
+	 */
+	@Override
+	public SortedMap<K, V> subMap(K fromKey, K toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	/**
+	 * This gets a live view of the pairs whose keys are strictly less than a key.
+	 * @param toKey The high end of the range, which is excluded.
+	 * @return The view.
+	 */
+	@Override
+	public SortedMap<K, V> headMap(K toKey) {
+		return headMap(toKey, false);
+	}
+
+	/**
+	 * This gets a live view of the pairs whose keys are greater than or equal to a key.
+	 * @param fromKey The low end of the range, which is included.
+	 * @return The view.
+	 */
+	@Override
+	public SortedMap<K, V> tailMap(K fromKey) {
+		return tailMap(fromKey, true);
+	}
+
+
+	/**
+	 * This method gets the view of the whole map in ascending order, which the other views start from.
+	 * @return The ascending view.
+	 */
+	private SubMap ascendingView() {
+		if (ascending == null)
+			ascending = new SubMap(true, null, false, true, null, false, false);
+		return ascending;
+	}
+
+	/**
+	 * This method compares two keys with this map's ordering.
+	 * @param a The first key.
+	 * @param b The second key.
+	 * @return A negative number, zero, or a positive number as a is less than, equal to, or greater than b.
+	 */
+	@SuppressWarnings("unchecked")
+	private int compare(Object a, Object b) {
+		if (comparator == null)
+			return ((Comparable<Object>) a).compareTo(b);
+		return comparator.compare((K) a, (K) b);
+	}
+
+	/**
+	 * This method finds the node holding a key.
+	 * @param key The key to look for.
+	 * @return The node, or null if the key isn't in the map.
+	 */
+	private Node<K, V> getEntry(Object key) {
+		Node<K, V> n = root;
+		while (n != null) {
+			int cmp = compare(key, n.key);
+			if (cmp == 0)
+				return n;
+			n = (cmp < 0) ? n.left : n.right;
+		}
+		return null;
+	}
+
+	/**
+	 * This method finds the node with the smallest key.
+	 * @return The node, or null if the map is empty.
+	 */
+	private Node<K, V> first() {
+		Node<K, V> n = root;
+		if (n != null) {
+			while (n.left != null)
+				n = n.left;
+		}
+		return n;
+	}
+
+	/**
+	 * This method finds the node with the largest key.
+	 * @return The node, or null if the map is empty.
+	 */
+	private Node<K, V> last() {
+		Node<K, V> n = root;
+		if (n != null) {
+			while (n.right != null)
+				n = n.right;
+		}
+		return n;
+	}
+
+	/**
+	 * This method finds the node with the largest key strictly less than a key.
+	 * @param key The key to search from.
+	 * @return The node, or null if there isn't one.
+	 */
+	private Node<K, V> lower(Object key) {
+		Node<K, V> best = null;
+		for (Node<K, V> n = root ; n != null ; ) {
+			if (compare(key, n.key) > 0) {
+				best = n;
+				n = n.right;
+			}
+			else
+				n = n.left;
+		}
+		return best;
+	}
+
+	/**
+	 * This method finds the node with the largest key less than or equal to a key.
+	 * @param key The key to search from.
+	 * @return The node, or null if there isn't one.
+	 */
+	private Node<K, V> floor(Object key) {
+		Node<K, V> best = null;
+		for (Node<K, V> n = root ; n != null ; ) {
+			int cmp = compare(key, n.key);
+			if (cmp == 0)
+				return n;
+			if (cmp > 0) {
+				best = n;
+				n = n.right;
+			}
+			else
+				n = n.left;
+		}
+		return best;
+	}
+
+	/**
+	 * This method finds the node with the smallest key greater than or equal to a key.
+	 * @param key The key to search from.
+	 * @return The node, or null if there isn't one.
+	 */
+	private Node<K, V> ceiling(Object key) {
+		Node<K, V> best = null;
+		for (Node<K, V> n = root ; n != null ; ) {
+			int cmp = compare(key, n.key);
+			if (cmp == 0)
+				return n;
+			if (cmp < 0) {
+				best = n;
+				n = n.left;
+			}
+			else
+				n = n.right;
+		}
+		return best;
+	}
+
+	/**
+	 * This method finds the node with the smallest key strictly greater than a key.
+	 * @param key The key to search from.
+	 * @return The node, or null if there isn't one.
+	 */
+	private Node<K, V> higher(Object key) {
+		Node<K, V> best = null;
+		for (Node<K, V> n = root ; n != null ; ) {
+			if (compare(key, n.key) < 0) {
+				best = n;
+				n = n.left;
+			}
+			else
+				n = n.right;
+		}
+		return best;
+	}
+
+	/**
+	 * This method finds the next node in order by following parent pointers.
+	 * @param n The current node.
+	 * @return The next node, or null if this was the last one.
+	 */
+	private static <K, V> Node<K, V> successor(Node<K, V> n) {
+		if (n.right != null) {
+			n = n.right;
+			while (n.left != null)
+				n = n.left;
+			return n;
+		}
+		Node<K, V> parent = n.parent;
+		while ((parent != null) && (parent.right == n)) {
+			n = parent;
+			parent = parent.parent;
+		}
+		return parent;
+	}
+
+	/**
+	 * This method finds the previous node in order by following parent pointers.
+	 * @param n The current node.
+	 * @return The previous node, or null if this was the first one.
+	 */
+	private static <K, V> Node<K, V> predecessor(Node<K, V> n) {
+		if (n.left != null) {
+			n = n.left;
+			while (n.right != null)
+				n = n.right;
+			return n;
+		}
+		Node<K, V> parent = n.parent;
+		while ((parent != null) && (parent.left == n)) {
+			n = parent;
+			parent = parent.parent;
+		}
+		return parent;
+	}
+
+	/**
+	 * This method unlinks a node from the tree and rebalances it.
+	 * A node with two children takes its successor's key and value, and the successor is unlinked instead.
+	 * @param n The node to remove.
+	 */
+	private void deleteEntry(Node<K, V> n) {
+		size--;
+		modCount++;
+
+		if ((n.left != null) && (n.right != null)) {
+			Node<K, V> s = n.right;
+			while (s.left != null)
+				s = s.left;
+			n.key = s.key;
+			n.value = s.value;
+			n = s;
+		}
+
+		// Now the node has at most one child, which takes its place
+		Node<K, V> child = (n.left != null) ? n.left : n.right;
+		Node<K, V> parent = n.parent;
+		if (parent == null)
+			root = child;
+		else if (parent.left == n)
+			parent.left = child;
+		else
+			parent.right = child;
+		if (child != null)
+			child.parent = parent;
+		n.parent = n.left = n.right = null;
+
+		rebalance(parent);
+	}
+
+	/**
+	 * This method walks from a node up to the root, fixing cached heights and rotating
+	 * wherever a subtree has become unbalanced. It stops early once a subtree's height is unchanged.
+	 * @param n The lowest node whose subtree changed.
+	 */
+	private void rebalance(Node<K, V> n) {
+		while (n != null) {
+			int oldHeight = n.height;
+			int balance = height(n.left) - height(n.right);
+			if (balance > 1) {
+				// Left-right case needs the left child rotated first
+				if (height(n.left.left) < height(n.left.right))
+					rotateLeft(n.left);
+				n = rotateRight(n);
+			}
+			else if (balance < -1) {
+				// Right-left case needs the right child rotated first
+				if (height(n.right.right) < height(n.right.left))
+					rotateRight(n.right);
+				n = rotateLeft(n);
+			}
+			else {
+				updateHeight(n);
+				if (n.height == oldHeight)
+					return;
+			}
+			n = n.parent;
+		}
+	}
+
+	/**
+	 * This method returns the cached height of a subtree.
+	 * @param n The root of the subtree.
+	 * @return The height, or -1 for an empty subtree.
+	 */
+	private static int height(Node<?, ?> n) {
+		return (n == null) ? -1 : n.height;
+	}
+
+	/**
+	 * This method recomputes a node's height from its children's cached heights.
+	 * @param n The node to update.
+	 */
+	private static void updateHeight(Node<?, ?> n) {
+		n.height = Math.max(height(n.left), height(n.right)) + 1;
+	}
+
+	/**
+	 * This method rotates a node down to the left.
+	 * @param n The node to rotate.
+	 * @return The node that took its place.
+	 */
+	private Node<K, V> rotateLeft(Node<K, V> n) {
+		Node<K, V> right = n.right;
+		replaceChild(n, right);
+		n.right = right.left;
+		if (n.right != null)
+			n.right.parent = n;
+		right.left = n;
+		n.parent = right;
+		updateHeight(n);
+		updateHeight(right);
+		return right;
+	}
+
+	/**
+	 * This method rotates a node down to the right.
+	 * @param n The node to rotate.
+	 * @return The node that took its place.
+	 */
+	private Node<K, V> rotateRight(Node<K, V> n) {
+		Node<K, V> left = n.left;
+		replaceChild(n, left);
+		n.left = left.right;
+		if (n.left != null)
+			n.left.parent = n;
+		left.right = n;
+		n.parent = left;
+		updateHeight(n);
+		updateHeight(left);
+		return left;
+	}
+
+	/**
+	 * This method points a node's parent at a different child, for rotations.
+	 * @param n The node being replaced.
+	 * @param replacement The node taking its place.
+	 */
+	private void replaceChild(Node<K, V> n, Node<K, V> replacement) {
+		Node<K, V> parent = n.parent;
+		if (parent == null)
+			root = replacement;
+		else if (parent.left == n)
+			parent.left = replacement;
+		else
+			parent.right = replacement;
+		replacement.parent = parent;
+	}
+
+	/**
+	 * This method removes a node and returns a snapshot of it.
+	 * @param e The node to remove, or null.
+	 * @return A snapshot of the removed pair, or null if e was null.
+	 */
+	private Map.Entry<K, V> poll(Node<K, V> e) {
+		Map.Entry<K, V> ret = snapshot(e);
+		if (e != null)
+			deleteEntry(e);
+		return ret;
+	}
+
+	/**
+	 * This method copies a node into an entry that won't change when the map does.
+	 * @param e The node, or null.
+	 * @return The copy, or null if e was null.
+	 */
+	private static <K, V> Map.Entry<K, V> snapshot(Node<K, V> e) {
+		return (e == null) ? null : new AbstractMap.SimpleImmutableEntry<K, V>(e.key, e.value);
+	}
+
+	/**
+	 * This method gets the key of a node that must exist.
+	 * @param e The node.
+	 * @return The node's key.
+	 * @throws NoSuchElementException If e is null.
+	 */
+	private static <K> K key(Node<K, ?> e) {
+		if (e == null)
+			throw new NoSuchElementException();
+		return e.key;
+	}
+
+	/**
+	 * This method gets the key of a node that might not exist.
+	 * @param e The node, or null.
+	 * @return The node's key, or null if e was null.
+	 */
+	private static <K> K keyOrNull(Node<K, ?> e) {
+		return (e == null) ? null : e.key;
+	}
+
+	/**
+	 * This method checks two objects for equality, allowing nulls.
+	 * @param a The first object.
+	 * @param b The second object.
+	 * @return True if both are null or they are equal.
+	 */
+	private static boolean eq(Object a, Object b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+
+	/**
+	 * This is a live view of a range of the map, in either ascending or descending order.
+	 * Bounds are always kept in the tree's own ascending order; the descending flag
+	 * only changes which way the view's methods walk.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	private final class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+		/** True if the range has no low end. */
+		private final boolean fromStart;
+		/** The low end of the range. */
+		private final K lo;
+		/** True if the low end is in the range. */
+		private final boolean loInclusive;
+		/** True if the range has no high end. */
+		private final boolean toEnd;
+		/** The high end of the range. */
+		private final K hi;
+		/** True if the high end is in the range. */
+		private final boolean hiInclusive;
+		/** True if this view walks the range from high to low. */
+		private final boolean descending;
+
+		/** The cached entry set view. */
+		private EntrySetView entrySet;
+		/** The cached key set view. */
+		private KeySet<K> keySet;
+
+		private SubMap(boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi, boolean hiInclusive,
+				boolean descending) {
+			if (!fromStart && !toEnd) {
+				if (compare(lo, hi) > 0)
+					throw new IllegalArgumentException("fromKey > toKey");
+			}
+			else {
+				// Compare the bounds with themselves to check their types
+				if (!fromStart)
+					compare(lo, lo);
+				if (!toEnd)
+					compare(hi, hi);
+			}
+			this.fromStart = fromStart;
+			this.lo = lo;
+			this.loInclusive = loInclusive;
+			this.toEnd = toEnd;
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.descending = descending;
+		}
+
+		private boolean tooLow(Object key) {
+			if (fromStart)
+				return false;
+			int cmp = compare(key, lo);
+			return (cmp < 0) || ((cmp == 0) && !loInclusive);
+		}
+
+		private boolean tooHigh(Object key) {
+			if (toEnd)
+				return false;
+			int cmp = compare(key, hi);
+			return (cmp > 0) || ((cmp == 0) && !hiInclusive);
+		}
+
+		private boolean inRange(Object key) {
+			return !tooLow(key) && !tooHigh(key);
+		}
+
+		/** Checks a bound for a new view, which may sit on an excluded end of this one. */
+		private boolean inRange(Object key, boolean inclusive) {
+			if (inclusive)
+				return inRange(key);
+			return (fromStart || (compare(key, lo) >= 0)) && (toEnd || (compare(key, hi) <= 0));
+		}
+
+		private Node<K, V> absLowest() {
+			Node<K, V> e = fromStart ? first() : (loInclusive ? ceiling(lo) : higher(lo));
+			return ((e == null) || tooHigh(e.key)) ? null : e;
+		}
+
+		private Node<K, V> absHighest() {
+			Node<K, V> e = toEnd ? last() : (hiInclusive ? floor(hi) : lower(hi));
+			return ((e == null) || tooLow(e.key)) ? null : e;
+		}
+
+		private Node<K, V> absCeiling(Object key) {
+			if (tooLow(key))
+				return absLowest();
+			Node<K, V> e = ceiling(key);
+			return ((e == null) || tooHigh(e.key)) ? null : e;
+		}
+
+		private Node<K, V> absHigher(Object key) {
+			if (tooLow(key))
+				return absLowest();
+			Node<K, V> e = higher(key);
+			return ((e == null) || tooHigh(e.key)) ? null : e;
+		}
+
+		private Node<K, V> absFloor(Object key) {
+			if (tooHigh(key))
+				return absHighest();
+			Node<K, V> e = floor(key);
+			return ((e == null) || tooLow(e.key)) ? null : e;
+		}
+
+		private Node<K, V> absLower(Object key) {
+			if (tooHigh(key))
+				return absHighest();
+			Node<K, V> e = lower(key);
+			return ((e == null) || tooLow(e.key)) ? null : e;
+		}
+
+		// These walk in the view's own order
+		private Node<K, V> lowest() {
+			return descending ? absHighest() : absLowest();
+		}
+
+		private Node<K, V> highest() {
+			return descending ? absLowest() : absHighest();
+		}
+
+		private Node<K, V> next(Node<K, V> e) {
+			e = descending ? predecessor(e) : successor(e);
+			return ((e == null) || (descending ? tooLow(e.key) : tooHigh(e.key))) ? null : e;
+		}
+
+		@Override
+		public int size() {
+			if (fromStart && toEnd)
+				return size;
+			int count = 0;
+			for (Node<K, V> e = lowest() ; e != null ; e = next(e))
+				count++;
+			return count;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return lowest() == null;
+		}
+
+		@Override
+		public V get(Object key) {
+			return inRange(key) ? AVLTreeMap.this.get(key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return inRange(key) && AVLTreeMap.this.containsKey(key);
+		}
+
+		@Override
+		public V put(K key, V value) {
+			if (!inRange(key))
+				throw new IllegalArgumentException("key out of range");
+			return AVLTreeMap.this.put(key, value);
+		}
+
+		@Override
+		public V remove(Object key) {
+			return inRange(key) ? AVLTreeMap.this.remove(key) : null;
+		}
+
+		@Override
+		public void clear() {
+			if (fromStart && toEnd)
+				AVLTreeMap.this.clear();
+			else {
+				Iterator<Map.Entry<K, V>> it = entrySet().iterator();
+				while (it.hasNext()) {
+					it.next();
+					it.remove();
+				}
+			}
+		}
+
+		@Override
+		public Comparator<? super K> comparator() {
+			return descending ? Collections.reverseOrder(comparator) : comparator;
+		}
+
+		@Override
+		public K firstKey() {
+			return key(lowest());
+		}
+
+		@Override
+		public K lastKey() {
+			return key(highest());
+		}
+
+		@Override
+		public Map.Entry<K, V> firstEntry() {
+			return snapshot(lowest());
+		}
+
+		@Override
+		public Map.Entry<K, V> lastEntry() {
+			return snapshot(highest());
+		}
+
+		@Override
+		public Map.Entry<K, V> pollFirstEntry() {
+			return poll(lowest());
+		}
+
+		@Override
+		public Map.Entry<K, V> pollLastEntry() {
+			return poll(highest());
+		}
+
+		@Override
+		public Map.Entry<K, V> lowerEntry(K key) {
+			return snapshot(descending ? absHigher(key) : absLower(key));
+		}
+
+		@Override
+		public K lowerKey(K key) {
+			return keyOrNull(descending ? absHigher(key) : absLower(key));
+		}
+
+		@Override
+		public Map.Entry<K, V> floorEntry(K key) {
+			return snapshot(descending ? absCeiling(key) : absFloor(key));
+		}
+
+		@Override
+		public K floorKey(K key) {
+			return keyOrNull(descending ? absCeiling(key) : absFloor(key));
+		}
+
+		@Override
+		public Map.Entry<K, V> ceilingEntry(K key) {
+			return snapshot(descending ? absFloor(key) : absCeiling(key));
+		}
+
+		@Override
+		public K ceilingKey(K key) {
+			return keyOrNull(descending ? absFloor(key) : absCeiling(key));
+		}
+
+		@Override
+		public Map.Entry<K, V> higherEntry(K key) {
+			return snapshot(descending ? absLower(key) : absHigher(key));
+		}
+
+		@Override
+		public K higherKey(K key) {
+			return keyOrNull(descending ? absLower(key) : absHigher(key));
+		}
+
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			if (entrySet == null)
+				entrySet = new EntrySetView();
+			return entrySet;
+		}
+
+		@Override
+		public Set<K> keySet() {
+			return navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<K> navigableKeySet() {
+			if (keySet == null)
+				keySet = new KeySet<K>(this);
+			return keySet;
+		}
+
+		@Override
+		public NavigableSet<K> descendingKeySet() {
+			return descendingMap().navigableKeySet();
+		}
+
+		@Override
+		public NavigableMap<K, V> descendingMap() {
+			if (fromStart && toEnd)
+				return descending ? ascendingView() : AVLTreeMap.this.descendingMap();
+			return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+		}
+
+		@Override
+		public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+			if (!inRange(fromKey, fromInclusive))
+				throw new IllegalArgumentException("fromKey out of range");
+			if (!inRange(toKey, toInclusive))
+				throw new IllegalArgumentException("toKey out of range");
+			if (descending)
+				return new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+			return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+		}
+
+		@Override
+		public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+			if (!inRange(toKey, inclusive))
+				throw new IllegalArgumentException("toKey out of range");
+			if (descending)
+				return new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true);
+			return new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+		}
+
+		@Override
+		public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+			if (!inRange(fromKey, inclusive))
+				throw new IllegalArgumentException("fromKey out of range");
+			if (descending)
+				return new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true);
+			return new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+		}
+
+		@Override
+		public SortedMap<K, V> subMap(K fromKey, K toKey) {
+			return subMap(fromKey, true, toKey, false);
+		}
+
+		@Override
+		public SortedMap<K, V> headMap(K toKey) {
+			return headMap(toKey, false);
+		}
+
+		@Override
+		public SortedMap<K, V> tailMap(K fromKey) {
+			return tailMap(fromKey, true);
+		}
+
+		/**
+		 * This is the entry set of a range view.
+		 *
+		 * @author Derek Batts <dsbatts@ncsu.edu>
+		 */
+		private final class EntrySetView extends AbstractSet<Map.Entry<K, V>> {
+
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return SubMap.this.size();
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return SubMap.this.isEmpty();
+			}
+
+			@Override
+			public void clear() {
+				SubMap.this.clear();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry))
+					return false;
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				if (!inRange(e.getKey()))
+					return false;
+				Node<K, V> node = getEntry(e.getKey());
+				return (node != null) && eq(node.value, e.getValue());
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				if (!contains(o))
+					return false;
+				deleteEntry(getEntry(((Map.Entry<?, ?>) o).getKey()));
+				return true;
+			}
+		}
+
+		/**
+		 * This walks a range view lazily, following parent pointers from one node to the next.
+		 *
+		 * @author Derek Batts <dsbatts@ncsu.edu>
+		 */
+		private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+			/** The node next() will return. */
+			private Node<K, V> next = lowest();
+			/** The node next() returned last, or null if it can't be removed. */
+			private Node<K, V> lastReturned = null;
+			/** The modification count this iterator expects the map to have. */
+			private int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Map.Entry<K, V> next() {
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				if (next == null)
+					throw new NoSuchElementException();
+				lastReturned = next;
+				next = SubMap.this.next(next);
+				return lastReturned;
+			}
+
+			@Override
+			public void remove() {
+				if (lastReturned == null)
+					throw new IllegalStateException();
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				// Going up, a node with two children takes its successor's pair, so that node comes next,
+				// unless the successor's key is past the end of the view
+				boolean takesSuccessor = !descending && (lastReturned.left != null) && (lastReturned.right != null);
+				deleteEntry(lastReturned);
+				if (takesSuccessor)
+					next = tooHigh(lastReturned.key) ? null : lastReturned;
+				expectedModCount = modCount;
+				lastReturned = null;
+			}
+		}
+	}
+
+
+	/**
+	 * This is a live navigable view of the keys of a map.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	private static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+
+		/** The map whose keys this is a view of. */
+		private final NavigableMap<E, ?> m;
+
+		private KeySet(NavigableMap<E, ?> m) {
+			this.m = m;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			final Iterator<? extends Map.Entry<E, ?>> it = m.entrySet().iterator();
+			return new Iterator<E>() {
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				@Override
+				public E next() {
+					return it.next().getKey();
+				}
+
+				@Override
+				public void remove() {
+					it.remove();
+				}
+			};
+		}
+
+		@Override
+		public Iterator<E> descendingIterator() {
+			return descendingSet().iterator();
+		}
+
+		@Override
+		public int size() {
+			return m.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return m.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return m.containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!m.containsKey(o))
+				return false;
+			m.remove(o);
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			m.clear();
+		}
+
+		@Override
+		public Comparator<? super E> comparator() {
+			return m.comparator();
+		}
+
+		@Override
+		public E first() {
+			return m.firstKey();
+		}
+
+		@Override
+		public E last() {
+			return m.lastKey();
+		}
+
+		@Override
+		public E lower(E e) {
+			return m.lowerKey(e);
+		}
+
+		@Override
+		public E floor(E e) {
+			return m.floorKey(e);
+		}
+
+		@Override
+		public E ceiling(E e) {
+			return m.ceilingKey(e);
+		}
+
+		@Override
+		public E higher(E e) {
+			return m.higherKey(e);
+		}
+
+		@Override
+		public E pollFirst() {
+			Map.Entry<E, ?> e = m.pollFirstEntry();
+			return (e == null) ? null : e.getKey();
+		}
+
+		@Override
+		public E pollLast() {
+			Map.Entry<E, ?> e = m.pollLastEntry();
+			return (e == null) ? null : e.getKey();
+		}
+
+		@Override
+		public NavigableSet<E> descendingSet() {
+			return m.descendingMap().navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+			return m.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+			return m.headMap(toElement, inclusive).navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+			return m.tailMap(fromElement, inclusive).navigableKeySet();
+		}
+
+		@Override
+		public SortedSet<E> subSet(E fromElement, E toElement) {
+			return subSet(fromElement, true, toElement, false);
+		}
+
+		@Override
+		public SortedSet<E> headSet(E toElement) {
+			return headSet(toElement, false);
+		}
+
+		@Override
+		public SortedSet<E> tailSet(E fromElement) {
+			return tailSet(fromElement, true);
+		}
+	}
+}
@@ -0,0 +1,686 @@
+package derek.util;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class implements the same AVL style balanced binary search tree as AVLTree,
+ * but without a heap object per node. A node is an index into parallel arrays holding its
+ * element, its links, its height and its subtree size, so the whole tree is a handful of
+ * arrays the garbage collector can skip over. Removed slots go onto a free list and are reused
+ * by later inserts.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ArrayAVLTree<T extends Comparable<T>> implements Iterable<T> {
+
+	/** The index used for a missing node. */
+	private static final int NONE = -1;
+
+	/** The number of slots allocated if no capacity is given. */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/** The element held by each node. */
+	private Object[] data;
+	/** The parent of each node, or NONE for the root. */
+	private int[] parent;
+	/** The left child of each node, or NONE. */
+	private int[] left;
+	/** The right child of each node, or NONE. Free slots use this to link the free list. */
+	private int[] right;
+	/** The height of the subtree under each node, where a leaf has height 0. */
+	private int[] height;
+	/** The number of nodes in the subtree under each node. */
+	private int[] count;
+	/** The elements of the subtree under each node combined in order, or null if there is no monoid. */
+	private Object[] aggregate;
+
+	/** The root node of the tree. */
+	private int root = NONE;
+	/** The first slot of the free list. */
+	private int free = NONE;
+	/** The number of slots that have ever been handed out. */
+	private int used = 0;
+
+	/** The number of elements in this tree. */
+	private int size = 0;
+
+	/** The number of structural changes made to this tree, so iterators can fail fast. */
+	private int modCount = 0;
+
+	/** The monoid subtrees are summarized with, or null if they aren't. */
+	private final Monoid<T> monoid;
+
+
+	/**
+	 * This will construct an empty tree that doesn't summarize its subtrees.
+	 */
+	public ArrayAVLTree() {
+		this(DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * This will construct an empty tree with room for a number of elements before it grows.
+	 * @param initialCapacity The number of elements to make room for.
+	 * @throws IllegalArgumentException If the capacity is negative.
+	 */
+	public ArrayAVLTree(int initialCapacity) {
+		this(initialCapacity, null);
+	}
+
+	/**
+	 * This will construct an empty tree that summarizes its subtrees with a monoid.
+	 * @param monoid The monoid to combine elements with, or null for none.
+	 */
+	public ArrayAVLTree(Monoid<T> monoid) {
+		this(DEFAULT_CAPACITY, monoid);
+	}
+
+	/**
+	 * This will construct an empty tree with room for a number of elements before it grows,
+	 * that summarizes its subtrees with a monoid.
+	 * @param initialCapacity The number of elements to make room for.
+	 * @param monoid The monoid to combine elements with, or null for none.
+	 * @throws IllegalArgumentException If the capacity is negative.
+	 */
+	public ArrayAVLTree(int initialCapacity, Monoid<T> monoid) {
+		if (initialCapacity < 0)
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		this.monoid = monoid;
+		data = new Object[initialCapacity];
+		parent = new int[initialCapacity];
+		left = new int[initialCapacity];
+		right = new int[initialCapacity];
+		height = new int[initialCapacity];
+		count = new int[initialCapacity];
+		if (monoid != null)
+			aggregate = new Object[initialCapacity];
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * This method returns the height of the tree.
+	 * @return The height of the root, where a single node has height 0 and an empty tree has height -1.
+	 */
+	public int height() {
+		return height(root);
+	}
+
+	/**
+	 * This method returns how many elements the tree can hold before its arrays grow.
+	 * @return The number of slots allocated.
+	 */
+	public int capacity() {
+		return data.length;
+	}
+
+	public void insert(T element) {
+		if (root == NONE)
+			root = allocate(element, NONE);
+		else {
+			// Walk down to the empty spot the element belongs in
+			int p = root;
+			while (true) {
+				if (element.compareTo(data(p)) <= 0) {
+					// Go left
+					if (left[p] == NONE) {
+						int n = allocate(element, p);
+						left[p] = n;
+						break;
+					}
+					p = left[p];
+				}
+				else {
+					// Go right
+					if (right[p] == NONE) {
+						int n = allocate(element, p);
+						right[p] = n;
+						break;
+					}
+					p = right[p];
+				}
+			}
+			rebalance(p);
+		}
+		size++;
+		modCount++;
+	}
+
+	public T find(T element) {
+		int n = find(element, root);
+
+		if (n == NONE)
+			return null;
+		else
+			return data(n);
+	}
+
+	public T remove(T element) {
+		int n = find(element, root);
+		if (n == NONE)
+			return null;
+		T ret = data(n);
+		remove(n);
+		return ret;
+	}
+
+	/**
+	 * This method finds the k-th smallest element, counting from 0.
+	 * @param k The position of the element in sorted order.
+	 * @return The element.
+	 * @throws IllegalArgumentException If k is negative, or not less than the size of the tree.
+	 */
+	public T select(int k) {
+		if ((k < 0) || (k >= size))
+			throw new IllegalArgumentException("Index " + k + " is out of bounds for size " + size);
+		int n = root;
+		while (true) {
+			int leftCount = count(left[n]);
+			if (k < leftCount)
+				n = left[n];
+			else if (k == leftCount)
+				return data(n);
+			else {
+				k -= leftCount + 1;
+				n = right[n];
+			}
+		}
+	}
+
+	/**
+	 * This method counts the elements strictly less than a given element.
+	 * The element doesn't need to be in the tree.
+	 * @param element The element to rank.
+	 * @return The number of elements less than it.
+	 */
+	public int rank(T element) {
+		int rank = 0;
+		int n = root;
+		while (n != NONE) {
+			if (element.compareTo(data(n)) <= 0)
+				n = left[n];
+			else {
+				rank += count(left[n]) + 1;
+				n = right[n];
+			}
+		}
+		return rank;
+	}
+
+	/**
+	 * This method counts the elements between two elements.
+	 * @param lo The low end of the range, which is included.
+	 * @param hi The high end of the range, which is included.
+	 * @return The number of elements in [lo, hi].
+	 */
+	public int count(T lo, T hi) {
+		if (lo.compareTo(hi) > 0)
+			return 0;
+		// Count everything at or below hi, then take away everything below lo
+		int atOrBelow = 0;
+		int n = root;
+		while (n != NONE) {
+			if (hi.compareTo(data(n)) < 0)
+				n = left[n];
+			else {
+				atOrBelow += count(left[n]) + 1;
+				n = right[n];
+			}
+		}
+		return atOrBelow - rank(lo);
+	}
+
+	/**
+	 * This method combines every element between two elements, in sorted order, with the tree's monoid.
+	 * @param lo The low end of the range, which is included.
+	 * @param hi The high end of the range, which is included.
+	 * @return The combined elements in [lo, hi], or the monoid's identity if there are none.
+	 * @throws IllegalStateException If the tree wasn't given a monoid.
+	 */
+	public T aggregate(T lo, T hi) {
+		if (monoid == null)
+			throw new IllegalStateException("This tree was not given a monoid");
+
+		// Find the highest node inside the range, where the paths to lo and hi split
+		int split = root;
+		while (split != NONE) {
+			if (data(split).compareTo(lo) < 0)
+				split = right[split];
+			else if (data(split).compareTo(hi) > 0)
+				split = left[split];
+			else
+				break;
+		}
+		if (split == NONE)
+			return monoid.identity();
+
+		// Down the left side, every node at or above lo brings its right subtree with it
+		T lower = monoid.identity();
+		for (int n = left[split] ; n != NONE ; ) {
+			if (data(n).compareTo(lo) >= 0) {
+				lower = monoid.combine(monoid.combine(data(n), aggregate(right[n])), lower);
+				n = left[n];
+			}
+			else
+				n = right[n];
+		}
+
+		// Down the right side, every node at or below hi brings its left subtree with it
+		T upper = monoid.identity();
+		for (int n = right[split] ; n != NONE ; ) {
+			if (data(n).compareTo(hi) <= 0) {
+				upper = monoid.combine(upper, monoid.combine(aggregate(left[n]), data(n)));
+				n = right[n];
+			}
+			else
+				n = left[n];
+		}
+
+		return monoid.combine(monoid.combine(lower, data(split)), upper);
+	}
+
+	public List<T> inOrder() {
+		List<T> l = new LinkedList<T>();
+		for (int n = first(root) ; n != NONE ; n = successor(n))
+			l.add(data(n));
+		return l;
+	}
+
+	public List<T> preOrder() {
+		List<T> l = new LinkedList<T>();
+		for (int n = root ; n != NONE ; n = preOrderNext(n))
+			l.add(data(n));
+		return l;
+	}
+
+	public List<T> postOrder() {
+		List<T> l = new LinkedList<T>();
+		for (int n = postOrderFirst(root) ; n != NONE ; n = postOrderNext(n))
+			l.add(data(n));
+		return l;
+	}
+
+	/**
+	 * This method returns an iterator over the elements in sorted order.
+	 * The iterator supports remove, and fails fast if the tree is changed any other way.
+	 * @return An in-order iterator.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new InOrderIterator();
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("node value: left child Value, right child value\n\n");
+		for (int n = root ; n != NONE ; n = preOrderNext(n)) {
+			sb.append(data[n]).append(": ").append((left[n] == NONE) ? null : data[left[n]]).append(", ")
+					.append((right[n] == NONE) ? null : data[right[n]]).append('\n');
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * This method reads the element held by a node.
+	 * @param n The node.
+	 * @return The element.
+	 */
+	@SuppressWarnings("unchecked")
+	private T data(int n) {
+		return (T) data[n];
+	}
+
+	/**
+	 * This method takes a slot off the free list, or a fresh one, and makes it a leaf.
+	 * @param element The element the node will hold.
+	 * @param p The parent of the node.
+	 * @return The new node.
+	 * @throws IllegalStateException If the tree can't grow any further.
+	 */
+	private int allocate(T element, int p) {
+		int n;
+		if (free != NONE) {
+			n = free;
+			free = right[n];
+		}
+		else {
+			if (used == data.length)
+				grow();
+			n = used++;
+		}
+		data[n] = element;
+		parent[n] = p;
+		left[n] = NONE;
+		right[n] = NONE;
+		height[n] = 0;
+		count[n] = 1;
+		if (aggregate != null)
+			aggregate[n] = element;
+		return n;
+	}
+
+	/**
+	 * This method puts a slot back on the free list.
+	 * @param n The slot to free.
+	 */
+	private void release(int n) {
+		data[n] = null;
+		if (aggregate != null)
+			aggregate[n] = null;
+		right[n] = free;
+		free = n;
+	}
+
+	/**
+	 * This method doubles the size of every array.
+	 * @throws IllegalStateException If the tree is already as big as it can get.
+	 */
+	private void grow() {
+		if (data.length >= Hashing.MAXIMUM_CAPACITY)
+			throw new IllegalStateException("Tree is at its maximum capacity");
+		int capacity = Math.max(DEFAULT_CAPACITY, Math.min(data.length * 2, Hashing.MAXIMUM_CAPACITY));
+		data = Arrays.copyOf(data, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		left = Arrays.copyOf(left, capacity);
+		right = Arrays.copyOf(right, capacity);
+		height = Arrays.copyOf(height, capacity);
+		count = Arrays.copyOf(count, capacity);
+		if (aggregate != null)
+			aggregate = Arrays.copyOf(aggregate, capacity);
+	}
+
+	private int find(T element, int n) {
+		while (n != NONE) {
+			int cmp = element.compareTo(data(n));
+			if (cmp == 0)
+				return n;
+			n = (cmp < 0) ? left[n] : right[n];
+		}
+		return NONE;
+	}
+
+	/**
+	 * This method unlinks a node from the tree, rebalances it, and frees the node's slot.
+	 * A node with two children takes its successor's element, and the successor is unlinked instead.
+	 * @param n The node to remove.
+	 */
+	private void remove(int n) {
+		if ((left[n] != NONE) && (right[n] != NONE)) {
+			int min = right[n];
+			while (left[min] != NONE)
+				min = left[min];
+			data[n] = data[min];
+			n = min;
+		}
+
+		// Now the node has at most one child, which takes its place
+		int child = (left[n] != NONE) ? left[n] : right[n];
+		int p = parent[n];
+		if (p == NONE)
+			root = child;
+		else if (left[p] == n)
+			left[p] = child;
+		else
+			right[p] = child;
+		if (child != NONE)
+			parent[child] = p;
+
+		release(n);
+		rebalance(p);
+		size--;
+		modCount++;
+	}
+
+	/**
+	 * This method finds the smallest node in a subtree.
+	 * @param n The root of the subtree.
+	 * @return The leftmost node, or NONE for an empty subtree.
+	 */
+	private int first(int n) {
+		if (n != NONE) {
+			while (left[n] != NONE)
+				n = left[n];
+		}
+		return n;
+	}
+
+	/**
+	 * This method finds the next node in order by following parent links.
+	 * @param n The current node.
+	 * @return The next node in order, or NONE if this was the last one.
+	 */
+	private int successor(int n) {
+		if (right[n] != NONE)
+			return first(right[n]);
+		// Climb until we come up out of a left subtree
+		int p = parent[n];
+		while ((p != NONE) && (right[p] == n)) {
+			n = p;
+			p = parent[p];
+		}
+		return p;
+	}
+
+	/**
+	 * This method finds the next node in pre-order by following parent links.
+	 * @param n The current node.
+	 * @return The next node in pre-order, or NONE if this was the last one.
+	 */
+	private int preOrderNext(int n) {
+		if (left[n] != NONE)
+			return left[n];
+		if (right[n] != NONE)
+			return right[n];
+		// Climb until there is a right subtree we haven't visited yet
+		int p = parent[n];
+		while ((p != NONE) && ((right[p] == n) || (right[p] == NONE))) {
+			n = p;
+			p = parent[p];
+		}
+		return (p == NONE) ? NONE : right[p];
+	}
+
+	/**
+	 * This method finds the first node in post-order, which is the deepest node down the left side.
+	 * @param n The root of the subtree.
+	 * @return The first node in post-order, or NONE for an empty subtree.
+	 */
+	private int postOrderFirst(int n) {
+		if (n == NONE)
+			return NONE;
+		while (true) {
+			if (left[n] != NONE)
+				n = left[n];
+			else if (right[n] != NONE)
+				n = right[n];
+			else
+				return n;
+		}
+	}
+
+	/**
+	 * This method finds the next node in post-order by following parent links.
+	 * @param n The current node.
+	 * @return The next node in post-order, or NONE if this was the last one.
+	 */
+	private int postOrderNext(int n) {
+		int p = parent[n];
+		// Coming up out of a left subtree means the right subtree comes next
+		if ((p != NONE) && (left[p] == n) && (right[p] != NONE))
+			return postOrderFirst(right[p]);
+		return p;
+	}
+
+	/**
+	 * This method walks from a node up to the root, fixing cached heights, sizes and aggregates,
+	 * and rotating wherever a subtree has become unbalanced.
+	 * @param n The lowest node whose subtree changed.
+	 */
+	private void rebalance(int n) {
+		while (n != NONE) {
+			int balance = height(left[n]) - height(right[n]);
+			if (balance > 1) {
+				// Left-right case needs the left child rotated first
+				if (height(left[left[n]]) < height(right[left[n]]))
+					leftRotate(left[n]);
+				n = rightRotate(n);
+			}
+			else if (balance < -1) {
+				// Right-left case needs the right child rotated first
+				if (height(right[right[n]]) < height(left[right[n]]))
+					rightRotate(right[n]);
+				n = leftRotate(n);
+			}
+			else
+				update(n);
+			n = parent[n];
+		}
+	}
+
+	/**
+	 * This method returns the cached height of a subtree.
+	 * @param n The root of the subtree.
+	 * @return The height, or -1 for an empty subtree.
+	 */
+	private int height(int n) {
+		return (n == NONE) ? -1 : height[n];
+	}
+
+	/**
+	 * This method returns the cached size of a subtree.
+	 * @param n The root of the subtree.
+	 * @return The number of nodes, or 0 for an empty subtree.
+	 */
+	private int count(int n) {
+		return (n == NONE) ? 0 : count[n];
+	}
+
+	/**
+	 * This method returns the cached aggregate of a subtree.
+	 * @param n The root of the subtree.
+	 * @return The aggregate, or the monoid's identity for an empty subtree.
+	 */
+	@SuppressWarnings("unchecked")
+	private T aggregate(int n) {
+		return (n == NONE) ? monoid.identity() : (T) aggregate[n];
+	}
+
+	/**
+	 * This method recomputes a node's height, size and aggregate from its children's cached values.
+	 * @param n The node to update.
+	 */
+	private void update(int n) {
+		int l = left[n];
+		int r = right[n];
+		height[n] = Math.max(height(l), height(r)) + 1;
+		count[n] = count(l) + count(r) + 1;
+		if (monoid != null)
+			aggregate[n] = monoid.combine(monoid.combine(aggregate(l), data(n)), aggregate(r));
+	}
+
+	/**
+	 * This method rotates a node down to the left, and keeps the cached values right.
+	 * @param n The node to rotate.
+	 * @return The node that took its place.
+	 */
+	private int leftRotate(int n) {
+		int r = right[n];
+		replaceChild(n, r);
+		right[n] = left[r];
+		if (right[n] != NONE)
+			parent[right[n]] = n;
+		left[r] = n;
+		parent[n] = r;
+		update(n);
+		update(r);
+		return r;
+	}
+
+	/**
+	 * This method rotates a node down to the right, and keeps the cached values right.
+	 * @param n The node to rotate.
+	 * @return The node that took its place.
+	 */
+	private int rightRotate(int n) {
+		int l = left[n];
+		replaceChild(n, l);
+		left[n] = right[l];
+		if (left[n] != NONE)
+			parent[left[n]] = n;
+		right[l] = n;
+		parent[n] = l;
+		update(n);
+		update(l);
+		return l;
+	}
+
+	/**
+	 * This method points a node's parent at a different child, for rotations.
+	 * @param n The node being replaced.
+	 * @param replacement The node taking its place.
+	 */
+	private void replaceChild(int n, int replacement) {
+		int p = parent[n];
+		if (p == NONE)
+			root = replacement;
+		else if (left[p] == n)
+			left[p] = replacement;
+		else
+			right[p] = replacement;
+		parent[replacement] = p;
+	}
+
+
+	/**
+	 * This is an in-order iterator that follows parent links instead of keeping a stack.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	private class InOrderIterator implements Iterator<T> {
+
+		/** The node next() will return. */
+		private int next = first(root);
+		/** The node next() returned last, or NONE if it can't be removed. */
+		private int lastReturned = NONE;
+		/** The modification count this iterator expects the tree to have. */
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next != NONE;
+		}
+
+		@Override
+		public T next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next == NONE)
+				throw new NoSuchElementException();
+			lastReturned = next;
+			next = successor(next);
+			return data(lastReturned);
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturned == NONE)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			// A node with two children takes its successor's element, so that node is what comes next
+			if ((left[lastReturned] != NONE) && (right[lastReturned] != NONE))
+				next = lastReturned;
+			ArrayAVLTree.this.remove(lastReturned);
+			expectedModCount = modCount;
+			lastReturned = NONE;
+		}
+	}
+}
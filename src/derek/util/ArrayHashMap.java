@@ -1,11 +1,14 @@
 package derek.util;
 
+import java.lang.reflect.Array;
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
-import java.util.Arrays;
+import java.util.AbstractSet;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -13,97 +16,231 @@ import java.util.Set;
  * Chanllenging thing is challenging.
  * This also extends AbstractMap and uses generic types, so that its not a
  * complete waste of code.
- * 
+ *
+ * Entries live in a single flat table using open addressing with linear probing.
+ * Keys and values are interleaved in one Object array, and the hash of every key
+ * is cached in a parallel int array so probing rarely has to call equals.
+ * The table size is always a power of two, and hash codes are mixed before they
+ * are masked into it. Callers can supply a HashStrategy to control hashing and equality.
+ *
+ * Growing is incremental. When the table fills up a table twice the size is created,
+ * and every put of a new key or remove of an existing one after that migrates a few slots
+ * from the old table into it. Lookups check both tables while a migration is running, so
+ * no single call ever pays for moving the whole map at once.
+ *
+ * The key set, values, and entry set are live views backed by the tables. Their iterators
+ * are fail-fast, support remove, and hand out a single reusable entry, so a full scan
+ * doesn't allocate anything per entry.
+ *
  * @author Derek Batts <dsbatts@ncsu.edu>
  */
 public class ArrayHashMap<K, V> extends AbstractMap<K, V> {
 
-	/** The default number of buckets, if no number is given. */
+	/** The default number of slots, if no number is given. */
 	private static final int DEFAULT_SIZE = 16;
 	/** The default load-factor, if no factor is given. */
 	private static final float DEFAULT_LOADFACTOR = 0.6f;
-	
-	/** Factor used to determine when to increase the bucket count. */
+	/** The most entries a single call will migrate from the old table. */
+	private static final int REHASH_MOVES = 4;
+	/** The most empty old slots a single call will skip over while migrating. */
+	private static final int REHASH_EMPTY_VISITS = REHASH_MOVES * 10;
+	/** The number of keys the batch methods hash before they start probing. */
+	private static final int BATCH_SIZE = 64;
+
+	/** Factor used to determine when to increase the slot count. */
 	private float loadFactor;
-	/** The number of buckets to start out with. */
+	/** The number of slots to start out with. */
 	private int initialCapacity;
+	/** The strategy used to hash and compare keys. */
+	private HashStrategy<? super K> strategy;
 
 	/**
-	 * The 3D array of Objects used to map.
-	 * The outer array contains the "buckets". A bucket is a 2D array or a "list of arrays". 
-	 * Each array in the bucket has a size of two and holds two Objects, a key and value.
-	 * The key is always stored in position 0, and the value is always stored in position 1.
+	 * The flat array of Objects used to map.
+	 * Slot i stores its key at position 2i and its value at position 2i + 1.
+	 * A slot whose key is null is empty.
 	 */
-	private Object[][][] buckets;
+	private Object[] table;
+	/** The cached hash of the key stored in each slot. */
+	private int[] hashes;
 	/** The number of key-value pairs stored in this map. */
 	private int size = 0;
-	
-	
+	/** The number of structural changes made to this map, so iterators can fail fast. */
+	private int modCount = 0;
+	/** The number of pairs this map can hold before it has to grow. */
+	private int threshold;
+
+	/** The table being migrated away from, or null if no migration is running. */
+	private Object[] oldTable;
+	/** The cached hashes of the old table, or null if no migration is running. */
+	private int[] oldHashes;
+	/** Every old slot below this index has already been migrated. */
+	private int rehashIndex;
+
+	/** The hashes of the current batch of keys, reused by every batch call. */
+	private int[] batchHashes;
+
+	/** The live view of the keys, created the first time it is asked for. */
+	private Set<K> keySet;
+	/** The live view of the values, created the first time it is asked for. */
+	private Collection<V> values;
+	/** The live view of the entries, created the first time it is asked for. */
+	private Set<Map.Entry<K, V>> entrySet;
+
+
 	/**
-	 * This constructs an empty Array-based HashMap with the default number of buckets,
+	 * This constructs an empty Array-based HashMap with the default number of slots,
 	 * and the default load-factor.
 	 */
 	public ArrayHashMap(){
 		this(DEFAULT_SIZE, DEFAULT_LOADFACTOR);
 	}
-	
-	
+
+
 	/**
-	 * This constructs and Array-based HashMap with the given initial number of buckets.
-	 * @param initialCapacity The initial number of buckets to use (default is 16).
+	 * This constructs and Array-based HashMap with the given initial number of slots.
+	 * @param initialCapacity The initial number of slots to use (default is 16).
 	 */
 	public ArrayHashMap(int initialCapacity) {
 		this(initialCapacity, DEFAULT_LOADFACTOR);
 	}
-	
-	
+
+
 	/**
-	 * This constructs an empty Array-based HashMap with a given initial number of buckets and
+	 * This constructs an empty Array-based HashMap with a given initial number of slots and
 	 * a given load-factor.
-	 * @param initialCapacity The initial number of buckets to use (default is 16).
+	 * @param initialCapacity The initial number of slots to use (default is 16).
 	 * @param loadFactor The initial load-factor that will determine when to increase the number
-	 * 		  of buckets (default is 0.6).
+	 * 		  of slots (default is 0.6). Must be between 0 and 1, since every entry needs its own slot.
 	 */
 	public ArrayHashMap(int initialCapacity, float loadFactor) {
+		this(initialCapacity, loadFactor, HashStrategy.<K>defaultStrategy());
+	}
+
+
+	/**
+	 * This constructs an empty Array-based HashMap with the default number of slots and
+	 * load-factor, that hashes and compares keys using the given strategy.
+	 * @param strategy The strategy used to hash and compare keys.
+	 */
+	public ArrayHashMap(HashStrategy<? super K> strategy) {
+		this(DEFAULT_SIZE, DEFAULT_LOADFACTOR, strategy);
+	}
+
+
+	/**
+	 * This constructs an empty Array-based HashMap with a given initial number of slots,
+	 * a given load-factor, and a given strategy for hashing and comparing keys.
+	 * @param initialCapacity The initial number of slots to use (default is 16).
+	 * 		  This is rounded up to a power of two.
+	 * @param loadFactor The initial load-factor that will determine when to increase the number
+	 * 		  of slots (default is 0.6). Must be between 0 and 1, since every entry needs its own slot.
+	 * @param strategy The strategy used to hash and compare keys.
+	 */
+	public ArrayHashMap(int initialCapacity, float loadFactor, HashStrategy<? super K> strategy) {
+		if (initialCapacity <= 0)
+			throw new IllegalArgumentException("Map must have an initial capacity > 0");
+		if (!(loadFactor > 0 && loadFactor < 1))
+			throw new IllegalArgumentException("Load factor must be between 0 and 1");
+		if (strategy == null)
+			throw new IllegalArgumentException("Map must have a hash strategy");
 		this.loadFactor = loadFactor;
-		this.initialCapacity = initialCapacity;
-		buckets = new Object[initialCapacity][][];
+		this.initialCapacity = Hashing.tableSizeFor(initialCapacity);
+		this.strategy = strategy;
+		allocate(this.initialCapacity);
 	}
-	
-	
+
+
 	/**
-	 * This method uses a hashing function to map a given hash code to a range of integers we can get an index from.
+	 * This method hashes a key with the map's strategy and mixes the result, so that
+	 * clustered hash codes still spread out over the whole table.
 	 * This is to be used in conjunction with the toIndex method.
-	 * @param hashCode The hash code to map.
-	 * @return The map hashed code.
+	 * @param key The key to hash.
+	 * @return The mixed hash of the key.
 	 */
-	private int hash(int hashCode) {
-		// TODO stop the hacks
-		if (hashCode < 0)
-			return hashCode *-1;
-		return hashCode;
+	@SuppressWarnings("unchecked")
+	private int hash(Object key) {
+		return Hashing.mix(strategy.hashCode((K) key));
 	}
 
-	
+
 	/**
-	 * This method converts a mapped hash code into a usable index for this HashMap.
+	 * This method converts a mixed hash into a usable slot index for a table.
+	 * Since the table size is a power of two, this is just a mask of the low bits.
 	 * @param hash The result of the hashing function.
+	 * @param hs The hashes array of the table the index is for.
 	 * @return A usable index derived from the hashing function.
 	 */
-	private int toIndex(int hash) {
-		// TODO srsly stop the hacks
-		return hash % buckets.length;
+	private static int toIndex(int hash, int[] hs) {
+		return hash & (hs.length - 1);
+	}
+
+
+	/**
+	 * This method gets the slot that comes after the given one, wrapping around at the end of the table.
+	 * @param index The current slot.
+	 * @param hs The hashes array of the table being probed.
+	 * @return The next slot to probe.
+	 */
+	private static int nextIndex(int index, int[] hs) {
+		return (index + 1) & (hs.length - 1);
+	}
+
+
+	/**
+	 * This method checks if a stored key matches the key being looked up.
+	 * @param stored The key stored in a slot.
+	 * @param key The key being looked up.
+	 * @return True if the strategy says the keys are equal.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean keyEquals(Object stored, Object key) {
+		return (stored == key) || strategy.equals((K) stored, (K) key);
 	}
 
-	
+
+	/**
+	 * This is a helper method to create fresh, empty tables with the given number of slots.
+	 * @param capacity The number of slots to create.
+	 */
+	private void allocate(int capacity) {
+		table = new Object[capacity * 2];
+		hashes = new int[capacity];
+		threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+	}
+
+
 	/**
 	 * This method completely empties all the Keys and Values and resets the HashMap to its
-	 * default number of buckets.
+	 * default number of slots.
 	 */
 	@Override
 	public void clear() {
-		buckets = new Object[initialCapacity][][];
+		allocate(initialCapacity);
+		oldTable = null;
+		oldHashes = null;
 		size = 0;
+		modCount++;
+	}
+
+
+	/**
+	 * This is a helper method to find the slot holding the given key in one table.
+	 * @param t The table to look in.
+	 * @param hs The cached hashes of that table.
+	 * @param key The key to look for.
+	 * @param h The mixed hash of the key.
+	 * @return The slot holding the key, or -1 if the key is not in the table.
+	 */
+	private int findSlot(Object[] t, int[] hs, Object key, int h) {
+		// Probe from the key's home slot until we hit the key or an empty slot
+		for (int i = toIndex(h, hs) ; ; i = nextIndex(i, hs)) {
+			Object k = t[i << 1];
+			if (k == null)
+				return -1;
+			// Compare the cached hash first, so equals is only called on likely matches
+			if ((hs[i] == h) && keyEquals(k, key))
+				return i;
+		}
 	}
 
 
@@ -115,28 +252,12 @@ public class ArrayHashMap<K, V> extends AbstractMap<K, V> {
 	 */
 	@Override
 	public boolean containsKey(Object key) {
-		// Generate an index for the array of buckets using the key's hashcode
-		int index = toIndex(hash(key.hashCode()));
-		
-		// Return false if the key hashes to a bucket that hasn't been initialized
-		if (buckets[index] == null)
-			return false;
-		
-		// Loop through the list of arrays in the bucket
-		for (int i = 0 ; i < buckets[index].length ; i++) {
-			// Get the current key
-			Object k = buckets[index][i][0];
-			// Check for end-of-list
-			if (k == null)
-				return false;
-			// Compare keys
-			if ((k.hashCode() == key.hashCode()) && (k.equals(key)))
-				return true;
-		}
-		
-		return false;
+		int h = hash(key);
+		if (findSlot(table, hashes, key, h) >= 0)
+			return true;
+		return (oldTable != null) && (findSlot(oldTable, oldHashes, key, h) >= 0);
 	}
-	
+
 
 	/**
 	 * This method checks if a given value exists in this HashMap.
@@ -145,22 +266,23 @@ public class ArrayHashMap<K, V> extends AbstractMap<K, V> {
 	 */
 	@Override
 	public boolean containsValue(Object value) {
-		// Look through the buckets
-		for (int i = 0 ; i < buckets.length ; i++) {
-			// Move on if we find an empty bucket
-			if (buckets[i] == null)
+		return containsValue(table, value) || ((oldTable != null) && containsValue(oldTable, value));
+	}
+
+
+	/**
+	 * This is a helper method to check the occupied slots of one table for a value.
+	 * @param t The table to look in.
+	 * @param value The value to look for.
+	 * @return True if the value is in the table, false if not.
+	 */
+	private static boolean containsValue(Object[] t, Object value) {
+		for (int i = 0 ; i < t.length ; i += 2) {
+			if (t[i] == null)
 				continue;
-			// Look through the list of arrays in this bucket
-			inner: for (int j = 0 ; j < buckets[i].length ; j++) {
-				// Get the value
-				Object v = buckets[i][j][1];
-				// Move on if null
-				if(v == null)
-					break inner;
-				// Check equals
-				if (v.equals(value))
-					return true;
-			}
+			Object v = t[i + 1];
+			if ((v == null) ? (value == null) : v.equals(value))
+				return true;
 		}
 		return false;
 	}
@@ -168,20 +290,16 @@ public class ArrayHashMap<K, V> extends AbstractMap<K, V> {
 
 
 	/**
-	 * This method will create and return an entry set of all the key-value pairs in this HashMap.
-	 * @return An entry set of all the key-value pairss in this HashMap.
+	 * This method returns a live set view of all the key-value pairs in this HashMap.
+	 * The iterator hands out the same entry object on every call to next, so an entry
+	 * should be copied if it needs to outlive the next step of the iteration.
+	 * @return A set view of all the key-value pairss in this HashMap.
 	 */
 	@Override
 	public Set<Map.Entry<K, V>> entrySet() {
-		// Create and empty set
-		Set<Map.Entry<K, V>> set = new HashSet<Map.Entry<K, V>>();
-		// Get all the keys
-		Set<K> keys = keySet();
-		// Add each key with its mapped value
-		for (K key : keys) 
-			set.add(new AbstractMap.SimpleEntry<K, V>(key, get(key)));
-		
-		return set;
+		if (entrySet == null)
+			entrySet = new EntrySet();
+		return entrySet;
 	}
 
 
@@ -193,26 +311,25 @@ public class ArrayHashMap<K, V> extends AbstractMap<K, V> {
 	 */
 	@Override
 	public V get(Object key) {
-		// Generate an index for the array of buckets using the key's hashcode
-		int index = toIndex(hash(key.hashCode()));
-		
-		// Return false if the key hashes to a bucket that hasn't been initialized
-		if (buckets[index] == null)
+		return get(key, hash(key));
+	}
+
+
+	/**
+	 * This is a helper method to get the value at a key whose hash is already known.
+	 * @param key The key for the value we are looking for.
+	 * @param h The mixed hash of the key.
+	 * @return The value associated with the given key or null if the key doesn't exist in the map.
+	 */
+	@SuppressWarnings("unchecked")
+	private V get(Object key, int h) {
+		int slot = findSlot(table, hashes, key, h);
+		if (slot >= 0)
+			return (V) table[(slot << 1) + 1];
+		if (oldTable == null)
 			return null;
-		
-		// Loop through the list of arrays in the bucket
-		for (int i = 0 ; i < buckets[index].length ; i++) {
-			// Get the current key
-			Object k = buckets[index][i][0];
-			// Check for end-of-list
-			if (k == null)
-				return null;
-			// Compare keys
-			if ((k.hashCode() == key.hashCode()) && (k.equals(key)))
-				return (V) buckets[index][i][1];
-		}
-			
-		return null;
+		slot = findSlot(oldTable, oldHashes, key, h);
+		return (slot < 0) ? null : (V) oldTable[(slot << 1) + 1];
 	}
 
 
@@ -229,25 +346,14 @@ public class ArrayHashMap<K, V> extends AbstractMap<K, V> {
 
 
 	/**
-	 * This method creates and returns a set of all the keys in this HashMap.
-	 * @return A new set of all the keys in this map.
+	 * This method returns a live set view of all the keys in this HashMap.
+	 * @return A set view of all the keys in this map.
 	 */
 	@Override
 	public Set<K> keySet() {
-		Set<K> set  = new HashSet<K>();
-		
-		// Loop through all the buckets
-		for (int i = 0 ; i < buckets.length ; i++) {
-			// Skip an empty bucket
-			if (buckets[i] == null)
-				continue;
-			
-			// Loop through all the entries in the bucket's list of arrays, and add the values to the list
-			for (int j = 0 ; j < buckets[i].length ; j++) {
-				set.add((K) buckets[i][j][0]);
-			}
-		}
-		return set;
+		if (keySet == null)
+			keySet = new KeySet();
+		return keySet;
 	}
 
 
@@ -261,110 +367,247 @@ public class ArrayHashMap<K, V> extends AbstractMap<K, V> {
 	 */
 	@Override
 	public V put(K key, V value) {
-		// Generate an index for the array of buckets using the key's hashcode
-		int index = toIndex(hash(key.hashCode()));
-		
-		// Check for empty list of arrays
-		if (buckets[index] == null) {
-			// Create new list of arrays
-			buckets[index] = new Object[DEFAULT_SIZE][2];
-			// Store the key and value
-			buckets[index][0][0] = key;
-			buckets[index][0][1] = value;
-			size++;
-			return value;
-		}
-		
-		int listLength = buckets[index].length;
-		// Check for full list of arrays
-		if ((buckets[index][listLength - 1][0] != null)) {
-			// Double the size of the list of arrays
-			buckets[index] = Arrays.copyOf(buckets[index], listLength * 2);
-			growBuckets();
-			// Store the key and value at the end of the list
-			buckets[index][listLength][0] = key;
-			buckets[index][listLength][1] = value;
-			size++;
-			return value;
-		}
-		
-		// Loop to the end of a list of arrays
-		for (int i = 0 ; i < listLength - 1 ; i++) {
-			if (buckets[index][i][0] == null) {
-				// Store the key and value at the end of the array
-				buckets[index][i][0] = key;
-				buckets[index][i][1] = value;
-				size++;
+		return put(key, hash(key), value);
+	}
+
+
+	/**
+	 * This is a helper method to store a key-value pair whose key's hash is already known.
+	 * @param key The key to store this value with.
+	 * @param h The mixed hash of the key.
+	 * @param value The value to store.
+	 * @return V The value that was stored.
+	 */
+	private V put(K key, int h, V value) {
+		// Probe for the key or the first empty slot in its run
+		int i;
+		for (i = toIndex(h, hashes) ; table[i << 1] != null ; i = nextIndex(i, hashes)) {
+			Object k = table[i << 1];
+			if ((hashes[i] == h) && keyEquals(k, key)) {
+				// The key is already here, so just swap in the new value
+				table[(i << 1) + 1] = value;
 				return value;
 			}
 		}
 
-		// Bad things happened
-		throw new IllegalStateException("Key/Value pair was not stored for some strange reason.");
+		// A key that hasn't been migrated yet gets its value swapped in place
+		if (oldTable != null) {
+			int slot = findSlot(oldTable, oldHashes, key, h);
+			if (slot >= 0) {
+				oldTable[(slot << 1) + 1] = value;
+				return value;
+			}
+
+			// Only inserts do migration work, since moving entries counts as a modification,
+			// and overwriting a value mustn't break open iterators. The move may fill the slot we found.
+			rehashStep();
+			for (i = toIndex(h, hashes) ; table[i << 1] != null ; i = nextIndex(i, hashes));
+		}
+
+		// Start growing first if this pair would push us past the load-factor, then find a new empty slot
+		if (size + 1 > threshold) {
+			if (hashes.length == Hashing.MAXIMUM_CAPACITY)
+				throw new IllegalStateException("Map cannot grow past " + Hashing.MAXIMUM_CAPACITY + " slots");
+			startRehash(hashes.length * 2);
+			for (i = toIndex(h, hashes) ; table[i << 1] != null ; i = nextIndex(i, hashes));
+		}
+
+		table[i << 1] = key;
+		table[(i << 1) + 1] = value;
+		hashes[i] = h;
+		size++;
+		modCount++;
+		return value;
+	}
+
+
+	/**
+	 * This is a helper method to start migrating every entry into a table with the given number of slots.
+	 * The current table becomes the old table, and is drained a little at a time by rehashStep.
+	 * If a previous migration hasn't finished yet, it is finished here first.
+	 * @param capacity The new number of slots.
+	 */
+	private void startRehash(int capacity) {
+		while (oldTable != null)
+			rehash(Integer.MAX_VALUE, Integer.MAX_VALUE);
+		oldTable = table;
+		oldHashes = hashes;
+		rehashIndex = 0;
+		allocate(capacity);
+		modCount++;
+	}
+
+
+	/**
+	 * This is a helper method to do one bounded unit of migration work, if a migration is running.
+	 */
+	private void rehashStep() {
+		if (oldTable != null)
+			rehash(REHASH_MOVES, REHASH_EMPTY_VISITS);
 	}
 
 
 	/**
-	 * This is a helper method to grow the number of buckets this HashMap is using.
-	 * It will grow them by doubling the number of buckets present.
+	 * This is a helper method to migrate old slots into the new table, in slot order.
+	 * Each migrated entry is removed from the old table with backward-shift deletion, which
+	 * can only pull later entries into the slot being drained, so every old slot below
+	 * rehashIndex stays empty. The cached hashes are reused, so no key has its hashCode called again.
+	 * @param moves The most entries to migrate.
+	 * @param emptyVisits The most empty old slots to skip over.
 	 */
-	private void growBuckets() {
-		// A counter for the number of buckets that are at least half-full
-		int numHalfFull = 0;
-		
-		// Loop through all the buckets
-		for (int i = 0 ; i < buckets.length ; i++) {
-			
-			// If a list of arrays has not been created, move on
-			if (buckets[i] == null)
+	private void rehash(int moves, int emptyVisits) {
+		while (rehashIndex < oldHashes.length) {
+			Object k = oldTable[rehashIndex << 1];
+			if (k == null) {
+				rehashIndex++;
+				if (--emptyVisits <= 0)
+					return;
 				continue;
-			
-			// Count the number of lists of arrays that have a key/value stored
-			int j;
-			for (j = 1 ; j < buckets[i].length ; j++){
-				if (buckets[i][j][0] == null)
-					break;
 			}
-			
-			// Check if the number we counted is at least half of the size of the list of arrays
-			if (((double) j / (double) buckets[i].length) >= 0.5)
-				numHalfFull++;
-		}
-		
-		// If 60% of the buckets are at least half-full, double the amount of buckets
-		if (((double) numHalfFull / (double) buckets.length) >= loadFactor)
-			buckets = Arrays.copyOf(buckets, buckets.length * 2);
-	}
-	
-	
-	/**
-	 * This is a helper method to shift all the elements in a bucket to remove and gaps there may be.
-	 * @param bucket The bucket to work on.
-	 */
-	private void shiftBucket(Object[][] bucket) {
-		// Look through the buckets list of arrays for gaps
-		for (int i = 0 ; i < bucket.length ; i++) {
-			// If we find a gap, shift the next element down
-			if ((bucket[i][0] == null) && (i < (bucket.length - 1)) && (bucket[i + 1][0] != null)) {
-				bucket[i][0] = bucket[i + 1][0];
-				bucket[i][1] = bucket[i + 1][1];
-				bucket[i + 1][0] = null;
-				bucket[i + 1][1] = null;
+			if (moves-- <= 0)
+				return;
+
+			// Keys are never in both tables, so the first empty slot in the new run is the spot
+			int h = oldHashes[rehashIndex];
+			int i = toIndex(h, hashes);
+			while (table[i << 1] != null)
+				i = nextIndex(i, hashes);
+			table[i << 1] = k;
+			table[(i << 1) + 1] = oldTable[(rehashIndex << 1) + 1];
+			hashes[i] = h;
+			deleteSlot(oldTable, oldHashes, rehashIndex);
+			modCount++;
+		}
+
+		// Everything has been moved, so let the old table go
+		oldTable = null;
+		oldHashes = null;
+	}
+
+
+	/**
+	 * This is a helper method to empty a slot without leaving a gap in any probe run.
+	 * Entries further along the run are shifted back into the hole when their home
+	 * slot allows it (backward-shift deletion), so no tombstones are ever needed.
+	 * @param t The table to delete from.
+	 * @param hs The cached hashes of that table.
+	 * @param slot The slot to empty.
+	 */
+	private static void deleteSlot(Object[] t, int[] hs, int slot) {
+		int hole = slot;
+		for (int i = nextIndex(slot, hs) ; t[i << 1] != null ; i = nextIndex(i, hs)) {
+			int home = toIndex(hs[i], hs);
+			if (Hashing.canShiftBack(home, hole, i)) {
+				t[hole << 1] = t[i << 1];
+				t[(hole << 1) + 1] = t[(i << 1) + 1];
+				hs[hole] = hs[i];
+				hole = i;
 			}
 		}
+		t[hole << 1] = null;
+		t[(hole << 1) + 1] = null;
+		hs[hole] = 0;
 	}
 
 
 
 	/**
 	 * This method will store all the key value pairs from a given map into this HashMap.
+	 * The table is grown once up front to fit them, instead of doubling over and over.
 	 * @param m The map to copy key-value pairs from.
 	 */
 	@Override
-	public void putAll(Map m) {
-		for (Object key : m.keySet()) {
-			Object value = m.get(key);
-			put((K) key, (V) value);
+	public void putAll(Map<? extends K, ? extends V> m) {
+		ensureCapacity(size + m.size());
+		for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+
+	/**
+	 * This method will store the key value pairs at matching positions of two arrays.
+	 * The table is grown once up front, and keys are hashed a batch at a time before
+	 * they are probed for, so the probes of one batch don't wait on each other's hashing.
+	 * @param keys The keys to store.
+	 * @param values The values to store, where values[i] goes with keys[i].
+	 */
+	public void putAll(K[] keys, V[] values) {
+		if (keys.length != values.length)
+			throw new IllegalArgumentException("There must be one value for every key");
+		ensureCapacity(size + keys.length);
+		int[] hs = batchHashes();
+		for (int start = 0 ; start < keys.length ; start += BATCH_SIZE) {
+			int end = Math.min(start + BATCH_SIZE, keys.length);
+			for (int i = start ; i < end ; i++)
+				hs[i - start] = hash(keys[i]);
+			for (int i = start ; i < end ; i++)
+				put(keys[i], hs[i - start], values[i]);
+		}
+	}
+
+
+	/**
+	 * This method looks up every key in an array and writes the values into a matching array.
+	 * Keys are hashed a batch at a time before they are probed for, and nothing is allocated.
+	 * Each key is probed for once, so keys mapped to null are counted without a second lookup.
+	 * @param keys The keys to look up.
+	 * @param out The array to fill, where out[i] gets the value of keys[i], or null if it isn't in the map.
+	 * @return The number of keys that were found.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getAll(K[] keys, V[] out) {
+		if (out.length < keys.length)
+			throw new IllegalArgumentException("Output array is shorter than the key array");
+		int found = 0;
+		int[] hs = batchHashes();
+		for (int start = 0 ; start < keys.length ; start += BATCH_SIZE) {
+			int end = Math.min(start + BATCH_SIZE, keys.length);
+			for (int i = start ; i < end ; i++)
+				hs[i - start] = hash(keys[i]);
+			for (int i = start ; i < end ; i++) {
+				Object[] t = table;
+				int slot = findSlot(t, hashes, keys[i], hs[i - start]);
+				if ((slot < 0) && (oldTable != null)) {
+					t = oldTable;
+					slot = findSlot(t, oldHashes, keys[i], hs[i - start]);
+				}
+				if (slot < 0) {
+					out[i] = null;
+					continue;
+				}
+				out[i] = (V) t[(slot << 1) + 1];
+				found++;
+			}
+		}
+		return found;
+	}
+
+
+	/**
+	 * This is a helper method to get the scratch array the batch methods hash into.
+	 * @return The scratch array, created the first time it is needed.
+	 */
+	private int[] batchHashes() {
+		if (batchHashes == null)
+			batchHashes = new int[BATCH_SIZE];
+		return batchHashes;
+	}
+
+
+	/**
+	 * This method grows the table right away so that it can hold the given number of pairs
+	 * without growing again. Unlike normal growth, this moves every entry in one go, which
+	 * is what a bulk load wants. It does nothing if the table is already big enough.
+	 * @param expectedSize The number of pairs the map should be able to hold.
+	 */
+	public void ensureCapacity(int expectedSize) {
+		if (expectedSize <= threshold)
+			return;
+		long needed = Math.max((long) Math.ceil(expectedSize / (double) loadFactor), (long) expectedSize + 1);
+		int capacity = Hashing.tableSizeFor((int) Math.min(needed, Hashing.MAXIMUM_CAPACITY));
+		if (capacity > hashes.length) {
+			startRehash(capacity);
+			rehash(Integer.MAX_VALUE, Integer.MAX_VALUE);
 		}
 	}
 
@@ -377,33 +620,29 @@ public class ArrayHashMap<K, V> extends AbstractMap<K, V> {
 	 * @return The value at the given key, or null if there is no such key.
 	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public V remove(Object key) {
-		// Generate an index for the array of buckets using the key's hashcode
-		int index = toIndex(hash(key.hashCode()));
-		
-		// Return false if the key hashes to a bucket that hasn't been initialized
-		if (buckets[index] == null)
-			return null;
-		
-		// Loop through the list of arrays in the bucket
-		for (int i = 0 ; i < buckets[index].length ; i++) {
-			// Get the current key
-			Object k = buckets[index][i][0];
-			// Check for end-of-list
-			if (k == null)
-				return null;
-			// Compare keys
-			if ((k.hashCode() == key.hashCode()) && (k.equals(key))) {
-				V v = (V) buckets[index][i][1];
-				buckets[index][i][0] = null;
-				buckets[index][i][1] = null;
-				shiftBucket(buckets[i]);
-				size--;
-				return v;
-			}
+		int h = hash(key);
+
+		// Check the new table first, then the old one if a migration is running
+		Object[] t = table;
+		int[] hs = hashes;
+		int slot = findSlot(t, hs, key, h);
+		if ((slot < 0) && (oldTable != null)) {
+			t = oldTable;
+			hs = oldHashes;
+			slot = findSlot(t, hs, key, h);
 		}
-			
-		return null;
+		if (slot < 0)
+			return null;
+
+		V v = (V) t[(slot << 1) + 1];
+		deleteSlot(t, hs, slot);
+		size--;
+		modCount++;
+		// Like put, only a remove that changed the map does migration work
+		rehashStep();
+		return v;
 	}
 
 
@@ -420,24 +659,365 @@ public class ArrayHashMap<K, V> extends AbstractMap<K, V> {
 
 
 	/**
-	 * This will create and return a list of all the values stored in this map.
-	 * @return A new list of all the values in this map.
+	 * This method returns a live collection view of all the values stored in this map.
+	 * @return A collection view of all the values in this map.
 	 */
 	@Override
 	public Collection<V> values() {
-		Collection<V> list  = new LinkedList<V>();
-		
-		// Loop through all the buckets
-		for (int i = 0 ; i < buckets.length ; i++) {
-			// Skip an empty bucket
-			if (buckets[i] == null)
-				continue;
-			
-			// Loop through all the entries in the bucket's list of arrays, and add the values to the list
-			for (int j = 0 ; j < buckets[i].length ; j++) {
-				list.add((V) buckets[i][j][1]);
+		if (values == null)
+			values = new Values();
+		return values;
+	}
+
+
+	/**
+	 * This is an inner class that walks the occupied slots of the new table, then the old table.
+	 * Each table is walked downwards, starting just below an empty slot. Backward-shift deletion
+	 * only moves entries from later in a run into earlier slots, so removing the current entry
+	 * only ever rearranges slots that have already been visited.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	private abstract class SlotIterator<E> implements Iterator<E> {
+
+		/** The table currently being walked. */
+		private Object[] t;
+		/** The cached hashes of the table currently being walked. */
+		private int[] hs;
+		/** The old table still to be walked, or null if there isn't one. */
+		private Object[] pendingTable = oldTable;
+		/** The cached hashes of the old table still to be walked. */
+		private int[] pendingHashes = oldHashes;
+		/** The slot the walk is currently at. */
+		private int index;
+		/** The number of slots left to look at in the current table. */
+		private int remaining;
+		/** The next occupied slot to return, or -1 if there are none left. */
+		private int nextSlot;
+
+		/** The table holding the slot returned last. */
+		protected Object[] lastTable;
+		/** The cached hashes of the table holding the slot returned last. */
+		private int[] lastHashes;
+		/** The slot returned last, or -1 if it was removed or nothing was returned yet. */
+		protected int lastSlot = -1;
+		/** The modification count this iterator expects the map to have. */
+		protected int expectedModCount = modCount;
+
+		/**
+		 * This constructs an iterator positioned before the first entry.
+		 */
+		private SlotIterator() {
+			begin(table, hashes);
+			advance();
+		}
+
+		/**
+		 * This starts walking a table from just below one of its empty slots.
+		 * Every table keeps at least one slot empty, so there always is one.
+		 * @param table The table to walk.
+		 * @param hashes The cached hashes of that table.
+		 */
+		private void begin(Object[] table, int[] hashes) {
+			t = table;
+			hs = hashes;
+			index = hs.length - 1;
+			while (t[index << 1] != null)
+				index--;
+			remaining = hs.length - 1;
+		}
+
+		/**
+		 * This finds the next occupied slot, moving on to the old table when the new one runs out.
+		 */
+		private void advance() {
+			while (true) {
+				while (remaining > 0) {
+					index = (index - 1) & (hs.length - 1);
+					remaining--;
+					if (t[index << 1] != null) {
+						nextSlot = index;
+						return;
+					}
+				}
+				if (pendingTable == null) {
+					nextSlot = -1;
+					return;
+				}
+				begin(pendingTable, pendingHashes);
+				pendingTable = null;
+				pendingHashes = null;
 			}
 		}
-		return list;
+
+		/**
+		 * This moves to the next occupied slot and returns it.
+		 * @return The slot of the next entry, in lastTable.
+		 */
+		protected int nextSlot() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (nextSlot < 0)
+				throw new NoSuchElementException();
+			lastTable = t;
+			lastHashes = hs;
+			lastSlot = nextSlot;
+			advance();
+			return lastSlot;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextSlot >= 0;
+		}
+
+		@Override
+		public void remove() {
+			if (lastSlot < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			// Delete straight from the slot, without doing any migration work
+			deleteSlot(lastTable, lastHashes, lastSlot);
+			size--;
+			modCount++;
+			expectedModCount = modCount;
+			lastSlot = -1;
+		}
+	}
+
+
+	/**
+	 * This is an inner class to iterate over the keys of the map.
+	 */
+	private final class KeyIterator extends SlotIterator<K> {
+		@Override
+		@SuppressWarnings("unchecked")
+		public K next() {
+			int slot = nextSlot();
+			return (K) lastTable[slot << 1];
+		}
+	}
+
+
+	/**
+	 * This is an inner class to iterate over the values of the map.
+	 */
+	private final class ValueIterator extends SlotIterator<V> {
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			int slot = nextSlot();
+			return (V) lastTable[(slot << 1) + 1];
+		}
+	}
+
+
+	/**
+	 * This is an inner class to iterate over the entries of the map.
+	 * Every call to next returns the same cursor, pointed at the next slot.
+	 */
+	private final class EntryIterator extends SlotIterator<Map.Entry<K, V>> {
+
+		/** The reusable entry handed out by next. */
+		private final Cursor cursor = new Cursor(this);
+
+		@Override
+		public Map.Entry<K, V> next() {
+			nextSlot();
+			return cursor;
+		}
+	}
+
+
+	/**
+	 * This is an inner class for the mutable entry handed out by the entry iterator.
+	 * It reads and writes straight through to the slot the iterator is on.
+	 */
+	private final class Cursor implements Map.Entry<K, V> {
+
+		/** The iterator this cursor belongs to. */
+		private final EntryIterator it;
+
+		/**
+		 * This constructs a cursor for the given iterator.
+		 * @param it The iterator whose current slot this cursor exposes.
+		 */
+		private Cursor(EntryIterator it) {
+			this.it = it;
+		}
+
+		/**
+		 * This checks that the cursor is still pointed at a live slot.
+		 */
+		private void check() {
+			if (it.lastSlot < 0)
+				throw new IllegalStateException("Entry is no longer in the map");
+			if (modCount != it.expectedModCount)
+				throw new ConcurrentModificationException();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public K getKey() {
+			check();
+			return (K) it.lastTable[it.lastSlot << 1];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			check();
+			return (V) it.lastTable[(it.lastSlot << 1) + 1];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V setValue(V value) {
+			check();
+			V old = (V) it.lastTable[(it.lastSlot << 1) + 1];
+			it.lastTable[(it.lastSlot << 1) + 1] = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object v = getValue();
+			return getKey().equals(e.getKey()) && ((v == null) ? (e.getValue() == null) : v.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			Object v = getValue();
+			return getKey().hashCode() ^ ((v == null) ? 0 : v.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
+
+	/**
+	 * This is an inner class for the live view of the keys.
+	 */
+	private final class KeySet extends AbstractSet<K> {
+		@Override
+		public Iterator<K> iterator() {
+			return new KeyIterator();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!containsKey(o))
+				return false;
+			ArrayHashMap.this.remove(o);
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			ArrayHashMap.this.clear();
+		}
+	}
+
+
+	/**
+	 * This is an inner class for the live view of the values.
+	 */
+	private final class Values extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new ValueIterator();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsValue(o);
+		}
+
+		@Override
+		public void clear() {
+			ArrayHashMap.this.clear();
+		}
+	}
+
+
+	/**
+	 * This is an inner class for the live view of the entries.
+	 */
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object key = e.getKey();
+			if ((key == null) || !containsKey(key))
+				return false;
+			Object v = get(key);
+			return (v == null) ? (e.getValue() == null) : v.equals(e.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!contains(o))
+				return false;
+			ArrayHashMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			ArrayHashMap.this.clear();
+		}
+
+		@Override
+		public Object[] toArray() {
+			return toArray(new Object[size]);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> T[] toArray(T[] a) {
+			// The iterator reuses one entry, so hand out copies here
+			if (a.length < size)
+				a = (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+			int i = 0;
+			for (Map.Entry<K, V> e : this)
+				a[i++] = (T) new AbstractMap.SimpleEntry<K, V>(e);
+			if (i < a.length)
+				a[i] = null;
+			return a;
+		}
 	}
 }
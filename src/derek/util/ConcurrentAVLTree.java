@@ -0,0 +1,920 @@
+package derek.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements a thread-safe AVL style balanced binary search tree for read-mostly use,
+ * after the concurrent AVL tree of Bronson, Casper, Chafi and Olukotun.
+ *
+ * Lookups don't take a lock or write to shared memory. Every node has a version number that
+ * changes whenever a rotation moves the node down and shrinks the range of elements under it.
+ * A lookup reads a node's version before following its child link, and checks the version again
+ * before trusting what it found there, so each step down the tree is validated hand over hand.
+ * If a node changed under it, a lookup backs up one level and tries again from there, rather
+ * than starting over from the root.
+ *
+ * Writers don't share a lock either. Each node is its own monitor, and a writer only locks the
+ * nodes it changes: the parent of a new leaf, a node and its parent when unlinking it, and the
+ * few nodes a rotation moves. Writers working in different parts of the tree run at the same time,
+ * and only lookups passing through a node that is being rotated have to retry.
+ *
+ * Removing an element whose node has two children doesn't move another node up to replace it,
+ * since that would change elements under readers all the way down. The node stays in the tree
+ * as a routing node that lookups pass through but don't return, and it is unlinked later
+ * once it has fewer than two children. Equal elements share one node, which counts them.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ConcurrentAVLTree<T extends Comparable<T>> implements Iterable<T> {
+
+	/** The version of a node that has been unlinked from the tree. */
+	private static final long UNLINKED = 0x1L;
+	/** The version bit set while a rotation is moving a node down. */
+	private static final long SHRINKING = 0x2L;
+	/** Added to a node's version each time a rotation moves it down. */
+	private static final long SHRINK_COUNT_INCREMENT = 0x4L;
+
+	/** How many times a lookup checks a shrinking node's version before waiting on its lock. */
+	private static final int SPIN_COUNT = 100;
+
+	/** The side of a node its left child is on. */
+	private static final int LEFT = -1;
+	/** The side of a node its right child is on. */
+	private static final int RIGHT = 1;
+
+	/** Lookup mode for an equal element. */
+	private static final int EXACT = 0;
+	/** Lookup mode for the largest element less than or equal to the target. */
+	private static final int FLOOR = 1;
+	/** Lookup mode for the smallest element greater than or equal to the target. */
+	private static final int CEILING = 2;
+	/** Lookup mode for the smallest element greater than the target. */
+	private static final int HIGHER = 3;
+
+	/** Returned by a node's condition when it needs nothing done. Heights are never negative. */
+	private static final int NOTHING_REQUIRED = -1;
+	/** Returned by a node's condition when it needs a rotation. */
+	private static final int REBALANCE_REQUIRED = -2;
+	/** Returned by a node's condition when it is a routing node that can be unlinked. */
+	private static final int UNLINK_REQUIRED = -3;
+
+	/** Returned by a walk that ran into a node being changed under it. */
+	private static final Object RETRY = new Object();
+
+	/**
+	 * The node the root hangs off, as its right child. It never moves or changes version,
+	 * so every walk can start from it and every node in the tree has a parent to lock.
+	 */
+	private final Node<T> holder = new Node<T>(null, null);
+
+	/** The number of elements in this tree. */
+	private final LongAdder size = new LongAdder();
+
+
+	/**
+	 * This is a node of the tree. Each node is its own lock, and only a node's own lock is held
+	 * to change its children, its height, its count or its version. A node's parent link is only
+	 * changed while holding the lock of the parent it had before.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	private static final class Node<E> {
+
+		/** The data this node contains. It is only replaced by an equal element. */
+		private volatile E data;
+		/** How many equal elements this node holds, or 0 if it is a routing node. */
+		private volatile int count;
+		/** The height of the subtree under this node, where a leaf has height 0. */
+		private volatile int height;
+		/** The version number lookups validate against, or UNLINKED. */
+		private volatile long version;
+		/** The left child node. */
+		private volatile Node<E> leftChild;
+		/** The right child node. */
+		private volatile Node<E> rightChild;
+		/** The parent node in the tree. */
+		private volatile Node<E> parent;
+
+		/**
+		 * This will construct a leaf node holding one element.
+		 * @param data The data this node will contain.
+		 * @param parent The parent node this node is under.
+		 */
+		private Node(E data, Node<E> parent) {
+			this.data = data;
+			this.parent = parent;
+			count = (data == null) ? 0 : 1;
+		}
+
+		/**
+		 * This gets the child on one side of this node.
+		 * @param side LEFT or RIGHT, or any negative or positive number.
+		 * @return The child on that side.
+		 */
+		private Node<E> child(int side) {
+			return (side < 0) ? leftChild : rightChild;
+		}
+
+		/**
+		 * This sets the child on one side of this node.
+		 * @param side LEFT or RIGHT, or any negative or positive number.
+		 * @param child The new child.
+		 */
+		private void setChild(int side, Node<E> child) {
+			if (side < 0)
+				leftChild = child;
+			else
+				rightChild = child;
+		}
+
+		/**
+		 * This creates and returns a simple representation of a node in string form.
+		 * @return A string representing this node.
+		 */
+		public String toString() {
+			return "" + data;
+		}
+	}
+
+
+	/**
+	 * This method returns the number of elements in the tree. Other threads may change it at any time.
+	 * @return The number of elements.
+	 */
+	public int size() {
+		return (int) size.sum();
+	}
+
+	/**
+	 * This method returns the height of the tree, counting routing nodes.
+	 * While writers are running, the tree may be briefly out of balance.
+	 * @return The height of the root, where a single node has height 0 and an empty tree has height -1.
+	 */
+	public int height() {
+		return height(holder.rightChild);
+	}
+
+	/**
+	 * This method finds an element equal to the given one.
+	 * @param element The element to look for.
+	 * @return The element in the tree, or null if there isn't one.
+	 */
+	public T find(T element) {
+		return dataOf(search(element, EXACT));
+	}
+
+	/**
+	 * This method checks if the tree holds an element equal to the given one.
+	 * @param element The element to look for.
+	 * @return True if there is one.
+	 */
+	public boolean contains(T element) {
+		return search(element, EXACT) != null;
+	}
+
+	/**
+	 * This method finds the largest element less than or equal to the given one.
+	 * @param element The element to search from.
+	 * @return The element in the tree, or null if there isn't one.
+	 */
+	public T floor(T element) {
+		return dataOf(search(element, FLOOR));
+	}
+
+	/**
+	 * This method finds the smallest element greater than or equal to the given one.
+	 * @param element The element to search from.
+	 * @return The element in the tree, or null if there isn't one.
+	 */
+	public T ceiling(T element) {
+		return dataOf(search(element, CEILING));
+	}
+
+	public void insert(T element) {
+		// The holder never changes version, so inserting under it never has to retry
+		attemptInsert(element, holder, RIGHT, holder.version);
+		size.increment();
+	}
+
+	@SuppressWarnings("unchecked")
+	public T remove(T element) {
+		Object ret;
+		do {
+			ret = attemptRemove(element, holder, RIGHT, holder.version);
+		} while (ret == RETRY);
+		if (ret != null)
+			size.decrement();
+		return (T) ret;
+	}
+
+	/**
+	 * This method returns the elements in sorted order. It walks from each element to the next
+	 * with a lookup, so while writers are running, every element it returns was in the tree
+	 * at some point during the call, and every element that was there throughout is returned.
+	 * @return A new list of the elements.
+	 */
+	public List<T> inOrder() {
+		ArrayList<T> l = new ArrayList<T>(size());
+		for (Node<T> n = search(null, CEILING) ; n != null ; n = search(n.data, HIGHER)) {
+			T data = n.data;
+			// The node may have been emptied since the lookup found it, but its element was there then
+			for (int i = Math.max(1, n.count) ; i > 0 ; i--)
+				l.add(data);
+		}
+		return l;
+	}
+
+	/**
+	 * This method returns an iterator over a snapshot of the elements in sorted order.
+	 * Later changes to the tree don't show up in it, and it doesn't support remove.
+	 * @return An in-order iterator.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return Collections.unmodifiableList(inOrder()).iterator();
+	}
+
+	public String toString() {
+		return inOrder().toString();
+	}
+
+
+	/**
+	 * This method runs a lookup from the top of the tree.
+	 * @param element The element to look for, or null to look for the first (CEILING) or last (FLOOR) element.
+	 * @param mode EXACT, FLOOR, CEILING or HIGHER.
+	 * @return The node holding the element found, or null if there isn't one.
+	 */
+	@SuppressWarnings("unchecked")
+	private Node<T> search(T element, int mode) {
+		// The holder never changes version, so a walk from it never has to retry
+		return (Node<T>) attemptSearch(element, mode, holder, RIGHT, holder.version);
+	}
+
+	/**
+	 * This method reads the element out of a node found by a lookup.
+	 * @param n The node, or null.
+	 * @return The node's element, or null.
+	 */
+	private T dataOf(Node<T> n) {
+		return (n == null) ? null : n.data;
+	}
+
+	/**
+	 * This method runs a lookup in the subtree on one side of a node, whose version the caller
+	 * has already validated. It retries for as long as the node itself doesn't change.
+	 * @param element The element to look for, or null to look for the first or last element.
+	 * @param mode EXACT, FLOOR, CEILING or HIGHER.
+	 * @param node The node.
+	 * @param side The side of the node to look under.
+	 * @param version The node's version when the caller validated it.
+	 * @return The node holding the element found, null if there isn't one, or RETRY if the node changed.
+	 */
+	private Object attemptSearch(T element, int mode, Node<T> node, int side, long version) {
+		while (true) {
+			Node<T> child = node.child(side);
+			if (node.version != version)
+				return RETRY;
+			if (child == null)
+				return null;
+
+			long childVersion = child.version;
+			if (isShrinkingOrUnlinked(childVersion)) {
+				waitUntilShrunk(child, childVersion);
+				continue;
+			}
+			// Only trust the child's version if it was still the child, and this node hadn't moved, after reading it
+			if (child != node.child(side))
+				continue;
+			if (node.version != version)
+				return RETRY;
+
+			Object ret = searchAt(element, mode, child, childVersion);
+			if (ret != RETRY)
+				return ret;
+		}
+	}
+
+	/**
+	 * This method runs a lookup in the subtree under a node, whose version the caller has already validated.
+	 * @param element The element to look for, or null to look for the first or last element.
+	 * @param mode EXACT, FLOOR, CEILING or HIGHER.
+	 * @param n The node.
+	 * @param version The node's version when the caller validated it.
+	 * @return The node holding the element found, null if there isn't one, or RETRY if the node changed.
+	 */
+	private Object searchAt(T element, int mode, Node<T> n, long version) {
+		int cmp;
+		if (element == null)
+			cmp = (mode == FLOOR) ? 1 : -1;
+		else
+			cmp = Integer.signum(element.compareTo(n.data));
+
+		if (cmp == 0) {
+			if (mode == HIGHER)
+				cmp = 1;
+			else if (n.count > 0)
+				return n;
+			else if (mode == EXACT)
+				return null;
+			else {
+				// A routing node, so the answer is the nearest element on the side the mode looks to
+				return attemptSearch(null, mode, n, (mode == FLOOR) ? LEFT : RIGHT, version);
+			}
+		}
+
+		// The node itself is a candidate if it lies on the mode's side of the element
+		boolean candidate = (mode == FLOOR) ? (cmp > 0) : ((mode != EXACT) && (cmp < 0));
+		Object ret = attemptSearch(element, mode, n, cmp, version);
+		if (!candidate || (ret != null))
+			return ret;
+		if (n.count > 0)
+			return n;
+		// A routing node can't be the answer, so take the nearest element from its other side
+		return attemptSearch(null, mode, n, -cmp, version);
+	}
+
+	/**
+	 * This method inserts an element in the subtree on one side of a node, whose version the caller
+	 * has already validated. It retries for as long as the node itself doesn't change.
+	 * @param element The element to insert.
+	 * @param node The node.
+	 * @param side The side of the node to insert under.
+	 * @param version The node's version when the caller validated it.
+	 * @return True if the element was inserted, or false if the node changed and the caller must retry.
+	 */
+	private boolean attemptInsert(T element, Node<T> node, int side, long version) {
+		while (true) {
+			Node<T> child = node.child(side);
+			if (node.version != version)
+				return false;
+
+			if (child == null) {
+				boolean inserted = false;
+				synchronized (node) {
+					// Check nothing changed before the lock was taken
+					if (node.version != version)
+						return false;
+					if (node.child(side) == null) {
+						node.setChild(side, new Node<T>(element, node));
+						inserted = true;
+					}
+				}
+				if (inserted) {
+					rebalance(node);
+					return true;
+				}
+				continue;
+			}
+
+			long childVersion = child.version;
+			if (isShrinkingOrUnlinked(childVersion)) {
+				waitUntilShrunk(child, childVersion);
+				continue;
+			}
+			if (child != node.child(side))
+				continue;
+			if (node.version != version)
+				return false;
+
+			int cmp = Integer.signum(element.compareTo(child.data));
+			if (cmp == 0) {
+				// Equal elements share a node, which may be a routing node coming back into use
+				synchronized (child) {
+					if (child.version != UNLINKED) {
+						if (child.count == 0)
+							child.data = element;
+						child.count++;
+						return true;
+					}
+				}
+				continue;
+			}
+			if (attemptInsert(element, child, cmp, childVersion))
+				return true;
+		}
+	}
+
+	/**
+	 * This method removes an element from the subtree on one side of a node, whose version the caller
+	 * has already validated. It retries for as long as the node itself doesn't change.
+	 * @param element The element to remove.
+	 * @param node The node.
+	 * @param side The side of the node to remove from.
+	 * @param version The node's version when the caller validated it.
+	 * @return The element removed, null if there wasn't one, or RETRY if the node changed.
+	 */
+	private Object attemptRemove(T element, Node<T> node, int side, long version) {
+		while (true) {
+			Node<T> child = node.child(side);
+			if (node.version != version)
+				return RETRY;
+			if (child == null)
+				return null;
+
+			long childVersion = child.version;
+			if (isShrinkingOrUnlinked(childVersion)) {
+				waitUntilShrunk(child, childVersion);
+				continue;
+			}
+			if (child != node.child(side))
+				continue;
+			if (node.version != version)
+				return RETRY;
+
+			int cmp = Integer.signum(element.compareTo(child.data));
+			Object ret = (cmp == 0) ? removeFrom(node, child) : attemptRemove(element, child, cmp, childVersion);
+			if (ret != RETRY)
+				return ret;
+		}
+	}
+
+	/**
+	 * This method removes one element from a node. The last element of a node with fewer than two
+	 * children unlinks the node, and the last element of a node with two children leaves it as a routing node.
+	 * @param parent The node's parent.
+	 * @param n The node.
+	 * @return The element removed, null if the node was already a routing node, or RETRY if the node changed.
+	 */
+	private Object removeFrom(Node<T> parent, Node<T> n) {
+		if (n.count == 0)
+			return null;
+
+		if ((n.count > 1) || ((n.leftChild != null) && (n.rightChild != null))) {
+			synchronized (n) {
+				int count = n.count;
+				if ((n.version == UNLINKED) || ((count == 1) && ((n.leftChild == null) || (n.rightChild == null))))
+					return RETRY;
+				if (count == 0)
+					return null;
+				n.count = count - 1;
+				return n.data;
+			}
+		}
+
+		T ret;
+		synchronized (parent) {
+			if ((parent.version == UNLINKED) || (n.parent != parent))
+				return RETRY;
+			synchronized (n) {
+				int count = n.count;
+				if (n.version == UNLINKED)
+					return RETRY;
+				if (count == 0)
+					return null;
+				ret = n.data;
+				if (count > 1) {
+					n.count = count - 1;
+					return ret;
+				}
+				if (!unlink(parent, n))
+					return RETRY;
+			}
+		}
+		rebalance(parent);
+		return ret;
+	}
+
+	/**
+	 * This method unlinks a node with fewer than two children, moving its child up into its place.
+	 * The caller must hold the locks of the node and its parent.
+	 * @param parent The node's parent.
+	 * @param n The node.
+	 * @return True if the node was unlinked, or false if it has two children or isn't the parent's child.
+	 */
+	private boolean unlink(Node<T> parent, Node<T> n) {
+		Node<T> left = n.leftChild;
+		Node<T> right = n.rightChild;
+		if ((left != null) && (right != null))
+			return false;
+		Node<T> splice = (left != null) ? left : right;
+		if (parent.leftChild == n)
+			parent.leftChild = splice;
+		else if (parent.rightChild == n)
+			parent.rightChild = splice;
+		else
+			return false;
+		if (splice != null)
+			splice.parent = parent;
+		n.version = UNLINKED;
+		n.count = 0;
+		return true;
+	}
+
+	/**
+	 * This method walks from a node up to the root, fixing cached heights, rotating wherever
+	 * a subtree has become unbalanced, and unlinking routing nodes that no longer need to be there.
+	 * It stops early once a node needs nothing done. Each fix locks only the nodes it changes.
+	 * @param n The lowest node whose subtree changed.
+	 */
+	private void rebalance(Node<T> n) {
+		while ((n != null) && (n != holder)) {
+			int condition = condition(n);
+			if ((condition == NOTHING_REQUIRED) || (n.version == UNLINKED))
+				return;
+			if ((condition != UNLINK_REQUIRED) && (condition != REBALANCE_REQUIRED)) {
+				synchronized (n) {
+					n = fixHeight(n);
+				}
+			}
+			else {
+				// Rotating or unlinking the node changes its parent's child link too
+				Node<T> parent = n.parent;
+				synchronized (parent) {
+					if ((parent.version != UNLINKED) && (n.parent == parent)) {
+						synchronized (n) {
+							// An unlinked node keeps its old parent link, so check it wasn't unlinked before the locks were taken
+							if (n.version == UNLINKED)
+								return;
+							n = rebalance(parent, n);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method works out what a node needs done, from its children's cached heights.
+	 * @param n The node.
+	 * @return NOTHING_REQUIRED, REBALANCE_REQUIRED, UNLINK_REQUIRED, or the height the node should have.
+	 */
+	private int condition(Node<T> n) {
+		Node<T> left = n.leftChild;
+		Node<T> right = n.rightChild;
+		if (((left == null) || (right == null)) && (n.count == 0))
+			return UNLINK_REQUIRED;
+		int hLeft = height(left);
+		int hRight = height(right);
+		int balance = hLeft - hRight;
+		if ((balance < -1) || (balance > 1))
+			return REBALANCE_REQUIRED;
+		int h = Math.max(hLeft, hRight) + 1;
+		return (h != n.height) ? h : NOTHING_REQUIRED;
+	}
+
+	/**
+	 * This method fixes a node's height, if that is all it needs. The caller must hold the node's lock.
+	 * @param n The node.
+	 * @return The next node to fix, or null if there's nothing left to do.
+	 */
+	private Node<T> fixHeight(Node<T> n) {
+		int condition = condition(n);
+		if ((condition == REBALANCE_REQUIRED) || (condition == UNLINK_REQUIRED))
+			return n;
+		if (condition == NOTHING_REQUIRED)
+			return null;
+		n.height = condition;
+		return n.parent;
+	}
+
+	/**
+	 * This method fixes whatever a node needs, which may be a rotation or an unlink.
+	 * The caller must hold the locks of the node and its parent.
+	 * @param parent The node's parent.
+	 * @param n The node.
+	 * @return The next node to fix, or null if there's nothing left to do.
+	 */
+	private Node<T> rebalance(Node<T> parent, Node<T> n) {
+		Node<T> left = n.leftChild;
+		Node<T> right = n.rightChild;
+		if (((left == null) || (right == null)) && (n.count == 0))
+			return unlink(parent, n) ? fixHeight(parent) : n;
+
+		int hLeft = height(left);
+		int hRight = height(right);
+		int balance = hLeft - hRight;
+		if (balance > 1)
+			return rebalanceToRight(parent, n, left, hRight);
+		if (balance < -1)
+			return rebalanceToLeft(parent, n, right, hLeft);
+		int h = Math.max(hLeft, hRight) + 1;
+		if (h == n.height)
+			return null;
+		n.height = h;
+		return fixHeight(parent);
+	}
+
+	/**
+	 * This method fixes a node whose left subtree is too tall, by rotating it to the right,
+	 * or rotating its left child's right child up over both in the left-right case.
+	 * The caller must hold the locks of the node and its parent.
+	 * @param parent The node's parent.
+	 * @param n The node.
+	 * @param left The node's left child.
+	 * @param hRight The height of the node's right subtree.
+	 * @return The next node to fix, or null if there's nothing left to do.
+	 */
+	private Node<T> rebalanceToRight(Node<T> parent, Node<T> n, Node<T> left, int hRight) {
+		synchronized (left) {
+			// Another writer may have shrunk the left subtree before its lock was taken
+			if (left.height - hRight <= 1)
+				return n;
+			Node<T> leftRight = left.rightChild;
+			int hLeftLeft = height(left.leftChild);
+			int hLeftRight = height(leftRight);
+			if (hLeftLeft >= hLeftRight)
+				return rotateRight(parent, n, left, hRight, hLeftLeft, leftRight, hLeftRight);
+			synchronized (leftRight) {
+				// Its height can't change now that it's locked, so check it again
+				hLeftRight = leftRight.height;
+				if (hLeftLeft >= hLeftRight)
+					return rotateRight(parent, n, left, hRight, hLeftLeft, leftRight, hLeftRight);
+				int hLeftRightLeft = height(leftRight.leftChild);
+				int balance = hLeftLeft - hLeftRightLeft;
+				if ((balance >= -1) && (balance <= 1))
+					return rotateRightOverLeft(parent, n, left, hRight, hLeftLeft, leftRight, hLeftRightLeft);
+			}
+			// Other writers are still fixing the heights below, so only rotate the left child for now
+			return rebalanceToLeft(n, left, leftRight, hLeftLeft);
+		}
+	}
+
+	/**
+	 * This method fixes a node whose right subtree is too tall, by rotating it to the left,
+	 * or rotating its right child's left child up over both in the right-left case.
+	 * The caller must hold the locks of the node and its parent.
+	 * @param parent The node's parent.
+	 * @param n The node.
+	 * @param right The node's right child.
+	 * @param hLeft The height of the node's left subtree.
+	 * @return The next node to fix, or null if there's nothing left to do.
+	 */
+	private Node<T> rebalanceToLeft(Node<T> parent, Node<T> n, Node<T> right, int hLeft) {
+		synchronized (right) {
+			// Another writer may have shrunk the right subtree before its lock was taken
+			if (right.height - hLeft <= 1)
+				return n;
+			Node<T> rightLeft = right.leftChild;
+			int hRightRight = height(right.rightChild);
+			int hRightLeft = height(rightLeft);
+			if (hRightRight >= hRightLeft)
+				return rotateLeft(parent, n, right, hLeft, hRightRight, rightLeft, hRightLeft);
+			synchronized (rightLeft) {
+				// Its height can't change now that it's locked, so check it again
+				hRightLeft = rightLeft.height;
+				if (hRightRight >= hRightLeft)
+					return rotateLeft(parent, n, right, hLeft, hRightRight, rightLeft, hRightLeft);
+				int hRightLeftRight = height(rightLeft.rightChild);
+				int balance = hRightRight - hRightLeftRight;
+				if ((balance >= -1) && (balance <= 1))
+					return rotateLeftOverRight(parent, n, right, hLeft, hRightRight, rightLeft, hRightLeftRight);
+			}
+			// Other writers are still fixing the heights below, so only rotate the right child for now
+			return rebalanceToRight(n, right, rightLeft, hRightRight);
+		}
+	}
+
+	/**
+	 * This method rotates a node down to the right. The node's version is marked as shrinking
+	 * for the length of the rotation, so lookups passing through it back up and try again.
+	 * The node gives up its left child before that child takes the node as its right child,
+	 * so a racing reader never sees the two pointing at each other.
+	 * The caller must hold the locks of the node, its parent and its left child.
+	 * @param parent The node's parent.
+	 * @param n The node to rotate.
+	 * @param left The node's left child, which takes its place.
+	 * @param hRight The height of the node's right subtree.
+	 * @param hLeftLeft The height of the left child's left subtree.
+	 * @param leftRight The left child's right child, which moves over to the node.
+	 * @param hLeftRight The height of the left child's right subtree.
+	 * @return The next node to fix, or null if there's nothing left to do.
+	 */
+	private Node<T> rotateRight(Node<T> parent, Node<T> n, Node<T> left, int hRight, int hLeftLeft,
+			Node<T> leftRight, int hLeftRight) {
+		long version = n.version;
+		n.version = version | SHRINKING;
+
+		n.leftChild = leftRight;
+		if (leftRight != null)
+			leftRight.parent = n;
+		left.rightChild = n;
+		n.parent = left;
+		if (parent.leftChild == n)
+			parent.leftChild = left;
+		else
+			parent.rightChild = left;
+		left.parent = parent;
+
+		int h = Math.max(hLeftRight, hRight) + 1;
+		n.height = h;
+		left.height = Math.max(hLeftLeft, h) + 1;
+		n.version = version + SHRINK_COUNT_INCREMENT;
+
+		return afterRotation(parent, n, hLeftRight - hRight, (leftRight == null) || (hRight < 0),
+				left, hLeftLeft - h, hLeftLeft < 0);
+	}
+
+	/**
+	 * This method rotates a node down to the left. It is the mirror image of rotateRight.
+	 * The caller must hold the locks of the node, its parent and its right child.
+	 * @param parent The node's parent.
+	 * @param n The node to rotate.
+	 * @param right The node's right child, which takes its place.
+	 * @param hLeft The height of the node's left subtree.
+	 * @param hRightRight The height of the right child's right subtree.
+	 * @param rightLeft The right child's left child, which moves over to the node.
+	 * @param hRightLeft The height of the right child's left subtree.
+	 * @return The next node to fix, or null if there's nothing left to do.
+	 */
+	private Node<T> rotateLeft(Node<T> parent, Node<T> n, Node<T> right, int hLeft, int hRightRight,
+			Node<T> rightLeft, int hRightLeft) {
+		long version = n.version;
+		n.version = version | SHRINKING;
+
+		n.rightChild = rightLeft;
+		if (rightLeft != null)
+			rightLeft.parent = n;
+		right.leftChild = n;
+		n.parent = right;
+		if (parent.leftChild == n)
+			parent.leftChild = right;
+		else
+			parent.rightChild = right;
+		right.parent = parent;
+
+		int h = Math.max(hRightLeft, hLeft) + 1;
+		n.height = h;
+		right.height = Math.max(hRightRight, h) + 1;
+		n.version = version + SHRINK_COUNT_INCREMENT;
+
+		return afterRotation(parent, n, hRightLeft - hLeft, (rightLeft == null) || (hLeft < 0),
+				right, hRightRight - h, hRightRight < 0);
+	}
+
+	/**
+	 * This method rotates a node's left child's right child up into the node's place, with the
+	 * node moving down to its right and the left child staying on its left. Both the node and
+	 * its left child are marked as shrinking for the length of the rotation. If that leaves the
+	 * left child as a routing node with an empty side, it is unlinked straight away.
+	 * The caller must hold the locks of the node, its parent, its left child and that child's right child.
+	 * @param parent The node's parent.
+	 * @param n The node to rotate.
+	 * @param left The node's left child.
+	 * @param hRight The height of the node's right subtree.
+	 * @param hLeftLeft The height of the left child's left subtree.
+	 * @param leftRight The left child's right child, which takes the node's place.
+	 * @param hLeftRightLeft The height of leftRight's left subtree.
+	 * @return The next node to fix, or null if there's nothing left to do.
+	 */
+	private Node<T> rotateRightOverLeft(Node<T> parent, Node<T> n, Node<T> left, int hRight, int hLeftLeft,
+			Node<T> leftRight, int hLeftRightLeft) {
+		Node<T> leftRightLeft = leftRight.leftChild;
+		Node<T> leftRightRight = leftRight.rightChild;
+		int hLeftRightRight = height(leftRightRight);
+		long version = n.version;
+		long leftVersion = left.version;
+		n.version = version | SHRINKING;
+		left.version = leftVersion | SHRINKING;
+
+		n.leftChild = leftRightRight;
+		if (leftRightRight != null)
+			leftRightRight.parent = n;
+		left.rightChild = leftRightLeft;
+		if (leftRightLeft != null)
+			leftRightLeft.parent = left;
+		leftRight.leftChild = left;
+		left.parent = leftRight;
+		leftRight.rightChild = n;
+		n.parent = leftRight;
+		if (parent.leftChild == n)
+			parent.leftChild = leftRight;
+		else
+			parent.rightChild = leftRight;
+		leftRight.parent = parent;
+
+		int h = Math.max(hLeftRightRight, hRight) + 1;
+		n.height = h;
+		int hLeft = Math.max(hLeftLeft, hLeftRightLeft) + 1;
+		left.height = hLeft;
+		n.version = version + SHRINK_COUNT_INCREMENT;
+		left.version = leftVersion + SHRINK_COUNT_INCREMENT;
+
+		if (((hLeftLeft < 0) || (hLeftRightLeft < 0)) && (left.count == 0)) {
+			unlink(leftRight, left);
+			hLeft = height(leftRight.leftChild);
+		}
+		leftRight.height = Math.max(hLeft, h) + 1;
+
+		return afterRotation(parent, n, hLeftRightRight - hRight, (leftRightRight == null) || (hRight < 0),
+				leftRight, hLeft - h, hLeft < 0);
+	}
+
+	/**
+	 * This method rotates a node's right child's left child up into the node's place.
+	 * It is the mirror image of rotateRightOverLeft.
+	 * The caller must hold the locks of the node, its parent, its right child and that child's left child.
+	 * @param parent The node's parent.
+	 * @param n The node to rotate.
+	 * @param right The node's right child.
+	 * @param hLeft The height of the node's left subtree.
+	 * @param hRightRight The height of the right child's right subtree.
+	 * @param rightLeft The right child's left child, which takes the node's place.
+	 * @param hRightLeftRight The height of rightLeft's right subtree.
+	 * @return The next node to fix, or null if there's nothing left to do.
+	 */
+	private Node<T> rotateLeftOverRight(Node<T> parent, Node<T> n, Node<T> right, int hLeft, int hRightRight,
+			Node<T> rightLeft, int hRightLeftRight) {
+		Node<T> rightLeftRight = rightLeft.rightChild;
+		Node<T> rightLeftLeft = rightLeft.leftChild;
+		int hRightLeftLeft = height(rightLeftLeft);
+		long version = n.version;
+		long rightVersion = right.version;
+		n.version = version | SHRINKING;
+		right.version = rightVersion | SHRINKING;
+
+		n.rightChild = rightLeftLeft;
+		if (rightLeftLeft != null)
+			rightLeftLeft.parent = n;
+		right.leftChild = rightLeftRight;
+		if (rightLeftRight != null)
+			rightLeftRight.parent = right;
+		rightLeft.rightChild = right;
+		right.parent = rightLeft;
+		rightLeft.leftChild = n;
+		n.parent = rightLeft;
+		if (parent.leftChild == n)
+			parent.leftChild = rightLeft;
+		else
+			parent.rightChild = rightLeft;
+		rightLeft.parent = parent;
+
+		int h = Math.max(hRightLeftLeft, hLeft) + 1;
+		n.height = h;
+		int hRight = Math.max(hRightRight, hRightLeftRight) + 1;
+		right.height = hRight;
+		n.version = version + SHRINK_COUNT_INCREMENT;
+		right.version = rightVersion + SHRINK_COUNT_INCREMENT;
+
+		if (((hRightRight < 0) || (hRightLeftRight < 0)) && (right.count == 0)) {
+			unlink(rightLeft, right);
+			hRight = height(rightLeft.rightChild);
+		}
+		rightLeft.height = Math.max(hRight, h) + 1;
+
+		return afterRotation(parent, n, hRightLeftLeft - hLeft, (rightLeftLeft == null) || (hLeft < 0),
+				rightLeft, hRight - h, hRight < 0);
+	}
+
+	/**
+	 * This method picks the next node to fix after a rotation, fixing the parent's height if it can
+	 * while the parent's lock is still held.
+	 * @param parent The parent of the rotated subtree.
+	 * @param n The node that moved down.
+	 * @param nBalance The node's balance after the rotation.
+	 * @param nMissingChild True if the node is left with an empty subtree.
+	 * @param top The node that moved up.
+	 * @param topBalance The top node's balance after the rotation.
+	 * @param topMissingChild True if the top node is left with an empty subtree.
+	 * @return The next node to fix, or null if there's nothing left to do.
+	 */
+	private Node<T> afterRotation(Node<T> parent, Node<T> n, int nBalance, boolean nMissingChild,
+			Node<T> top, int topBalance, boolean topMissingChild) {
+		// The node that moved down is the deepest, so it comes first
+		if ((nBalance < -1) || (nBalance > 1) || (nMissingChild && (n.count == 0)))
+			return n;
+		if ((topBalance < -1) || (topBalance > 1) || (topMissingChild && (top.count == 0)))
+			return top;
+		return fixHeight(parent);
+	}
+
+	/**
+	 * This method returns the cached height of a subtree.
+	 * @param n The root of the subtree.
+	 * @return The height, or -1 for an empty subtree.
+	 */
+	private int height(Node<T> n) {
+		return (n == null) ? -1 : n.height;
+	}
+
+	/**
+	 * This checks a node version for a rotation in progress, or an unlinked node.
+	 * @param version The version.
+	 * @return True if the node is shrinking or unlinked.
+	 */
+	private static boolean isShrinkingOrUnlinked(long version) {
+		return (version & (SHRINKING | UNLINKED)) != 0;
+	}
+
+	/**
+	 * This method waits for a rotation moving a node down to finish. It checks the node's version
+	 * for a while, and then waits on the node's lock, which the rotation holds.
+	 * @param n The node.
+	 * @param version The version that was read from it.
+	 */
+	private static void waitUntilShrunk(Node<?> n, long version) {
+		if ((version & SHRINKING) == 0)
+			return;
+		for (int i = 0 ; i < SPIN_COUNT ; i++) {
+			if (n.version != version)
+				return;
+		}
+		synchronized (n) {
+			// The rotation is over once the lock is free
+		}
+	}
+}
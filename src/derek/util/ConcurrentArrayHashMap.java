@@ -0,0 +1,810 @@
+package derek.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * This class implements a thread-safe hash-map using only arrays, in the same style as ArrayHashMap.
+ * The hash range is split into stripes, and each stripe owns a flat open-addressing table that
+ * interleaves keys and values, with the hash of every key cached in a parallel int array.
+ *
+ * Reads never lock. They go through volatile array reads, and writers always store a value
+ * before the key that makes it visible. Writes lock only the stripe the key hashes to,
+ * and a stripe grows on its own without stopping the others. Removed slots are marked with a
+ * tombstone instead of being shifted, so a reader in the middle of a probe never loses its place.
+ * Like ConcurrentHashMap, null keys and values are not allowed.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ConcurrentArrayHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+	/** The default total number of slots, if no number is given. */
+	private static final int DEFAULT_SIZE = 16;
+	/** The default load-factor, if no factor is given. */
+	private static final float DEFAULT_LOADFACTOR = 0.6f;
+	/** The default number of stripes, if no number is given. */
+	private static final int DEFAULT_CONCURRENCY = 16;
+	/** The most stripes a map can have. */
+	private static final int MAXIMUM_CONCURRENCY = 1 << 16;
+	/** The key used to mark a slot whose entry was removed. */
+	private static final Object TOMBSTONE = new Object();
+
+	/** Factor used to determine when a stripe grows. */
+	private final float loadFactor;
+	/** The stripes, picked by the high bits of a key's hash. */
+	private final Segment<K, V>[] segments;
+	/** How far a hash is shifted to get its stripe. */
+	private final int segmentShift;
+
+
+	/**
+	 * This constructs an empty map with the default number of slots, load-factor, and stripes.
+	 */
+	public ConcurrentArrayHashMap() {
+		this(DEFAULT_SIZE, DEFAULT_LOADFACTOR, DEFAULT_CONCURRENCY);
+	}
+
+
+	/**
+	 * This constructs an empty map with the given initial number of slots.
+	 * @param initialCapacity The initial total number of slots to use (default is 16).
+	 */
+	public ConcurrentArrayHashMap(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOADFACTOR, DEFAULT_CONCURRENCY);
+	}
+
+
+	/**
+	 * This constructs an empty map with a given initial number of slots, load-factor, and number of stripes.
+	 * @param initialCapacity The initial total number of slots to use (default is 16).
+	 * @param loadFactor The load-factor that will determine when a stripe grows (default is 0.6).
+	 * 		  Must be between 0 and 1.
+	 * @param concurrencyLevel The number of stripes, which limits how many writers can work at once
+	 * 		  (default is 16). This is rounded up to a power of two.
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentArrayHashMap(int initialCapacity, float loadFactor, int concurrencyLevel) {
+		if (initialCapacity <= 0)
+			throw new IllegalArgumentException("Map must have an initial capacity > 0");
+		if (!(loadFactor > 0 && loadFactor < 1))
+			throw new IllegalArgumentException("Load factor must be between 0 and 1");
+		if (concurrencyLevel <= 0)
+			throw new IllegalArgumentException("Map must have a concurrency level > 0");
+		this.loadFactor = loadFactor;
+
+		int stripes = Hashing.tableSizeFor(Math.min(concurrencyLevel, MAXIMUM_CONCURRENCY));
+		segmentShift = 32 - Integer.numberOfTrailingZeros(stripes);
+		segments = (Segment<K, V>[]) new Segment<?, ?>[stripes];
+		int perStripe = Hashing.tableSizeFor(Math.max(2, (initialCapacity + stripes - 1) / stripes));
+		for (int i = 0 ; i < stripes ; i++)
+			segments[i] = new Segment<K, V>(perStripe, loadFactor);
+	}
+
+
+	/**
+	 * This is an inner class for the table a stripe publishes to readers.
+	 * A table is only ever written by the stripe's lock holder, and is swapped out whole when it grows.
+	 */
+	private static final class Table {
+
+		/** Slot i stores its key at position 2i and its value at position 2i + 1. */
+		private final AtomicReferenceArray<Object> slots;
+		/** The cached hash of the key stored in each slot. */
+		private final int[] hashes;
+		/** The number of slots minus one, for masking. */
+		private final int mask;
+
+		/**
+		 * This constructs an empty table.
+		 * @param capacity The number of slots, a power of two.
+		 */
+		private Table(int capacity) {
+			slots = new AtomicReferenceArray<Object>(capacity * 2);
+			hashes = new int[capacity];
+			mask = capacity - 1;
+		}
+	}
+
+
+	/**
+	 * This is an inner class for one stripe of the map.
+	 * It extends ReentrantLock so the stripe is its own lock.
+	 */
+	private static final class Segment<K, V> extends ReentrantLock {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Factor used to determine when this stripe grows. */
+		private final float loadFactor;
+		/** The table readers probe. */
+		private volatile Table table;
+		/** The number of live entries in this stripe. */
+		private volatile int count;
+		/** The number of tombstones in the current table. */
+		private int tombstones;
+		/** The number of live entries plus tombstones the table can hold before it is rebuilt. */
+		private int threshold;
+
+		/**
+		 * This constructs an empty stripe.
+		 * @param capacity The initial number of slots.
+		 * @param loadFactor The load-factor that will determine when this stripe grows.
+		 */
+		private Segment(int capacity, float loadFactor) {
+			this.loadFactor = loadFactor;
+			setTable(new Table(capacity));
+		}
+
+		/**
+		 * This publishes a new table and works out its threshold.
+		 * @param t The table to publish.
+		 */
+		private void setTable(Table t) {
+			int capacity = t.mask + 1;
+			threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+			tombstones = 0;
+			table = t;
+		}
+
+		/**
+		 * This finds the slot holding a key. Only called while holding the lock.
+		 * @param key The key to look for.
+		 * @param h The mixed hash of the key.
+		 * @return The slot holding the key, or -1 if the key is not in this stripe.
+		 */
+		private int find(Object key, int h) {
+			Table t = table;
+			for (int i = h & t.mask ; ; i = (i + 1) & t.mask) {
+				Object k = t.slots.get(i << 1);
+				if (k == null)
+					return -1;
+				if ((k != TOMBSTONE) && (t.hashes[i] == h) && ((k == key) || key.equals(k)))
+					return i;
+			}
+		}
+
+		/**
+		 * This gets the value in a slot. Only called while holding the lock.
+		 * @param slot The slot to read.
+		 * @return The value stored there.
+		 */
+		@SuppressWarnings("unchecked")
+		private V valueAt(int slot) {
+			return (V) table.slots.get((slot << 1) + 1);
+		}
+
+		/**
+		 * This replaces the value in a slot. Only called while holding the lock.
+		 * @param slot The slot to write.
+		 * @param value The new value.
+		 */
+		private void setValueAt(int slot, V value) {
+			table.slots.set((slot << 1) + 1, value);
+		}
+
+		/**
+		 * This adds a key that isn't in the stripe yet. Only called while holding the lock.
+		 * The value is stored before the key, so a reader that sees the key also sees the value.
+		 * @param key The key to add.
+		 * @param h The mixed hash of the key.
+		 * @param value The value to add.
+		 */
+		private void insert(K key, int h, V value) {
+			if (count + tombstones + 1 > threshold)
+				rebuild();
+			Table t = table;
+			int i = h & t.mask;
+			Object k;
+			while (((k = t.slots.get(i << 1)) != null) && (k != TOMBSTONE))
+				i = (i + 1) & t.mask;
+			if (k == TOMBSTONE)
+				tombstones--;
+			t.hashes[i] = h;
+			t.slots.set((i << 1) + 1, value);
+			t.slots.set(i << 1, key);
+			count++;
+		}
+
+		/**
+		 * This removes the entry in a slot, leaving a tombstone. Only called while holding the lock.
+		 * The value is cleared first, so a reader that still sees the key finds no value and treats it as gone.
+		 * @param slot The slot to clear.
+		 */
+		private void removeAt(int slot) {
+			Table t = table;
+			t.slots.set((slot << 1) + 1, null);
+			t.slots.set(slot << 1, TOMBSTONE);
+			tombstones++;
+			count--;
+		}
+
+		/**
+		 * This copies the live entries into a fresh table and publishes it. The new table is twice
+		 * as big unless most of the used slots were tombstones. Readers still probing the old table
+		 * keep a consistent, if slightly stale, picture, since it is never written again.
+		 */
+		private void rebuild() {
+			Table old = table;
+			int capacity = old.mask + 1;
+			if ((count + 1) > (threshold / 2)) {
+				if (capacity == Hashing.MAXIMUM_CAPACITY)
+					throw new IllegalStateException("Map stripe cannot grow past " + Hashing.MAXIMUM_CAPACITY + " slots");
+				capacity *= 2;
+			}
+
+			Table t = new Table(capacity);
+			for (int j = 0 ; j <= old.mask ; j++) {
+				Object k = old.slots.get(j << 1);
+				if ((k == null) || (k == TOMBSTONE))
+					continue;
+				int h = old.hashes[j];
+				int i = h & t.mask;
+				while (t.slots.get(i << 1) != null)
+					i = (i + 1) & t.mask;
+				t.hashes[i] = h;
+				t.slots.lazySet((i << 1) + 1, old.slots.get((j << 1) + 1));
+				t.slots.lazySet(i << 1, k);
+			}
+			setTable(t);
+		}
+
+		/**
+		 * This empties the stripe. Only called while holding the lock.
+		 * @param capacity The number of slots for the fresh table.
+		 */
+		private void clear(int capacity) {
+			setTable(new Table(capacity));
+			count = 0;
+		}
+	}
+
+
+	/**
+	 * This method hashes a key and mixes the result.
+	 * The low bits pick the slot and the high bits pick the stripe.
+	 * @param key The key to hash.
+	 * @return The mixed hash of the key.
+	 */
+	private static int hash(Object key) {
+		return Hashing.mix(key.hashCode());
+	}
+
+
+	/**
+	 * This method gets the stripe a hash belongs to.
+	 * @param h The mixed hash.
+	 * @return The stripe for that hash.
+	 */
+	private Segment<K, V> segmentFor(int h) {
+		// A shift of 32 is a shift of 0 in Java, so a single stripe needs special handling
+		return (segments.length == 1) ? segments[0] : segments[h >>> segmentShift];
+	}
+
+
+	/**
+	 * This metod will get the value at the given key in the map without locking.
+	 * @param key The key for the value we are looking for.
+	 * @return The value associated with the given key or null if the key doesn't exist in the map.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int h = hash(key);
+		Table t = segmentFor(h).table;
+		for (int i = h & t.mask, probes = 0 ; probes <= t.mask ; i = (i + 1) & t.mask, probes++) {
+			Object k = t.slots.get(i << 1);
+			if (k == null)
+				return null;
+			if ((k != TOMBSTONE) && (t.hashes[i] == h) && ((k == key) || key.equals(k))) {
+				Object v = t.slots.get((i << 1) + 1);
+				// If the slot was reused while we looked, the key we matched is gone
+				return (t.slots.get(i << 1) == k) ? (V) v : null;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * This method checks if the given key exists in the map without locking.
+	 * @param key The key to look for.
+	 * @return True if the key exists, false if not.
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+
+	/**
+	 * This method checks if a given value exists in this map. It scans every stripe without locking.
+	 * @param value The value to look for.
+	 * @return True if the value exists in the map, false if not.
+	 */
+	@Override
+	public boolean containsValue(Object value) {
+		if (value == null)
+			throw new NullPointerException();
+		for (Segment<K, V> s : segments) {
+			Table t = s.table;
+			for (int i = 1 ; i < t.slots.length() ; i += 2) {
+				Object v = t.slots.get(i);
+				if ((v != null) && v.equals(value))
+					return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * This will store the given key-value pair, replacing any value already stored with the key.
+	 * @param key The key to store this value with.
+	 * @param value The value to store.
+	 * @return The value previously stored with the key, or null if there wasn't one.
+	 */
+	@Override
+	public V put(K key, V value) {
+		return put(key, value, false);
+	}
+
+
+	/**
+	 * This will store the given key-value pair, but only if the key isn't already in the map.
+	 * @param key The key to store this value with.
+	 * @param value The value to store.
+	 * @return The value already stored with the key, or null if the new value was stored.
+	 */
+	@Override
+	public V putIfAbsent(K key, V value) {
+		return put(key, value, true);
+	}
+
+
+	/**
+	 * This is a helper method to store a key-value pair while holding the key's stripe lock.
+	 * @param key The key to store this value with.
+	 * @param value The value to store.
+	 * @param onlyIfAbsent True to leave an existing value alone.
+	 * @return The value previously stored with the key, or null if there wasn't one.
+	 */
+	private V put(K key, V value, boolean onlyIfAbsent) {
+		if (value == null)
+			throw new NullPointerException();
+		int h = hash(key);
+		Segment<K, V> s = segmentFor(h);
+		s.lock();
+		try {
+			int slot = s.find(key, h);
+			if (slot < 0) {
+				s.insert(key, h, value);
+				return null;
+			}
+			V old = s.valueAt(slot);
+			if (!onlyIfAbsent)
+				s.setValueAt(slot, value);
+			return old;
+		} finally {
+			s.unlock();
+		}
+	}
+
+
+	/**
+	 * This method will remove the key-value pair from the map and return the value that was stored if any.
+	 * @param key The key to remove.
+	 * @return The value at the given key, or null if there is no such key.
+	 */
+	@Override
+	public V remove(Object key) {
+		int h = hash(key);
+		Segment<K, V> s = segmentFor(h);
+		s.lock();
+		try {
+			int slot = s.find(key, h);
+			if (slot < 0)
+				return null;
+			V old = s.valueAt(slot);
+			s.removeAt(slot);
+			return old;
+		} finally {
+			s.unlock();
+		}
+	}
+
+
+	/**
+	 * This method removes a key only if it is currently mapped to the given value.
+	 * @param key The key to remove.
+	 * @param value The value the key is expected to have.
+	 * @return True if the key was removed.
+	 */
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (value == null)
+			return false;
+		int h = hash(key);
+		Segment<K, V> s = segmentFor(h);
+		s.lock();
+		try {
+			int slot = s.find(key, h);
+			if ((slot < 0) || !value.equals(s.valueAt(slot)))
+				return false;
+			s.removeAt(slot);
+			return true;
+		} finally {
+			s.unlock();
+		}
+	}
+
+
+	/**
+	 * This method replaces the value of a key only if it is currently mapped to the given value.
+	 * @param key The key whose value to replace.
+	 * @param oldValue The value the key is expected to have.
+	 * @param newValue The value to store.
+	 * @return True if the value was replaced.
+	 */
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		if ((oldValue == null) || (newValue == null))
+			throw new NullPointerException();
+		int h = hash(key);
+		Segment<K, V> s = segmentFor(h);
+		s.lock();
+		try {
+			int slot = s.find(key, h);
+			if ((slot < 0) || !oldValue.equals(s.valueAt(slot)))
+				return false;
+			s.setValueAt(slot, newValue);
+			return true;
+		} finally {
+			s.unlock();
+		}
+	}
+
+
+	/**
+	 * This method replaces the value of a key only if the key is currently in the map.
+	 * @param key The key whose value to replace.
+	 * @param value The value to store.
+	 * @return The previous value, or null if the key wasn't in the map.
+	 */
+	@Override
+	public V replace(K key, V value) {
+		if (value == null)
+			throw new NullPointerException();
+		int h = hash(key);
+		Segment<K, V> s = segmentFor(h);
+		s.lock();
+		try {
+			int slot = s.find(key, h);
+			if (slot < 0)
+				return null;
+			V old = s.valueAt(slot);
+			s.setValueAt(slot, value);
+			return old;
+		} finally {
+			s.unlock();
+		}
+	}
+
+
+	/**
+	 * This method stores the value computed for a key if the key isn't in the map yet.
+	 * The function runs at most once, while the key's stripe is locked, so it should be short
+	 * and must not touch this map.
+	 * @param key The key to look up.
+	 * @param mappingFunction The function that computes a missing value.
+	 * @return The current value for the key, or null if the function returned null.
+	 */
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		// Most calls find the key, so try without locking first
+		V v = get(key);
+		if (v != null)
+			return v;
+
+		int h = hash(key);
+		Segment<K, V> s = segmentFor(h);
+		s.lock();
+		try {
+			int slot = s.find(key, h);
+			if (slot >= 0)
+				return s.valueAt(slot);
+			v = mappingFunction.apply(key);
+			if (v != null)
+				s.insert(key, h, v);
+			return v;
+		} finally {
+			s.unlock();
+		}
+	}
+
+
+	/**
+	 * This method recomputes the value of a key that is already in the map.
+	 * The function runs while the key's stripe is locked, and returning null removes the key.
+	 * @param key The key to look up.
+	 * @param remappingFunction The function that computes the new value from the old one.
+	 * @return The new value, or null if the key is not in the map anymore.
+	 */
+	@Override
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		int h = hash(key);
+		Segment<K, V> s = segmentFor(h);
+		s.lock();
+		try {
+			int slot = s.find(key, h);
+			if (slot < 0)
+				return null;
+			V v = remappingFunction.apply(key, s.valueAt(slot));
+			if (v == null)
+				s.removeAt(slot);
+			else
+				s.setValueAt(slot, v);
+			return v;
+		} finally {
+			s.unlock();
+		}
+	}
+
+
+	/**
+	 * This method computes a new value for a key from its current value, or null if it has none.
+	 * The function runs while the key's stripe is locked, and returning null removes the key.
+	 * @param key The key to look up.
+	 * @param remappingFunction The function that computes the new value.
+	 * @return The new value, or null if the key is not in the map anymore.
+	 */
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		int h = hash(key);
+		Segment<K, V> s = segmentFor(h);
+		s.lock();
+		try {
+			int slot = s.find(key, h);
+			V v = remappingFunction.apply(key, (slot < 0) ? null : s.valueAt(slot));
+			if (slot < 0) {
+				if (v != null)
+					s.insert(key, h, v);
+			}
+			else if (v == null)
+				s.removeAt(slot);
+			else
+				s.setValueAt(slot, v);
+			return v;
+		} finally {
+			s.unlock();
+		}
+	}
+
+
+	/**
+	 * This method stores the given value for a key that isn't in the map, or combines it with
+	 * the current value if it is. The function runs while the key's stripe is locked, and
+	 * returning null removes the key.
+	 * @param key The key to look up.
+	 * @param value The value to store or combine.
+	 * @param remappingFunction The function that combines the current and given values.
+	 * @return The new value, or null if the key is not in the map anymore.
+	 */
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		if (value == null)
+			throw new NullPointerException();
+		int h = hash(key);
+		Segment<K, V> s = segmentFor(h);
+		s.lock();
+		try {
+			int slot = s.find(key, h);
+			if (slot < 0) {
+				s.insert(key, h, value);
+				return value;
+			}
+			V v = remappingFunction.apply(s.valueAt(slot), value);
+			if (v == null)
+				s.removeAt(slot);
+			else
+				s.setValueAt(slot, v);
+			return v;
+		} finally {
+			s.unlock();
+		}
+	}
+
+
+	/**
+	 * This method empties the map, one stripe at a time.
+	 */
+	@Override
+	public void clear() {
+		for (Segment<K, V> s : segments) {
+			s.lock();
+			try {
+				s.clear(2);
+			} finally {
+				s.unlock();
+			}
+		}
+	}
+
+
+	/**
+	 * This gets the number of key-value pairs currently stored in this map.
+	 * Other threads may be changing the map, so this is only a snapshot.
+	 * @return The number of pairs stored.
+	 */
+	@Override
+	public int size() {
+		long sum = 0;
+		for (Segment<K, V> s : segments)
+			sum += s.count;
+		return (int) Math.min(sum, Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * This method checks if the map is empty.
+	 * @return True if the map is empty, false if not.
+	 */
+	@Override
+	public boolean isEmpty() {
+		for (Segment<K, V> s : segments) {
+			if (s.count != 0)
+				return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * This method returns a live set view of all the key-value pairs in this map.
+	 * Its iterator is weakly consistent: it never throws ConcurrentModificationException,
+	 * and sees each stripe as it was when the iterator got to it.
+	 * @return A set view of all the key-value pairs in this map.
+	 */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return ConcurrentArrayHashMap.this.size();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry))
+					return false;
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				Object v = (e.getKey() == null) ? null : get(e.getKey());
+				return (v != null) && v.equals(e.getValue());
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				if (!(o instanceof Map.Entry))
+					return false;
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				return (e.getKey() != null) && ConcurrentArrayHashMap.this.remove(e.getKey(), e.getValue());
+			}
+
+			@Override
+			public void clear() {
+				ConcurrentArrayHashMap.this.clear();
+			}
+		};
+	}
+
+
+	/**
+	 * This is an inner class to iterate over the entries of the map, one stripe's table at a time.
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		/** The stripe currently being walked. */
+		private int segment = -1;
+		/** The table of the stripe currently being walked. */
+		private Table table;
+		/** The slot the walk is currently at. */
+		private int slot;
+		/** The next entry to return, or null if there are none left. */
+		private WriteThroughEntry next;
+		/** The key of the entry returned last, or null if it was removed. */
+		private K lastKey;
+
+		/**
+		 * This constructs an iterator positioned before the first entry.
+		 */
+		private EntryIterator() {
+			advance();
+		}
+
+		/**
+		 * This finds the next live entry, moving on to the next stripe when a table runs out.
+		 */
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			next = null;
+			while (true) {
+				if (table != null) {
+					while (++slot <= table.mask) {
+						Object k = table.slots.get(slot << 1);
+						Object v = table.slots.get((slot << 1) + 1);
+						if ((k != null) && (k != TOMBSTONE) && (v != null)) {
+							next = new WriteThroughEntry((K) k, (V) v);
+							return;
+						}
+					}
+				}
+				if (++segment == segments.length)
+					return;
+				table = segments[segment].table;
+				slot = -1;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			WriteThroughEntry e = next;
+			lastKey = e.getKey();
+			advance();
+			return e;
+		}
+
+		@Override
+		public void remove() {
+			if (lastKey == null)
+				throw new IllegalStateException();
+			ConcurrentArrayHashMap.this.remove(lastKey);
+			lastKey = null;
+		}
+	}
+
+
+	/**
+	 * This is an inner class for an entry whose setValue writes through to the map.
+	 */
+	private final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * This constructs an entry with the given key and value.
+		 * @param key The entry's key.
+		 * @param value The entry's value.
+		 */
+		private WriteThroughEntry(K key, V value) {
+			super(key, value);
+		}
+
+		@Override
+		public V setValue(V value) {
+			if (value == null)
+				throw new NullPointerException();
+			put(getKey(), value);
+			return super.setValue(value);
+		}
+	}
+}
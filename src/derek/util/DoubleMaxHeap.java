@@ -0,0 +1,189 @@
+package derek.util;
+
+import java.util.Arrays;
+
+/**
+ * This class implements a binary max-heap of primitive double keys. It works like LongMaxHeap,
+ * with keys in a double[] and an optional parallel int[] of payloads, so add and poll never
+ * box or allocate once the heap is big enough.
+ *
+ * Keys are ordered the way Double.compare orders them, so NaN is greater than every other
+ * key and 0.0 is greater than -0.0.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class DoubleMaxHeap {
+
+	/** The capacity used if none is given. */
+	private static final int DEFAULT_SIZE = 20;
+
+	/** The keys, in heap order. */
+	private double[] keys;
+	/** The payload of each key, or null if no payload has been added yet. */
+	private int[] payloads = null;
+
+	/** The number of keys in the heap. */
+	private int size = 0;
+
+
+	/**
+	 * This will construct an empty heap with the default capacity.
+	 */
+	public DoubleMaxHeap() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * This will construct an empty heap.
+	 * @param initialCapacity The number of keys to make room for.
+	 * @throws IllegalArgumentException If the capacity isn't positive.
+	 */
+	public DoubleMaxHeap(int initialCapacity) {
+		if (initialCapacity <= 0)
+			throw new IllegalArgumentException("Heap must have an initial size > 0");
+		keys = new double[initialCapacity];
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * This method adds a key to the heap, with a payload of 0.
+	 * @param key The key to add.
+	 */
+	public void add(double key) {
+		add(key, 0);
+	}
+
+	/**
+	 * This method adds a key to the heap along with a payload.
+	 * @param key The key to add.
+	 * @param payload The payload that stays with the key.
+	 */
+	public void add(double key, int payload) {
+		if (size == keys.length)
+			grow();
+		if ((payloads == null) && (payload != 0))
+			payloads = new int[keys.length];
+		siftUp(size++, key, payload);
+	}
+
+	/**
+	 * This method gets the key on top of the heap.
+	 * @return The greatest key.
+	 * @throws IllegalArgumentException If the heap is empty.
+	 */
+	public double peek() {
+		if (size == 0)
+			throw new IllegalArgumentException("Empty heap!");
+		return keys[0];
+	}
+
+	/**
+	 * This method gets the payload of the key on top of the heap.
+	 * @return The payload, which is 0 if none was given.
+	 * @throws IllegalArgumentException If the heap is empty.
+	 */
+	public int peekPayload() {
+		if (size == 0)
+			throw new IllegalArgumentException("Empty heap!");
+		return (payloads == null) ? 0 : payloads[0];
+	}
+
+	/**
+	 * This method removes the key on top of the heap. Its payload should be read with
+	 * peekPayload() first if it is needed.
+	 * @return The key.
+	 * @throws IllegalArgumentException If the heap is empty.
+	 */
+	public double poll() {
+		double ret = peek();
+		size--;
+		if (size > 0)
+			siftDown(0, keys[size], (payloads == null) ? 0 : payloads[size]);
+		return ret;
+	}
+
+	/**
+	 * This method removes every key, keeping the arrays for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	public String toString() {
+		return Arrays.toString(Arrays.copyOf(keys, size));
+	}
+
+
+	/**
+	 * This method checks if one key belongs above another.
+	 * @param a The first key.
+	 * @param b The second key.
+	 * @return True if the first key has strictly higher priority.
+	 */
+	private boolean above(double a, double b) {
+		return Double.compare(a, b) > 0;
+	}
+
+	/**
+	 * This method puts a key into a hole in the heap and moves it up until its parent belongs above it.
+	 * Parents move down into the hole instead of being swapped, so each step writes each array once.
+	 * @param i The position of the hole.
+	 * @param key The key going into the hole.
+	 * @param payload The key's payload.
+	 */
+	private void siftUp(int i, double key, int payload) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!above(key, keys[parent]))
+				break;
+			keys[i] = keys[parent];
+			if (payloads != null)
+				payloads[i] = payloads[parent];
+			i = parent;
+		}
+		keys[i] = key;
+		if (payloads != null)
+			payloads[i] = payload;
+	}
+
+	/**
+	 * This method puts a key into a hole in the heap and moves it down until it belongs above both its children.
+	 * @param i The position of the hole.
+	 * @param key The key going into the hole.
+	 * @param payload The key's payload.
+	 */
+	private void siftDown(int i, double key, int payload) {
+		int half = size >>> 1;
+		while (i < half) {
+			int child = (2 * i) + 1;
+			if ((child + 1 < size) && above(keys[child + 1], keys[child]))
+				child++;
+			if (!above(keys[child], key))
+				break;
+			keys[i] = keys[child];
+			if (payloads != null)
+				payloads[i] = payloads[child];
+			i = child;
+		}
+		keys[i] = key;
+		if (payloads != null)
+			payloads[i] = payload;
+	}
+
+	/**
+	 * This method doubles the size of the arrays.
+	 */
+	private void grow() {
+		keys = Arrays.copyOf(keys, keys.length * 2);
+		if (payloads != null)
+			payloads = Arrays.copyOf(payloads, keys.length);
+	}
+}
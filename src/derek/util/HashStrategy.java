@@ -0,0 +1,54 @@
+package derek.util;
+
+/**
+ * This interface lets callers decide how keys are hashed and compared in an ArrayHashMap.
+ * The default strategy just uses the key's own hashCode and equals methods, but a strategy
+ * for a known key type can skip the virtual calls or compare only part of a key.
+ * The map mixes whatever hash code the strategy returns, so it does not have to be well spread.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public interface HashStrategy<K> {
+
+	/**
+	 * This method computes the hash code of a key.
+	 * Keys that are equal according to this strategy must have the same hash code.
+	 * @param key The key to hash, never null.
+	 * @return The hash code of the key.
+	 */
+	int hashCode(K key);
+
+	/**
+	 * This method checks if two keys should be treated as the same key.
+	 * @param a A key already stored in the map, never null.
+	 * @param b The key being looked up, never null.
+	 * @return True if the keys are equal, false if not.
+	 */
+	boolean equals(K a, K b);
+
+	/**
+	 * This method gets the strategy that uses the keys' own hashCode and equals methods.
+	 * @return The default strategy.
+	 */
+	@SuppressWarnings("unchecked")
+	static <K> HashStrategy<K> defaultStrategy() {
+		return (HashStrategy<K>) ObjectStrategy.INSTANCE;
+	}
+
+	/**
+	 * The strategy that simply defers to Object.hashCode and Object.equals.
+	 */
+	enum ObjectStrategy implements HashStrategy<Object> {
+		INSTANCE;
+
+		@Override
+		public int hashCode(Object key) {
+			return key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object a, Object b) {
+			return (a == b) || a.equals(b);
+		}
+	}
+}
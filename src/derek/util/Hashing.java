@@ -0,0 +1,83 @@
+package derek.util;
+
+/**
+ * This class holds the hash spreading helpers shared by the array-based hash tables.
+ * Everything here is static, it is just a place to keep the bit twiddling in one spot.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public final class Hashing {
+
+	/** The largest power of two that can be used as a table size. */
+	public static final int MAXIMUM_CAPACITY = 1 << 30;
+
+	/**
+	 * Nothing to construct here.
+	 */
+	private Hashing() {}
+
+
+	/**
+	 * This method mixes all the bits of a hash code so that every input bit affects the low bits.
+	 * It is the finalizer from MurmurHash3 (fmix32), which turns clustered hash codes like
+	 * sequential integers into well spread ones that can safely be masked into a table.
+	 * @param hashCode The hash code to mix.
+	 * @return The mixed hash code.
+	 */
+	public static int mix(int hashCode) {
+		int h = hashCode;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+
+	/**
+	 * This method mixes all the bits of a 64-bit key using the MurmurHash3 finalizer (fmix64).
+	 * @param key The key to mix.
+	 * @return The mixed 64-bit hash.
+	 */
+	public static long mix(long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+
+	/**
+	 * This method finds the smallest power of two that is at least the given capacity.
+	 * @param capacity The capacity wanted.
+	 * @return A power of two table size, between 1 and MAXIMUM_CAPACITY.
+	 */
+	public static int tableSizeFor(int capacity) {
+		if (capacity <= 1)
+			return 1;
+		if (capacity >= MAXIMUM_CAPACITY)
+			return MAXIMUM_CAPACITY;
+		return Integer.highestOneBit(capacity - 1) << 1;
+	}
+
+
+	/**
+	 * This method decides whether backward-shift deletion can move an entry into a hole.
+	 * Linear probing finds an entry by walking forward from its home slot, so the entry can only
+	 * move back into the hole if the hole lies on that walk, between its home and where it sits now.
+	 * Either run may wrap around the end of the table.
+	 * @param home The entry's home slot.
+	 * @param hole The empty slot before the entry.
+	 * @param i The slot the entry is in now.
+	 * @return True if moving the entry into the hole keeps it reachable from its home.
+	 */
+	public static boolean canShiftBack(int home, int hole, int i) {
+		if (hole <= i)
+			return (home <= hole) || (home > i);
+		return (home <= hole) && (home > i);
+	}
+}
@@ -0,0 +1,368 @@
+package derek.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * This class implements a binary heap whose elements can be found again after they are added.
+ * Adding an element returns a handle, and an int[] keeps track of where each handle's element
+ * currently sits in the heap. That lets an element be looked up, reprioritized or removed in
+ * O(log n) time, without searching for it or leaving stale copies behind.
+ *
+ * Handles are small ints, and the handle of an element that has left the heap is reused by
+ * a later add, so a handle should be forgotten once its element is polled or removed.
+ *
+ * The heap is ordered by a Comparator, or by the elements' natural ordering. IndexedMaxHeap keeps
+ * the greatest element on top, and IndexedMinHeap keeps the least.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public abstract class IndexedHeap<T> {
+
+	/** The capacity used if none is given. */
+	protected static final int DEFAULT_SIZE = 20;
+
+	/** The position of a handle that isn't in the heap. */
+	private static final int ABSENT = -1;
+
+	/** The comparator that orders elements, or null to use their natural ordering. */
+	private final Comparator<? super T> comparator;
+	/** True if the least element goes on top, rather than the greatest. */
+	private final boolean minHeap;
+
+	/** The element each handle refers to. */
+	private Object[] elements;
+	/** The handle at each position of the heap. */
+	private int[] heap;
+	/** The position of each handle in the heap, or ABSENT. */
+	private int[] position;
+	/** Handles that have been used before and are free again. */
+	private int[] free;
+	/** The number of free handles. */
+	private int freeCount = 0;
+	/** The number of handles ever handed out. */
+	private int used = 0;
+
+	/** The number of elements in the heap. */
+	private int size = 0;
+
+
+	/**
+	 * This will construct an empty heap.
+	 * @param initialCapacity The number of elements to make room for.
+	 * @param comparator The comparator to order elements with, or null to use their natural ordering.
+	 * @param minHeap True to keep the least element on top, false for the greatest.
+	 * @throws IllegalArgumentException If the capacity isn't positive.
+	 */
+	protected IndexedHeap(int initialCapacity, Comparator<? super T> comparator, boolean minHeap) {
+		if (initialCapacity <= 0)
+			throw new IllegalArgumentException("Heap must have an initial size > 0");
+		this.comparator = comparator;
+		this.minHeap = minHeap;
+		elements = new Object[initialCapacity];
+		heap = new int[initialCapacity];
+		position = new int[initialCapacity];
+		free = new int[initialCapacity];
+		Arrays.fill(position, ABSENT);
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * This gets the comparator that orders this heap's elements.
+	 * @return The comparator, or null if elements use their natural ordering.
+	 */
+	public Comparator<? super T> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * This method adds an element to the heap.
+	 * @param element The element to add.
+	 * @return The handle that refers to the element while it is in the heap.
+	 */
+	public int add(T element) {
+		int handle;
+		if (freeCount > 0)
+			handle = free[--freeCount];
+		else {
+			if (used == elements.length)
+				grow();
+			handle = used++;
+		}
+		elements[handle] = element;
+		heap[size] = handle;
+		position[handle] = size;
+		siftUp(size++);
+		return handle;
+	}
+
+	/**
+	 * This method gets the element on top of the heap.
+	 * @return The greatest element for a max-heap, or the least for a min-heap.
+	 * @throws IllegalArgumentException If the heap is empty.
+	 */
+	public T peek() {
+		return get(peekHandle());
+	}
+
+	/**
+	 * This method gets the handle of the element on top of the heap.
+	 * @return The handle.
+	 * @throws IllegalArgumentException If the heap is empty.
+	 */
+	public int peekHandle() {
+		if (size == 0)
+			throw new IllegalArgumentException("Empty heap!");
+		return heap[0];
+	}
+
+	/**
+	 * This method removes the element on top of the heap.
+	 * @return The element.
+	 * @throws IllegalArgumentException If the heap is empty.
+	 */
+	public T poll() {
+		return remove(peekHandle());
+	}
+
+	/**
+	 * This method removes the element on top of the heap, and returns its handle instead of the element.
+	 * The element can still be read with get() until the handle is reused.
+	 * @return The handle the element had.
+	 * @throws IllegalArgumentException If the heap is empty.
+	 */
+	public int pollHandle() {
+		int handle = peekHandle();
+		removeAt(0);
+		return handle;
+	}
+
+	/**
+	 * This method checks if a handle refers to an element in the heap.
+	 * @param handle The handle.
+	 * @return True if the handle's element is in the heap.
+	 */
+	public boolean contains(int handle) {
+		return (handle >= 0) && (handle < used) && (position[handle] != ABSENT);
+	}
+
+	/**
+	 * This method gets the element a handle refers to.
+	 * @param handle The handle.
+	 * @return The element.
+	 * @throws IllegalArgumentException If the handle has never been handed out.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int handle) {
+		if ((handle < 0) || (handle >= used))
+			throw new IllegalArgumentException("Unknown handle " + handle);
+		return (T) elements[handle];
+	}
+
+	/**
+	 * This method removes an element from the heap.
+	 * @param handle The handle of the element.
+	 * @return The element.
+	 * @throws IllegalArgumentException If the handle's element isn't in the heap.
+	 */
+	public T remove(int handle) {
+		int pos = checkedPosition(handle);
+		T ret = get(handle);
+		removeAt(pos);
+		return ret;
+	}
+
+	/**
+	 * This method replaces an element with one that is greater or equal, and moves it to match.
+	 * @param handle The handle of the element.
+	 * @param element The new element.
+	 * @throws IllegalArgumentException If the handle's element isn't in the heap, or the new element is less than it.
+	 */
+	public void increaseKey(int handle, T element) {
+		int pos = checkedPosition(handle);
+		if (compare(element, get(handle)) < 0)
+			throw new IllegalArgumentException("New element is less than the current one");
+		elements[handle] = element;
+		if (minHeap)
+			siftDown(pos);
+		else
+			siftUp(pos);
+	}
+
+	/**
+	 * This method replaces an element with one that is less or equal, and moves it to match.
+	 * @param handle The handle of the element.
+	 * @param element The new element.
+	 * @throws IllegalArgumentException If the handle's element isn't in the heap, or the new element is greater than it.
+	 */
+	public void decreaseKey(int handle, T element) {
+		int pos = checkedPosition(handle);
+		if (compare(element, get(handle)) > 0)
+			throw new IllegalArgumentException("New element is greater than the current one");
+		elements[handle] = element;
+		if (minHeap)
+			siftUp(pos);
+		else
+			siftDown(pos);
+	}
+
+	/**
+	 * This method replaces an element, moving it whichever way it needs to go.
+	 * @param handle The handle of the element.
+	 * @param element The new element.
+	 * @throws IllegalArgumentException If the handle's element isn't in the heap.
+	 */
+	public void update(int handle, T element) {
+		int pos = checkedPosition(handle);
+		elements[handle] = element;
+		if (siftUp(pos) == pos)
+			siftDown(pos);
+	}
+
+	/**
+	 * This method removes every element, and makes every handle free again.
+	 */
+	public void clear() {
+		Arrays.fill(elements, 0, used, null);
+		Arrays.fill(position, 0, used, ABSENT);
+		size = 0;
+		used = 0;
+		freeCount = 0;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0 ; i < size ; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(elements[heap[i]]);
+		}
+		return sb.append(']').toString();
+	}
+
+
+	/**
+	 * This method compares two elements with the heap's ordering.
+	 * @param a The first element.
+	 * @param b The second element.
+	 * @return A negative number, zero, or a positive number as a is less than, equal to, or greater than b.
+	 */
+	@SuppressWarnings("unchecked")
+	private int compare(T a, T b) {
+		if (comparator == null)
+			return ((Comparable<? super T>) a).compareTo(b);
+		return comparator.compare(a, b);
+	}
+
+	/**
+	 * This method checks if the element at one position belongs above the element at another.
+	 * @param i The first position.
+	 * @param j The second position.
+	 * @return True if the first element has strictly higher priority.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean above(int i, int j) {
+		int cmp = compare((T) elements[heap[i]], (T) elements[heap[j]]);
+		return minHeap ? (cmp < 0) : (cmp > 0);
+	}
+
+	/**
+	 * This method finds where a handle's element is in the heap.
+	 * @param handle The handle.
+	 * @return The element's position.
+	 * @throws IllegalArgumentException If the handle's element isn't in the heap.
+	 */
+	private int checkedPosition(int handle) {
+		if (!contains(handle))
+			throw new IllegalArgumentException("Handle " + handle + " is not in the heap");
+		return position[handle];
+	}
+
+	/**
+	 * This method takes the element at a position out of the heap and frees its handle.
+	 * The element itself stays readable until the handle is reused.
+	 * @param pos The position.
+	 */
+	private void removeAt(int pos) {
+		int handle = heap[pos];
+		size--;
+		if (pos != size) {
+			// Fill the hole with the last element, which may belong above or below it
+			heap[pos] = heap[size];
+			position[heap[pos]] = pos;
+			if (siftUp(pos) == pos)
+				siftDown(pos);
+		}
+		position[handle] = ABSENT;
+		free[freeCount++] = handle;
+	}
+
+	/**
+	 * This method moves the element at a position up until its parent belongs above it.
+	 * @param i The position.
+	 * @return The position the element ended up at.
+	 */
+	private int siftUp(int i) {
+		int handle = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			heap[i] = handle;
+			if (!above(i, parent))
+				break;
+			// Move the parent down into the hole
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = handle;
+		position[handle] = i;
+		return i;
+	}
+
+	/**
+	 * This method moves the element at a position down until it belongs above both its children.
+	 * @param i The position.
+	 * @return The position the element ended up at.
+	 */
+	private int siftDown(int i) {
+		int handle = heap[i];
+		while (true) {
+			int child = (2 * i) + 1;
+			if (child >= size)
+				break;
+			if ((child + 1 < size) && above(child + 1, child))
+				child++;
+			heap[i] = handle;
+			if (!above(child, i))
+				break;
+			// Move the child up into the hole
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = handle;
+		position[handle] = i;
+		return i;
+	}
+
+	/**
+	 * This method doubles the size of every array.
+	 */
+	private void grow() {
+		int capacity = elements.length * 2;
+		elements = Arrays.copyOf(elements, capacity);
+		heap = Arrays.copyOf(heap, capacity);
+		free = Arrays.copyOf(free, capacity);
+		int old = position.length;
+		position = Arrays.copyOf(position, capacity);
+		Arrays.fill(position, old, capacity, ABSENT);
+	}
+}
@@ -0,0 +1,46 @@
+package derek.util;
+
+import java.util.Comparator;
+
+/**
+ * This class implements an indexed heap that keeps the least element on top.
+ * See IndexedHeap for how handles work, and IndexedMaxHeap for the opposite order.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class IndexedMinHeap<T> extends IndexedHeap<T> {
+
+	/**
+	 * This will construct an empty heap that orders elements by their natural ordering.
+	 */
+	public IndexedMinHeap() {
+		this(DEFAULT_SIZE, null);
+	}
+
+	/**
+	 * This will construct an empty heap that orders elements by their natural ordering.
+	 * @param initialCapacity The number of elements to make room for.
+	 * @throws IllegalArgumentException If the capacity isn't positive.
+	 */
+	public IndexedMinHeap(int initialCapacity) {
+		this(initialCapacity, null);
+	}
+
+	/**
+	 * This will construct an empty heap that orders elements with a comparator.
+	 * @param comparator The comparator to order elements with, or null to use their natural ordering.
+	 */
+	public IndexedMinHeap(Comparator<? super T> comparator) {
+		this(DEFAULT_SIZE, comparator);
+	}
+
+	/**
+	 * This will construct an empty heap that orders elements with a comparator.
+	 * @param initialCapacity The number of elements to make room for.
+	 * @param comparator The comparator to order elements with, or null to use their natural ordering.
+	 * @throws IllegalArgumentException If the capacity isn't positive.
+	 */
+	public IndexedMinHeap(int initialCapacity, Comparator<? super T> comparator) {
+		super(initialCapacity, comparator, true);
+	}
+}
@@ -0,0 +1,381 @@
+package derek.util;
+
+import java.util.Arrays;
+
+/**
+ * This class implements a hash-map from primitive int keys to primitive int values using only arrays.
+ * It follows the same design as ArrayHashMap, with flat tables, linear probing, and
+ * backward-shift deletion, but nothing is ever boxed. An empty slot is marked by the key 0,
+ * and the key 0 itself is stored off to the side, so get and put never allocate.
+ * Since a missing key can't be reported as null, get returns a configurable "no entry" value.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class IntIntArrayHashMap {
+
+	/** The default number of slots, if no number is given. */
+	private static final int DEFAULT_SIZE = 16;
+	/** The default load-factor, if no factor is given. */
+	private static final float DEFAULT_LOADFACTOR = 0.6f;
+	/** The key value used to mark an empty slot. */
+	private static final int FREE_KEY = 0;
+
+	/** Factor used to determine when to increase the slot count. */
+	private float loadFactor;
+	/** The number of slots to start out with. */
+	private int initialCapacity;
+
+	/** The key stored in each slot, or FREE_KEY if the slot is empty. */
+	private int[] keys;
+	/** The value stored in each slot. */
+	private int[] values;
+	/** The value returned by get and remove when a key isn't in the map. */
+	private int noEntryValue;
+	/** The number of key-value pairs stored in this map. */
+	private int size = 0;
+	/** The number of pairs this map can hold before it has to grow. */
+	private int threshold;
+
+	/** Whether the key FREE_KEY is in the map, since it can't be stored in a slot. */
+	private boolean hasFreeKey = false;
+	/** The value stored with the key FREE_KEY. */
+	private int freeValue;
+
+
+	/**
+	 * This constructs an empty map with the default number of slots and load-factor.
+	 */
+	public IntIntArrayHashMap() {
+		this(DEFAULT_SIZE, DEFAULT_LOADFACTOR);
+	}
+
+
+	/**
+	 * This constructs an empty map with the given initial number of slots.
+	 * @param initialCapacity The initial number of slots to use (default is 16).
+	 */
+	public IntIntArrayHashMap(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOADFACTOR);
+	}
+
+
+	/**
+	 * This constructs an empty map with a given initial number of slots and a given load-factor.
+	 * @param initialCapacity The initial number of slots to use (default is 16).
+	 * 		  This is rounded up to a power of two.
+	 * @param loadFactor The load-factor that will determine when to increase the number
+	 * 		  of slots (default is 0.6). Must be between 0 and 1.
+	 */
+	public IntIntArrayHashMap(int initialCapacity, float loadFactor) {
+		this(initialCapacity, loadFactor, 0);
+	}
+
+
+	/**
+	 * This constructs an empty map with a given initial number of slots, a given load-factor,
+	 * and a given value to report for missing keys.
+	 * @param initialCapacity The initial number of slots to use (default is 16).
+	 * 		  This is rounded up to a power of two.
+	 * @param loadFactor The load-factor that will determine when to increase the number
+	 * 		  of slots (default is 0.6). Must be between 0 and 1.
+	 * @param noEntryValue The value returned when a key isn't in the map (default is 0).
+	 */
+	public IntIntArrayHashMap(int initialCapacity, float loadFactor, int noEntryValue) {
+		if (initialCapacity <= 0)
+			throw new IllegalArgumentException("Map must have an initial capacity > 0");
+		if (!(loadFactor > 0 && loadFactor < 1))
+			throw new IllegalArgumentException("Load factor must be between 0 and 1");
+		this.loadFactor = loadFactor;
+		this.initialCapacity = Hashing.tableSizeFor(initialCapacity);
+		this.noEntryValue = noEntryValue;
+		allocate(this.initialCapacity);
+	}
+
+
+	/**
+	 * This is a helper method to create fresh, empty tables with the given number of slots.
+	 * @param capacity The number of slots to create.
+	 */
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+	}
+
+
+	/**
+	 * This method converts a key into its home slot.
+	 * @param key The key to place.
+	 * @return The slot the key's probe run starts at.
+	 */
+	private int toIndex(int key) {
+		return Hashing.mix(key) & (keys.length - 1);
+	}
+
+
+	/**
+	 * This is a helper method to find the slot holding the given key.
+	 * @param key The key to look for, never FREE_KEY.
+	 * @return The slot holding the key, or -1 if the key is not in the map.
+	 */
+	private int findSlot(int key) {
+		int mask = keys.length - 1;
+		for (int i = toIndex(key) ; ; i = (i + 1) & mask) {
+			int k = keys[i];
+			if (k == key)
+				return i;
+			if (k == FREE_KEY)
+				return -1;
+		}
+	}
+
+
+	/**
+	 * This method will get the value at the given key in the map.
+	 * @param key The key for the value we are looking for.
+	 * @return The value associated with the given key or the no entry value if the key doesn't exist in the map.
+	 */
+	public int get(int key) {
+		return getOrDefault(key, noEntryValue);
+	}
+
+
+	/**
+	 * This method will get the value at the given key in the map, or a given default if there isn't one.
+	 * @param key The key for the value we are looking for.
+	 * @param defaultValue The value to return if the key doesn't exist in the map.
+	 * @return The value associated with the given key or the default value.
+	 */
+	public int getOrDefault(int key, int defaultValue) {
+		if (key == FREE_KEY)
+			return hasFreeKey ? freeValue : defaultValue;
+		int slot = findSlot(key);
+		return (slot < 0) ? defaultValue : values[slot];
+	}
+
+
+	/**
+	 * This method adds the given amount to the value at a key, starting from 0 if the key
+	 * isn't in the map yet. It only probes once, so counting with it is cheap.
+	 * @param key The key whose value to adjust.
+	 * @param amount The amount to add.
+	 * @return The new value at the key.
+	 */
+	public int addTo(int key, int amount) {
+		if (key == FREE_KEY) {
+			if (!hasFreeKey) {
+				hasFreeKey = true;
+				freeValue = 0;
+				size++;
+			}
+			return freeValue += amount;
+		}
+
+		int mask = keys.length - 1;
+		int i;
+		for (i = toIndex(key) ; keys[i] != FREE_KEY ; i = (i + 1) & mask) {
+			if (keys[i] == key)
+				return values[i] += amount;
+		}
+		if (size + 1 > threshold) {
+			resize(keys.length * 2);
+			mask = keys.length - 1;
+			for (i = toIndex(key) ; keys[i] != FREE_KEY ; i = (i + 1) & mask);
+		}
+		keys[i] = key;
+		values[i] = amount;
+		size++;
+		return amount;
+	}
+
+
+	/**
+	 * This method checks if the given key exists in the map.
+	 * @param key The key to look for.
+	 * @return True if the key exists, false if not.
+	 */
+	public boolean containsKey(int key) {
+		if (key == FREE_KEY)
+			return hasFreeKey;
+		return findSlot(key) >= 0;
+	}
+
+
+	/**
+	 * This method will store the given key-value pair in the map, replacing any value
+	 * already stored with the key.
+	 * @param key The key to store this value with.
+	 * @param value The value to store.
+	 * @return The value previously stored with the key, or the no entry value if there wasn't one.
+	 */
+	public int put(int key, int value) {
+		if (key == FREE_KEY) {
+			int old = hasFreeKey ? freeValue : noEntryValue;
+			if (!hasFreeKey)
+				size++;
+			hasFreeKey = true;
+			freeValue = value;
+			return old;
+		}
+
+		// Probe for the key or the first empty slot in its run
+		int mask = keys.length - 1;
+		int i;
+		for (i = toIndex(key) ; keys[i] != FREE_KEY ; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				int old = values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+
+		// Grow first if this pair would push us past the load-factor, then find a new empty slot
+		if (size + 1 > threshold) {
+			resize(keys.length * 2);
+			mask = keys.length - 1;
+			for (i = toIndex(key) ; keys[i] != FREE_KEY ; i = (i + 1) & mask);
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		return noEntryValue;
+	}
+
+
+	/**
+	 * This method will remove the key-value pair from the map and return the value
+	 * that was stored if any.
+	 * @param key The key to remove.
+	 * @return The value at the given key, or the no entry value if there is no such key.
+	 */
+	public int remove(int key) {
+		if (key == FREE_KEY) {
+			if (!hasFreeKey)
+				return noEntryValue;
+			int old = freeValue;
+			hasFreeKey = false;
+			freeValue = 0;
+			size--;
+			return old;
+		}
+
+		int slot = findSlot(key);
+		if (slot < 0)
+			return noEntryValue;
+		int old = values[slot];
+		deleteSlot(slot);
+		size--;
+		return old;
+	}
+
+
+	/**
+	 * This is a helper method to empty a slot without leaving a gap in any probe run,
+	 * using the same backward-shift deletion as ArrayHashMap.
+	 * @param slot The slot to empty.
+	 */
+	private void deleteSlot(int slot) {
+		int mask = keys.length - 1;
+		int hole = slot;
+		for (int i = (slot + 1) & mask ; keys[i] != FREE_KEY ; i = (i + 1) & mask) {
+			int home = toIndex(keys[i]);
+			if (Hashing.canShiftBack(home, hole, i)) {
+				keys[hole] = keys[i];
+				values[hole] = values[i];
+				hole = i;
+			}
+		}
+		keys[hole] = FREE_KEY;
+		values[hole] = 0;
+	}
+
+
+	/**
+	 * This is a helper method to move every entry into a table with the given number of slots.
+	 * @param capacity The new number of slots.
+	 */
+	private void resize(int capacity) {
+		if (keys.length == Hashing.MAXIMUM_CAPACITY)
+			throw new IllegalStateException("Map cannot grow past " + Hashing.MAXIMUM_CAPACITY + " slots");
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+
+		int mask = keys.length - 1;
+		for (int j = 0 ; j < oldKeys.length ; j++) {
+			int k = oldKeys[j];
+			if (k == FREE_KEY)
+				continue;
+			int i = toIndex(k);
+			while (keys[i] != FREE_KEY)
+				i = (i + 1) & mask;
+			keys[i] = k;
+			values[i] = oldValues[j];
+		}
+	}
+
+
+	/**
+	 * This method creates and returns an array of all the keys in this map, in no particular order.
+	 * @return A new array of all the keys in this map.
+	 */
+	public int[] keys() {
+		int[] ret = new int[size];
+		int pos = 0;
+		if (hasFreeKey)
+			ret[pos++] = FREE_KEY;
+		for (int i = 0 ; i < keys.length ; i++) {
+			if (keys[i] != FREE_KEY)
+				ret[pos++] = keys[i];
+		}
+		return ret;
+	}
+
+
+	/**
+	 * This method completely empties the map and resets it to its initial number of slots.
+	 */
+	public void clear() {
+		allocate(initialCapacity);
+		hasFreeKey = false;
+		freeValue = 0;
+		size = 0;
+	}
+
+
+	/**
+	 * This gets the number of key-value pairs currently stored in this map.
+	 * @return The number of pairs stored.
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * This method checks if the map is empty.
+	 * @return True if the map is empty, false if not.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+
+	/**
+	 * This creates and returns a simple representation of the map in string form.
+	 * @return A string listing every key and value.
+	 */
+	@Override
+	public String toString() {
+		int[] k = keys();
+		Arrays.sort(k);
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0 ; i < k.length ; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(k[i]).append('=').append(get(k[i]));
+		}
+		return sb.append('}').toString();
+	}
+}
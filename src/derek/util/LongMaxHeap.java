@@ -0,0 +1,26 @@
+package derek.util;
+
+/**
+ * This class implements a heap of primitive long keys that keeps the greatest key on top.
+ * See LongHeap for how payloads work, and LongMinHeap for the opposite order.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class LongMaxHeap extends LongHeap {
+
+	/**
+	 * This will construct an empty heap with the default capacity.
+	 */
+	public LongMaxHeap() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * This will construct an empty heap.
+	 * @param initialCapacity The number of keys to make room for.
+	 * @throws IllegalArgumentException If the capacity isn't positive.
+	 */
+	public LongMaxHeap(int initialCapacity) {
+		super(initialCapacity, false);
+	}
+}
@@ -0,0 +1,26 @@
+package derek.util;
+
+/**
+ * This class implements a heap of primitive long keys that keeps the least key on top.
+ * See LongHeap for how payloads work, and LongMaxHeap for the opposite order.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class LongMinHeap extends LongHeap {
+
+	/**
+	 * This will construct an empty heap with the default capacity.
+	 */
+	public LongMinHeap() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * This will construct an empty heap.
+	 * @param initialCapacity The number of keys to make room for.
+	 * @throws IllegalArgumentException If the capacity isn't positive.
+	 */
+	public LongMinHeap(int initialCapacity) {
+		super(initialCapacity, true);
+	}
+}
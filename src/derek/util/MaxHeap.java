@@ -1,28 +1,57 @@
 package derek.util;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 
 public class MaxHeap<T extends Comparable<T>> {
 
     private static final int DEFAULT_SIZE = 20;
+    private static final int DEFAULT_ARITY = 2;
     
     private int size = 0;
     private Object[] elements;
+    // Number of children per node. Wider nodes make the heap shallower, and a node's
+    // children sit next to each other in the array, so each level down costs fewer cache misses.
+    private final int arity;
 
     public MaxHeap() {
         this(DEFAULT_SIZE);
     }
 
     public MaxHeap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_ARITY);
+    }
+
+    public MaxHeap(int initialCapacity, int arity) {
         if (initialCapacity <= 0)
             throw new IllegalArgumentException("Heap must have an initial size > 0");
+        if (arity < 2)
+            throw new IllegalArgumentException("Heap must have an arity >= 2");
         elements = new Object[initialCapacity];
+        this.arity = arity;
+    }
+
+    public MaxHeap(Collection<? extends T> c) {
+        this(Math.max(c.size(), DEFAULT_SIZE));
+        addAll(c);
+    }
+
+    public MaxHeap(T[] a) {
+        this(Math.max(a.length, DEFAULT_SIZE));
+        System.arraycopy(a, 0, elements, 0, a.length);
+        size = a.length;
+        heapify(elements, size, arity, null);
     }
     
     public int size() {
     	return size;
     }
 
+    public int arity() {
+    	return arity;
+    }
+
     @SuppressWarnings("unchecked")
 	public T peek() {
         if (size == 0)
@@ -33,8 +62,24 @@ public class MaxHeap<T extends Comparable<T>> {
     public void add(T element) {
     	size++;
     	maintainCapacity();
-        elements[size - 1] = element;
-        maintainUpwards();
+        siftUp(elements, size - 1, element, arity, null);
+    }
+
+    public void addAll(Collection<? extends T> c) {
+    	int oldSize = size;
+    	int n = c.size();
+    	if (size + n > elements.length)
+    		elements = Arrays.copyOf(elements, size + n);
+    	for (T element : c)
+    		elements[size++] = element;
+    	// Sifting each new element up costs O(n log size), so once the batch is as big as the
+    	// heap it's cheaper to rebuild the whole thing in linear time
+    	if (n >= oldSize)
+    		heapify(elements, size, arity, null);
+    	else {
+    		for (int i = oldSize ; i < size ; i++)
+    			siftUp(elements, i, elements[i], arity, null);
+    	}
     }
 
     @SuppressWarnings("unchecked")
@@ -42,9 +87,10 @@ public class MaxHeap<T extends Comparable<T>> {
         if (size == 0)
             throw new IllegalArgumentException("Empty heap!");
         T temp = (T) elements[0];
-        elements[0] = elements[size - 1];
         size--;
-        maintainDownwards();
+        if (size > 0)
+        	siftDownFromRoot(elements, elements[size], size, arity, null);
+        elements[size] = null;
         return temp;
     }
     
@@ -52,83 +98,115 @@ public class MaxHeap<T extends Comparable<T>> {
     	return Arrays.toString(elements);
     }
 
-    @SuppressWarnings("unchecked")
-	private void maintainDownwards() {
-    	int i = 0;
-    	while (hasLeftChild(i)) {
-    		int greaterIndex = getIndexOfLeftChild(i);
-    		if (hasRightChild(i) && (getRightChild(i).compareTo(getLeftChild(i)) > 0))
-    			greaterIndex = getIndexOfRightChild(i);
-    		if (((T) elements[i]).compareTo((T) elements[greaterIndex]) < 0)
-    			swap(i, greaterIndex);
-    		else
-    			break;
-    		i = greaterIndex;
-    	}
+    public static <E extends Comparable<? super E>> void heapSort(E[] a) {
+    	heapSort(a, null);
     }
 
-    @SuppressWarnings("unchecked")
-	private void maintainUpwards() {
-    	int i = size - 1;
-    	loop: while (hasParent(i)) {
-    		if (getParent(i).compareTo((T) elements[i]) > 0) 
-    			break loop;
-    		int parentIdx = getIndexOfParent(i);
-    		swap(i, parentIdx);
-    		i = parentIdx;
+    // Sorts into ascending order in place, using the same sift code as the heap itself.
+    // A null comparator sorts by natural ordering.
+    public static <E> void heapSort(E[] a, Comparator<? super E> c) {
+    	heapify(a, a.length, DEFAULT_ARITY, c);
+    	for (int end = a.length - 1 ; end > 0 ; end--) {
+    		// Move the max to the end, and the element it displaces into the root hole
+    		Object last = a[end];
+    		a[end] = a[0];
+    		siftDownFromRoot(a, last, end, DEFAULT_ARITY, c);
     	}
     }
 
-    @SuppressWarnings("unchecked")
-	private void swap(int index0, int index1) {
-        T temp = (T) elements[index0];
-        elements[index0] = elements[index1];
-        elements[index1] = temp;
-    }
+    /*
+     * The sift code is static and works on any array and comparator, so heapSort and other heaps
+     * in this package can share it. A null comparator means natural ordering. Each method moves
+     * a hole through the array and drops the element in at the end, rather than swapping.
+     */
 
-    private void maintainCapacity() {
-        if (size == elements.length)
-            elements = Arrays.copyOf(elements, size * 2);
+    // Floyd's O(n) build: sift down every node that has children, from the last one back to the root.
+    static <E> void heapify(Object[] heap, int size, int arity, Comparator<? super E> c) {
+    	if (size < 2)
+    		return;
+    	for (int i = getIndexOfParent(size - 1, arity) ; i >= 0 ; i--)
+    		siftDown(heap, i, heap[i], size, arity, c);
     }
 
-    @SuppressWarnings("unchecked")
-	private T getLeftChild(int parentIndex) {
-        return (T) elements[getIndexOfLeftChild(parentIndex)];
-    }
-
-    @SuppressWarnings("unchecked")
-	private T getRightChild(int parentIndex) {
-        return (T) elements[getIndexOfRightChild(parentIndex)];
+    static <E> void siftUp(Object[] heap, int i, Object element, int arity, Comparator<? super E> c) {
+    	while (i > 0) {
+    		int parentIdx = getIndexOfParent(i, arity);
+    		if (compare(heap[parentIdx], element, c) >= 0)
+    			break;
+    		heap[i] = heap[parentIdx];
+    		i = parentIdx;
+    	}
+    	heap[i] = element;
     }
 
-    @SuppressWarnings("unchecked")
-	private T getParent(int childIndex) {
-        return (T) elements[getIndexOfParent(childIndex)];
+    // Top-down sift, which stops as soon as the element is at least as great as its children.
+    static <E> void siftDown(Object[] heap, int i, Object element, int size, int arity, Comparator<? super E> c) {
+    	int firstLeaf = getFirstLeaf(size, arity);
+    	while (i < firstLeaf) {
+    		int greaterIndex = getIndexOfGreatestChild(heap, i, size, arity, c);
+    		if (compare(element, heap[greaterIndex], c) >= 0)
+    			break;
+    		heap[i] = heap[greaterIndex];
+    		i = greaterIndex;
+    	}
+    	heap[i] = element;
     }
 
-    private boolean hasLeftChild(int parentIndex) {
-        return ((2 * parentIndex) + 1) < size;
+    /*
+     * Floyd's bottom-up sift, for filling the root after it's removed: the element taken from
+     * the end almost always belongs near the bottom, so rather than comparing it against every
+     * level on the way down, walk the hole at the root all the way to a leaf by promoting the
+     * greatest child, then sift the element up from there. That skips one comparison per level
+     * on the way down and usually only needs one or two on the way up.
+     */
+    static <E> void siftDownFromRoot(Object[] heap, Object element, int size, int arity, Comparator<? super E> c) {
+    	int i = 0;
+    	int firstLeaf = getFirstLeaf(size, arity);
+    	while (i < firstLeaf) {
+    		int greaterIndex = getIndexOfGreatestChild(heap, i, size, arity, c);
+    		heap[i] = heap[greaterIndex];
+    		i = greaterIndex;
+    	}
+    	siftUp(heap, i, element, arity, c);
     }
 
-    private boolean hasRightChild(int parentIndex) {
-        return ((2 * parentIndex) + 2) < size;
+    private static <E> int getIndexOfGreatestChild(Object[] heap, int parentIndex, int size, int arity, Comparator<? super E> c) {
+    	int child = (arity * parentIndex) + 1;
+    	// The binary case is spelled out, since a loop that runs once was measured at about half
+    	// the speed on large heaps
+    	if (arity == 2) {
+    		if (((child + 1) < size) && (compare(heap[child + 1], heap[child], c) > 0))
+    			return child + 1;
+    		return child;
+    	}
+    	int end = Math.min(child + arity, size);
+    	int greaterIndex = child;
+    	for (int i = child + 1 ; i < end ; i++) {
+    		if (compare(heap[i], heap[greaterIndex], c) > 0)
+    			greaterIndex = i;
+    	}
+    	return greaterIndex;
     }
 
-    private boolean hasParent(int childIndex) {
-    	if (childIndex == 0)
-    		return false;
-        return ((childIndex - 1) / 2) >= 0;
+    @SuppressWarnings("unchecked")
+    private static <E> int compare(Object a, Object b, Comparator<? super E> c) {
+    	if (c == null)
+    		return ((Comparable<Object>) a).compareTo(b);
+    	return c.compare((E) a, (E) b);
     }
 
-    private int getIndexOfLeftChild(int parentIndex) {
-        return (2 * parentIndex) + 1;
+    private void maintainCapacity() {
+        // add() counts the new element before calling this, so it only overflows once size passes the length
+        if (size > elements.length)
+            elements = Arrays.copyOf(elements, elements.length * 2);
     }
 
-    private int getIndexOfRightChild(int parentIndex) {
-        return (2 * parentIndex) + 2;
+    // Nodes from here on have no children
+    private static int getFirstLeaf(int size, int arity) {
+    	return (size > 1) ? getIndexOfParent(size - 1, arity) + 1 : 0;
     }
 
-    private int getIndexOfParent(int childIndex) {
-        return (childIndex - 1) / 2;
+    private static int getIndexOfParent(int childIndex, int arity) {
+        return (childIndex - 1) / arity;
     }
-} 
\ No newline at end of file
+}
@@ -1,44 +1,253 @@
 package derek.util;
 
-import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class MergeSort {
 
+	// Runs this short are insertion sorted, which beats merging on so few elements
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+	// parallelSort stops splitting sorts and merges into more tasks below this many elements
+	private static final int PARALLEL_THRESHOLD = 8192;
+
+	public static <T extends Comparable<? super T>> void sort(List<T> l) {
+		sort(l, null);
+	}
+
+	// Sorts the list's elements as an array, then writes them back with one pass of a ListIterator,
+	// so a LinkedList sorts as fast as an ArrayList. A null comparator sorts by natural ordering.
+	@SuppressWarnings("unchecked")
+	public static <T> void sort(List<T> l, Comparator<? super T> c) {
+		Object[] a = l.toArray();
+		sort(a, (Comparator<Object>) c);
+		ListIterator<T> it = l.listIterator();
+		for (Object element : a) {
+			it.next();
+			it.set((T) element);
+		}
+	}
+
+	public static <T extends Comparable<? super T>> void sort(T[] a) {
+		sort(a, null);
+	}
+
+	// The sort is stable, so equal elements keep their order.
+	public static <T> void sort(T[] a, Comparator<? super T> c) {
+		if (a.length < 2)
+			return;
+		// The only scratch space is one copy of the array, which trades roles with it at each level
+		Object[] buffer = a.clone();
+		sort(buffer, a, 0, a.length, c);
+	}
+
+	public static <T extends Comparable<? super T>> void parallelSort(T[] a) {
+		parallelSort(a, null, PARALLEL_THRESHOLD);
+	}
+
+	public static <T> void parallelSort(T[] a, Comparator<? super T> c) {
+		parallelSort(a, c, PARALLEL_THRESHOLD);
+	}
+
+	// Sorts the same way as sort(), and is just as stable, but splits the work into fork/join tasks
+	// on the common pool. Both halves of a sort run in parallel, and so does each merge: the longer
+	// run is cut in half, and a binary search finds where the other run splits to match, so the two
+	// halves of the output can be merged at the same time. Ranges shorter than the threshold are
+	// left to one thread.
+	public static <T> void parallelSort(T[] a, Comparator<? super T> c, int threshold) {
+		if (threshold < INSERTION_SORT_THRESHOLD)
+			throw new IllegalArgumentException("Threshold must be at least " + INSERTION_SORT_THRESHOLD);
+		if (a.length <= threshold) {
+			sort(a, c);
+			return;
+		}
+		Object[] buffer = a.clone();
+		ForkJoinPool.commonPool().invoke(new SortTask<T>(buffer, a, 0, a.length, c, threshold));
+	}
+
+	// Sorts src[low, high) into dest[low, high). Both start out holding the same elements, so each
+	// half can be sorted into src using dest as its scratch space, and then merged back into dest.
+	static <T> void sort(Object[] src, Object[] dest, int low, int high, Comparator<? super T> c) {
+		if (high - low < INSERTION_SORT_THRESHOLD) {
+			insertionSort(dest, low, high, c);
+			return;
+		}
+
+		int mid = (low + high) >>> 1;
+		sort(dest, src, low, mid, c);
+		sort(dest, src, mid, high, c);
+
+		// If the halves are already in order there's nothing to merge
+		if (compare(src[mid - 1], src[mid], c) <= 0) {
+			System.arraycopy(src, low, dest, low, high - low);
+			return;
+		}
+		merge(src, dest, low, mid, high, c);
+	}
+
+	// Merges the sorted runs src[low, mid) and src[mid, high) into dest[low, high).
+	static <T> void merge(Object[] src, Object[] dest, int low, int mid, int high, Comparator<? super T> c) {
+		merge(src, low, mid, mid, high, dest, low, c);
+	}
+
+	// Merges the sorted runs src[aLow, aHigh) and src[bLow, bHigh) into dest starting at pos, taking
+	// from the first run on ties so the merge is stable.
+	static <T> void merge(Object[] src, int aLow, int aHigh, int bLow, int bHigh, Object[] dest, int pos,
+			Comparator<? super T> c) {
+		for (; aLow < aHigh && bLow < bHigh ; pos++) {
+			if (compare(src[aLow], src[bLow], c) <= 0)
+				dest[pos] = src[aLow++];
+			else
+				dest[pos] = src[bLow++];
+		}
+
+		// Only one of the runs has anything left
+		if (aLow < aHigh)
+			System.arraycopy(src, aLow, dest, pos, aHigh - aLow);
+		else
+			System.arraycopy(src, bLow, dest, pos, bHigh - bLow);
+	}
+
+	private static <T> void insertionSort(Object[] a, int low, int high, Comparator<? super T> c) {
+		for (int i = low + 1 ; i < high ; i++) {
+			Object element = a[i];
+			int j = i - 1;
+			// Only move past strictly greater elements, which keeps equal ones in order
+			for (; j >= low && compare(a[j], element, c) > 0 ; j--)
+				a[j + 1] = a[j];
+			a[j + 1] = element;
+		}
+	}
+
 	@SuppressWarnings("unchecked")
-	public static void sort(List<? extends Comparable> l) {
-		ArrayList<Comparable> original = new ArrayList<Comparable>(l);
-		sort((List<Comparable>) original, (List<Comparable>) l, 0, original.size() - 1);
-	}
-	
-	private static void sort(List<Comparable> original, List<Comparable> ordered, int low, int high) {
-		if (low < high) {
-			int mid = (low + high) / 2;
-			sort(original, ordered, low, mid);
-			sort(original, ordered, mid + 1, high);
-			merge(original, ordered, low, mid, high);
-		}
-	}
-	
-
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private static void merge(List<Comparable> original, List<Comparable> ordered, int low, int mid, int high) {
-		for (int i = low ; i <= high ; i++)
-			original.set(i, ordered.get(i));
-		
-		int iLow = low;
-		int iHigh = mid + 1;
-		int pos = low;
-		for (; iLow <= mid && iHigh <= high ; pos++) {
-			if (((Comparable) original.get(iLow)).compareTo(original.get(iHigh)) <= 0)
-				ordered.set(pos, original.get(iLow++));
+	private static <T> int compare(Object a, Object b, Comparator<? super T> c) {
+		if (c == null)
+			return ((Comparable<Object>) a).compareTo(b);
+		return c.compare((T) a, (T) b);
+	}
+
+	// Finds the first index in a[low, high) whose element is not less than key, or high if there isn't one.
+	private static <T> int lowerBound(Object[] a, int low, int high, Object key, Comparator<? super T> c) {
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(a[mid], key, c) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	// Finds the first index in a[low, high) whose element is greater than key, or high if there isn't one.
+	private static <T> int upperBound(Object[] a, int low, int high, Object key, Comparator<? super T> c) {
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(a[mid], key, c) <= 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+
+	// The parallel version of sort(src, dest, low, high, c).
+	@SuppressWarnings("serial")
+	private static final class SortTask<T> extends RecursiveAction {
+
+		private final Object[] src;
+		private final Object[] dest;
+		private final int low;
+		private final int high;
+		private final Comparator<? super T> c;
+		private final int threshold;
+
+		private SortTask(Object[] src, Object[] dest, int low, int high, Comparator<? super T> c, int threshold) {
+			this.src = src;
+			this.dest = dest;
+			this.low = low;
+			this.high = high;
+			this.c = c;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (high - low <= threshold) {
+				sort(src, dest, low, high, c);
+				return;
+			}
+
+			int mid = (low + high) >>> 1;
+			SortTask<T> left = new SortTask<T>(dest, src, low, mid, c, threshold);
+			left.fork();
+			new SortTask<T>(dest, src, mid, high, c, threshold).compute();
+			left.join();
+
+			if (compare(src[mid - 1], src[mid], c) <= 0)
+				System.arraycopy(src, low, dest, low, high - low);
 			else
-				ordered.set(pos, original.get(iHigh++));
+				new MergeTask<T>(src, low, mid, mid, high, dest, low, c, threshold).compute();
+		}
+	}
+
+	// The parallel version of merge(src, aLow, aHigh, bLow, bHigh, dest, pos, c).
+	@SuppressWarnings("serial")
+	private static final class MergeTask<T> extends RecursiveAction {
+
+		private final Object[] src;
+		private final int aLow;
+		private final int aHigh;
+		private final int bLow;
+		private final int bHigh;
+		private final Object[] dest;
+		private final int pos;
+		private final Comparator<? super T> c;
+		private final int threshold;
+
+		private MergeTask(Object[] src, int aLow, int aHigh, int bLow, int bHigh, Object[] dest, int pos,
+				Comparator<? super T> c, int threshold) {
+			this.src = src;
+			this.aLow = aLow;
+			this.aHigh = aHigh;
+			this.bLow = bLow;
+			this.bHigh = bHigh;
+			this.dest = dest;
+			this.pos = pos;
+			this.c = c;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			int aLength = aHigh - aLow;
+			int bLength = bHigh - bLow;
+			if (aLength + bLength <= threshold) {
+				merge(src, aLow, aHigh, bLow, bHigh, dest, pos, c);
+				return;
+			}
+
+			// Cut the longer run in half, and cut the other run where that element would go.
+			// Equal elements from the first run belong before those from the second, so the
+			// search leaves them on the first run's side of the cut either way.
+			int aMid;
+			int bMid;
+			if (aLength >= bLength) {
+				aMid = (aLow + aHigh) >>> 1;
+				bMid = lowerBound(src, bLow, bHigh, src[aMid], c);
+			}
+			else {
+				bMid = (bLow + bHigh) >>> 1;
+				aMid = upperBound(src, aLow, aHigh, src[bMid], c);
+			}
+
+			MergeTask<T> left = new MergeTask<T>(src, aLow, aMid, bLow, bMid, dest, pos, c, threshold);
+			left.fork();
+			int rightPos = pos + (aMid - aLow) + (bMid - bLow);
+			new MergeTask<T>(src, aMid, aHigh, bMid, bHigh, dest, rightPos, c, threshold).compute();
+			left.join();
 		}
-		
-		int remaining = mid - iLow;
-		for (int i = 0; i <= remaining ; i++)
-			ordered.set(pos + i, original.get(iLow + i));
-		
 	}
 }
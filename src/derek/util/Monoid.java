@@ -0,0 +1,27 @@
+package derek.util;
+
+/**
+ * This interface describes an associative way of combining values that has an identity,
+ * such as addition with zero, or taking the maximum with negative infinity.
+ * Data structures use it to keep a summary of each subtree, so a whole range of values
+ * can be combined without visiting every one of them.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public interface Monoid<T> {
+
+	/**
+	 * This method returns the value that changes nothing when combined with another.
+	 * @return The identity value.
+	 */
+	T identity();
+
+	/**
+	 * This method combines two values. It must be associative, but it doesn't need to be commutative;
+	 * values are always combined in sorted order.
+	 * @param a The value that comes first.
+	 * @param b The value that comes second.
+	 * @return The combined value.
+	 */
+	T combine(T a, T b);
+}
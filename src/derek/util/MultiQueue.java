@@ -0,0 +1,258 @@
+package derek.util;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class implements a relaxed, thread-safe max-priority queue, known as a MultiQueue.
+ * Elements are spread over several MaxHeap shards, each with its own lock, so threads adding and
+ * polling at the same time mostly work on different shards instead of queueing on one lock.
+ *
+ * An add goes to a random shard. A poll looks at the cached tops of two random shards and takes
+ * from the one with the greater top. That means poll doesn't always return the greatest element
+ * in the queue, but it returns one close to the top, and it gets closer the fewer shards there are.
+ * If the shard a thread picked is locked, it picks again, and only waits for a lock once
+ * it has run into several busy shards in a row.
+ *
+ * A semaphore counts the elements, so take() can block until there is one to take.
+ * Counters for adds, polls and lock collisions are kept in LongAdders, so keeping them doesn't
+ * make the threads contend. Null elements are not allowed.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class MultiQueue<T extends Comparable<T>> {
+
+	/** The default number of shards per available processor, if no number is given. */
+	private static final int DEFAULT_SHARDS_PER_PROCESSOR = 2;
+	/** How many random pairs of shards a poll tries before it scans all of them. */
+	private static final int RANDOM_ATTEMPTS = 8;
+
+	/** The shards. */
+	private final Shard<T>[] shards;
+
+	/** One permit for each element that has been added and not yet claimed by a poll. */
+	private final Semaphore available = new Semaphore(0);
+
+	/** The number of elements added. */
+	private final LongAdder adds = new LongAdder();
+	/** The number of elements polled. */
+	private final LongAdder polls = new LongAdder();
+	/** The number of times a thread found the shard it picked locked, and picked again. */
+	private final LongAdder collisions = new LongAdder();
+
+
+	/**
+	 * This is an inner class for one shard of the queue.
+	 * It extends ReentrantLock so the shard is its own lock.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	@SuppressWarnings("serial")
+	private static final class Shard<E extends Comparable<E>> extends ReentrantLock {
+
+		/** The elements in this shard. Only touched while holding the lock. */
+		private final MaxHeap<E> heap = new MaxHeap<E>();
+		/** The greatest element in this shard, or null if it's empty, for polls to look at without locking. */
+		private volatile E top = null;
+	}
+
+
+	/**
+	 * This will construct an empty queue with two shards per available processor.
+	 */
+	public MultiQueue() {
+		this(DEFAULT_SHARDS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * This will construct an empty queue.
+	 * @param shardCount The number of shards. More shards means less contention and a looser order.
+	 * @throws IllegalArgumentException If there are fewer than two shards.
+	 */
+	@SuppressWarnings("unchecked")
+	public MultiQueue(int shardCount) {
+		if (shardCount < 2)
+			throw new IllegalArgumentException("Queue must have at least 2 shards");
+		shards = (Shard<T>[]) new Shard<?>[shardCount];
+		for (int i = 0 ; i < shardCount ; i++)
+			shards[i] = new Shard<T>();
+	}
+
+
+	/**
+	 * This method returns the number of elements in the queue. Other threads may change it at any time.
+	 * @return The number of elements.
+	 */
+	public int size() {
+		return available.availablePermits();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int shardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * This method adds an element to a random shard.
+	 * @param element The element to add.
+	 * @throws NullPointerException If the element is null.
+	 */
+	public void add(T element) {
+		if (element == null)
+			throw new NullPointerException();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Shard<T> shard = shards[random.nextInt(shards.length)];
+		for (int attempt = 1 ; !shard.tryLock() ; attempt++) {
+			collisions.increment();
+			shard = shards[random.nextInt(shards.length)];
+			// If every pick is busy, the lock holders have probably been descheduled, so wait
+			// for one rather than spinning
+			if (attempt == shards.length) {
+				shard.lock();
+				break;
+			}
+		}
+		try {
+			shard.heap.add(element);
+			shard.top = shard.heap.peek();
+		} finally {
+			shard.unlock();
+		}
+		adds.increment();
+		available.release();
+	}
+
+	/**
+	 * This method removes an element from near the top of the queue, without waiting.
+	 * @return The element, or null if the queue is empty.
+	 */
+	public T poll() {
+		if (!available.tryAcquire())
+			return null;
+		return claim();
+	}
+
+	/**
+	 * This method removes an element from near the top of the queue, waiting for one if it's empty.
+	 * @return The element.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public T take() throws InterruptedException {
+		available.acquire();
+		return claim();
+	}
+
+	/**
+	 * This method removes an element from near the top of the queue, waiting up to a time limit
+	 * for one if it's empty.
+	 * @param timeout How long to wait.
+	 * @param unit The unit of the timeout.
+	 * @return The element, or null if the time ran out first.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public T take(long timeout, TimeUnit unit) throws InterruptedException {
+		if (!available.tryAcquire(timeout, unit))
+			return null;
+		return claim();
+	}
+
+	/**
+	 * This gets the number of elements that have been added.
+	 * @return The count.
+	 */
+	public long addCount() {
+		return adds.sum();
+	}
+
+	/**
+	 * This gets the number of elements that have been polled or taken.
+	 * @return The count.
+	 */
+	public long pollCount() {
+		return polls.sum();
+	}
+
+	/**
+	 * This gets the number of times a thread found the shard it picked locked by another thread.
+	 * A high count compared to adds and polls means the queue needs more shards.
+	 * @return The count.
+	 */
+	public long collisionCount() {
+		return collisions.sum();
+	}
+
+	public String toString() {
+		return "MultiQueue[shards=" + shards.length + ", size=" + size() + ", adds=" + addCount()
+				+ ", polls=" + pollCount() + ", collisions=" + collisionCount() + "]";
+	}
+
+
+	/**
+	 * This method removes an element after the caller has claimed a permit for it. Elements are
+	 * added before their permits are released, and permits are claimed before elements are removed,
+	 * so there is always one left for each claimed permit, though other threads may get to any
+	 * particular shard first.
+	 * @return The element.
+	 */
+	private T claim() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int attempt = 0 ; ; attempt++) {
+			Shard<T> shard;
+			if (attempt < RANDOM_ATTEMPTS) {
+				// Pick the better of two random shards, going by their cached tops
+				Shard<T> a = shards[random.nextInt(shards.length)];
+				Shard<T> b = shards[random.nextInt(shards.length)];
+				T aTop = a.top;
+				T bTop = b.top;
+				if (aTop == null) {
+					if (bTop == null)
+						continue;
+					shard = b;
+				}
+				else
+					shard = ((bTop != null) && (bTop.compareTo(aTop) > 0)) ? b : a;
+			}
+			else {
+				// The random picks kept finding empty or busy shards, so look through every shard in turn
+				shard = null;
+				int start = random.nextInt(shards.length);
+				for (int i = 0 ; i < shards.length ; i++) {
+					Shard<T> s = shards[(start + i) % shards.length];
+					if (s.top != null) {
+						shard = s;
+						break;
+					}
+				}
+				if (shard == null) {
+					// Other pollers emptied shards while this one scanned, so let them finish
+					Thread.yield();
+					continue;
+				}
+			}
+
+			if (!shard.tryLock()) {
+				collisions.increment();
+				// Wait for the lock once the random picks have run out, rather than spinning
+				if (attempt < RANDOM_ATTEMPTS)
+					continue;
+				shard.lock();
+			}
+			try {
+				if (shard.heap.size() == 0)
+					continue;
+				T ret = shard.heap.poll();
+				shard.top = (shard.heap.size() == 0) ? null : shard.heap.peek();
+				polls.increment();
+				return ret;
+			} finally {
+				shard.unlock();
+			}
+		}
+	}
+}
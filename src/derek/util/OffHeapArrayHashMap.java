@@ -0,0 +1,703 @@
+package derek.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * This class implements a hash-map whose entries live outside the Java heap, in a ByteBuffer.
+ * It uses the same open table design as ArrayHashMap: a power-of-two number of slots, linear
+ * probing, and backward-shift deletion. Every slot is a fixed-size record holding the key's
+ * hash, the serialized key, and the serialized value, so the garbage collector never has to
+ * scan the entries.
+ *
+ * Keys and values are turned into bytes by a Codec. Keys are hashed and compared by their
+ * bytes, so a key codec must always write equal keys as equal bytes.
+ *
+ * The buffer can be a direct buffer, or a file mapped into memory. A mapped table keeps its
+ * size and layout in a header at the start of the file, so it can be reopened after a restart
+ * without rebuilding anything. This class is not thread-safe.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class OffHeapArrayHashMap<K, V> extends AbstractMap<K, V> {
+
+	/** The default number of slots, if no number is given. */
+	private static final int DEFAULT_SIZE = 16;
+	/** The default load-factor, if no factor is given. */
+	private static final float DEFAULT_LOADFACTOR = 0.6f;
+	/** The number that marks the start of a table file. */
+	private static final int MAGIC = 0x41484D31;
+	/** The number of bytes in the header, kept a multiple of eight. */
+	private static final int HEADER_SIZE = 32;
+	/** Where the magic number lives in the header. */
+	private static final int MAGIC_OFFSET = 0;
+	/** Where the number of slots lives in the header. */
+	private static final int CAPACITY_OFFSET = 4;
+	/** Where the key size lives in the header. */
+	private static final int KEY_SIZE_OFFSET = 8;
+	/** Where the value size lives in the header. */
+	private static final int VALUE_SIZE_OFFSET = 12;
+	/** Where the number of entries lives in the header. */
+	private static final int SIZE_OFFSET = 16;
+	/** The number of bytes in a slot used for the cached hash. A hash of 0 marks an empty slot. */
+	private static final int TAG_SIZE = 4;
+
+	/**
+	 * This interface turns values of a type into a fixed number of bytes and back.
+	 *
+	 * @author Derek Batts <dsbatts@ncsu.edu>
+	 */
+	public interface Codec<T> {
+
+		/**
+		 * This gets the number of bytes every encoded value takes.
+		 * @return The encoded size in bytes.
+		 */
+		int size();
+
+		/**
+		 * This writes a value into a buffer, using absolute puts so the buffer's position is untouched.
+		 * @param value The value to write, never null.
+		 * @param buffer The buffer to write to.
+		 * @param offset Where in the buffer to start writing.
+		 */
+		void write(T value, ByteBuffer buffer, int offset);
+
+		/**
+		 * This reads a value back out of a buffer, using absolute gets.
+		 * @param buffer The buffer to read from.
+		 * @param offset Where in the buffer to start reading.
+		 * @return The decoded value.
+		 */
+		T read(ByteBuffer buffer, int offset);
+	}
+
+	/** A codec for Integers, stored in four bytes. */
+	public static final Codec<Integer> INT_CODEC = new Codec<Integer>() {
+		@Override
+		public int size() {
+			return 4;
+		}
+
+		@Override
+		public void write(Integer value, ByteBuffer buffer, int offset) {
+			buffer.putInt(offset, value);
+		}
+
+		@Override
+		public Integer read(ByteBuffer buffer, int offset) {
+			return buffer.getInt(offset);
+		}
+	};
+
+	/** A codec for Longs, stored in eight bytes. */
+	public static final Codec<Long> LONG_CODEC = new Codec<Long>() {
+		@Override
+		public int size() {
+			return 8;
+		}
+
+		@Override
+		public void write(Long value, ByteBuffer buffer, int offset) {
+			buffer.putLong(offset, value);
+		}
+
+		@Override
+		public Long read(ByteBuffer buffer, int offset) {
+			return buffer.getLong(offset);
+		}
+	};
+
+	/** The codec for keys. */
+	private final Codec<K> keyCodec;
+	/** The codec for values. */
+	private final Codec<V> valueCodec;
+	/** The number of bytes in an encoded key. */
+	private final int keySize;
+	/** The number of bytes in a whole slot. */
+	private final int slotSize;
+	/** Factor used to determine when to increase the slot count. */
+	private final float loadFactor;
+	/** The file the table is mapped from, or null if it lives in a direct buffer. */
+	private final Path file;
+
+	/** The buffer holding the header and every slot. */
+	private ByteBuffer buffer;
+	/** The number of slots. */
+	private int capacity;
+	/** The number of key-value pairs stored in this map. */
+	private int size;
+	/** The number of pairs this map can hold before it has to grow. */
+	private int threshold;
+	/** The number of structural changes made to this map, so iterators can fail fast. */
+	private int modCount = 0;
+	/** A small heap buffer the key being looked up is encoded into. */
+	private final ByteBuffer scratch;
+
+
+	/**
+	 * This constructs an empty map in a direct buffer, with the default number of slots and load-factor.
+	 * @param keyCodec The codec for keys.
+	 * @param valueCodec The codec for values.
+	 */
+	public OffHeapArrayHashMap(Codec<K> keyCodec, Codec<V> valueCodec) {
+		this(DEFAULT_SIZE, DEFAULT_LOADFACTOR, keyCodec, valueCodec);
+	}
+
+
+	/**
+	 * This constructs an empty map in a direct buffer, with a given number of slots and load-factor.
+	 * @param initialCapacity The initial number of slots to use (default is 16).
+	 * 		  This is rounded up to a power of two.
+	 * @param loadFactor The load-factor that will determine when to increase the number
+	 * 		  of slots (default is 0.6). Must be between 0 and 1.
+	 * @param keyCodec The codec for keys.
+	 * @param valueCodec The codec for values.
+	 */
+	public OffHeapArrayHashMap(int initialCapacity, float loadFactor, Codec<K> keyCodec, Codec<V> valueCodec) {
+		this(null, loadFactor, keyCodec, valueCodec);
+		if (initialCapacity <= 0)
+			throw new IllegalArgumentException("Map must have an initial capacity > 0");
+		allocate(Hashing.tableSizeFor(initialCapacity));
+	}
+
+
+	/**
+	 * This is the shared part of every constructor. It checks the arguments, but leaves the buffer to the caller.
+	 * @param file The file the table is mapped from, or null for a direct buffer.
+	 * @param loadFactor The load-factor of the table.
+	 * @param keyCodec The codec for keys.
+	 * @param valueCodec The codec for values.
+	 */
+	private OffHeapArrayHashMap(Path file, float loadFactor, Codec<K> keyCodec, Codec<V> valueCodec) {
+		if (!(loadFactor > 0 && loadFactor < 1))
+			throw new IllegalArgumentException("Load factor must be between 0 and 1");
+		if ((keyCodec == null) || (valueCodec == null))
+			throw new IllegalArgumentException("Map must have a key codec and a value codec");
+		if (keyCodec.size() <= 0)
+			throw new IllegalArgumentException("Keys must take at least one byte");
+		if (valueCodec.size() < 0)
+			throw new IllegalArgumentException("Values can't take a negative number of bytes");
+		this.file = file;
+		this.loadFactor = loadFactor;
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+		this.keySize = keyCodec.size();
+		this.slotSize = TAG_SIZE + keySize + valueCodec.size();
+		this.scratch = ByteBuffer.allocate(keySize);
+	}
+
+
+	/**
+	 * This creates a new, empty table in the given file and maps it into memory.
+	 * Any existing contents of the file are thrown away.
+	 * @param file The file to keep the table in.
+	 * @param initialCapacity The initial number of slots to use, rounded up to a power of two.
+	 * @param keyCodec The codec for keys.
+	 * @param valueCodec The codec for values.
+	 * @return The new map.
+	 * @throws IOException If the file can't be created or mapped.
+	 */
+	public static <K, V> OffHeapArrayHashMap<K, V> create(Path file, int initialCapacity, Codec<K> keyCodec,
+			Codec<V> valueCodec) throws IOException {
+		if (initialCapacity <= 0)
+			throw new IllegalArgumentException("Map must have an initial capacity > 0");
+		OffHeapArrayHashMap<K, V> map = new OffHeapArrayHashMap<K, V>(file, DEFAULT_LOADFACTOR, keyCodec, valueCodec);
+		int capacity = Hashing.tableSizeFor(initialCapacity);
+		map.buffer = map.map(map.bytesFor(capacity), true);
+		map.format(capacity);
+		return map;
+	}
+
+
+	/**
+	 * This maps an existing table file back into memory, exactly as it was left.
+	 * @param file The file the table was created in.
+	 * @param keyCodec The codec for keys, which must match the one the table was created with.
+	 * @param valueCodec The codec for values, which must match the one the table was created with.
+	 * @return The reopened map.
+	 * @throws IOException If the file can't be mapped, or doesn't hold a table with matching codecs.
+	 */
+	public static <K, V> OffHeapArrayHashMap<K, V> open(Path file, Codec<K> keyCodec, Codec<V> valueCodec)
+			throws IOException {
+		OffHeapArrayHashMap<K, V> map = new OffHeapArrayHashMap<K, V>(file, DEFAULT_LOADFACTOR, keyCodec, valueCodec);
+		map.buffer = map.map(-1, false);
+		ByteBuffer b = map.buffer;
+		if ((b.capacity() < HEADER_SIZE) || (b.getInt(MAGIC_OFFSET) != MAGIC))
+			throw new IOException("Not a table file: " + file);
+		if ((b.getInt(KEY_SIZE_OFFSET) != keyCodec.size()) || (b.getInt(VALUE_SIZE_OFFSET) != valueCodec.size()))
+			throw new IOException("Codec sizes don't match the table in " + file);
+		int capacity = b.getInt(CAPACITY_OFFSET);
+		if ((Integer.bitCount(capacity) != 1) || (b.capacity() < map.bytesFor(capacity)))
+			throw new IOException("Table file is damaged: " + file);
+		map.setCapacity(capacity);
+		map.size = b.getInt(SIZE_OFFSET);
+		return map;
+	}
+
+
+	/**
+	 * This works out how many bytes a table with the given number of slots takes.
+	 * @param capacity The number of slots.
+	 * @return The number of bytes, including the header.
+	 */
+	private int bytesFor(int capacity) {
+		long bytes = HEADER_SIZE + ((long) capacity * slotSize);
+		if (bytes > Integer.MAX_VALUE)
+			throw new IllegalStateException("Table of " + capacity + " slots doesn't fit in one buffer");
+		return (int) bytes;
+	}
+
+
+	/**
+	 * This maps the table file into memory.
+	 * @param bytes The size to make the file, or -1 to map it at its current size.
+	 * @param truncate True to throw away the file's current contents first.
+	 * @return The mapped buffer.
+	 * @throws IOException If the file can't be mapped.
+	 */
+	private ByteBuffer map(int bytes, boolean truncate) throws IOException {
+		try (FileChannel channel = truncate
+				? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+				: FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long length = (bytes < 0) ? channel.size() : bytes;
+			if (length > Integer.MAX_VALUE)
+				throw new IOException("Table file is too big to map: " + file);
+			// The mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+		}
+	}
+
+
+	/**
+	 * This is a helper method to create a fresh, empty direct buffer with the given number of slots.
+	 * @param capacity The number of slots to create.
+	 */
+	private void allocate(int capacity) {
+		buffer = ByteBuffer.allocateDirect(bytesFor(capacity));
+		format(capacity);
+	}
+
+
+	/**
+	 * This writes a fresh header into the buffer and marks every slot empty.
+	 * @param capacity The number of slots in the buffer.
+	 */
+	private void format(int capacity) {
+		for (int i = 0 ; i < capacity ; i++)
+			buffer.putInt(HEADER_SIZE + (i * slotSize), 0);
+		buffer.putInt(MAGIC_OFFSET, MAGIC);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		buffer.putInt(KEY_SIZE_OFFSET, keySize);
+		buffer.putInt(VALUE_SIZE_OFFSET, valueCodec.size());
+		setCapacity(capacity);
+		setSize(0);
+	}
+
+
+	/**
+	 * This records the number of slots and works out the threshold.
+	 * @param capacity The number of slots.
+	 */
+	private void setCapacity(int capacity) {
+		this.capacity = capacity;
+		threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+	}
+
+
+	/**
+	 * This records the number of entries, both here and in the header.
+	 * @param size The number of entries.
+	 */
+	private void setSize(int size) {
+		this.size = size;
+		buffer.putInt(SIZE_OFFSET, size);
+	}
+
+
+	/**
+	 * This works out where a slot starts in the buffer.
+	 * @param slot The slot.
+	 * @return The offset of the slot's hash.
+	 */
+	private int offsetOf(int slot) {
+		return HEADER_SIZE + (slot * slotSize);
+	}
+
+
+	/**
+	 * This encodes a key into the scratch buffer and hashes its bytes. Hashing the bytes instead
+	 * of calling hashCode keeps slots in the same place across restarts.
+	 * @param key The key to encode.
+	 * @return The mixed hash of the key's bytes, never 0.
+	 */
+	@SuppressWarnings("unchecked")
+	private int encodeKey(Object key) {
+		if (key == null)
+			throw new NullPointerException();
+		keyCodec.write((K) key, scratch, 0);
+		long h = keySize;
+		int i = 0;
+		for (; i + 8 <= keySize ; i += 8)
+			h = Hashing.mix(h ^ scratch.getLong(i));
+		for (; i < keySize ; i++)
+			h = Hashing.mix(h ^ scratch.get(i));
+		int hash = (int) (h ^ (h >>> 32));
+		// 0 marks an empty slot, so it can't be a real hash
+		return (hash == 0) ? 1 : hash;
+	}
+
+
+	/**
+	 * This checks if the key in a slot has the same bytes as the key in the scratch buffer.
+	 * @param offset The offset of the slot.
+	 * @return True if the keys match.
+	 */
+	private boolean keyMatches(int offset) {
+		int start = offset + TAG_SIZE;
+		int i = 0;
+		for (; i + 8 <= keySize ; i += 8) {
+			if (buffer.getLong(start + i) != scratch.getLong(i))
+				return false;
+		}
+		for (; i < keySize ; i++) {
+			if (buffer.get(start + i) != scratch.get(i))
+				return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * This is a helper method to find the slot holding the key already in the scratch buffer.
+	 * @param h The hash of the key.
+	 * @return The slot holding the key, or -1 if the key is not in the map.
+	 */
+	private int findSlot(int h) {
+		int mask = capacity - 1;
+		for (int i = h & mask ; ; i = (i + 1) & mask) {
+			int off = offsetOf(i);
+			int tag = buffer.getInt(off);
+			if (tag == 0)
+				return -1;
+			if ((tag == h) && keyMatches(off))
+				return i;
+		}
+	}
+
+
+	/**
+	 * This method checks if the given key exists in the map.
+	 * @param key The key to look for.
+	 * @return True if the key exists, false if not.
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return findSlot(encodeKey(key)) >= 0;
+	}
+
+
+	/**
+	 * This metod will get the value at the given key in the map. The value is decoded fresh on every call.
+	 * @param key The key for the value we are looking for.
+	 * @return The value associated with the given key or null if the key doesn't exist in the map.
+	 */
+	@Override
+	public V get(Object key) {
+		int slot = findSlot(encodeKey(key));
+		if (slot < 0)
+			return null;
+		return valueCodec.read(buffer, offsetOf(slot) + TAG_SIZE + keySize);
+	}
+
+
+	/**
+	 * This method will store the given key-value pair in the map. If the key already
+	 * exists in the map, the new value will be written over the old one.
+	 * @param key The key to store this value with.
+	 * @param value The value to store.
+	 * @return V The value that was stored.
+	 */
+	@Override
+	public V put(K key, V value) {
+		if (value == null)
+			throw new NullPointerException();
+		int h = encodeKey(key);
+
+		// Probe for the key or the first empty slot in its run
+		int mask = capacity - 1;
+		int i;
+		for (i = h & mask ; buffer.getInt(offsetOf(i)) != 0 ; i = (i + 1) & mask) {
+			int off = offsetOf(i);
+			if ((buffer.getInt(off) == h) && keyMatches(off)) {
+				valueCodec.write(value, buffer, off + TAG_SIZE + keySize);
+				return value;
+			}
+		}
+
+		// Grow first if this pair would push us past the load-factor, then find a new empty slot
+		if (size + 1 > threshold) {
+			resize(capacity * 2);
+			mask = capacity - 1;
+			for (i = h & mask ; buffer.getInt(offsetOf(i)) != 0 ; i = (i + 1) & mask);
+		}
+
+		int off = offsetOf(i);
+		for (int b = 0 ; b < keySize ; b++)
+			buffer.put(off + TAG_SIZE + b, scratch.get(b));
+		valueCodec.write(value, buffer, off + TAG_SIZE + keySize);
+		// The hash goes in last, since it is what marks the slot as used
+		buffer.putInt(off, h);
+		setSize(size + 1);
+		modCount++;
+		return value;
+	}
+
+
+	/**
+	 * This method will remove the key-value pair from the map and return the value that was stored if any.
+	 * @param key The key to remove.
+	 * @return The value at the given key, or null if there is no such key.
+	 */
+	@Override
+	public V remove(Object key) {
+		int slot = findSlot(encodeKey(key));
+		if (slot < 0)
+			return null;
+		V old = valueCodec.read(buffer, offsetOf(slot) + TAG_SIZE + keySize);
+		deleteSlot(slot);
+		return old;
+	}
+
+
+	/**
+	 * This is a helper method to empty a slot without leaving a gap in any probe run,
+	 * using the same backward-shift deletion as ArrayHashMap.
+	 * @param slot The slot to empty.
+	 */
+	private void deleteSlot(int slot) {
+		int mask = capacity - 1;
+		int hole = slot;
+		for (int i = (slot + 1) & mask ; buffer.getInt(offsetOf(i)) != 0 ; i = (i + 1) & mask) {
+			int home = buffer.getInt(offsetOf(i)) & mask;
+			if (Hashing.canShiftBack(home, hole, i)) {
+				copySlot(buffer, offsetOf(i), buffer, offsetOf(hole));
+				hole = i;
+			}
+		}
+		buffer.putInt(offsetOf(hole), 0);
+		setSize(size - 1);
+		modCount++;
+	}
+
+
+	/**
+	 * This copies one whole slot, eight bytes at a time where it can.
+	 * @param from The buffer to copy from.
+	 * @param fromOffset Where the slot starts in that buffer.
+	 * @param to The buffer to copy to.
+	 * @param toOffset Where the slot starts in that buffer.
+	 */
+	private void copySlot(ByteBuffer from, int fromOffset, ByteBuffer to, int toOffset) {
+		int i = 0;
+		for (; i + 8 <= slotSize ; i += 8)
+			to.putLong(toOffset + i, from.getLong(fromOffset + i));
+		for (; i < slotSize ; i++)
+			to.put(toOffset + i, from.get(fromOffset + i));
+	}
+
+
+	/**
+	 * This is a helper method to move every entry into a table with the given number of slots.
+	 * A mapped table is rebuilt in a direct buffer first, then the file is grown, remapped, and overwritten.
+	 * @param newCapacity The new number of slots.
+	 */
+	private void resize(int newCapacity) {
+		if (capacity == Hashing.MAXIMUM_CAPACITY)
+			throw new IllegalStateException("Map cannot grow past " + Hashing.MAXIMUM_CAPACITY + " slots");
+		ByteBuffer old = buffer;
+		int oldCapacity = capacity;
+		int count = size;
+		allocate(newCapacity);
+
+		int mask = newCapacity - 1;
+		for (int j = 0 ; j < oldCapacity ; j++) {
+			int from = HEADER_SIZE + (j * slotSize);
+			int h = old.getInt(from);
+			if (h == 0)
+				continue;
+			int i = h & mask;
+			while (buffer.getInt(offsetOf(i)) != 0)
+				i = (i + 1) & mask;
+			copySlot(old, from, buffer, offsetOf(i));
+		}
+		setSize(count);
+		modCount++;
+
+		if (file != null) {
+			try {
+				ByteBuffer mapped = map(bytesFor(newCapacity), false);
+				for (int i = 0 ; i + 8 <= buffer.capacity() ; i += 8)
+					mapped.putLong(i, buffer.getLong(i));
+				for (int i = buffer.capacity() & ~7 ; i < buffer.capacity() ; i++)
+					mapped.put(i, buffer.get(i));
+				buffer = mapped;
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not grow table file " + file, e);
+			}
+		}
+	}
+
+
+	/**
+	 * This method flushes a mapped table out to its file. It does nothing for a direct buffer.
+	 */
+	public void force() {
+		if (buffer instanceof MappedByteBuffer)
+			((MappedByteBuffer) buffer).force();
+	}
+
+
+	/**
+	 * This method empties the map, keeping its current number of slots.
+	 */
+	@Override
+	public void clear() {
+		format(capacity);
+		modCount++;
+	}
+
+
+	/**
+	 * This gets the number of key-value pairs currently stored in this map.
+	 * @return The number of pairs stored.
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * This method checks if the map is empty.
+	 * @return True if the map is empty, false if not.
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+
+	/**
+	 * This method returns a live set view of all the key-value pairs in this map.
+	 * Each entry is decoded as the iterator reaches it, and is a copy, so setValue isn't supported.
+	 * @return A set view of all the key-value pairs in this map.
+	 */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public void clear() {
+				OffHeapArrayHashMap.this.clear();
+			}
+		};
+	}
+
+
+	/**
+	 * This is an inner class to iterate over the entries of the map.
+	 * Like the ArrayHashMap iterators, it walks the table downwards from just below an empty slot,
+	 * so removing the current entry only rearranges slots that were already visited.
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		/** The slot the walk is currently at. */
+		private int index;
+		/** The number of slots left to look at. */
+		private int remaining;
+		/** The next occupied slot to return, or -1 if there are none left. */
+		private int nextSlot;
+		/** The slot returned last, or -1 if it was removed or nothing was returned yet. */
+		private int lastSlot = -1;
+		/** The modification count this iterator expects the map to have. */
+		private int expectedModCount = modCount;
+
+		/**
+		 * This constructs an iterator positioned before the first entry.
+		 */
+		private EntryIterator() {
+			index = capacity - 1;
+			while (buffer.getInt(offsetOf(index)) != 0)
+				index--;
+			remaining = capacity - 1;
+			advance();
+		}
+
+		/**
+		 * This finds the next occupied slot.
+		 */
+		private void advance() {
+			nextSlot = -1;
+			while (remaining > 0) {
+				index = (index - 1) & (capacity - 1);
+				remaining--;
+				if (buffer.getInt(offsetOf(index)) != 0) {
+					nextSlot = index;
+					return;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextSlot >= 0;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (nextSlot < 0)
+				throw new NoSuchElementException();
+			lastSlot = nextSlot;
+			advance();
+			int off = offsetOf(lastSlot);
+			return new AbstractMap.SimpleImmutableEntry<K, V>(keyCodec.read(buffer, off + TAG_SIZE),
+					valueCodec.read(buffer, off + TAG_SIZE + keySize));
+		}
+
+		@Override
+		public void remove() {
+			if (lastSlot < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			deleteSlot(lastSlot);
+			expectedModCount = modCount;
+			lastSlot = -1;
+		}
+	}
+}
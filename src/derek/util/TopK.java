@@ -0,0 +1,192 @@
+package derek.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collector;
+
+/**
+ * This class keeps the k greatest elements seen in a stream, in O(k) space.
+ *
+ * The elements are kept in a fixed-size heap with the least of them on top, so a new element only
+ * has to beat the top to get in, and most elements of a long stream are turned away after a single
+ * comparison. When the heap is full, an element that does get in replaces the top in one sift.
+ * The heap is built from MaxHeap's sift code with the ordering reversed.
+ *
+ * TopK.collector(k) makes a Collector from TopKs, like the ones in java.util.stream.Collectors.
+ * Collecting a stream with it gives each thread of a parallel stream its own TopK, merges them,
+ * and returns the k greatest elements as a list, greatest first.
+ * Elements are ordered by a Comparator, or by their natural ordering. Null elements are not allowed.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class TopK<T> {
+
+	/** Binary heaps do best on the small arrays a TopK usually has. */
+	private static final int ARITY = 2;
+
+	/** How many elements to keep. */
+	private final int k;
+	/** The comparator that orders elements, or null to use their natural ordering. */
+	private final Comparator<? super T> comparator;
+	/** The reverse of the element ordering, which puts the least element on top of MaxHeap's sifts. */
+	private final Comparator<Object> reversed;
+
+	/** The kept elements, in heap order with the least on top. */
+	private final Object[] heap;
+	/** The number of kept elements. */
+	private int size = 0;
+
+
+	/**
+	 * This will construct an empty TopK that orders elements by their natural ordering.
+	 * @param k How many elements to keep.
+	 * @throws IllegalArgumentException If k isn't positive.
+	 */
+	public TopK(int k) {
+		this(k, null);
+	}
+
+	/**
+	 * This will construct an empty TopK that orders elements with a comparator.
+	 * @param k How many elements to keep.
+	 * @param comparator The comparator to order elements with, or null to use their natural ordering.
+	 * @throws IllegalArgumentException If k isn't positive.
+	 */
+	@SuppressWarnings("unchecked")
+	public TopK(int k, Comparator<? super T> comparator) {
+		if (k <= 0)
+			throw new IllegalArgumentException("TopK must keep at least 1 element");
+		this.k = k;
+		this.comparator = comparator;
+		reversed = (Comparator<Object>) ((comparator == null) ? Collections.reverseOrder()
+				: Collections.reverseOrder(comparator));
+		heap = new Object[k];
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * This gets how many elements this keeps.
+	 * @return k.
+	 */
+	public int k() {
+		return k;
+	}
+
+	public Comparator<? super T> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * This method offers an element. It's kept if fewer than k elements have been kept so far,
+	 * or if it is greater than the least of them, which it then replaces.
+	 * @param element The element to offer.
+	 * @return True if the element was kept.
+	 * @throws NullPointerException If the element is null.
+	 */
+	public boolean offer(T element) {
+		if (element == null)
+			throw new NullPointerException();
+		if (size < k) {
+			MaxHeap.siftUp(heap, size++, element, ARITY, reversed);
+			return true;
+		}
+		// Most elements lose to the least kept one, so check that before doing anything else
+		if (reversed.compare(element, heap[0]) >= 0)
+			return false;
+		MaxHeap.siftDown(heap, 0, element, size, ARITY, reversed);
+		return true;
+	}
+
+	/**
+	 * This method offers every element of another TopK to this one, so this one ends up with the
+	 * k greatest elements of both. The other TopK is left as it was.
+	 * @param other The TopK to merge in, which may be this one.
+	 * @return This TopK.
+	 */
+	@SuppressWarnings("unchecked")
+	public TopK<T> merge(TopK<T> other) {
+		// Offering elements changes the heap, so merging with itself has to read from a copy
+		Object[] elements = (other == this) ? Arrays.copyOf(heap, size) : other.heap;
+		int count = other.size;
+		for (int i = 0 ; i < count ; i++)
+			offer((T) elements[i]);
+		return this;
+	}
+
+	/**
+	 * This method gets the least of the kept elements, which is the one the next kept element will replace.
+	 * @return The least kept element.
+	 * @throws IllegalArgumentException If nothing has been kept.
+	 */
+	@SuppressWarnings("unchecked")
+	public T peek() {
+		if (size == 0)
+			throw new IllegalArgumentException("Empty heap!");
+		return (T) heap[0];
+	}
+
+	/**
+	 * This method returns the kept elements, greatest first.
+	 * @return A new list of the kept elements.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> toList() {
+		Object[] sorted = Arrays.copyOf(heap, size);
+		// Sorting by the reversed ordering puts the greatest first
+		MaxHeap.heapSort(sorted, reversed);
+		ArrayList<T> l = new ArrayList<T>(size);
+		for (Object element : sorted)
+			l.add((T) element);
+		return l;
+	}
+
+	/**
+	 * This method removes every kept element.
+	 */
+	public void clear() {
+		Arrays.fill(heap, 0, size, null);
+		size = 0;
+	}
+
+	public String toString() {
+		return toList().toString();
+	}
+
+	/**
+	 * This method makes a Collector that collects the k greatest elements of a stream by their
+	 * natural ordering, as a list, greatest first.
+	 * @param k How many elements to keep.
+	 * @return The Collector.
+	 * @throws IllegalArgumentException If k isn't positive.
+	 */
+	public static <T extends Comparable<? super T>> Collector<T, ?, List<T>> collector(int k) {
+		return collector(k, null);
+	}
+
+	/**
+	 * This method makes a Collector that collects the k greatest elements of a stream by a
+	 * comparator, as a list, greatest first. The k greatest elements don't depend on the order
+	 * they arrive in, apart from which of several equal elements are kept, so it collects unordered.
+	 * @param k How many elements to keep.
+	 * @param comparator The comparator to order elements with, or null to use their natural ordering.
+	 * @return The Collector.
+	 * @throws IllegalArgumentException If k isn't positive.
+	 */
+	public static <T> Collector<T, ?, List<T>> collector(int k, Comparator<? super T> comparator) {
+		if (k <= 0)
+			throw new IllegalArgumentException("TopK must keep at least 1 element");
+		return Collector.of(() -> new TopK<T>(k, comparator), TopK::offer, TopK::merge, TopK::toList,
+				Collector.Characteristics.UNORDERED);
+	}
+}
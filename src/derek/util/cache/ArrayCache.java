@@ -0,0 +1,583 @@
+package derek.util.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import derek.util.Hashing;
+
+/**
+ * This class implements a bounded cache using only arrays, in the same style as ArrayHashMap.
+ * Every entry lives at a fixed index in a set of parallel arrays, and a flat open-addressing
+ * index maps keys to those indices. The recency lists used for eviction are linked through
+ * int arrays of previous and next indices, so there are no node objects per entry and the
+ * memory used by a full cache is fixed when it is created.
+ *
+ * Entries can expire a fixed time after they were written, which can be set for the whole
+ * cache or for each entry as it is put or loaded, and a CacheLoader can fill in missing keys.
+ * This class is not thread-safe. Null keys and values are not allowed.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ArrayCache<K, V> {
+
+	/** The marker for "no entry" in the index and the linked lists. */
+	private static final int NONE = -1;
+	/** The expiry time of entries that don't expire. */
+	private static final long NEVER = Long.MAX_VALUE;
+	/** The list new entries wait in under W-TinyLFU, and the only list LRU uses. */
+	private static final int WINDOW = 0;
+	/** The main-space list entries enter on admission under W-TinyLFU. */
+	private static final int PROBATION = 1;
+	/** The main-space list entries move to when they are used again under W-TinyLFU. */
+	private static final int PROTECTED = 2;
+	/** The share of the cache given to the W-TinyLFU window. */
+	private static final double WINDOW_SHARE = 0.01;
+	/** The share of the main space given to the protected list. */
+	private static final double PROTECTED_SHARE = 0.8;
+
+	/** The most entries this cache will hold. */
+	private final int maximumSize;
+	/** How entries are picked for eviction. */
+	private final EvictionPolicy policy;
+	/** How long an entry lives after it is written if no time is given for it, in nanoseconds, or 0 if it doesn't expire. */
+	private final long expireAfterWriteNanos;
+	/** The loader used to fill in missing keys, or null if there isn't one. */
+	private final CacheLoader<? super K, ? extends V> loader;
+	/** The clock used for expiry. */
+	private final LongSupplier ticker;
+	/** The frequency sketch used by W-TinyLFU, or null under LRU. */
+	private final FrequencySketch sketch;
+
+	/** The key at each entry index, or null if the index is free. */
+	private final Object[] keys;
+	/** The value at each entry index. */
+	private final Object[] values;
+	/** The cached hash of each entry's key. */
+	private final int[] hashes;
+	/** The time each entry expires at, or NEVER. */
+	private final long[] expiresAt;
+	/** The previous entry in each entry's list, or NONE. */
+	private final int[] prev;
+	/** The next entry in each entry's list, or NONE. Free entries are chained through this too. */
+	private final int[] next;
+	/** The list each entry is in. */
+	private final byte[] queue;
+
+	/** The first (least recently used) entry of each list. */
+	private final int[] heads = { NONE, NONE, NONE };
+	/** The last (most recently used) entry of each list. */
+	private final int[] tails = { NONE, NONE, NONE };
+	/** The number of entries in each list. */
+	private final int[] counts = new int[3];
+	/** The most entries the window list may hold. */
+	private final int windowMaximum;
+	/** The most entries the protected list may hold. */
+	private final int protectedMaximum;
+
+	/**
+	 * The open-addressing index from keys to entries. Each slot holds an entry index, or NONE
+	 * if it is empty. Probing compares the entry's cached hash before calling equals.
+	 */
+	private final int[] index;
+	/** The first free entry index, or NONE if every index is used. */
+	private int freeHead;
+	/** The number of entries in the cache. */
+	private int size = 0;
+
+	/** The number of lookups that found a live entry. */
+	private long hitCount = 0;
+	/** The number of lookups that didn't. */
+	private long missCount = 0;
+	/** The number of entries thrown out to make room. */
+	private long evictionCount = 0;
+
+
+	/**
+	 * This constructs an LRU cache with no expiry and no loader.
+	 * @param maximumSize The most entries the cache will hold.
+	 */
+	public ArrayCache(int maximumSize) {
+		this(maximumSize, EvictionPolicy.LRU);
+	}
+
+
+	/**
+	 * This constructs a cache with the given eviction policy, no expiry, and no loader.
+	 * @param maximumSize The most entries the cache will hold.
+	 * @param policy How entries are picked for eviction.
+	 */
+	public ArrayCache(int maximumSize, EvictionPolicy policy) {
+		this(maximumSize, policy, 0, TimeUnit.NANOSECONDS, null);
+	}
+
+
+	/**
+	 * This constructs a cache with the given eviction policy, expiry, and loader.
+	 * @param maximumSize The most entries the cache will hold.
+	 * @param policy How entries are picked for eviction.
+	 * @param expireAfterWrite How long an entry lives after it is written, or 0 if entries don't expire.
+	 * @param unit The unit of expireAfterWrite.
+	 * @param loader The loader used to fill in missing keys, or null if there isn't one.
+	 */
+	public ArrayCache(int maximumSize, EvictionPolicy policy, long expireAfterWrite, TimeUnit unit,
+			CacheLoader<? super K, ? extends V> loader) {
+		this(maximumSize, policy, unit.toNanos(expireAfterWrite), loader, System::nanoTime);
+	}
+
+
+	/**
+	 * This constructs a cache that reads the time from the given clock, so tests can control expiry.
+	 * @param maximumSize The most entries the cache will hold.
+	 * @param policy How entries are picked for eviction.
+	 * @param expireAfterWriteNanos How long an entry lives after it is written, or 0 if entries don't expire.
+	 * @param loader The loader used to fill in missing keys, or null if there isn't one.
+	 * @param ticker The clock, in nanoseconds.
+	 */
+	ArrayCache(int maximumSize, EvictionPolicy policy, long expireAfterWriteNanos,
+			CacheLoader<? super K, ? extends V> loader, LongSupplier ticker) {
+		if (maximumSize <= 0)
+			throw new IllegalArgumentException("Cache must have a maximum size > 0");
+		if (maximumSize > (Hashing.MAXIMUM_CAPACITY / 2))
+			throw new IllegalArgumentException("Cache can't hold more than " + (Hashing.MAXIMUM_CAPACITY / 2) + " entries");
+		if (policy == null)
+			throw new IllegalArgumentException("Cache must have an eviction policy");
+		if (expireAfterWriteNanos < 0)
+			throw new IllegalArgumentException("Expiry time can't be negative");
+		this.maximumSize = maximumSize;
+		this.policy = policy;
+		this.expireAfterWriteNanos = expireAfterWriteNanos;
+		this.loader = loader;
+		this.ticker = ticker;
+		this.sketch = (policy == EvictionPolicy.W_TINY_LFU) ? new FrequencySketch(maximumSize) : null;
+
+		keys = new Object[maximumSize];
+		values = new Object[maximumSize];
+		hashes = new int[maximumSize];
+		expiresAt = new long[maximumSize];
+		prev = new int[maximumSize];
+		next = new int[maximumSize];
+		queue = new byte[maximumSize];
+
+		windowMaximum = (policy == EvictionPolicy.LRU) ? maximumSize
+				: Math.max(1, (int) (maximumSize * WINDOW_SHARE));
+		protectedMaximum = (int) ((maximumSize - windowMaximum) * PROTECTED_SHARE);
+
+		// The index is kept at most half full, so probe runs stay short
+		index = new int[Hashing.tableSizeFor(maximumSize * 2)];
+		clear();
+	}
+
+
+	/**
+	 * This method gets the value for a key, loading it with the cache's loader if it is missing.
+	 * @param key The key to look up.
+	 * @return The value for the key, or null if it isn't cached and couldn't be loaded.
+	 */
+	public V get(K key) {
+		V v = getIfPresent(key);
+		if ((v != null) || (loader == null))
+			return v;
+		return load(loader, key);
+	}
+
+
+	/**
+	 * This is a helper method to load a missing key and cache it for as long as the loader says.
+	 * It takes the loader as a parameter so the loader's value type has a name.
+	 * @param loader The cache's loader.
+	 * @param key The key to load.
+	 * @return The loaded value, or null if it couldn't be loaded.
+	 */
+	private <W extends V> W load(CacheLoader<? super K, W> loader, K key) {
+		W v = loader.load(key);
+		if (v != null) {
+			long expireAfterLoadNanos = loader.expireAfterLoadNanos(key, v);
+			// The lookup that missed already counted this access in the sketch
+			put(key, v, (expireAfterLoadNanos < 0) ? expireAfterWriteNanos : expireAfterLoadNanos, false);
+		}
+		return v;
+	}
+
+
+	/**
+	 * This method gets the value for a key, without loading it if it is missing.
+	 * @param key The key to look up.
+	 * @return The value for the key, or null if it isn't cached.
+	 */
+	@SuppressWarnings("unchecked")
+	public V getIfPresent(K key) {
+		int h = hash(key);
+		if (sketch != null)
+			sketch.increment(h);
+		int slot = findSlot(key, h);
+		if (slot < 0) {
+			missCount++;
+			return null;
+		}
+		int e = index[slot];
+		if (isExpired(e)) {
+			removeEntry(slot);
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		onAccess(e);
+		return (V) values[e];
+	}
+
+
+	/**
+	 * This method stores a value for a key, replacing any value already cached.
+	 * If the cache is full, an entry is evicted according to the cache's policy.
+	 * The entry expires after the cache's expiry time.
+	 * @param key The key to store this value with.
+	 * @param value The value to store.
+	 */
+	public void put(K key, V value) {
+		put(key, value, expireAfterWriteNanos, true);
+	}
+
+
+	/**
+	 * This method stores a value for a key with its own expiry time, replacing any value already cached.
+	 * If the cache is full, an entry is evicted according to the cache's policy.
+	 * @param key The key to store this value with.
+	 * @param value The value to store.
+	 * @param expireAfterWrite How long this entry lives, or 0 if it doesn't expire.
+	 * @param unit The unit of expireAfterWrite.
+	 */
+	public void put(K key, V value, long expireAfterWrite, TimeUnit unit) {
+		if (expireAfterWrite < 0)
+			throw new IllegalArgumentException("Expiry time can't be negative");
+		put(key, value, unit.toNanos(expireAfterWrite), true);
+	}
+
+
+	/**
+	 * This is a helper method to store a value for a key with the given expiry time.
+	 * @param key The key to store this value with.
+	 * @param value The value to store.
+	 * @param expireAfterWriteNanos How long the entry lives, in nanoseconds, or 0 if it doesn't expire.
+	 * @param countAccess True if this put is an access of its own that the frequency sketch should count.
+	 */
+	private void put(K key, V value, long expireAfterWriteNanos, boolean countAccess) {
+		if (value == null)
+			throw new NullPointerException();
+		int h = hash(key);
+		if (countAccess && (sketch != null))
+			sketch.increment(h);
+
+		int slot = findSlot(key, h);
+		if (slot >= 0) {
+			int e = index[slot];
+			values[e] = value;
+			expiresAt[e] = expiryTime(expireAfterWriteNanos);
+			onAccess(e);
+			return;
+		}
+
+		// Take a free entry, making one by eviction first if the cache is full
+		if (size == maximumSize)
+			evict();
+		int e = freeHead;
+		freeHead = next[e];
+		keys[e] = key;
+		values[e] = value;
+		hashes[e] = h;
+		expiresAt[e] = expiryTime(expireAfterWriteNanos);
+		insertIndex(e, h);
+		linkLast(WINDOW, e);
+		size++;
+
+		// Under W-TinyLFU, an overflowing window hands its oldest entry to the main space
+		if ((policy == EvictionPolicy.W_TINY_LFU) && (counts[WINDOW] > windowMaximum)) {
+			int candidate = heads[WINDOW];
+			unlink(candidate);
+			linkLast(PROBATION, candidate);
+		}
+	}
+
+
+	/**
+	 * This method removes a key from the cache.
+	 * @param key The key to remove.
+	 * @return The value that was cached for the key, or null if there wasn't one.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(K key) {
+		int slot = findSlot(key, hash(key));
+		if (slot < 0)
+			return null;
+		int e = index[slot];
+		V v = isExpired(e) ? null : (V) values[e];
+		removeEntry(slot);
+		return v;
+	}
+
+
+	/**
+	 * This method checks if a live entry is cached for a key, without counting as a use of it.
+	 * @param key The key to look for.
+	 * @return True if the key is cached and hasn't expired.
+	 */
+	public boolean containsKey(K key) {
+		int slot = findSlot(key, hash(key));
+		return (slot >= 0) && !isExpired(index[slot]);
+	}
+
+
+	/**
+	 * This method empties the cache. Statistics are kept.
+	 */
+	public void clear() {
+		for (int i = 0 ; i < index.length ; i++)
+			index[i] = NONE;
+		for (int e = 0 ; e < maximumSize ; e++) {
+			keys[e] = null;
+			values[e] = null;
+			next[e] = (e + 1 < maximumSize) ? e + 1 : NONE;
+		}
+		freeHead = 0;
+		for (int q = 0 ; q < heads.length ; q++) {
+			heads[q] = NONE;
+			tails[q] = NONE;
+			counts[q] = 0;
+		}
+		size = 0;
+	}
+
+
+	/**
+	 * This gets the number of entries in the cache, which may include some that have expired
+	 * but haven't been looked at since.
+	 * @return The number of entries stored.
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * This gets the most entries this cache will hold.
+	 * @return The maximum size.
+	 */
+	public int maximumSize() {
+		return maximumSize;
+	}
+
+
+	/**
+	 * This gets the number of lookups that found a live entry.
+	 * @return The hit count.
+	 */
+	public long hitCount() {
+		return hitCount;
+	}
+
+
+	/**
+	 * This gets the number of lookups that didn't find a live entry.
+	 * @return The miss count.
+	 */
+	public long missCount() {
+		return missCount;
+	}
+
+
+	/**
+	 * This gets the number of entries thrown out to make room for new ones.
+	 * @return The eviction count.
+	 */
+	public long evictionCount() {
+		return evictionCount;
+	}
+
+
+	/**
+	 * This method hashes a key and mixes the result.
+	 * @param key The key to hash.
+	 * @return The mixed hash of the key.
+	 */
+	private static int hash(Object key) {
+		return Hashing.mix(key.hashCode());
+	}
+
+
+	/**
+	 * This is a helper method to find the index slot pointing at the given key's entry.
+	 * @param key The key to look for.
+	 * @param h The mixed hash of the key.
+	 * @return The index slot, or -1 if the key is not cached.
+	 */
+	private int findSlot(Object key, int h) {
+		int mask = index.length - 1;
+		for (int i = h & mask ; ; i = (i + 1) & mask) {
+			int e = index[i];
+			if (e == NONE)
+				return -1;
+			if ((hashes[e] == h) && ((keys[e] == key) || keys[e].equals(key)))
+				return i;
+		}
+	}
+
+
+	/**
+	 * This is a helper method to point an empty index slot at a new entry.
+	 * @param e The entry.
+	 * @param h The mixed hash of its key.
+	 */
+	private void insertIndex(int e, int h) {
+		int mask = index.length - 1;
+		int i = h & mask;
+		while (index[i] != NONE)
+			i = (i + 1) & mask;
+		index[i] = e;
+	}
+
+
+	/**
+	 * This is a helper method to empty an index slot using the same backward-shift deletion as
+	 * ArrayHashMap, so no tombstones are needed.
+	 * @param slot The index slot to empty.
+	 */
+	private void deleteIndex(int slot) {
+		int mask = index.length - 1;
+		int hole = slot;
+		for (int i = (slot + 1) & mask ; index[i] != NONE ; i = (i + 1) & mask) {
+			int home = hashes[index[i]] & mask;
+			if (Hashing.canShiftBack(home, hole, i)) {
+				index[hole] = index[i];
+				hole = i;
+			}
+		}
+		index[hole] = NONE;
+	}
+
+
+	/**
+	 * This is a helper method to remove the entry an index slot points at, and free its index.
+	 * @param slot The index slot.
+	 */
+	private void removeEntry(int slot) {
+		int e = index[slot];
+		deleteIndex(slot);
+		unlink(e);
+		keys[e] = null;
+		values[e] = null;
+		next[e] = freeHead;
+		freeHead = e;
+		size--;
+	}
+
+
+	/**
+	 * This checks if an entry has expired.
+	 * @param e The entry.
+	 * @return True if the entry's time is up.
+	 */
+	private boolean isExpired(int e) {
+		return (expiresAt[e] != NEVER) && (ticker.getAsLong() - expiresAt[e] >= 0);
+	}
+
+
+	/**
+	 * This works out when an entry written now expires.
+	 * @param expireAfterWriteNanos How long the entry lives, in nanoseconds, or 0 if it doesn't expire.
+	 * @return The time the entry expires at, or NEVER.
+	 */
+	private long expiryTime(long expireAfterWriteNanos) {
+		return (expireAfterWriteNanos == 0) ? NEVER : ticker.getAsLong() + expireAfterWriteNanos;
+	}
+
+
+	/**
+	 * This is a helper method to throw out one entry to make room, according to the cache's policy.
+	 */
+	private void evict() {
+		int victim;
+		if (policy == EvictionPolicy.LRU)
+			victim = heads[WINDOW];
+		else {
+			// The newest arrival in probation is the candidate, and the oldest is the victim it must beat
+			int candidate = tails[PROBATION];
+			victim = heads[PROBATION];
+			if (victim == candidate)
+				victim = (heads[PROTECTED] != NONE) ? heads[PROTECTED] : heads[WINDOW];
+			if ((candidate != NONE) && (victim != NONE)
+					&& (sketch.frequency(hashes[candidate]) <= sketch.frequency(hashes[victim])))
+				victim = candidate;
+			if (victim == NONE)
+				victim = (candidate != NONE) ? candidate : heads[WINDOW];
+		}
+		removeEntry(findSlot(keys[victim], hashes[victim]));
+		evictionCount++;
+	}
+
+
+	/**
+	 * This is a helper method to record a use of an entry in its recency list.
+	 * @param e The entry that was used.
+	 */
+	private void onAccess(int e) {
+		int q = queue[e];
+		unlink(e);
+		if (q == PROBATION) {
+			// Used again while on probation, so it earns a protected spot
+			linkLast(PROTECTED, e);
+			if (counts[PROTECTED] > protectedMaximum) {
+				int demoted = heads[PROTECTED];
+				unlink(demoted);
+				linkLast(PROBATION, demoted);
+			}
+		}
+		else
+			linkLast(q, e);
+	}
+
+
+	/**
+	 * This is a helper method to add an entry at the most recently used end of a list.
+	 * @param q The list.
+	 * @param e The entry.
+	 */
+	private void linkLast(int q, int e) {
+		queue[e] = (byte) q;
+		prev[e] = tails[q];
+		next[e] = NONE;
+		if (tails[q] == NONE)
+			heads[q] = e;
+		else
+			next[tails[q]] = e;
+		tails[q] = e;
+		counts[q]++;
+	}
+
+
+	/**
+	 * This is a helper method to take an entry out of whichever list it is in.
+	 * @param e The entry.
+	 */
+	private void unlink(int e) {
+		int q = queue[e];
+		if (prev[e] == NONE)
+			heads[q] = next[e];
+		else
+			next[prev[e]] = next[e];
+		if (next[e] == NONE)
+			tails[q] = prev[e];
+		else
+			prev[next[e]] = prev[e];
+		counts[q]--;
+	}
+
+
+	/**
+	 * This creates and returns a simple description of the cache.
+	 * @return A string with the cache's size and statistics.
+	 */
+	@Override
+	public String toString() {
+		return "ArrayCache[" + policy + ", size=" + size + "/" + maximumSize + ", hits=" + hitCount
+				+ ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+	}
+}
@@ -0,0 +1,28 @@
+package derek.util.cache;
+
+/**
+ * This interface computes values for an ArrayCache when a key is missing.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public interface CacheLoader<K, V> {
+
+	/**
+	 * This method computes the value for a key that isn't in the cache.
+	 * @param key The key to load, never null.
+	 * @return The value for the key, or null if there is none. Null values aren't cached.
+	 */
+	V load(K key);
+
+	/**
+	 * This method picks how long a loaded entry lives. By default loaded entries live as long as
+	 * the cache's expiry time, like any other put.
+	 * @param key The key that was loaded.
+	 * @param value The value it was loaded with.
+	 * @return How long the entry lives in nanoseconds, 0 if it doesn't expire, or a negative
+	 * number to use the cache's expiry time.
+	 */
+	default long expireAfterLoadNanos(K key, V value) {
+		return -1;
+	}
+}
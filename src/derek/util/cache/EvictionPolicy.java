@@ -0,0 +1,20 @@
+package derek.util.cache;
+
+/**
+ * This enum lists the ways an ArrayCache can pick which entry to throw out when it is full.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public enum EvictionPolicy {
+
+	/** Throw out the entry that was used least recently. */
+	LRU,
+
+	/**
+	 * Window TinyLFU. New entries wait in a small LRU window. When one leaves the window, it
+	 * only gets into the main segmented LRU space if it has been used more often than the entry
+	 * it would push out, according to a compact frequency sketch. This keeps one-off scans from
+	 * flushing out entries that are used all the time.
+	 */
+	W_TINY_LFU
+}
@@ -0,0 +1,89 @@
+package derek.util.cache;
+
+import derek.util.Hashing;
+
+/**
+ * This class estimates how often keys have been seen, using a count-min sketch of 4-bit counters
+ * packed sixteen to a long. Every counter is halved once enough additions have been made, so
+ * the estimates favor recent history. It is the admission filter for the W-TinyLFU policy.
+ *
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+final class FrequencySketch {
+
+	/** The seeds for the four hash functions. */
+	private static final int[] SEEDS = { 0x97cb3127, 0xb1c7e5a3, 0x2f7a7c5d, 0xc3a5c85c };
+	/** The largest value a counter can hold. */
+	private static final int MAX_COUNT = 15;
+	/** A mask that keeps the low three bits of every counter, for halving them all at once. */
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	/** The packed counters. */
+	private final long[] table;
+	/** The number of additions after which every counter is halved. */
+	private final int sampleSize;
+	/** The number of additions since the last halving. */
+	private int additions = 0;
+
+	/**
+	 * This constructs a sketch sized for a cache of the given size.
+	 * @param maximumSize The most entries the cache holds.
+	 */
+	FrequencySketch(int maximumSize) {
+		table = new long[Hashing.tableSizeFor(Math.max(1, maximumSize / 4))];
+		sampleSize = Math.max(10, 10 * maximumSize);
+	}
+
+	/**
+	 * This works out which counter a hash function picks.
+	 * @param hash The key's hash.
+	 * @param i Which of the four hash functions to use.
+	 * @return The counter's index, with the long in the high bits and the nibble in the low four.
+	 */
+	private int counterFor(int hash, int i) {
+		int h = Hashing.mix(hash ^ SEEDS[i]);
+		return ((h >>> 4) & (table.length - 1)) << 4 | (h & 15);
+	}
+
+	/**
+	 * This records one more sighting of a key.
+	 * @param hash The key's hash.
+	 */
+	void increment(int hash) {
+		boolean added = false;
+		for (int i = 0 ; i < SEEDS.length ; i++) {
+			int c = counterFor(hash, i);
+			int shift = (c & 15) << 2;
+			long word = table[c >>> 4];
+			if (((word >>> shift) & 0xf) < MAX_COUNT) {
+				table[c >>> 4] = word + (1L << shift);
+				added = true;
+			}
+		}
+		if (added && (++additions == sampleSize))
+			reset();
+	}
+
+	/**
+	 * This estimates how many times a key has been seen.
+	 * @param hash The key's hash.
+	 * @return The smallest of the key's four counters.
+	 */
+	int frequency(int hash) {
+		int min = MAX_COUNT;
+		for (int i = 0 ; i < SEEDS.length ; i++) {
+			int c = counterFor(hash, i);
+			min = Math.min(min, (int) ((table[c >>> 4] >>> ((c & 15) << 2)) & 0xf));
+		}
+		return min;
+	}
+
+	/**
+	 * This halves every counter, so old popularity fades.
+	 */
+	private void reset() {
+		for (int i = 0 ; i < table.length ; i++)
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		additions /= 2;
+	}
+}
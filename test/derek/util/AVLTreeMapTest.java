@@ -0,0 +1,220 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * This tests the sorted map in AVLTreeMap, mostly by checking it against java.util.TreeMap.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class AVLTreeMapTest {
+
+	/**
+	 * This tests random puts, gets, removes and nearest-key lookups against a TreeMap.
+	 */
+	@Test
+	public void testAgainstTreeMap() {
+		AVLTreeMap<Integer, Integer> map = new AVLTreeMap<Integer, Integer>();
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+
+		Random r = new Random(13);
+		for (int i = 0 ; i < 20000 ; i++) {
+			int key = r.nextInt(2000);
+			if (r.nextInt(3) == 0)
+				assertEquals(expected.remove(key), map.remove(key));
+			else
+				assertEquals(expected.put(key, i), map.put(key, i));
+			assertEquals(expected.size(), map.size());
+
+			int probe = r.nextInt(2100) - 50;
+			assertEquals(expected.get(probe), map.get(probe));
+			assertEquals(expected.floorKey(probe), map.floorKey(probe));
+			assertEquals(expected.ceilingKey(probe), map.ceilingKey(probe));
+			assertEquals(expected.lowerKey(probe), map.lowerKey(probe));
+			assertEquals(expected.higherKey(probe), map.higherKey(probe));
+		}
+
+		assertEquals(expected, map);
+		assertEquals(new ArrayList<Integer>(expected.keySet()), new ArrayList<Integer>(map.keySet()));
+		assertEquals(new ArrayList<Integer>(expected.descendingKeySet()),
+				new ArrayList<Integer>(map.descendingKeySet()));
+		assertEquals(expected.firstEntry(), map.firstEntry());
+		assertEquals(expected.lastEntry(), map.lastEntry());
+		assertTrue("Tree is too tall!", map.height() <= 1.4405 * (Math.log(map.size() + 2) / Math.log(2)));
+
+		assertEquals(expected.pollFirstEntry(), map.pollFirstEntry());
+		assertEquals(expected.pollLastEntry(), map.pollLastEntry());
+		assertEquals(expected, map);
+	}
+
+	/**
+	 * This tests that range views see changes to the map, write through to it, and reject keys
+	 * outside their range.
+	 */
+	@Test
+	public void testViews() {
+		AVLTreeMap<Integer, String> map = new AVLTreeMap<Integer, String>();
+		TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+		for (int i = 0 ; i < 100 ; i += 2) {
+			map.put(i, "v" + i);
+			expected.put(i, "v" + i);
+		}
+
+		NavigableMap<Integer, String> sub = map.subMap(10, true, 30, false);
+		NavigableMap<Integer, String> head = map.headMap(20, true);
+		NavigableMap<Integer, String> tail = map.tailMap(81, false);
+		NavigableMap<Integer, String> desc = map.descendingMap().subMap(60, false, 40, true);
+		assertEquals(expected.subMap(10, true, 30, false), sub);
+		assertEquals(expected.headMap(20, true), head);
+		assertEquals(expected.tailMap(81, false), tail);
+		assertEquals(new ArrayList<Integer>(expected.descendingMap().subMap(60, false, 40, true).keySet()),
+				new ArrayList<Integer>(desc.keySet()));
+
+		// Changes to the map show up in the views
+		map.put(15, "v15");
+		expected.put(15, "v15");
+		assertEquals(expected.subMap(10, true, 30, false), sub);
+		assertEquals(Integer.valueOf(15), sub.higherKey(14));
+		assertEquals(Integer.valueOf(58), desc.firstKey());
+		assertEquals(Integer.valueOf(42), desc.higherKey(44));
+		assertEquals(Integer.valueOf(44), desc.ceilingKey(45));
+
+		// Changes to the views show up in the map
+		sub.remove(20);
+		expected.remove(20);
+		desc.put(51, "v51");
+		expected.put(51, "v51");
+		assertEquals(expected, map);
+		assertNull(sub.remove(40));
+		assertTrue(map.containsKey(40));
+
+		try {
+			sub.put(30, "out of range");
+			fail("Put a key outside the view's range!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		try {
+			sub.subMap(5, 25);
+			fail("Made a view outside the view's range!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		// Nested views, and removing through a descending iterator
+		NavigableSet<Integer> keys = map.navigableKeySet().subSet(40, true, 70, true).descendingSet().headSet(50, false);
+		assertEquals(new ArrayList<Integer>(expected.navigableKeySet().subSet(40, true, 70, true).descendingSet()
+				.headSet(50, false)), new ArrayList<Integer>(keys));
+		Iterator<Integer> it = keys.iterator();
+		while (it.hasNext()) {
+			if (it.next() % 4 == 0)
+				it.remove();
+		}
+		Iterator<Integer> eit = expected.navigableKeySet().subSet(40, true, 70, true).descendingSet()
+				.headSet(50, false).iterator();
+		while (eit.hasNext()) {
+			if (eit.next() % 4 == 0)
+				eit.remove();
+		}
+		assertEquals(expected, map);
+
+		// Clearing a view only clears its range
+		tail.clear();
+		expected.tailMap(81, false).clear();
+		assertEquals(expected, map);
+		assertTrue(tail.isEmpty());
+	}
+
+	/**
+	 * This tests that clearing or removing through a bounded view leaves the keys outside it alone,
+	 * even when a removed node takes its successor's place in the tree.
+	 */
+	@Test
+	public void testRemoveThroughBoundedView() {
+		AVLTreeMap<Integer, Integer> map = new AVLTreeMap<Integer, Integer>();
+		for (int i = 1 ; i <= 10 ; i++)
+			map.put(i, i);
+		map.subMap(2, true, 4, true).clear();
+		assertEquals(new ArrayList<Integer>(Arrays.asList(1, 5, 6, 7, 8, 9, 10)), new ArrayList<Integer>(map.keySet()));
+
+		map.clear();
+		for (int i = 1 ; i <= 10 ; i++)
+			map.put(i, i);
+		Iterator<Integer> it = map.headMap(4, true).keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next() == 4)
+				it.remove();
+		}
+		assertEquals(new ArrayList<Integer>(Arrays.asList(1, 2, 3, 5, 6, 7, 8, 9, 10)), new ArrayList<Integer>(map.keySet()));
+
+		// Every bounded range of a bigger tree, where most removed nodes have two children
+		for (int low = 0 ; low < 64 ; low += 7) {
+			for (int high = low ; high < 64 ; high += 5) {
+				map.clear();
+				TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+				for (int i = 0 ; i < 64 ; i++) {
+					map.put(i, i);
+					expected.put(i, i);
+				}
+				map.subMap(low, true, high, true).clear();
+				expected.subMap(low, true, high, true).clear();
+				assertEquals(expected, map);
+			}
+		}
+	}
+
+	/**
+	 * This tests ordering keys with a comparator, and removing every entry through the iterator.
+	 */
+	@Test
+	public void testComparator() {
+		AVLTreeMap<String, Integer> map = new AVLTreeMap<String, Integer>(Collections.<String>reverseOrder());
+		for (int i = 0 ; i < 500 ; i++)
+			map.put("Key #" + i, i);
+		assertEquals(500, map.size());
+
+		String last = null;
+		for (String key : map.keySet()) {
+			if (last != null)
+				assertTrue(last.compareTo(key) > 0);
+			last = key;
+		}
+		assertEquals("Key #0", map.lastKey());
+		assertTrue(map.descendingMap().comparator().compare("a", "b") < 0);
+
+		// Every node gets removed, including ones with two children
+		Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator();
+		int count = 0;
+		while (it.hasNext()) {
+			it.next();
+			it.remove();
+			count++;
+		}
+		assertEquals(500, count);
+		assertTrue(map.isEmpty());
+	}
+
+	/**
+	 * This tests that iterators fail fast when the map is changed behind their back.
+	 */
+	@Test(expected = ConcurrentModificationException.class)
+	public void testFailFast() {
+		AVLTreeMap<Integer, Integer> map = new AVLTreeMap<Integer, Integer>();
+		for (int i = 0 ; i < 10 ; i++)
+			map.put(i, i);
+		for (Integer key : map.keySet())
+			map.remove(key);
+	}
+
+}
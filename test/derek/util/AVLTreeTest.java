@@ -2,8 +2,14 @@ package derek.util;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -23,25 +29,25 @@ public class AVLTreeTest {
 			inorder.add(new Integer(count));
 		
 		preorder.add(new Integer(3));
-		preorder.add(new Integer(0));
 		preorder.add(new Integer(1));
+		preorder.add(new Integer(0));
 		preorder.add(new Integer(2));
-		preorder.add(new Integer(4));
+		preorder.add(new Integer(7));
 		preorder.add(new Integer(5));
+		preorder.add(new Integer(4));
 		preorder.add(new Integer(6));
-		preorder.add(new Integer(7));
 		preorder.add(new Integer(8));
 		preorder.add(new Integer(9));
 		
 		postorder.add(new Integer(0));
-		postorder.add(new Integer(1));
 		postorder.add(new Integer(2));
+		postorder.add(new Integer(1));
 		postorder.add(new Integer(4));
-		postorder.add(new Integer(5));
 		postorder.add(new Integer(6));
-		postorder.add(new Integer(7));
-		postorder.add(new Integer(8));
+		postorder.add(new Integer(5));
 		postorder.add(new Integer(9));
+		postorder.add(new Integer(8));
+		postorder.add(new Integer(7));
 		postorder.add(new Integer(3));
 	}
 
@@ -91,4 +97,319 @@ public class AVLTreeTest {
 		assertEquals("In-Order traversal is out of order!", inorder, inorderActual);
 	}
 
+	/**
+	 * This tests that loading sorted keys keeps the tree logarithmically tall, which needs
+	 * the cached heights to stay right through every rotation.
+	 */
+	@Test
+	public void testSortedInsertStaysBalanced() {
+		AVLTree<Integer> tree = new AVLTree<Integer>();
+		int numValues = 100000;
+		for (int i = 0 ; i < numValues ; i++)
+			tree.insert(i);
+		assertEquals(numValues, tree.size());
+		assertTrue("Tree is too tall!", tree.height() <= maxHeight(numValues));
+
+		// Removing from one end forces rotations on the way back up too
+		for (int i = 0 ; i < numValues / 2 ; i++)
+			assertEquals(Integer.valueOf(i), tree.remove(i));
+		assertEquals(numValues / 2, tree.size());
+		assertTrue("Tree is too tall!", tree.height() <= maxHeight(numValues / 2));
+		assertEquals(Integer.valueOf(numValues / 2), tree.inOrder().get(0));
+	}
+
+	/**
+	 * This tests random inserts and removes, including removing nodes with one or two children.
+	 */
+	@Test
+	public void testRandomInsertRemove() {
+		AVLTree<Integer> tree = new AVLTree<Integer>();
+		ArrayList<Integer> expected = new ArrayList<Integer>();
+		Random r = new Random(11);
+		for (int i = 0 ; i < 2000 ; i++) {
+			int value = r.nextInt(100000);
+			if (tree.find(value) == null) {
+				tree.insert(value);
+				expected.add(value);
+			}
+		}
+		Collections.shuffle(expected, r);
+		for (int i = 0 ; i < expected.size() / 2 ; i++) {
+			assertEquals(expected.get(i), tree.remove(expected.get(i)));
+			assertNull(tree.find(expected.get(i)));
+		}
+		List<Integer> rest = new ArrayList<Integer>(expected.subList(expected.size() / 2, expected.size()));
+		Collections.sort(rest);
+		assertEquals(rest, tree.inOrder());
+		assertEquals(rest.size(), tree.size());
+		assertTrue("Tree is too tall!", tree.height() <= maxHeight(rest.size()));
+		assertNull(tree.remove(-1));
+	}
+
+	/**
+	 * This tests the in-order iterator, including removing through it, and that traversals
+	 * of a tall tree don't need a deep call stack.
+	 */
+	@Test
+	public void testIterator() {
+		AVLTree<Integer> tree = new AVLTree<Integer>();
+		int numValues = 1000;
+		for (int i = numValues - 1 ; i >= 0 ; i--)
+			tree.insert(i);
+
+		int expected = 0;
+		for (Integer i : tree)
+			assertEquals(Integer.valueOf(expected++), i);
+		assertEquals(numValues, expected);
+
+		// Remove every odd element through the iterator, including ones with two children
+		Iterator<Integer> it = tree.iterator();
+		expected = 0;
+		while (it.hasNext()) {
+			Integer i = it.next();
+			assertEquals(Integer.valueOf(expected++), i);
+			if (i % 2 == 1)
+				it.remove();
+		}
+		assertEquals(numValues, expected);
+		assertEquals(numValues / 2, tree.size());
+		assertEquals(numValues / 2, tree.preOrder().size());
+		assertEquals(numValues / 2, tree.postOrder().size());
+		expected = 0;
+		for (Integer i : tree) {
+			assertEquals(Integer.valueOf(expected), i);
+			expected += 2;
+		}
+	}
+
+	/**
+	 * This tests that iterators fail fast when the tree is changed behind their back.
+	 */
+	@Test(expected = ConcurrentModificationException.class)
+	public void testFailFast() {
+		AVLTree<Integer> tree = new AVLTree<Integer>();
+		for (int i = 0 ; i < 10 ; i++)
+			tree.insert(i);
+		for (Integer i : tree)
+			tree.remove(i);
+	}
+
+	/**
+	 * This tests select, rank, count and aggregate against a sorted list, while the tree changes.
+	 */
+	@Test
+	public void testOrderStatistics() {
+		Monoid<Integer> sum = new Monoid<Integer>() {
+			@Override
+			public Integer identity() {
+				return 0;
+			}
+
+			@Override
+			public Integer combine(Integer a, Integer b) {
+				return a + b;
+			}
+		};
+		AVLTree<Integer> tree = new AVLTree<Integer>(sum);
+		ArrayList<Integer> expected = new ArrayList<Integer>();
+		Random r = new Random(14);
+		for (int i = 0 ; i < 3000 ; i++) {
+			int value = r.nextInt(1000);
+			if ((r.nextInt(4) == 0) && (tree.find(value) != null)) {
+				tree.remove(value);
+				expected.remove(Integer.valueOf(value));
+			}
+			else if (tree.find(value) == null) {
+				tree.insert(value);
+				expected.add(value);
+			}
+		}
+		Collections.sort(expected);
+		assertEquals(expected.size(), tree.size());
+
+		for (int k = 0 ; k < expected.size() ; k++) {
+			assertEquals(expected.get(k), tree.select(k));
+			assertEquals(k, tree.rank(expected.get(k)));
+		}
+		for (int i = 0 ; i < 200 ; i++) {
+			int lo = r.nextInt(1100) - 50;
+			int hi = lo + r.nextInt(300);
+			int count = 0;
+			int total = 0;
+			for (Integer v : expected) {
+				if ((v >= lo) && (v <= hi)) {
+					count++;
+					total += v;
+				}
+			}
+			assertEquals(count, tree.count(lo, hi));
+			assertEquals(Integer.valueOf(total), tree.aggregate(lo, hi));
+		}
+		assertEquals(0, tree.count(10, 5));
+
+		try {
+			tree.select(expected.size());
+			fail("Selected past the end of the tree!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * This tests that aggregate combines elements in sorted order, using a monoid that isn't commutative.
+	 */
+	@Test
+	public void testAggregateOrder() {
+		Monoid<String> concat = new Monoid<String>() {
+			@Override
+			public String identity() {
+				return "";
+			}
+
+			@Override
+			public String combine(String a, String b) {
+				return a + b;
+			}
+		};
+		AVLTree<String> tree = new AVLTree<String>(concat);
+		String letters = "qwertyuiopasdfghjklzxcvbnm";
+		for (int i = 0 ; i < letters.length() ; i++)
+			tree.insert(letters.substring(i, i + 1));
+		assertEquals("abcdefghijklmnopqrstuvwxyz", tree.aggregate("a", "z"));
+		assertEquals("defghijklmnopq", tree.aggregate("d", "q"));
+		assertEquals("", tree.aggregate("0", "1"));
+		tree.remove("h");
+		assertEquals("defgijklmnopq", tree.aggregate("d", "q"));
+
+		try {
+			new AVLTree<String>().aggregate("a", "z");
+			fail("Aggregated without a monoid!");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * This tests building trees straight from sorted input.
+	 */
+	@Test
+	public void testFromSorted() {
+		int numValues = 100000;
+		Integer[] sorted = new Integer[numValues];
+		for (int i = 0 ; i < numValues ; i++)
+			sorted[i] = 2 * i;
+		AVLTree<Integer> tree = AVLTree.fromSorted(sorted);
+		assertEquals(numValues, tree.size());
+		// A perfectly balanced tree is as short as a binary tree can be
+		assertEquals(31 - Integer.numberOfLeadingZeros(numValues), tree.height());
+		assertEquals(Integer.valueOf(2 * 777), tree.select(777));
+		assertEquals(777, tree.rank(2 * 777));
+
+		// The tree still works normally afterwards
+		tree.insert(1);
+		assertEquals(Integer.valueOf(1), tree.find(1));
+		assertEquals(Integer.valueOf(0), tree.remove(0));
+		assertEquals(numValues, tree.size());
+		assertEquals(Integer.valueOf(1), tree.iterator().next());
+
+		LinkedList<Integer> list = new LinkedList<Integer>();
+		for (int i = 0 ; i < 1000 ; i++)
+			list.add(i);
+		assertEquals(list, AVLTree.fromSorted(list).inOrder());
+		assertEquals(0, AVLTree.fromSorted(new LinkedList<Integer>()).size());
+
+		try {
+			AVLTree.fromSorted(new Integer[] {1, 3, 2});
+			fail("Built a tree from unsorted input!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * This tests union, intersection and difference against TreeSet, on trees big enough to be
+	 * split up in parallel, and checks that the inputs are left alone.
+	 */
+	@Test
+	public void testSetOperations() {
+		Monoid<Integer> count = new Monoid<Integer>() {
+			@Override
+			public Integer identity() {
+				return 0;
+			}
+
+			@Override
+			public Integer combine(Integer a, Integer b) {
+				return a + b;
+			}
+		};
+		Random r = new Random(16);
+		int[][] sizes = { {0, 100}, {100, 0}, {50, 5000}, {20000, 30000}, {60000, 200} };
+		for (int[] size : sizes) {
+			TreeSet<Integer> setA = new TreeSet<Integer>();
+			TreeSet<Integer> setB = new TreeSet<Integer>();
+			while (setA.size() < size[0])
+				setA.add(r.nextInt(4 * (size[0] + size[1])));
+			while (setB.size() < size[1])
+				setB.add(r.nextInt(4 * (size[0] + size[1])));
+			AVLTree<Integer> a = AVLTree.fromSorted(new ArrayList<Integer>(setA), count);
+			AVLTree<Integer> b = new AVLTree<Integer>();
+			for (Integer i : setB)
+				b.insert(i);
+
+			TreeSet<Integer> union = new TreeSet<Integer>(setA);
+			union.addAll(setB);
+			TreeSet<Integer> intersection = new TreeSet<Integer>(setA);
+			intersection.retainAll(setB);
+			TreeSet<Integer> difference = new TreeSet<Integer>(setA);
+			difference.removeAll(setB);
+
+			checkSet(union, a.union(b));
+			checkSet(intersection, a.intersection(b));
+			checkSet(difference, a.difference(b));
+			checkSet(new TreeSet<Integer>(setB), b.union(new AVLTree<Integer>()));
+
+			// The results summarize with a's monoid
+			AVLTree<Integer> u = a.union(b);
+			long total = 0;
+			for (Integer i : union)
+				total += i;
+			assertEquals((int) total, (int) u.aggregate(Integer.MIN_VALUE, Integer.MAX_VALUE));
+
+			// The inputs are unchanged
+			checkSet(setA, a);
+			checkSet(setB, b);
+		}
+	}
+
+	/**
+	 * This method checks a tree holds exactly the elements of a set, and is still a valid AVL tree.
+	 * @param expected The elements the tree should hold.
+	 * @param tree The tree.
+	 */
+	private static void checkSet(TreeSet<Integer> expected, AVLTree<Integer> tree) {
+		assertEquals(expected.size(), tree.size());
+		assertEquals(new ArrayList<Integer>(expected), tree.inOrder());
+		assertTrue("Tree is too tall!", tree.height() <= maxHeight(tree.size()));
+		int k = 0;
+		for (Integer i : expected) {
+			if (k % 97 == 0) {
+				assertEquals(i, tree.select(k));
+				assertEquals(k, tree.rank(i));
+			}
+			k++;
+		}
+		// Walking up and down again shows the parent pointers are right
+		assertEquals(tree.size(), tree.postOrder().size());
+	}
+
+	/**
+	 * This method returns the tallest an AVL tree with n nodes is allowed to be.
+	 * @param n The number of nodes.
+	 * @return The height bound, 1.44 * log2(n + 2).
+	 */
+	private static int maxHeight(int n) {
+		return (int) (1.4405 * (Math.log(n + 2) / Math.log(2)));
+	}
+
 }
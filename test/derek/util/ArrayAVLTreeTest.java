@@ -0,0 +1,133 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * This tests the array-backed AVL tree in ArrayAVLTree, mostly by checking it against AVLTree.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ArrayAVLTreeTest {
+
+	/**
+	 * This tests random inserts and removes against AVLTree, including the traversals, which
+	 * only match if both trees rotated the same way.
+	 */
+	@Test
+	public void testAgainstAVLTree() {
+		Monoid<Integer> sum = new Monoid<Integer>() {
+			@Override
+			public Integer identity() {
+				return 0;
+			}
+
+			@Override
+			public Integer combine(Integer a, Integer b) {
+				return a + b;
+			}
+		};
+		ArrayAVLTree<Integer> tree = new ArrayAVLTree<Integer>(sum);
+		AVLTree<Integer> expected = new AVLTree<Integer>(sum);
+
+		Random r = new Random(15);
+		for (int i = 0 ; i < 5000 ; i++) {
+			int value = r.nextInt(1500);
+			if (expected.find(value) != null) {
+				if (r.nextBoolean())
+					assertEquals(expected.remove(value), tree.remove(value));
+			}
+			else {
+				expected.insert(value);
+				tree.insert(value);
+			}
+			assertEquals(expected.size(), tree.size());
+			assertEquals(expected.find(value), tree.find(value));
+		}
+
+		assertEquals(expected.height(), tree.height());
+		assertEquals(expected.inOrder(), tree.inOrder());
+		assertEquals(expected.preOrder(), tree.preOrder());
+		assertEquals(expected.postOrder(), tree.postOrder());
+		for (int k = 0 ; k < expected.size() ; k += 7)
+			assertEquals(expected.select(k), tree.select(k));
+		for (int i = 0 ; i < 100 ; i++) {
+			int lo = r.nextInt(1500);
+			int hi = lo + r.nextInt(200);
+			assertEquals(expected.rank(lo), tree.rank(lo));
+			assertEquals(expected.count(lo, hi), tree.count(lo, hi));
+			assertEquals(expected.aggregate(lo, hi), tree.aggregate(lo, hi));
+		}
+		assertEquals(expected.toString(), tree.toString());
+	}
+
+	/**
+	 * This tests that removed slots get reused instead of growing the arrays.
+	 */
+	@Test
+	public void testFreeList() {
+		ArrayAVLTree<Integer> tree = new ArrayAVLTree<Integer>(4);
+		for (int i = 0 ; i < 1000 ; i++)
+			tree.insert(i);
+		int capacity = tree.capacity();
+		assertTrue(capacity >= 1000);
+
+		// Churn through many more elements than the capacity, never holding more than 1000
+		for (int i = 1000 ; i < 20000 ; i++) {
+			assertEquals(Integer.valueOf(i - 1000), tree.remove(i - 1000));
+			tree.insert(i);
+		}
+		assertEquals(capacity, tree.capacity());
+		assertEquals(1000, tree.size());
+		assertEquals(Integer.valueOf(19000), tree.select(0));
+		assertEquals(Integer.valueOf(19999), tree.select(999));
+	}
+
+	/**
+	 * This tests the in-order iterator, including removing through it.
+	 */
+	@Test
+	public void testIterator() {
+		ArrayAVLTree<Integer> tree = new ArrayAVLTree<Integer>();
+		ArrayList<Integer> values = new ArrayList<Integer>();
+		for (int i = 0 ; i < 1000 ; i++)
+			values.add(i);
+		Collections.shuffle(values, new Random(16));
+		for (Integer v : values)
+			tree.insert(v);
+
+		Iterator<Integer> it = tree.iterator();
+		int expected = 0;
+		while (it.hasNext()) {
+			Integer i = it.next();
+			assertEquals(Integer.valueOf(expected++), i);
+			if (i % 3 != 0)
+				it.remove();
+		}
+		assertEquals(1000, expected);
+		assertEquals(334, tree.size());
+		expected = 0;
+		for (Integer i : tree) {
+			assertEquals(Integer.valueOf(expected), i);
+			expected += 3;
+		}
+	}
+
+	/**
+	 * This tests that iterators fail fast when the tree is changed behind their back.
+	 */
+	@Test(expected = ConcurrentModificationException.class)
+	public void testFailFast() {
+		ArrayAVLTree<Integer> tree = new ArrayAVLTree<Integer>();
+		for (int i = 0 ; i < 10 ; i++)
+			tree.insert(i);
+		for (Integer i : tree)
+			tree.remove(i);
+	}
+
+}
@@ -2,7 +2,14 @@ package derek.util;
 
 import static org.junit.Assert.*;
 
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import org.junit.Test;
 
 /**
@@ -63,5 +70,263 @@ public class ArrayHashMapTest {
 		assertFalse(map.containsKey(EMPTYKEY + 0));
 		assertFalse(map.containsValue(EMPTYVALUE + 0));
 	}
-	
+
+	/**
+	 * This tests that colliding keys share probe runs correctly, including removals
+	 * from the middle of a run and overwriting existing keys.
+	 */
+	@Test
+	public void testCollisions() {
+		ArrayHashMap<CollidingKey, Integer> map = new ArrayHashMap<CollidingKey, Integer>(4);
+
+		// Every key lands on one of three home slots
+		int numValues = 300;
+		for (int i = 0 ; i < numValues ; i++)
+			map.put(new CollidingKey(i), i);
+		assertEquals(numValues, map.size());
+
+		// Overwriting a key keeps the size the same
+		map.put(new CollidingKey(7), -7);
+		assertEquals(numValues, map.size());
+		assertEquals(Integer.valueOf(-7), map.get(new CollidingKey(7)));
+
+		// Remove every even key, then make sure every odd key is still reachable
+		for (int i = 0 ; i < numValues ; i += 2)
+			assertNotNull(map.remove(new CollidingKey(i)));
+		assertEquals(numValues / 2, map.size());
+		for (int i = 0 ; i < numValues ; i++) {
+			if (i % 2 == 0)
+				assertFalse(map.containsKey(new CollidingKey(i)));
+			else if (i != 7)
+				assertEquals(Integer.valueOf(i), map.get(new CollidingKey(i)));
+		}
+		assertEquals(numValues / 2, map.keySet().size());
+		assertEquals(numValues / 2, map.values().size());
+		assertEquals(numValues / 2, map.entrySet().size());
+	}
+
+	/**
+	 * This tests keys whose hash codes are negative or clustered, which used to break indexing.
+	 */
+	@Test
+	public void testClusteredHashCodes() {
+		ArrayHashMap<Long, Long> map = new ArrayHashMap<Long, Long>();
+
+		// Integer.MIN_VALUE can't be made positive by negating it
+		map.put((long) Integer.MIN_VALUE, 1L);
+		assertEquals(Long.valueOf(1L), map.get((long) Integer.MIN_VALUE));
+
+		// Multiples of a large power of two only differ in their high bits
+		for (long i = 0 ; i < 1000 ; i++)
+			map.put(i << 32, i);
+		assertEquals(1001, map.size());
+		for (long i = 0 ; i < 1000 ; i++)
+			assertEquals(Long.valueOf(i), map.get(i << 32));
+		assertNull(map.get(1000L << 32));
+	}
+
+	/**
+	 * This tests that a custom HashStrategy is used for both hashing and equality.
+	 */
+	@Test
+	public void testHashStrategy() {
+		HashStrategy<String> ignoreCase = new HashStrategy<String>() {
+			@Override
+			public int hashCode(String key) {
+				return key.toLowerCase().hashCode();
+			}
+
+			@Override
+			public boolean equals(String a, String b) {
+				return a.equalsIgnoreCase(b);
+			}
+		};
+		ArrayHashMap<String, String> map = new ArrayHashMap<String, String>(ignoreCase);
+
+		map.put("Key", EMPTYVALUE + 0);
+		map.put("KEY", EMPTYVALUE + 1);
+		assertEquals(1, map.size());
+		assertEquals(EMPTYVALUE + 1, map.get("key"));
+		assertTrue(map.containsKey("kEy"));
+		assertEquals(EMPTYVALUE + 1, map.remove("KeY"));
+		assertTrue(map.isEmpty());
+	}
+
+	/**
+	 * This tests that entries stay reachable while the map grows, including keys that are
+	 * overwritten or removed before they have been migrated to the bigger table.
+	 */
+	@Test
+	public void testGrowWhileMigrating() {
+		ArrayHashMap<Integer, Integer> map = new ArrayHashMap<Integer, Integer>(2);
+		HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+		Random r = new Random(42);
+		for (int i = 0 ; i < 20000 ; i++) {
+			int key = r.nextInt(5000);
+			switch (r.nextInt(3)) {
+			case 0:
+				assertEquals(expected.remove(key), map.remove(key));
+				break;
+			default:
+				expected.put(key, i);
+				map.put(key, i);
+			}
+			assertEquals(expected.size(), map.size());
+			assertEquals(expected.get(key), map.get(key));
+		}
+
+		for (Integer key : expected.keySet())
+			assertEquals(expected.get(key), map.get(key));
+		assertEquals(expected.keySet(), map.keySet());
+		assertEquals(expected.entrySet(), map.entrySet());
+	}
+
+	/**
+	 * This tests that overwriting values while iterating over the keys isn't counted as a change
+	 * to the map, at every size and so with and without a migration in progress.
+	 */
+	@Test
+	public void testOverwriteWhileIterating() {
+		ArrayHashMap<Integer, Integer> map = new ArrayHashMap<Integer, Integer>();
+		for (int n = 1 ; n <= 1500 ; n++) {
+			map.put(n, 0);
+			for (Integer key : map.keySet())
+				map.put(key, n);
+			assertEquals(n, map.size());
+		}
+		for (Integer key : map.keySet())
+			assertEquals(Integer.valueOf(1500), map.get(key));
+	}
+
+	/**
+	 * This tests that the views are live, and that removing through an iterator visits
+	 * every entry exactly once, even with long probe runs and a migration in progress.
+	 */
+	@Test
+	public void testViews() {
+		ArrayHashMap<CollidingKey, Integer> map = new ArrayHashMap<CollidingKey, Integer>(2);
+		int numValues = 500;
+		for (int i = 0 ; i < numValues ; i++)
+			map.put(new CollidingKey(i), i);
+
+		// The views see changes made to the map after they were created
+		Set<CollidingKey> keys = map.keySet();
+		Collection<Integer> values = map.values();
+		map.put(new CollidingKey(numValues), numValues);
+		assertEquals(numValues + 1, keys.size());
+		assertTrue(keys.contains(new CollidingKey(numValues)));
+		assertTrue(values.contains(numValues));
+
+		// Remove every odd key through the iterator, and double every even value through the cursor
+		HashSet<Integer> seen = new HashSet<Integer>();
+		Iterator<Map.Entry<CollidingKey, Integer>> it = map.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<CollidingKey, Integer> e = it.next();
+			assertTrue("Entry visited twice!", seen.add(e.getKey().id));
+			if (e.getKey().id % 2 == 1)
+				it.remove();
+			else
+				e.setValue(e.getValue() * 2);
+		}
+		assertEquals(numValues + 1, seen.size());
+		assertEquals(numValues / 2 + 1, map.size());
+		for (int i = 0 ; i <= numValues ; i++) {
+			if (i % 2 == 1)
+				assertFalse(map.containsKey(new CollidingKey(i)));
+			else
+				assertEquals(Integer.valueOf(i * 2), map.get(new CollidingKey(i)));
+		}
+
+		// Removing through the key set changes the map
+		assertTrue(keys.remove(new CollidingKey(0)));
+		assertFalse(keys.remove(new CollidingKey(1)));
+		assertEquals(numValues / 2, map.size());
+		int count = 0;
+		for (Integer v : values) {
+			assertNotNull(v);
+			count++;
+		}
+		assertEquals(numValues / 2, count);
+	}
+
+	/**
+	 * This tests that iterators fail fast when the map is changed behind their back.
+	 */
+	@Test(expected = ConcurrentModificationException.class)
+	public void testFailFast() {
+		ArrayHashMap<String, String> map = new ArrayHashMap<String, String>();
+		for (int i = 0 ; i < 10 ; i++)
+			map.put(EMPTYKEY + i, EMPTYVALUE + i);
+		for (String key : map.keySet())
+			map.remove(key);
+	}
+
+	/**
+	 * This tests the batch methods, and that putAll from a map keeps every pair.
+	 */
+	@Test
+	public void testBatch() {
+		int numValues = 1000;
+		String[] keys = new String[numValues];
+		String[] values = new String[numValues];
+		for (int i = 0 ; i < numValues ; i++) {
+			keys[i] = EMPTYKEY + i;
+			values[i] = EMPTYVALUE + i;
+		}
+
+		ArrayHashMap<String, String> map = new ArrayHashMap<String, String>();
+		map.putAll(keys, values);
+		assertEquals(numValues, map.size());
+
+		// Look up every stored key, plus one that isn't there
+		String[] lookup = new String[numValues + 1];
+		System.arraycopy(keys, 0, lookup, 0, numValues);
+		lookup[numValues] = EMPTYKEY + numValues;
+		String[] out = new String[lookup.length];
+		assertEquals(numValues, map.getAll(lookup, out));
+		for (int i = 0 ; i < numValues ; i++)
+			assertEquals(values[i], out[i]);
+		assertNull(out[numValues]);
+
+		// Copying into a map that already has some overlapping keys
+		HashMap<String, String> source = new HashMap<String, String>(map);
+		ArrayHashMap<String, String> copy = new ArrayHashMap<String, String>();
+		copy.put(EMPTYKEY + 0, "old");
+		copy.put("extra", "extra");
+		copy.putAll(source);
+		assertEquals(numValues + 1, copy.size());
+		assertEquals(EMPTYVALUE + 0, copy.get(EMPTYKEY + 0));
+		assertEquals("extra", copy.get("extra"));
+		assertEquals(source.get(EMPTYKEY + 500), copy.get(EMPTYKEY + 500));
+
+		// A key mapped to null still counts as found
+		map.put(EMPTYKEY + 0, null);
+		assertEquals(numValues, map.getAll(lookup, out));
+		assertNull(out[0]);
+	}
+
+	/**
+	 * A key type with a deliberately terrible hash code.
+	 */
+	private static class CollidingKey {
+
+		/** The value that makes this key unique. */
+		private final int id;
+
+		private CollidingKey(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id % 3;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof CollidingKey) && (((CollidingKey) o).id == id);
+		}
+	}
+
 }
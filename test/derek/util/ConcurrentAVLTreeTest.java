@@ -0,0 +1,198 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * This tests the thread-safe AVL tree in ConcurrentAVLTree.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ConcurrentAVLTreeTest {
+
+	/**
+	 * This tests the tree from one thread against a TreeSet.
+	 */
+	@Test
+	public void testAgainstTreeSet() {
+		ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<Integer>();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		Random r = new Random(17);
+		for (int i = 0 ; i < 20000 ; i++) {
+			int value = r.nextInt(3000);
+			if (expected.contains(value)) {
+				if (r.nextBoolean()) {
+					expected.remove(value);
+					assertEquals(Integer.valueOf(value), tree.remove(value));
+				}
+			}
+			else {
+				expected.add(value);
+				tree.insert(value);
+			}
+			assertEquals(expected.size(), tree.size());
+
+			int probe = r.nextInt(3100) - 50;
+			assertEquals(expected.contains(probe), tree.contains(probe));
+			assertEquals(expected.floor(probe), tree.floor(probe));
+			assertEquals(expected.ceiling(probe), tree.ceiling(probe));
+		}
+		assertEquals(new ArrayList<Integer>(expected), tree.inOrder());
+		assertTrue("Tree is too tall!", tree.height() <= 1.4405 * (Math.log(tree.size() + 2) / Math.log(2)));
+		assertNull(tree.remove(-1));
+	}
+
+	/**
+	 * This tests readers racing a writer. Even elements are never removed, so readers must
+	 * always find them, no matter what the writer is rotating.
+	 */
+	@Test
+	public void testReadersDuringWrites() throws InterruptedException {
+		final ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<Integer>();
+		final int range = 20000;
+		for (int i = 0 ; i < range ; i += 2)
+			tree.insert(i);
+
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		final long end = System.currentTimeMillis() + 1000;
+		Thread[] readers = new Thread[4];
+		for (int t = 0 ; t < readers.length ; t++) {
+			final int seed = t;
+			readers[t] = new Thread() {
+				@Override
+				public void run() {
+					Random r = new Random(seed);
+					while ((System.currentTimeMillis() < end) && (failure.get() == null)) {
+						int even = 2 * r.nextInt(range / 2);
+						if (!tree.contains(even))
+							failure.set("Lost " + even);
+						Integer floor = tree.floor(even + 1);
+						if ((floor == null) || (floor < even))
+							failure.set("Bad floor " + floor + " for " + (even + 1));
+					}
+				}
+			};
+			readers[t].start();
+		}
+
+		// Churn the odd elements, which forces plenty of rotations
+		Random r = new Random(99);
+		while (System.currentTimeMillis() < end) {
+			int odd = 2 * r.nextInt(range / 2) + 1;
+			if (tree.contains(odd))
+				tree.remove(odd);
+			else
+				tree.insert(odd);
+		}
+		for (Thread t : readers)
+			t.join();
+		assertNull(failure.get(), failure.get());
+
+		// Every even element is still there, in order
+		int last = Integer.MIN_VALUE;
+		int evens = 0;
+		for (Integer i : tree) {
+			assertTrue(i > last);
+			last = i;
+			if (i % 2 == 0)
+				evens++;
+		}
+		assertEquals(range / 2, evens);
+	}
+
+	/**
+	 * This tests that equal elements are counted, and removed one at a time.
+	 */
+	@Test
+	public void testDuplicates() {
+		ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<Integer>();
+		for (int i = 0 ; i < 10 ; i++)
+			tree.insert(i / 3);
+		assertEquals(10, tree.size());
+		assertEquals(Arrays.asList(0, 0, 0, 1, 1, 1, 2, 2, 2, 3), tree.inOrder());
+
+		assertEquals(Integer.valueOf(1), tree.remove(1));
+		assertEquals(Integer.valueOf(1), tree.remove(1));
+		assertTrue(tree.contains(1));
+		assertEquals(Integer.valueOf(1), tree.remove(1));
+		assertFalse(tree.contains(1));
+		assertNull(tree.remove(1));
+		assertEquals(Integer.valueOf(0), tree.floor(1));
+		assertEquals(Integer.valueOf(2), tree.ceiling(1));
+		assertEquals(Arrays.asList(0, 0, 0, 2, 2, 2, 3), tree.inOrder());
+	}
+
+	/**
+	 * This tests several writers racing each other and the readers. Each writer churns its own
+	 * elements, and elements divisible by 8 are never removed, so readers must always find them.
+	 * Once the writers stop, the tree must hold exactly what each writer left in it, and be balanced.
+	 */
+	@Test
+	public void testConcurrentWriters() throws InterruptedException {
+		final ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<Integer>();
+		final int range = 8000;
+		for (int i = 0 ; i < range ; i += 8)
+			tree.insert(i);
+
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		final long end = System.currentTimeMillis() + 1000;
+		final int writerCount = 4;
+		final List<TreeSet<Integer>> kept = new ArrayList<TreeSet<Integer>>();
+		for (int t = 0 ; t < writerCount ; t++)
+			kept.add(new TreeSet<Integer>());
+		Thread[] threads = new Thread[writerCount + 2];
+		for (int t = 0 ; t < threads.length ; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Random r = new Random(id);
+					while ((System.currentTimeMillis() < end) && (failure.get() == null)) {
+						if (id >= writerCount) {
+							int fixed = 8 * r.nextInt(range / 8);
+							if (!tree.contains(fixed))
+								failure.set("Lost " + fixed);
+							Integer ceiling = tree.ceiling(fixed - 7);
+							if ((ceiling == null) || (ceiling > fixed))
+								failure.set("Bad ceiling " + ceiling + " for " + (fixed - 7));
+							continue;
+						}
+						// Writer t owns the elements that are t + 1 more than a multiple of 8
+						int mine = 8 * r.nextInt(range / 8) + id + 1;
+						TreeSet<Integer> myKept = kept.get(id);
+						if (myKept.remove(mine)) {
+							// An assertion would only kill this thread, so report it like the readers do
+							Integer removed = tree.remove(mine);
+							if (!Integer.valueOf(mine).equals(removed))
+								failure.set("Removed " + removed + " instead of " + mine);
+						}
+						else {
+							tree.insert(mine);
+							myKept.add(mine);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertNull(failure.get(), failure.get());
+
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0 ; i < range ; i += 8)
+			expected.add(i);
+		for (TreeSet<Integer> k : kept)
+			expected.addAll(k);
+		assertEquals(new ArrayList<Integer>(expected), tree.inOrder());
+		assertEquals(expected.size(), tree.size());
+		assertTrue("Tree is too tall!", tree.height() <= 1.4405 * (Math.log(2 * tree.size() + 2) / Math.log(2)));
+	}
+
+}
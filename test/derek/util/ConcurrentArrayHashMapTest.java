@@ -0,0 +1,134 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * This tests the lock-striped hash-map implemented in ConcurrentArrayHashMap.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ConcurrentArrayHashMapTest {
+
+	/**
+	 * This tests single-threaded use against a java.util.HashMap, with enough removes
+	 * to force stripes to rebuild over their tombstones.
+	 */
+	@Test
+	public void testAgainstHashMap() {
+		ConcurrentArrayHashMap<Integer, Integer> map = new ConcurrentArrayHashMap<Integer, Integer>(2, 0.6f, 4);
+		HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+		Random r = new Random(3);
+		for (int i = 0 ; i < 20000 ; i++) {
+			int key = r.nextInt(3000);
+			switch (r.nextInt(4)) {
+			case 0:
+				assertEquals(expected.remove(key), map.remove(key));
+				break;
+			case 1:
+				assertEquals(expected.putIfAbsent(key, i), map.putIfAbsent(key, i));
+				break;
+			case 2:
+				assertEquals(expected.merge(key, 1, Integer::sum), map.merge(key, 1, Integer::sum));
+				break;
+			default:
+				assertEquals(expected.put(key, i), map.put(key, i));
+			}
+			assertEquals(expected.size(), map.size());
+			assertEquals(expected.get(key), map.get(key));
+		}
+		assertEquals(expected, map);
+
+		// Removing through the entry iterator changes the map
+		for (Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator() ; it.hasNext() ; ) {
+			if (it.next().getKey() % 2 == 0)
+				it.remove();
+		}
+		for (Integer key : expected.keySet())
+			assertEquals((key % 2 == 0) ? null : expected.get(key), map.get(key));
+	}
+
+	/**
+	 * This tests the compute family, including removal by returning null.
+	 */
+	@Test
+	public void testCompute() {
+		ConcurrentArrayHashMap<String, Integer> map = new ConcurrentArrayHashMap<String, Integer>();
+		assertEquals(Integer.valueOf(1), map.computeIfAbsent("a", k -> 1));
+		assertEquals(Integer.valueOf(1), map.computeIfAbsent("a", k -> 2));
+		assertNull(map.computeIfAbsent("b", k -> null));
+		assertFalse(map.containsKey("b"));
+
+		assertEquals(Integer.valueOf(5), map.computeIfPresent("a", (k, v) -> v + 4));
+		assertNull(map.computeIfPresent("b", (k, v) -> 1));
+		assertEquals(Integer.valueOf(7), map.compute("b", (k, v) -> (v == null) ? 7 : v));
+		assertNull(map.compute("b", (k, v) -> null));
+		assertFalse(map.containsKey("b"));
+
+		assertTrue(map.replace("a", 5, 6));
+		assertFalse(map.replace("a", 5, 7));
+		assertEquals(Integer.valueOf(6), map.replace("a", 8));
+		assertFalse(map.remove("a", 6));
+		assertTrue(map.remove("a", 8));
+		assertTrue(map.isEmpty());
+	}
+
+	/**
+	 * This tests that merges from many threads are never lost, while readers keep reading.
+	 */
+	@Test
+	public void testConcurrentMerge() throws InterruptedException {
+		final ConcurrentArrayHashMap<Integer, Integer> map = new ConcurrentArrayHashMap<Integer, Integer>();
+		final int numThreads = 8;
+		final int numKeys = 1000;
+		final int rounds = 50;
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		// A reader that checks counts only ever go up while the writers work
+		Thread reader = new Thread(() -> {
+			try {
+				int[] last = new int[numKeys];
+				while (!done.get()) {
+					for (int k = 0 ; k < numKeys ; k++) {
+						Integer v = map.get(k);
+						int now = (v == null) ? 0 : v;
+						if (now < last[k])
+							throw new AssertionError("Count went backwards for key " + k);
+						last[k] = now;
+					}
+				}
+			} catch (Throwable t) {
+				failure.set(t);
+			}
+		});
+		reader.start();
+
+		Thread[] writers = new Thread[numThreads];
+		for (int t = 0 ; t < numThreads ; t++) {
+			writers[t] = new Thread(() -> {
+				for (int round = 0 ; round < rounds ; round++) {
+					for (int k = 0 ; k < numKeys ; k++)
+						map.merge(k, 1, Integer::sum);
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread t : writers)
+			t.join();
+		done.set(true);
+		reader.join();
+
+		assertNull(failure.get());
+		assertEquals(numKeys, map.size());
+		for (int k = 0 ; k < numKeys ; k++)
+			assertEquals(Integer.valueOf(numThreads * rounds), map.get(k));
+	}
+}
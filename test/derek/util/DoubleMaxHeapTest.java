@@ -0,0 +1,58 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * This tests the primitive double heap in DoubleMaxHeap.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class DoubleMaxHeapTest {
+
+	/**
+	 * This tests that polling gives back random keys, and their payloads, in descending order.
+	 */
+	@Test
+	public void testHeapSort() {
+		DoubleMaxHeap heap = new DoubleMaxHeap(3);
+		Random r = new Random(19);
+		double[] keys = new double[10000];
+		for (int i = 0 ; i < keys.length ; i++) {
+			keys[i] = r.nextGaussian();
+			heap.add(keys[i], i);
+		}
+		// Each payload is the index of its key before sorting
+		double[] original = keys.clone();
+		Arrays.sort(keys);
+		for (int i = keys.length - 1 ; i >= 0 ; i--) {
+			assertEquals(keys[i], heap.peek(), 0);
+			assertEquals(keys[i], original[heap.peekPayload()], 0);
+			assertEquals(keys[i], heap.poll(), 0);
+		}
+		assertEquals(0, heap.size());
+	}
+
+	/**
+	 * This tests that special values are ordered the way Double.compare orders them.
+	 */
+	@Test
+	public void testSpecialValues() {
+		DoubleMaxHeap heap = new DoubleMaxHeap();
+		double[] keys = { 0.0, Double.NEGATIVE_INFINITY, Double.NaN, -0.0, Double.POSITIVE_INFINITY, -Double.MIN_VALUE };
+		for (double key : keys)
+			heap.add(key);
+		Arrays.sort(keys);
+		for (int i = keys.length - 1 ; i >= 0 ; i--)
+			assertEquals(Double.doubleToLongBits(keys[i]), Double.doubleToLongBits(heap.poll()));
+		try {
+			heap.peek();
+			fail("Peeked into an empty heap!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * This tests the indexed max-heap in IndexedMaxHeap, checking it against a brute-force search.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class IndexedMaxHeapTest {
+
+	/**
+	 * This tests random adds, polls, removes and key changes against a map of live handles.
+	 */
+	@Test
+	public void testAgainstBruteForce() {
+		IndexedMaxHeap<Integer> heap = new IndexedMaxHeap<Integer>(2);
+		HashMap<Integer, Integer> live = new HashMap<Integer, Integer>();
+		Random r = new Random(18);
+
+		for (int i = 0 ; i < 20000 ; i++) {
+			ArrayList<Integer> handles = new ArrayList<Integer>(live.keySet());
+			int op = r.nextInt(6);
+			if ((op <= 1) || live.isEmpty()) {
+				int value = r.nextInt(1000);
+				int handle = heap.add(value);
+				assertNull("Handle handed out twice!", live.put(handle, value));
+			}
+			else if (op == 2) {
+				int max = Collections.max(live.values());
+				assertEquals(Integer.valueOf(max), heap.peek());
+				int handle = heap.peekHandle();
+				assertEquals(Integer.valueOf(max), heap.poll());
+				live.remove(handle);
+				assertFalse(heap.contains(handle));
+			}
+			else {
+				int handle = handles.get(r.nextInt(handles.size()));
+				int old = live.get(handle);
+				assertTrue(heap.contains(handle));
+				assertEquals(Integer.valueOf(old), heap.get(handle));
+				if (op == 3) {
+					assertEquals(Integer.valueOf(old), heap.remove(handle));
+					live.remove(handle);
+				}
+				else if (op == 4) {
+					heap.increaseKey(handle, old + r.nextInt(100));
+					live.put(handle, heap.get(handle));
+				}
+				else {
+					heap.decreaseKey(handle, old - r.nextInt(100));
+					live.put(handle, heap.get(handle));
+				}
+			}
+			assertEquals(live.size(), heap.size());
+			if (!live.isEmpty())
+				assertEquals(Collections.max(live.values()), heap.peek());
+		}
+
+		// Draining gives every live element in order
+		ArrayList<Integer> expected = new ArrayList<Integer>(live.values());
+		Collections.sort(expected, Collections.reverseOrder());
+		for (Integer e : expected)
+			assertEquals(e, heap.poll());
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * This tests that key changes in the wrong direction, and stale handles, are rejected.
+	 */
+	@Test
+	public void testBadArguments() {
+		IndexedMaxHeap<String> heap = new IndexedMaxHeap<String>();
+		int b = heap.add("b");
+		try {
+			heap.increaseKey(b, "a");
+			fail("Increased a key to something smaller!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		try {
+			heap.decreaseKey(b, "c");
+			fail("Decreased a key to something bigger!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		heap.update(b, "a");
+		assertEquals("a", heap.poll());
+		try {
+			heap.remove(b);
+			fail("Removed a handle that had already been polled!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		try {
+			heap.peek();
+			fail("Peeked into an empty heap!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+}
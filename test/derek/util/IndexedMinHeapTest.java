@@ -0,0 +1,82 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * This tests the indexed min-heap in IndexedMinHeap.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class IndexedMinHeapTest {
+
+	/**
+	 * This tests reprioritizing scheduled tasks, the way a scheduler would, using a comparator
+	 * over deadlines rather than a wrapper type.
+	 */
+	@Test
+	public void testReschedule() {
+		final long[] deadlines = new long[1000];
+		Comparator<Integer> byDeadline = new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(deadlines[a], deadlines[b]);
+			}
+		};
+		IndexedMinHeap<Integer> heap = new IndexedMinHeap<Integer>(byDeadline);
+		int[] handles = new int[deadlines.length];
+		Random r = new Random(19);
+		for (int task = 0 ; task < deadlines.length ; task++) {
+			deadlines[task] = r.nextInt(1000000);
+			handles[task] = heap.add(task);
+		}
+
+		// Pull some deadlines in and push others out, then check everything comes out in order
+		for (int i = 0 ; i < 5000 ; i++) {
+			int task = r.nextInt(deadlines.length);
+			if (r.nextBoolean()) {
+				deadlines[task] -= r.nextInt(1000);
+				heap.decreaseKey(handles[task], task);
+			}
+			else {
+				deadlines[task] += r.nextInt(1000);
+				heap.increaseKey(handles[task], task);
+			}
+		}
+		PriorityQueue<Integer> expected = new PriorityQueue<Integer>(deadlines.length, byDeadline);
+		for (int task = 0 ; task < deadlines.length ; task++)
+			expected.add(task);
+		while (!expected.isEmpty())
+			assertEquals(deadlines[expected.poll()], deadlines[heap.poll()]);
+	}
+
+	/**
+	 * This tests natural ordering, and that handles are reused once their elements leave.
+	 */
+	@Test
+	public void testNaturalOrderAndHandleReuse() {
+		IndexedMinHeap<Integer> heap = new IndexedMinHeap<Integer>(1);
+		int five = heap.add(5);
+		int three = heap.add(3);
+		int nine = heap.add(9);
+		assertEquals(Integer.valueOf(3), heap.peek());
+		heap.increaseKey(three, 10);
+		assertEquals(Integer.valueOf(5), heap.peek());
+		heap.decreaseKey(nine, 1);
+		assertEquals(nine, heap.pollHandle());
+		assertEquals(Integer.valueOf(1), heap.get(nine));
+		assertFalse(heap.contains(nine));
+
+		// The freed handle is handed out again
+		assertEquals(nine, heap.add(7));
+		assertEquals(Integer.valueOf(5), heap.remove(five));
+		assertEquals(Integer.valueOf(7), heap.poll());
+		assertEquals(Integer.valueOf(10), heap.poll());
+		assertTrue(heap.isEmpty());
+		assertEquals("[]", heap.toString());
+	}
+
+}
@@ -0,0 +1,61 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * This tests what the int-to-int array-based hash-map in IntIntArrayHashMap adds to the other
+ * primitive maps, which are tested together in PrimitiveArrayHashMapTest.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class IntIntArrayHashMapTest {
+
+	/**
+	 * This tests random counter updates and removes against a java.util.HashMap.
+	 */
+	@Test
+	public void testCounters() {
+		IntIntArrayHashMap map = new IntIntArrayHashMap(2, 0.6f, -1);
+		HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+		Random r = new Random(11);
+		for (int i = 0 ; i < 20000 ; i++) {
+			int key = r.nextInt(2000) - 1000;
+			if (r.nextInt(4) == 0) {
+				Integer removed = expected.remove(key);
+				assertEquals((removed == null) ? -1 : removed.intValue(), map.remove(key));
+			}
+			else {
+				Integer sum = expected.get(key);
+				expected.put(key, (sum == null) ? 3 : sum + 3);
+				assertEquals(expected.get(key).intValue(), map.addTo(key, 3));
+			}
+			assertEquals(expected.size(), map.size());
+			assertEquals(expected.containsKey(key) ? expected.get(key).intValue() : -1, map.get(key));
+		}
+
+		for (int key : map.keys())
+			assertEquals(expected.get(key).intValue(), map.get(key));
+	}
+
+	/**
+	 * This tests the key 0 and the no entry value.
+	 */
+	@Test
+	public void testZeroKey() {
+		IntIntArrayHashMap map = new IntIntArrayHashMap();
+		assertEquals(0, map.get(0));
+		assertEquals(5, map.getOrDefault(0, 5));
+		assertFalse(map.containsKey(0));
+
+		assertEquals(0, map.put(0, 10));
+		assertEquals(10, map.get(0));
+		assertEquals(12, map.addTo(0, 2));
+		assertEquals(1, map.size());
+		assertEquals(12, map.remove(0));
+		assertTrue(map.isEmpty());
+	}
+}
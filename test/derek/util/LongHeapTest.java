@@ -0,0 +1,102 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntFunction;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * This tests the primitive long heaps in LongMaxHeap and LongMinHeap against a PriorityQueue.
+ * Each test runs once for each heap.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+@RunWith(Parameterized.class)
+public class LongHeapTest {
+
+	/** The name of the heap class, for the test names. */
+	@Parameter(0)
+	public String name;
+	/** Makes an empty heap with a given initial capacity. */
+	@Parameter(1)
+	public IntFunction<LongHeap> factory;
+	/** True if the heap keeps the least key on top. */
+	@Parameter(2)
+	public boolean minHeap;
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> heaps() {
+		IntFunction<LongHeap> max = LongMaxHeap::new;
+		IntFunction<LongHeap> min = LongMinHeap::new;
+		return Arrays.asList(new Object[][] {
+			{ "LongMaxHeap", max, false },
+			{ "LongMinHeap", min, true }
+		});
+	}
+
+	/**
+	 * This tests random adds and polls, with payloads that have to follow their keys.
+	 */
+	@Test
+	public void testAgainstPriorityQueue() {
+		LongHeap heap = factory.apply(1);
+		Comparator<long[]> byKey = (a, b) -> Long.compare(a[0], b[0]);
+		PriorityQueue<long[]> expected = new PriorityQueue<long[]>(16, minHeap ? byKey : byKey.reversed());
+		Random r = new Random(19);
+		for (int i = 0 ; i < 50000 ; i++) {
+			if (expected.isEmpty() || (r.nextInt(3) != 0)) {
+				// The first keys are odd and have no payload, so the payload array is made part way through.
+				// Equal keys always have equal payloads, so ties can come out in any order.
+				long key = (2 * (r.nextLong() % 50000)) + ((i < 1000) ? 1 : 0);
+				int payload = (i < 1000) ? 0 : (int) (key * 7);
+				heap.add(key, payload);
+				expected.add(new long[] { key, payload });
+			}
+			else {
+				long[] top = expected.poll();
+				assertEquals(top[0], heap.peek());
+				assertEquals(top[1], heap.peekPayload());
+				assertEquals(top[0], heap.poll());
+			}
+			assertEquals(expected.size(), heap.size());
+		}
+		while (!expected.isEmpty())
+			assertEquals(expected.poll()[0], heap.poll());
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * This tests the edges of the long range, an empty heap, and clearing.
+	 */
+	@Test
+	public void testEdges() {
+		LongHeap heap = factory.apply(20);
+		long[] keys = { 0, Long.MAX_VALUE, -1, Long.MIN_VALUE, 1, Long.MAX_VALUE };
+		for (long key : keys)
+			heap.add(key);
+		assertEquals(0, heap.peekPayload());
+		long[] greatestFirst = { Long.MAX_VALUE, Long.MAX_VALUE, 1, 0, -1, Long.MIN_VALUE };
+		for (int i = 0 ; i < greatestFirst.length ; i++)
+			assertEquals(greatestFirst[minHeap ? greatestFirst.length - 1 - i : i], heap.poll());
+		assertTrue(heap.isEmpty());
+		try {
+			heap.poll();
+			fail("Polled an empty heap!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		heap.add(5);
+		heap.clear();
+		assertTrue(heap.isEmpty());
+		assertEquals("[]", heap.toString());
+	}
+
+}
@@ -2,6 +2,10 @@ package derek.util;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
 import java.util.Random;
 
 import org.junit.Test;
@@ -35,4 +39,105 @@ public class MaxHeapTest {
 		System.out.println(heap);
 	}
 
+	@Test
+	public void testArity() {
+		Random r = new Random(20);
+		for (int arity = 2 ; arity <= 9 ; arity++) {
+			MaxHeap<Integer> heap = new MaxHeap<Integer>(1, arity);
+			PriorityQueue<Integer> expected = new PriorityQueue<Integer>(Collections.reverseOrder());
+			for (int iterations = 0 ; iterations < 5000 ; iterations++) {
+				if (expected.isEmpty() || r.nextInt(3) != 0) {
+					Integer next = r.nextInt(1000);
+					heap.add(next);
+					expected.add(next);
+				}
+				else
+					assertEquals("Wrong max value for arity " + arity + "!", expected.poll(), heap.poll());
+				assertEquals("Heap isn't the right size!", expected.size(), heap.size());
+			}
+			while (!expected.isEmpty())
+				assertEquals("Wrong max value for arity " + arity + "!", expected.poll(), heap.poll());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadArity() {
+		new MaxHeap<Integer>(10, 1);
+	}
+
+	@Test
+	public void testBulkLoad() {
+		Random r = new Random(21);
+		for (int n = 0 ; n < 200 ; n += 7) {
+			ArrayList<Integer> values = new ArrayList<Integer>();
+			for (int i = 0 ; i < n ; i++)
+				values.add(r.nextInt(50));
+			ArrayList<Integer> sorted = new ArrayList<Integer>(values);
+			Collections.sort(sorted, Collections.reverseOrder());
+
+			MaxHeap<Integer> fromCollection = new MaxHeap<Integer>(values);
+			MaxHeap<Integer> fromArray = new MaxHeap<Integer>(values.toArray(new Integer[n]));
+			// Small batches are sifted in one at a time, and big ones rebuild the heap
+			MaxHeap<Integer> added = new MaxHeap<Integer>(1, 3);
+			added.addAll(values.subList(0, n / 2));
+			added.addAll(values.subList(n / 2, n - (n / 8)));
+			added.addAll(values.subList(n - (n / 8), n));
+			assertEquals("Heap isn't the right size!", n, fromCollection.size());
+			assertEquals("Heap isn't the right size!", n, fromArray.size());
+			assertEquals("Heap isn't the right size!", n, added.size());
+			for (Integer max : sorted) {
+				assertEquals("Wrong max value!", max, fromCollection.poll());
+				assertEquals("Wrong max value!", max, fromArray.poll());
+				assertEquals("Wrong max value!", max, added.poll());
+			}
+		}
+	}
+
+	@Test
+	public void testAddAfterBulkLoad() {
+		// Bulk loads can fill the array exactly, so the next add has to grow it
+		ArrayList<Integer> values = new ArrayList<Integer>();
+		for (int i = 0 ; i < 25 ; i++)
+			values.add(i);
+
+		MaxHeap<Integer> fromCollection = new MaxHeap<Integer>(values);
+		fromCollection.add(100);
+		assertEquals("Heap isn't the right size!", 26, fromCollection.size());
+		assertEquals("Wrong max value!", Integer.valueOf(100), fromCollection.poll());
+		assertEquals("Wrong max value!", Integer.valueOf(24), fromCollection.poll());
+
+		MaxHeap<Integer> fromArray = new MaxHeap<Integer>(values.toArray(new Integer[25]));
+		fromArray.add(100);
+		assertEquals("Heap isn't the right size!", 26, fromArray.size());
+		assertEquals("Wrong max value!", Integer.valueOf(100), fromArray.poll());
+		assertEquals("Wrong max value!", Integer.valueOf(24), fromArray.poll());
+
+		MaxHeap<Integer> added = new MaxHeap<Integer>(4);
+		added.add(1);
+		added.addAll(Arrays.asList(5, 3, 2));
+		added.add(4);
+		assertEquals("Heap isn't the right size!", 5, added.size());
+		for (int max = 5 ; max > 0 ; max--)
+			assertEquals("Wrong max value!", Integer.valueOf(max), added.poll());
+	}
+
+	@Test
+	public void testHeapSort() {
+		Random r = new Random(21);
+		for (int n = 0 ; n < 300 ; n += 13) {
+			Integer[] a = new Integer[n];
+			for (int i = 0 ; i < n ; i++)
+				a[i] = r.nextInt(100);
+			Integer[] expected = a.clone();
+			Arrays.sort(expected);
+			Integer[] b = a.clone();
+			MaxHeap.heapSort(a);
+			assertArrayEquals(expected, a);
+
+			MaxHeap.heapSort(b, Collections.reverseOrder());
+			Collections.reverse(Arrays.asList(expected));
+			assertArrayEquals(expected, b);
+		}
+	}
+
 }
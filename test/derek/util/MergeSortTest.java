@@ -2,6 +2,10 @@ package derek.util;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.Random;
 
@@ -47,4 +51,92 @@ public class MergeSortTest {
 		}
 	}
 
+	@Test
+	public void testArraysAroundCutoff() {
+		Random r = new Random(24);
+		for (int n = 0 ; n < 100 ; n++) {
+			Integer[] a = new Integer[n];
+			for (int i = 0 ; i < n ; i++)
+				a[i] = r.nextInt(20);
+			Integer[] expected = a.clone();
+			Arrays.sort(expected);
+			MergeSort.sort(a);
+			assertArrayEquals(expected, a);
+		}
+	}
+
+	@Test
+	public void testStableWithComparator() {
+		Random r = new Random(24);
+		// Sort by the high digits only, so the low digits show whether equal keys kept their order
+		ArrayList<Integer> l = new ArrayList<Integer>();
+		for (int i = 0 ; i < 5000 ; i++)
+			l.add((r.nextInt(50) * 10000) + i);
+		ArrayList<Integer> expected = new ArrayList<Integer>(l);
+		Comparator<Integer> byHigh = (a, b) -> Integer.compare(b / 10000, a / 10000);
+		Collections.sort(expected, byHigh);
+		MergeSort.sort(l, byHigh);
+		assertEquals(expected, l);
+
+		// Already sorted and reversed input
+		MergeSort.sort(l, byHigh);
+		assertEquals(expected, l);
+		Collections.reverse(l);
+		MergeSort.sort(l);
+		Collections.sort(expected);
+		assertEquals(expected, l);
+	}
+
+	@Test(timeout = 10000)
+	public void testLargeLinkedList() {
+		Random r = new Random(24);
+		LinkedList<Integer> l = new LinkedList<Integer>();
+		for (int i = 0 ; i < 200000 ; i++)
+			l.add(r.nextInt());
+		ArrayList<Integer> expected = new ArrayList<Integer>(l);
+		Collections.sort(expected);
+		MergeSort.sort(l);
+		assertEquals(expected, l);
+	}
+
+	@Test
+	public void testParallelSort() {
+		Random r = new Random(25);
+		for (int n : new int[] { 0, 1, 100, 1000, 4099, 100000 }) {
+			// Sort by the high digits only, so the low digits show whether equal keys kept their order
+			Integer[] a = new Integer[n];
+			for (int i = 0 ; i < n ; i++)
+				a[i] = (r.nextInt(n / 10 + 1) * 1000000) + i;
+			Comparator<Integer> byHigh = (x, y) -> Integer.compare(x / 1000000, y / 1000000);
+			Integer[] expected = a.clone();
+			Arrays.sort(expected, byHigh);
+
+			// A small threshold splits every sort and merge many times over
+			Integer[] b = a.clone();
+			MergeSort.parallelSort(b, byHigh, 16);
+			assertArrayEquals(expected, b);
+			b = a.clone();
+			MergeSort.parallelSort(b, byHigh);
+			assertArrayEquals(expected, b);
+
+			Arrays.sort(expected);
+			MergeSort.parallelSort(a);
+			assertArrayEquals(expected, a);
+		}
+
+		// Runs of very different lengths, so merges split the second run as well as the first
+		Integer[] skewed = new Integer[50000];
+		for (int i = 0 ; i < skewed.length ; i++)
+			skewed[i] = (i < 25000) ? r.nextInt(100) : 50 + (i % 7);
+		Integer[] expected = skewed.clone();
+		Arrays.sort(expected);
+		MergeSort.parallelSort(skewed, null, 32);
+		assertArrayEquals(expected, skewed);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParallelSortBadThreshold() {
+		MergeSort.parallelSort(new Integer[100], null, 1);
+	}
+
 }
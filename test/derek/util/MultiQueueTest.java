@@ -0,0 +1,128 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * This tests the relaxed concurrent priority queue in MultiQueue.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class MultiQueueTest {
+
+	/**
+	 * This tests that every element comes back out exactly once, and roughly in order.
+	 */
+	@Test
+	public void testSingleThread() {
+		MultiQueue<Integer> queue = new MultiQueue<Integer>(4);
+		ArrayList<Integer> values = new ArrayList<Integer>();
+		for (int i = 0 ; i < 10000 ; i++)
+			values.add(i);
+		Collections.shuffle(values);
+		for (Integer i : values)
+			queue.add(i);
+		assertEquals(10000, queue.size());
+
+		ArrayList<Integer> polled = new ArrayList<Integer>();
+		Integer next;
+		while ((next = queue.poll()) != null)
+			polled.add(next);
+		assertTrue(queue.isEmpty());
+
+		// The first elements out should all be from the top of the queue
+		for (int i = 0 ; i < 100 ; i++)
+			assertTrue("Polled " + polled.get(i) + " too early!", polled.get(i) >= 9000);
+		Collections.sort(polled);
+		assertEquals(values.size(), polled.size());
+		for (int i = 0 ; i < polled.size() ; i++)
+			assertEquals(Integer.valueOf(i), polled.get(i));
+		assertEquals(10000, queue.addCount());
+		assertEquals(10000, queue.pollCount());
+	}
+
+	/**
+	 * This tests producers and consumers running at once. Every element must be taken exactly once.
+	 */
+	@Test
+	public void testProducersAndConsumers() throws InterruptedException {
+		final MultiQueue<Integer> queue = new MultiQueue<Integer>();
+		final int producers = 4;
+		final int perProducer = 20000;
+		final ConcurrentLinkedQueue<Integer> taken = new ConcurrentLinkedQueue<Integer>();
+		final AtomicInteger failures = new AtomicInteger();
+
+		Thread[] threads = new Thread[2 * producers];
+		for (int t = 0 ; t < producers ; t++) {
+			final int base = t * perProducer;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0 ; i < perProducer ; i++)
+						queue.add(base + i);
+				}
+			};
+			threads[producers + t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0 ; i < perProducer ; i++) {
+							Integer e = queue.take(10, TimeUnit.SECONDS);
+							if (e == null)
+								failures.incrementAndGet();
+							else
+								taken.add(e);
+						}
+					} catch (InterruptedException e) {
+						failures.incrementAndGet();
+					}
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+
+		assertEquals(0, failures.get());
+		ArrayList<Integer> sorted = new ArrayList<Integer>(taken);
+		Collections.sort(sorted);
+		assertEquals(producers * perProducer, sorted.size());
+		for (int i = 0 ; i < sorted.size() ; i++)
+			assertEquals(Integer.valueOf(i), sorted.get(i));
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+	}
+
+	/**
+	 * This tests that a timed take gives up on an empty queue, and wakes up for a late add.
+	 */
+	@Test
+	public void testTakeTimeout() throws InterruptedException {
+		final MultiQueue<String> queue = new MultiQueue<String>(2);
+		long start = System.nanoTime();
+		assertNull(queue.take(50, TimeUnit.MILLISECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+				queue.add("late");
+			}
+		};
+		producer.start();
+		assertEquals("late", queue.take(10, TimeUnit.SECONDS));
+		producer.join();
+	}
+
+}
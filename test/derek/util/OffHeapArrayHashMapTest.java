@@ -0,0 +1,84 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * This tests the off-heap hash-map implemented in OffHeapArrayHashMap.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class OffHeapArrayHashMapTest {
+
+	/**
+	 * This tests a direct buffer map against a java.util.HashMap, through several resizes.
+	 */
+	@Test
+	public void testAgainstHashMap() {
+		OffHeapArrayHashMap<Long, Integer> map = new OffHeapArrayHashMap<Long, Integer>(2, 0.6f,
+				OffHeapArrayHashMap.LONG_CODEC, OffHeapArrayHashMap.INT_CODEC);
+		HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+
+		Random r = new Random(5);
+		for (int i = 0 ; i < 20000 ; i++) {
+			long key = r.nextInt(3000) * 1024L;
+			if (r.nextInt(3) == 0)
+				assertEquals(expected.remove(key), map.remove(key));
+			else {
+				expected.put(key, i);
+				map.put(key, i);
+			}
+			assertEquals(expected.size(), map.size());
+			assertEquals(expected.get(key), map.get(key));
+		}
+		assertEquals(expected, map);
+
+		// Removing through the iterator keeps every other entry reachable
+		for (Iterator<Map.Entry<Long, Integer>> it = map.entrySet().iterator() ; it.hasNext() ; ) {
+			Map.Entry<Long, Integer> e = it.next();
+			if (e.getValue() % 2 == 0) {
+				it.remove();
+				expected.remove(e.getKey());
+			}
+		}
+		assertEquals(expected, map);
+	}
+
+	/**
+	 * This tests that a mapped table survives being reopened, including after it has grown.
+	 */
+	@Test
+	public void testReopen() throws IOException {
+		File f = File.createTempFile("OffHeapArrayHashMapTest", ".tbl");
+		f.deleteOnExit();
+		Path path = f.toPath();
+
+		OffHeapArrayHashMap<Integer, Long> map = OffHeapArrayHashMap.create(path, 4,
+				OffHeapArrayHashMap.INT_CODEC, OffHeapArrayHashMap.LONG_CODEC);
+		for (int i = 0 ; i < 1000 ; i++)
+			map.put(i, i * 10L);
+		map.remove(500);
+		map.force();
+
+		OffHeapArrayHashMap<Integer, Long> reopened = OffHeapArrayHashMap.open(path,
+				OffHeapArrayHashMap.INT_CODEC, OffHeapArrayHashMap.LONG_CODEC);
+		assertEquals(999, reopened.size());
+		for (int i = 0 ; i < 1000 ; i++)
+			assertEquals((i == 500) ? null : Long.valueOf(i * 10L), reopened.get(i));
+
+		// The codecs have to match the ones the table was written with
+		try {
+			OffHeapArrayHashMap.open(path, OffHeapArrayHashMap.LONG_CODEC, OffHeapArrayHashMap.LONG_CODEC);
+			fail("Opened a table with the wrong key codec!");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.function.IntFunction;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * This tests the primitive-keyed array-based hash-maps in IntArrayHashMap, LongArrayHashMap
+ * and IntIntArrayHashMap. Each test runs once for each map, through a small adapter that gives
+ * them all long keys and Integer values.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+@RunWith(Parameterized.class)
+public class PrimitiveArrayHashMapTest {
+
+	/** The name of the map class, for the test names. */
+	@Parameter(0)
+	public String name;
+	/** Makes an empty map with a given initial capacity. */
+	@Parameter(1)
+	public IntFunction<TestMap> factory;
+	/** What random keys are multiplied by, so long keys differ in their high bits. */
+	@Parameter(2)
+	public long keyScale;
+	/** The least key the map can hold. */
+	@Parameter(3)
+	public long minKey;
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> maps() {
+		IntFunction<TestMap> intMap = IntMap::new;
+		IntFunction<TestMap> longMap = LongMap::new;
+		IntFunction<TestMap> intIntMap = IntIntMap::new;
+		return Arrays.asList(new Object[][] {
+			{ "IntArrayHashMap", intMap, 1L, (long) Integer.MIN_VALUE },
+			{ "LongArrayHashMap", longMap, 0x100000000L, Long.MIN_VALUE },
+			{ "IntIntArrayHashMap", intIntMap, 1L, (long) Integer.MIN_VALUE }
+		});
+	}
+
+	/**
+	 * This tests random puts and removes against a java.util.HashMap, including the key 0
+	 * that doubles as the empty slot marker.
+	 */
+	@Test
+	public void testAgainstHashMap() {
+		TestMap map = factory.apply(2);
+		HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+
+		Random r = new Random(7);
+		for (int i = 0 ; i < 20000 ; i++) {
+			long key = (r.nextInt(2000) - 1000) * keyScale;
+			if (r.nextInt(3) == 0)
+				assertEquals(expected.remove(key), map.remove(key));
+			else
+				assertEquals(expected.put(key, i), map.put(key, i));
+			assertEquals(expected.size(), map.size());
+			assertEquals(expected.get(key), map.get(key));
+			assertEquals(expected.containsKey(key), map.containsKey(key));
+		}
+
+		long[] keys = map.keys();
+		assertEquals(expected.size(), keys.length);
+		for (long key : keys)
+			assertEquals(expected.get(key), map.get(key));
+	}
+
+	/**
+	 * This tests the key 0 on its own, since it is stored outside the table.
+	 */
+	@Test
+	public void testZeroKey() {
+		TestMap map = factory.apply(16);
+		assertNull(map.get(0));
+		assertFalse(map.containsKey(0));
+
+		assertNull(map.put(0, 1));
+		assertEquals(1, map.size());
+		assertEquals(Integer.valueOf(1), map.get(0));
+		assertEquals(Integer.valueOf(1), map.put(0, 2));
+		assertEquals(1, map.size());
+
+		assertEquals(Integer.valueOf(2), map.remove(0));
+		assertTrue(map.isEmpty());
+
+		map.put(0, 1);
+		map.put(minKey, 3);
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(0));
+		assertFalse(map.containsKey(minKey));
+	}
+
+
+	/**
+	 * The operations every map under test has, with long keys and null for a missing value.
+	 */
+	private interface TestMap {
+		Integer get(long key);
+		boolean containsKey(long key);
+		Integer put(long key, int value);
+		Integer remove(long key);
+		long[] keys();
+		void clear();
+		int size();
+		boolean isEmpty();
+	}
+
+	/**
+	 * This adapts an IntArrayHashMap to TestMap.
+	 */
+	private static class IntMap implements TestMap {
+		private final IntArrayHashMap<Integer> map;
+
+		private IntMap(int initialCapacity) {
+			map = new IntArrayHashMap<Integer>(initialCapacity);
+		}
+
+		@Override
+		public Integer get(long key) {
+			return map.get((int) key);
+		}
+
+		@Override
+		public boolean containsKey(long key) {
+			return map.containsKey((int) key);
+		}
+
+		@Override
+		public Integer put(long key, int value) {
+			return map.put((int) key, value);
+		}
+
+		@Override
+		public Integer remove(long key) {
+			return map.remove((int) key);
+		}
+
+		@Override
+		public long[] keys() {
+			return Arrays.stream(map.keys()).asLongStream().toArray();
+		}
+
+		@Override
+		public void clear() {
+			map.clear();
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return map.isEmpty();
+		}
+	}
+
+	/**
+	 * This adapts a LongArrayHashMap to TestMap.
+	 */
+	private static class LongMap implements TestMap {
+		private final LongArrayHashMap<Integer> map;
+
+		private LongMap(int initialCapacity) {
+			map = new LongArrayHashMap<Integer>(initialCapacity);
+		}
+
+		@Override
+		public Integer get(long key) {
+			return map.get(key);
+		}
+
+		@Override
+		public boolean containsKey(long key) {
+			return map.containsKey(key);
+		}
+
+		@Override
+		public Integer put(long key, int value) {
+			return map.put(key, value);
+		}
+
+		@Override
+		public Integer remove(long key) {
+			return map.remove(key);
+		}
+
+		@Override
+		public long[] keys() {
+			return map.keys();
+		}
+
+		@Override
+		public void clear() {
+			map.clear();
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return map.isEmpty();
+		}
+	}
+
+	/**
+	 * This adapts an IntIntArrayHashMap to TestMap. The values put in the tests are never
+	 * negative, so a no entry value of -1 stands for null.
+	 */
+	private static class IntIntMap implements TestMap {
+		private final IntIntArrayHashMap map;
+
+		private IntIntMap(int initialCapacity) {
+			map = new IntIntArrayHashMap(initialCapacity, 0.6f, -1);
+		}
+
+		private static Integer boxed(int value) {
+			return (value == -1) ? null : value;
+		}
+
+		@Override
+		public Integer get(long key) {
+			return boxed(map.get((int) key));
+		}
+
+		@Override
+		public boolean containsKey(long key) {
+			return map.containsKey((int) key);
+		}
+
+		@Override
+		public Integer put(long key, int value) {
+			return boxed(map.put((int) key, value));
+		}
+
+		@Override
+		public Integer remove(long key) {
+			return boxed(map.remove((int) key));
+		}
+
+		@Override
+		public long[] keys() {
+			return Arrays.stream(map.keys()).asLongStream().toArray();
+		}
+
+		@Override
+		public void clear() {
+			map.clear();
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return map.isEmpty();
+		}
+	}
+}
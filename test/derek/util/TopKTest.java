@@ -0,0 +1,96 @@
+package derek.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+/**
+ * This tests the bounded top-k selector in TopK.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class TopKTest {
+
+	/**
+	 * This tests offering a random stream against sorting the whole thing.
+	 */
+	@Test
+	public void testAgainstSort() {
+		Random r = new Random(23);
+		for (int k : new int[] { 1, 2, 7, 100, 5000 }) {
+			TopK<Integer> top = new TopK<Integer>(k);
+			ArrayList<Integer> all = new ArrayList<Integer>();
+			for (int i = 0 ; i < 3000 ; i++) {
+				Integer next = r.nextInt(100000);
+				top.offer(next);
+				all.add(next);
+			}
+			Collections.sort(all, Collections.reverseOrder());
+			List<Integer> expected = all.subList(0, Math.min(k, all.size()));
+			assertEquals(expected, top.toList());
+			assertEquals(expected.size(), top.size());
+			assertEquals(expected.get(expected.size() - 1), top.peek());
+		}
+	}
+
+	/**
+	 * This tests collecting sequential and parallel streams, with and without a comparator.
+	 */
+	@Test
+	public void testCollector() {
+		final int[] values = new Random(23).ints(200000, 0, 1 << 30).toArray();
+		List<Integer> sorted = IntStream.of(values).boxed().sorted().collect(Collectors.toList());
+		List<Integer> greatest = new ArrayList<Integer>(sorted.subList(sorted.size() - 100, sorted.size()));
+		Collections.reverse(greatest);
+		List<Integer> least = sorted.subList(0, 100);
+
+		assertEquals(greatest, IntStream.of(values).boxed().collect(TopK.collector(100)));
+		assertEquals(greatest, IntStream.of(values).boxed().parallel().collect(TopK.collector(100)));
+		Comparator<Integer> reverse = Collections.reverseOrder();
+		assertEquals(least, IntStream.of(values).boxed().parallel().collect(TopK.collector(100, reverse)));
+	}
+
+	/**
+	 * This tests merging partial results, that merging leaves the other TopK alone,
+	 * and that a TopK can be merged with itself.
+	 */
+	@Test
+	public void testMerge() {
+		TopK<String> a = new TopK<String>(3);
+		TopK<String> b = new TopK<String>(3);
+		for (String s : new String[] { "d", "a", "g", "b" })
+			a.offer(s);
+		for (String s : new String[] { "c", "f", "e" })
+			b.offer(s);
+		assertSame(a, a.merge(b));
+		assertEquals(Arrays.asList("g", "f", "e"), a.toList());
+		assertEquals(Arrays.asList("f", "e", "c"), b.toList());
+		assertFalse(a.offer("a"));
+		assertTrue(a.offer("z"));
+		assertEquals("[z, g, f]", a.toString());
+		assertEquals(Arrays.asList("z", "z", "g"), a.merge(a).toList());
+
+		a.clear();
+		assertTrue(a.isEmpty());
+		try {
+			a.peek();
+			fail("Peeked into an empty TopK!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		try {
+			new TopK<String>(0);
+			fail("Made a TopK that keeps nothing!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+}
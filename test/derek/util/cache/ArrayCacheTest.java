@@ -0,0 +1,207 @@
+package derek.util.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * This tests the bounded array-based cache implemented in ArrayCache.
+ * @author Derek Batts <dsbatts@ncsu.edu>
+ */
+public class ArrayCacheTest {
+
+	/**
+	 * This tests that LRU throws out the entry that was used least recently.
+	 */
+	@Test
+	public void testLRU() {
+		ArrayCache<Integer, String> cache = new ArrayCache<Integer, String>(3);
+		cache.put(1, "one");
+		cache.put(2, "two");
+		cache.put(3, "three");
+
+		// Using 1 makes 2 the least recently used
+		assertEquals("one", cache.get(1));
+		cache.put(4, "four");
+		assertEquals(3, cache.size());
+		assertNull(cache.getIfPresent(2));
+		assertEquals("one", cache.getIfPresent(1));
+		assertEquals("three", cache.getIfPresent(3));
+		assertEquals("four", cache.getIfPresent(4));
+		assertEquals(1, cache.evictionCount());
+
+		assertEquals("three", cache.remove(3));
+		assertFalse(cache.containsKey(3));
+		assertEquals(2, cache.size());
+	}
+
+	/**
+	 * This tests both policies against a java.util.HashMap, checking that every cached value
+	 * is right and the size never goes over the maximum.
+	 */
+	@Test
+	public void testAgainstHashMap() {
+		for (EvictionPolicy policy : EvictionPolicy.values()) {
+			ArrayCache<Integer, Integer> cache = new ArrayCache<Integer, Integer>(100, policy);
+			HashMap<Integer, Integer> latest = new HashMap<Integer, Integer>();
+			Random r = new Random(9);
+			for (int i = 0 ; i < 50000 ; i++) {
+				int key = r.nextInt(300);
+				if (r.nextInt(10) == 0) {
+					cache.remove(key);
+					latest.remove(key);
+				}
+				else if (r.nextBoolean()) {
+					cache.put(key, i);
+					latest.put(key, i);
+				}
+				else {
+					Integer v = cache.getIfPresent(key);
+					if (v != null)
+						assertEquals(latest.get(key), v);
+				}
+				assertTrue(cache.size() <= 100);
+			}
+		}
+	}
+
+	/**
+	 * This tests that W-TinyLFU keeps frequently used keys through a scan of one-off keys,
+	 * which would flush an LRU cache completely.
+	 */
+	@Test
+	public void testTinyLFUResistsScans() {
+		ArrayCache<Integer, Integer> lru = new ArrayCache<Integer, Integer>(100, EvictionPolicy.LRU);
+		ArrayCache<Integer, Integer> lfu = new ArrayCache<Integer, Integer>(100, EvictionPolicy.W_TINY_LFU);
+
+		// Make 50 keys popular
+		for (int round = 0 ; round < 10 ; round++) {
+			for (int key = 0 ; key < 50 ; key++) {
+				if (lru.get(key) == null)
+					lru.put(key, key);
+				if (lfu.get(key) == null)
+					lfu.put(key, key);
+			}
+		}
+
+		// Then scan through a lot of keys that are each used only once
+		for (int key = 1000 ; key < 5000 ; key++) {
+			lru.put(key, key);
+			lfu.put(key, key);
+		}
+
+		int lruKept = 0;
+		int lfuKept = 0;
+		for (int key = 0 ; key < 50 ; key++) {
+			if (lru.containsKey(key))
+				lruKept++;
+			if (lfu.containsKey(key))
+				lfuKept++;
+		}
+		assertEquals(0, lruKept);
+		assertTrue("Only kept " + lfuKept + " popular keys", lfuKept >= 45);
+	}
+
+	/**
+	 * This tests that entries expire after they were written, using a fake clock.
+	 */
+	@Test
+	public void testExpiry() {
+		AtomicLong now = new AtomicLong(0);
+		ArrayCache<String, String> cache = new ArrayCache<String, String>(10, EvictionPolicy.LRU,
+				TimeUnit.SECONDS.toNanos(5), null, now::get);
+
+		cache.put("a", "A");
+		now.set(TimeUnit.SECONDS.toNanos(3));
+		cache.put("b", "B");
+		assertEquals("A", cache.getIfPresent("a"));
+
+		now.set(TimeUnit.SECONDS.toNanos(6));
+		assertNull(cache.getIfPresent("a"));
+		assertEquals("B", cache.getIfPresent("b"));
+		assertEquals(1, cache.size());
+
+		// Writing again resets the clock
+		cache.put("b", "B2");
+		now.set(TimeUnit.SECONDS.toNanos(10));
+		assertEquals("B2", cache.getIfPresent("b"));
+		now.set(TimeUnit.SECONDS.toNanos(11));
+		assertFalse(cache.containsKey("b"));
+	}
+
+	/**
+	 * This tests that entries given their own expiry time keep it, whatever the cache's time is,
+	 * and that a loader can pick the time for the entries it loads.
+	 */
+	@Test
+	public void testPerEntryExpiry() {
+		AtomicLong now = new AtomicLong(0);
+		ArrayCache<String, String> cache = new ArrayCache<String, String>(10, EvictionPolicy.LRU,
+				TimeUnit.SECONDS.toNanos(5), new CacheLoader<String, String>() {
+					public String load(String key) {
+						return key.toUpperCase();
+					}
+
+					public long expireAfterLoadNanos(String key, String value) {
+						return key.startsWith("short") ? TimeUnit.SECONDS.toNanos(1) : -1;
+					}
+				}, now::get);
+
+		cache.put("default", "D");
+		cache.put("long", "L", 20, TimeUnit.SECONDS);
+		cache.put("forever", "F", 0, TimeUnit.SECONDS);
+		assertEquals("SHORT", cache.get("short"));
+		assertEquals("LOADED", cache.get("loaded"));
+
+		now.set(TimeUnit.SECONDS.toNanos(2));
+		assertFalse(cache.containsKey("short"));
+		assertTrue(cache.containsKey("loaded"));
+
+		now.set(TimeUnit.SECONDS.toNanos(6));
+		assertNull(cache.getIfPresent("default"));
+		assertNull(cache.getIfPresent("loaded"));
+		assertEquals("L", cache.getIfPresent("long"));
+
+		// Writing again without a time falls back to the cache's time
+		cache.put("long", "L2");
+		now.set(TimeUnit.SECONDS.toNanos(12));
+		assertNull(cache.getIfPresent("long"));
+		now.set(Long.MAX_VALUE - 1);
+		assertEquals("F", cache.getIfPresent("forever"));
+
+		try {
+			cache.put("bad", "B", -1, TimeUnit.SECONDS);
+			fail("Put an entry with a negative expiry time!");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * This tests that the loader fills in missing keys once, and that hits and misses are counted.
+	 */
+	@Test
+	public void testLoader() {
+		AtomicInteger loads = new AtomicInteger();
+		ArrayCache<Integer, String> cache = new ArrayCache<Integer, String>(10, EvictionPolicy.W_TINY_LFU, 0,
+				TimeUnit.SECONDS, key -> {
+					loads.incrementAndGet();
+					return (key < 0) ? null : "Value #" + key;
+				});
+
+		assertEquals("Value #1", cache.get(1));
+		assertEquals("Value #1", cache.get(1));
+		assertEquals(1, loads.get());
+		assertNull(cache.get(-1));
+		assertNull(cache.get(-1));
+		assertEquals(3, loads.get());
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.hitCount());
+		assertEquals(3, cache.missCount());
+	}
+}